@@ -3,6 +3,7 @@ package com.example.buskrutracker;
 import android.app.Application;
 import android.util.Log;
 
+import com.example.buskrutracker.services.FirebaseManager;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.database.FirebaseDatabase;
 
@@ -18,8 +19,9 @@ public class BusTrackerApplication extends Application {
             // Initialize Firebase
             FirebaseApp.initializeApp(this);
 
-            // Enable offline persistence
-            FirebaseDatabase.getInstance().setPersistenceEnabled(true);
+            // Enable offline persistence pada instance yang dipakai FirebaseManager
+            // (harus sebelum getReference pertama pada instance ini)
+            FirebaseDatabase.getInstance(FirebaseManager.DATABASE_URL).setPersistenceEnabled(true);
 
             Log.d(TAG, "Application initialized");
 
@@ -344,7 +344,8 @@ public class PersiapanActivity extends AppCompatActivity {
                 armada.getKapasitas(),       // armada.kapasitas
                 rute.getNamaRute(),          // rute.nama_rute
                 rute.getPolyline(),          // rute.polyline
-                kru.getDriver()              // kru.driver
+                kru.getDriver(),             // kru.driver
+                rute.getId()                 // rute.id (index routes_live)
         );
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -1,10 +1,6 @@
 package com.example.buskrutracker.activities;
 
-import android.annotation.SuppressLint;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.LinearLayout;
@@ -15,6 +11,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.cardview.widget.CardView;
+import androidx.lifecycle.Observer;
 
 import com.example.buskrutracker.R;
 import com.example.buskrutracker.api.ApiService;
@@ -22,6 +19,8 @@ import com.example.buskrutracker.api.RetrofitClient;
 import com.example.buskrutracker.models.ApiResponse;
 import com.example.buskrutracker.models.Perjalanan;
 import com.example.buskrutracker.services.GpsTrackingService;
+import com.example.buskrutracker.services.LocationStream;
+import com.example.buskrutracker.services.TrackingState;
 import com.example.buskrutracker.utils.SharedPrefManager;
 
 import java.util.HashMap;
@@ -71,21 +70,19 @@ public class TrackingActivity extends AppCompatActivity {
     private int durasiMenit = 0;
     private float speedKmh = 0.0f;
 
-    // BroadcastReceiver untuk terima update dari Service
-    private BroadcastReceiver locationReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            double lat = intent.getDoubleExtra("latitude", 0);
-            double lng = intent.getDoubleExtra("longitude", 0);
-            speedKmh = intent.getFloatExtra("speed", 0);
-            totalJarak = intent.getDoubleExtra("distance", 0);
-            int updateCount = intent.getIntExtra("update_count", 0);
+    // Observer LocationStream untuk terima update dari Service (in-process)
+    private final Observer<TrackingState> locationObserver = state -> {
+        if (state == null) {
+            return;
+        }
 
-            // Calculate duration
-            durasiMenit = updateCount / 12; // approx (update setiap 5 detik)
+        speedKmh = state.speedKmh;
+        totalJarak = state.distanceKm;
 
-            updateLocationUI();
-        }
+        // Durasi dari startTime service
+        durasiMenit = (int) (state.elapsedMillis / 60000);
+
+        updateLocationUI();
     };
 
     @Override
@@ -107,6 +104,9 @@ public class TrackingActivity extends AppCompatActivity {
         setupUI();
         setupClickListeners();
         loadPerjalanAktif();
+
+        // Aktif hanya saat STARTED; state terakhir di-replay saat kembali aktif
+        LocationStream.getState().observe(this, locationObserver);
     }
 
     private void parseRuteNama() {
@@ -230,24 +230,6 @@ public class TrackingActivity extends AppCompatActivity {
         });
     }
 
-    @SuppressLint("UnspecifiedRegisterReceiverFlag")
-    @Override
-    protected void onResume() {
-        super.onResume();
-        IntentFilter filter = new IntentFilter("GPS_LOCATION_UPDATE");
-        registerReceiver(locationReceiver, filter);
-    }
-
-    @Override
-    protected void onPause() {
-        super.onPause();
-        try {
-            unregisterReceiver(locationReceiver);
-        } catch (IllegalArgumentException e) {
-            // Receiver already unregistered
-        }
-    }
-
     // ============================================
     // LOAD PERJALANAN AKTIF
     // ============================================
@@ -576,14 +558,4 @@ public class TrackingActivity extends AppCompatActivity {
                 .setPositiveButton("Mengerti", null)
                 .show();
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        try {
-            unregisterReceiver(locationReceiver);
-        } catch (IllegalArgumentException e) {
-            // Already unregistered
-        }
-    }
 }
\ No newline at end of file
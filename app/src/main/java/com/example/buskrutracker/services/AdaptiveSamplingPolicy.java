@@ -0,0 +1,163 @@
+package com.example.buskrutracker.services;
+
+/**
+ * AdaptiveSamplingPolicy - Sampling GPS berdasarkan kecepatan, deteksi diam, dan kondisi
+ *
+ * Aturan:
+ * - Kondisi "mogok" langsung ke MOGOK
+ * - Belokan (perubahan bearing besar) langsung ke CITY dan ditahan sebentar
+ * - Pindah ke profile yang lebih jarang (HIGHWAY, STATIONARY) harus stabil dulu (hysteresis)
+ * - Pindah ke profile yang lebih rapat langsung diterapkan
+ */
+public class AdaptiveSamplingPolicy implements SamplingPolicy {
+
+    // Ambang kecepatan dengan hysteresis (km/h)
+    static final float HIGHWAY_ENTER_KMH = 70f;
+    static final float HIGHWAY_EXIT_KMH = 55f;
+    static final float STATIONARY_ENTER_KMH = 3f;
+    static final float STATIONARY_EXIT_KMH = 8f;
+
+    // Lama diam sebelum dianggap STATIONARY
+    static final long STATIONARY_DWELL_MS = 60000;
+    static final long STATIONARY_DWELL_MACET_MS = 20000;
+
+    // Profile yang lebih jarang harus stabil selama ini sebelum diterapkan
+    static final long SPARSER_DWELL_MS = 20000;
+
+    // Deteksi belokan
+    static final float TURN_ANGLE_DEG = 30f;
+    static final float TURN_MIN_SPEED_KMH = 10f;
+    static final long TURN_HOLD_MS = 30000;
+
+    private SamplingProfile current = SamplingProfile.CITY;
+    private String kondisi = "lancar";
+
+    private SamplingProfile candidate;
+    private long candidateSince;
+    private long stationarySince;
+    private boolean stopped;
+    private long turnHoldUntil;
+    private float lastBearing;
+    private boolean hasLastBearing;
+
+    @Override
+    public SamplingProfile reset() {
+        current = SamplingProfile.CITY;
+        kondisi = "lancar";
+        candidate = null;
+        candidateSince = 0;
+        stopped = false;
+        turnHoldUntil = 0;
+        hasLastBearing = false;
+        return current;
+    }
+
+    @Override
+    public SamplingProfile current() {
+        return current;
+    }
+
+    @Override
+    public SamplingProfile onKondisiChanged(String newKondisi) {
+        kondisi = newKondisi != null ? newKondisi : "lancar";
+        candidate = null;
+
+        if (isMogok()) {
+            current = SamplingProfile.MOGOK;
+        } else if (current == SamplingProfile.MOGOK) {
+            // Keluar dari mogok: kembali rapat, biarkan fix berikutnya menentukan
+            current = SamplingProfile.CITY;
+            stopped = false;
+        }
+        return current;
+    }
+
+    @Override
+    public SamplingProfile onFix(long timeMillis, float speedKmh, float bearing, boolean hasBearing) {
+        if (isMogok()) {
+            current = SamplingProfile.MOGOK;
+            return current;
+        }
+
+        // Deteksi belokan: rapatkan sampling segera
+        if (hasBearing && speedKmh >= TURN_MIN_SPEED_KMH) {
+            if (hasLastBearing && angleDiff(bearing, lastBearing) >= TURN_ANGLE_DEG) {
+                turnHoldUntil = timeMillis + TURN_HOLD_MS;
+            }
+            lastBearing = bearing;
+            hasLastBearing = true;
+        }
+
+        // Deteksi diam
+        if (speedKmh < STATIONARY_ENTER_KMH) {
+            if (!stopped) {
+                stopped = true;
+                stationarySince = timeMillis;
+            }
+        } else if (speedKmh > STATIONARY_EXIT_KMH) {
+            stopped = false;
+        }
+
+        SamplingProfile desired = desiredProfile(timeMillis, speedKmh);
+
+        if (desired == current) {
+            candidate = null;
+        } else if (denserThanCurrent(desired)) {
+            current = desired;
+            candidate = null;
+        } else if (desired != candidate) {
+            candidate = desired;
+            candidateSince = timeMillis;
+        } else if (timeMillis - candidateSince >= SPARSER_DWELL_MS) {
+            current = desired;
+            candidate = null;
+        }
+
+        return current;
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private SamplingProfile desiredProfile(long timeMillis, float speedKmh) {
+        if (timeMillis < turnHoldUntil) {
+            return SamplingProfile.CITY;
+        }
+
+        long dwell = isMacet() ? STATIONARY_DWELL_MACET_MS : STATIONARY_DWELL_MS;
+        if (current == SamplingProfile.STATIONARY) {
+            if (speedKmh <= STATIONARY_EXIT_KMH) {
+                return SamplingProfile.STATIONARY;
+            }
+        } else if (stopped && timeMillis - stationarySince >= dwell) {
+            return SamplingProfile.STATIONARY;
+        }
+
+        if (!isMacet()) {
+            float threshold = current == SamplingProfile.HIGHWAY ? HIGHWAY_EXIT_KMH : HIGHWAY_ENTER_KMH;
+            if (speedKmh >= threshold) {
+                return SamplingProfile.HIGHWAY;
+            }
+        }
+
+        return SamplingProfile.CITY;
+    }
+
+    private boolean denserThanCurrent(SamplingProfile profile) {
+        return profile.intervalMillis < current.intervalMillis;
+    }
+
+    private boolean isMogok() {
+        return "mogok".equalsIgnoreCase(kondisi);
+    }
+
+    private boolean isMacet() {
+        return "macet".equalsIgnoreCase(kondisi);
+    }
+
+    private static float angleDiff(float a, float b) {
+        float diff = Math.abs(a - b) % 360f;
+        return diff > 180f ? 360f - diff : diff;
+    }
+}
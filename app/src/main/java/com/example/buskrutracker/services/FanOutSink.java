@@ -0,0 +1,137 @@
+package com.example.buskrutracker.services;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * FanOutSink - Teruskan setiap publish ke beberapa RealtimeSink sekaligus
+ *
+ * Exception dari satu sink dicatat lalu diabaikan agar sink lain tetap menerima data.
+ * Daftar sink berupa array (copy-on-write) supaya loop di hot path tanpa iterator.
+ */
+public class FanOutSink implements RealtimeSink {
+
+    private static final String TAG = "FanOutSink";
+
+    private RealtimeSink[] sinks;
+
+    public FanOutSink(RealtimeSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    public void addSink(RealtimeSink sink) {
+        RealtimeSink[] next = Arrays.copyOf(sinks, sinks.length + 1);
+        next[sinks.length] = sink;
+        sinks = next;
+    }
+
+    /**
+     * Ganti seluruh daftar sink (sink lama tidak di-release)
+     */
+    public void setSinks(RealtimeSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    public int size() {
+        return sinks.length;
+    }
+
+    @Override
+    public void setRute(int perjalanId, int ruteId) {
+        forEach(sink -> sink.setRute(perjalanId, ruteId));
+    }
+
+    @Override
+    public void initializeBus(int perjalanId, String namaBus, String plateNumber, String busClass,
+                              String route, int capacity, String driver, String routePolyline) {
+        forEach(sink -> sink.initializeBus(perjalanId, namaBus, plateNumber, busClass, route,
+                capacity, driver, routePolyline));
+    }
+
+    @Override
+    public void resumeBus(int perjalanId) {
+        forEach(sink -> sink.resumeBus(perjalanId));
+    }
+
+    @Override
+    public void addTrackPoint(double latitude, double longitude, long timestamp) {
+        forEach(sink -> sink.addTrackPoint(latitude, longitude, timestamp));
+    }
+
+    @Override
+    public void resetTrail(int perjalanId) {
+        forEach(sink -> sink.resetTrail(perjalanId));
+    }
+
+    @Override
+    public void updateLocationWithTrack(int perjalanId, double latitude, double longitude,
+                                        float speed, double totalDistance, int segmentIndex,
+                                        double routeProgressKm) {
+        forEach(sink -> sink.updateLocationWithTrack(perjalanId, latitude, longitude, speed,
+                totalDistance, segmentIndex, routeProgressKm));
+    }
+
+    @Override
+    public void updateETA(int perjalanId, double remainingDistanceKm, int remainingTimeMinutes,
+                          long estimatedArrivalMillis) {
+        forEach(sink -> sink.updateETA(perjalanId, remainingDistanceKm, remainingTimeMinutes,
+                estimatedArrivalMillis));
+    }
+
+    @Override
+    public void updatePassengers(int perjalanId, int currentPassengers) {
+        forEach(sink -> sink.updatePassengers(perjalanId, currentPassengers));
+    }
+
+    @Override
+    public void updateKondisi(int perjalanId, String kondisi) {
+        forEach(sink -> sink.updateKondisi(perjalanId, kondisi));
+    }
+
+    @Override
+    public void updateStatus(int perjalanId, String status) {
+        forEach(sink -> sink.updateStatus(perjalanId, status));
+    }
+
+    @Override
+    public void clearBusData(int perjalanId) {
+        forEach(sink -> sink.clearBusData(perjalanId));
+    }
+
+    /**
+     * Ditonton jika salah satu sink ditonton (atau tidak tahu)
+     */
+    @Override
+    public boolean isWatched() {
+        for (RealtimeSink sink : sinks) {
+            try {
+                if (sink.isWatched()) return true;
+            } catch (RuntimeException e) {
+                onSinkError(sink, e);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void release() {
+        forEach(RealtimeSink::release);
+    }
+
+    private void forEach(Consumer<RealtimeSink> call) {
+        for (RealtimeSink sink : sinks) {
+            try {
+                call.accept(sink);
+            } catch (RuntimeException e) {
+                onSinkError(sink, e);
+            }
+        }
+    }
+
+    private void onSinkError(RealtimeSink sink, RuntimeException e) {
+        Log.w(TAG, sink.getClass().getSimpleName() + " failed: " + e.getMessage());
+    }
+}
@@ -1,12 +1,30 @@
 package com.example.buskrutracker.services;
 
+import android.os.Handler;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.example.buskrutracker.utils.Clock;
+import com.example.buskrutracker.utils.Geohash;
+import com.example.buskrutracker.utils.LatencyHistogram;
+import com.example.buskrutracker.utils.LinkQualityEstimator;
+import com.example.buskrutracker.utils.TokenBucket;
+import com.example.buskrutracker.utils.TrailRing;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.ValueEventListener;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -17,28 +35,255 @@ import java.util.TimeZone;
 /**
  * FirebaseManager - Kelola data bus di Firebase Realtime Database
  * Struktur: buses/bus_{id}/namaBus, plateNumber, class, route, capacity, currentPassengers,
- *           driver, status, kondisi, routePolyline, location, track[], eta, totalDistance
+ *           driver, status, kondisi, routePolyline, location, trail/{key}, eta, totalDistance,
+ *           schemaVersion, heartbeatAt, offlineAt
+ *           buses_geo/{geohash5}/bus_{id}, routes_live/{ruteId}/bus_{id}, viewers/bus_{id}
+ *
+ * Update hanya menyimpan nilai terbaru per field; flush dibatasi token bucket dan ditulis
+ * sebagai satu updateChildren multi-path di root, sehingga field bus dan index berubah atomik.
  */
-public class FirebaseManager {
+public class FirebaseManager implements RealtimeSink {
 
     private static final String TAG = "FirebaseManager";
-    private static final int MAX_TRACK_POINTS = 10;
+    // Window trail default: 10 titik terakhir, maksimal 10 menit
+    public static final int DEFAULT_TRAIL_MAX_POINTS = 10;
+    public static final long DEFAULT_TRAIL_MAX_AGE_MS = 10 * 60 * 1000L;
+
+    // Versi skema payload; 2 = waktu dalam epoch millis
+    public static final int SCHEMA_VERSION = 2;
+
+    // Cadence write: burst 2, lalu satu write per 5 detik
+    public static final int WRITE_BURST = 2;
+    public static final long WRITE_INTERVAL_MS = 5000;
+    // Array track[] lama (seluruh window) paling sering sekali per interval ini
+    static final long LEGACY_TRACK_INTERVAL_MS = 60000;
+
+    // Batas tunda field yang menumpang write lokasi
+    static final long KONDISI_MAX_DELAY_MS = 1000;
+    static final long PASSENGERS_MAX_DELAY_MS = 2000;
+    static final long ETA_MAX_DELAY_MS = 10000;
+
+    // ETA tetap dikirim pada link buruk jika sudah tertahan selama ini
+    static final long LEAN_ETA_MAX_AGE_MS = 2 * 60 * 1000L;
+
+    // Batas write yang sudah dikirim ke SDK tapi belum di-ack server
+    static final int MAX_IN_FLIGHT = 4;
+
+    // Tanpa viewer: heartbeat lokasi satu write per menit
+    public static final long IDLE_WRITE_INTERVAL_MS = 60000;
+    public static final String VIEWERS_PATH = "viewers";
+    private static final long VIEWERS_UNKNOWN = -1;
+
+    // Index spasial: buses_geo/{geohash GEO_PRECISION karakter}/bus_{id}
+    public static final String GEO_INDEX_PATH = "buses_geo";
+    public static final int GEO_PRECISION = 5;
+
+    // Index rute: routes_live/{ruteId}/bus_{id}
+    public static final String ROUTE_INDEX_PATH = "routes_live";
+
+    public static final String BUSES_PATH = "buses";
+
+    // Liveness: heartbeatAt minimal sekali per menit selama bus live
+    public static final long HEARTBEAT_INTERVAL_MS = 60000;
+    // heartbeatAt di server bisa lebih tua dari heartbeat terakhir yang dikirim (write itu
+    // belum sampai saat putus): data statis ditulis ulang satu interval lebih awal
+    static final long BUS_INFO_REWRITE_AFTER_MS =
+            StaleBusSweeper.STALE_AFTER_MS - HEARTBEAT_INTERVAL_MS;
+    public static final String STATUS_OFFLINE = "offline";
+
+    private static final String KONDISI_MOGOK = "mogok";
 
     // Ganti dengan DATABASE URL Anda dari Firebase Console
-    private static final String DATABASE_URL = "https://buskrutracker-default-rtdb.asia-southeast1.firebasedatabase.app/";
+    // (persistence diaktifkan untuk instance ini di BusTrackerApplication)
+    public static final String DATABASE_URL = "https://buskrutracker-default-rtdb.asia-southeast1.firebasedatabase.app/";
+
+    /**
+     * Dipanggil untuk setiap write yang diterbitkan (path relatif root, value null = remove).
+     * Untuk updateChildren, value adalah Map path -> nilai (path "" = multi-path di root,
+     * key berupa path absolut); Map itu di-reuse dan hanya valid selama callback.
+     * Tetap dipanggil walau Firebase tidak siap, sehingga replay / test bisa menghitung write.
+     */
+    public interface WriteObserver {
+        void onWrite(String path, Object value);
+    }
+
+    /**
+     * Dipanggil di thread flush saat bus mulai / berhenti ditonton
+     */
+    public interface DemandListener {
+        void onDemandChanged(boolean watched);
+    }
 
     private DatabaseReference databaseRef;
-    private SimpleDateFormat dateFormat;
-    private List<Map<String, Double>> trackHistory;
+    // Formatter hanya untuk field legacy (viewer schemaVersion 1)
+    private final SimpleDateFormat legacyFormat;
+    private final Date legacyDate = new Date();
+    private boolean legacyTimestamps = true;
+    private boolean legacyTrack = true;
+    private boolean legacyTrackDirty;
+    private long lastLegacyTrackAt = -1;
+    private TrailRing trail = new TrailRing(DEFAULT_TRAIL_MAX_POINTS, DEFAULT_TRAIL_MAX_AGE_MS);
+    private long lastTrailKeyTime;
+    private int trailKeySeq;
+
+    private Clock clock = Clock.SYSTEM;
+    private WriteObserver writeObserver;
+    private long writeCount;
+
+    // Reference bus di-cache (service hanya melacak satu bus dalam satu waktu)
+    private int cachedPerjalanId;
+    private String busPath;
+    private String busPrefix;
+    private String busKey;
+    private DatabaseReference busRef;
+
+    // Cell geohash yang (dianggap) tertulis di index, dan cell lama dari write yang gagal
+    private String geoCell;
+    private final List<String> staleGeoCells = new ArrayList<>(2);
+    private long geoTransitions;
+
+    // Entry index rute bus aktif ("routes_live/{ruteId}/bus_{id}/"), null jika rute tidak diketahui
+    private int ruteId;
+    private String routeEntryPrefix;
+
+    // Liveness bus aktif: marker onDisconnect + heartbeat
+    private boolean liveBus;
+    private String lastStatus;
+    private long lastHeartbeatAt = -1;
+    private boolean heartbeatDue;
+    private Map<String, Object> offlineMarker;
+    // Data statis dari initializeBus, ditulis ulang setelah putus lama (node mungkin diarsip)
+    private final Map<String, Object> busInfo = new HashMap<>();
+    private boolean busInfoPending;
+    private long disconnectedAt = -1;
+    private long heartbeatBeforeDisconnect = -1;
+    private boolean heartbeatScheduled;
+    private long heartbeatTimerAt;
+    private final Runnable heartbeatTask = () -> {
+        if (postIfEarly(this.heartbeatTask, heartbeatTimerAt)) return;
+        heartbeatScheduled = false;
+        onHeartbeat();
+    };
+
+    // Payload multi-path yang di-reuse untuk setiap write lokasi
+    private final Map<String, Object> updatePayload = new HashMap<>();
+
+    // Nilai terbaru per field yang belum dikirim (last-writer-wins)
+    private boolean locationPending;
+    private double pendingLatitude;
+    private double pendingLongitude;
+    private float pendingSpeed;
+    private long pendingLocationTime;
+    private int pendingSegmentIndex;
+    private double pendingRouteProgress;
+    private double pendingTotalDistance;
+    private boolean etaPending;
+    private double pendingRemainingDistance;
+    private int pendingRemainingTime;
+    private long pendingArrivalAt;
+    private long etaPendingSince;
+    private String pendingKondisi;
+    private long pendingKondisiTime;
+    private boolean passengersPending;
+    private int pendingPassengers;
+    private String pendingStatus;
+    private String lastKondisi;
+
+    // Publish scheduler
+    private TokenBucket writeBudget = new TokenBucket(WRITE_BURST, WRITE_INTERVAL_MS);
+    private long baseWriteInterval = WRITE_INTERVAL_MS;
+    private final LinkQualityEstimator linkQuality = new LinkQualityEstimator();
+    private Handler flushHandler;
+    private boolean flushScheduled;
+    private long flushDueAt;
+    private final Runnable flushTask = () -> {
+        if (postIfEarly(this.flushTask, flushDueAt)) return;
+        flushScheduled = false;
+        requestFlush();
+    };
+
+    // Counter scheduler
+    private long updatesRequested;
+    private long updatesCollapsed;
+    private long flushesSent;
+    private long bypassFlushes;
+
+    // Koneksi & antrean write yang belum di-ack
+    private DatabaseReference connectedRef;
+    // Tanpa listener .info/connected (Firebase tidak siap) dianggap online sejak awal
+    private boolean connected = true;
+    private boolean everConnected = true;
+    private int inFlight;
+    private int maxInFlight;
+    private long reconnects;
+    private long reconnectAt = -1;
+    private long lastDrainMillis = -1;
+
+    // Jumlah viewer bus aktif (VIEWERS_UNKNOWN: belum terbaca, dianggap ditonton)
+    private DatabaseReference viewersRef;
+    private long viewerCount = VIEWERS_UNKNOWN;
+    private DemandListener demandListener;
+
+    // Latensi ack per operasi write
+    private final WriteOp flushOp = new WriteOp("flush");
+    private final WriteOp initOp = new WriteOp("initializeBus");
+    private final WriteOp trailResetOp = new WriteOp("resetTrail");
+    private final WriteOp clearOp = new WriteOp("clearBusData");
+    private final WriteOp markerOp = new WriteOp("offlineMarker");
+    private final WriteOp[] writeOps = {flushOp, initOp, trailResetOp, clearOp, markerOp};
+
+    // Update pertama yang belum di-flush -> flush (tunggu token, coalescing, tahan offline)
+    private final LatencyHistogram publishDelay = new LatencyHistogram("publishDelay");
+    private long pendingSince = -1;
+
+    private static final class WriteOp {
+        final LatencyHistogram latency;
+        int inFlight;
+
+        WriteOp(String name) {
+            latency = new LatencyHistogram(name);
+        }
+    }
+
+    private final ValueEventListener connectionListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(@NonNull DataSnapshot snapshot) {
+            boolean isConnected = Boolean.TRUE.equals(snapshot.getValue(Boolean.class));
+            runOnFlushThread(() -> onConnectionChanged(isConnected));
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            Log.e(TAG, "Connection listener cancelled: " + error.getMessage());
+        }
+    };
+
+    private final ValueEventListener viewersListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(@NonNull DataSnapshot snapshot) {
+            Long count = snapshot.getValue(Long.class);
+            // Decrement ganda (mis. onDisconnect + tutup normal) jangan sampai negatif
+            long viewers = count != null ? Math.max(0, count) : 0;
+            runOnFlushThread(() -> onViewerCountChanged(viewers));
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            Log.e(TAG, "Viewers listener cancelled: " + error.getMessage());
+            runOnFlushThread(() -> onViewerCountChanged(VIEWERS_UNKNOWN));
+        }
+    };
 
     public FirebaseManager() {
+        legacyFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        legacyFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
         try {
             FirebaseDatabase database = FirebaseDatabase.getInstance(DATABASE_URL);
             databaseRef = database.getReference();
-            trackHistory = new ArrayList<>();
-
-            dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            connectedRef = database.getReference(".info/connected");
+            awaitFirstConnection();
+            connectedRef.addValueEventListener(connectionListener);
 
             Log.d(TAG, "FirebaseManager initialized");
         } catch (Exception e) {
@@ -46,14 +291,274 @@ public class FirebaseManager {
         }
     }
 
+    /**
+     * Sumber waktu untuk timestamp (virtual clock saat replay)
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock != null ? clock : Clock.SYSTEM;
+    }
+
+    public void setWriteObserver(WriteObserver writeObserver) {
+        this.writeObserver = writeObserver;
+    }
+
+    public void setDemandListener(DemandListener demandListener) {
+        this.demandListener = demandListener;
+    }
+
+    /**
+     * Window trail berdasarkan jumlah titik dan umur (maxAgeMillis <= 0: tanpa batas waktu)
+     */
+    public void setTrailWindow(int maxPoints, long maxAgeMillis) {
+        trail = new TrailRing(maxPoints, maxAgeMillis);
+    }
+
+    /**
+     * Tulis juga field waktu string schemaVersion 1 (lastUpdate, kondisiUpdate, estimatedArrival,
+     * ISO-8601 UTC); matikan setelah semua viewer membaca v2 (epoch millis / server timestamp)
+     */
+    public void setLegacyTimestamps(boolean legacyTimestamps) {
+        this.legacyTimestamps = legacyTimestamps;
+    }
+
+    /**
+     * Tulis juga array track[] lama (seluruh window) di samping trail/{key}, paling sering
+     * sekali per LEGACY_TRACK_INTERVAL_MS jika trail berubah; matikan setelah semua viewer
+     * membaca trail agar byte per update tidak lagi bergantung pada ukuran window
+     */
+    public void setLegacyTrack(boolean legacyTrack) {
+        this.legacyTrack = legacyTrack;
+        if (!legacyTrack) {
+            legacyTrackDirty = false;
+        }
+    }
+
+    /**
+     * Handler (tracking thread) untuk timer flush; semua method harus dipanggil di thread-nya
+     */
+    public void setFlushHandler(Handler flushHandler) {
+        cancelScheduledFlush();
+        cancelHeartbeat();
+        this.flushHandler = flushHandler;
+        if (liveBus) {
+            scheduleHeartbeat();
+        }
+    }
+
+    /**
+     * Ganti cadence write: burst token, lalu satu write per intervalMillis
+     */
+    public void setWriteBudget(int burst, long intervalMillis) {
+        baseWriteInterval = intervalMillis;
+        writeBudget = new TokenBucket(burst, currentWriteInterval());
+    }
+
+    /**
+     * Hint jaringan dari ConnectivityManager (downstreamKbps <= 0: tidak diketahui)
+     */
+    public void setNetworkHint(boolean metered, int downstreamKbps) {
+        if (linkQuality.setNetworkHint(metered, downstreamKbps)) {
+            applyLinkLevel();
+        }
+    }
+
+    public LinkQualityEstimator.Level getLinkLevel() {
+        return linkQuality.getLevel();
+    }
+
+    /**
+     * Interval write saat ini (dasar x pengali kualitas link, minimal heartbeat jika tanpa viewer)
+     */
+    public long getWriteIntervalMillis() {
+        return writeBudget.getRefillIntervalMillis();
+    }
+
+    /**
+     * Jumlah write (setValue / updateChildren / removeValue) yang diterbitkan
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * Jumlah update (lokasi / ETA / kondisi / penumpang / status) yang diminta pemanggil
+     */
+    public long getUpdatesRequested() {
+        return updatesRequested;
+    }
+
+    /**
+     * Jumlah update yang ditimpa update berikutnya sebelum sempat dikirim
+     */
+    public long getUpdatesCollapsed() {
+        return updatesCollapsed;
+    }
+
+    /**
+     * Jumlah flush (updateChildren) yang dikirim scheduler
+     */
+    public long getFlushesSent() {
+        return flushesSent;
+    }
+
+    /**
+     * Jumlah flush yang melewati token bucket (status, kondisi mogok)
+     */
+    public long getBypassFlushes() {
+        return bypassFlushes;
+    }
+
+    /**
+     * Jumlah write yang sudah dikirim ke SDK tapi belum di-ack server
+     */
+    public int getQueueDepth() {
+        return inFlight;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxInFlight;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Waktu dari koneksi kembali sampai semua write di-ack (ms), -1 jika belum pernah
+     */
+    public long getLastDrainMillis() {
+        return lastDrainMillis;
+    }
+
+    public long getReconnectCount() {
+        return reconnects;
+    }
+
+    /**
+     * Cell geohash bus di index, null jika belum ditulis
+     */
+    public String getGeoCell() {
+        return geoCell;
+    }
+
+    /**
+     * Jumlah write yang memindahkan entry index geohash
+     */
+    public long getGeoTransitions() {
+        return geoTransitions;
+    }
+
+    /**
+     * True selama bus terdaftar live (marker offline + heartbeat), sampai clearBusData
+     */
+    public boolean isLive() {
+        return liveBus;
+    }
+
+    /**
+     * Jumlah viewer bus aktif, -1 jika belum diketahui
+     */
+    public long getViewerCount() {
+        return viewerCount;
+    }
+
+    /**
+     * False hanya jika counter viewer terbaca 0
+     */
+    @Override
+    public boolean isWatched() {
+        return viewerCount != 0;
+    }
+
+    public String getSchedulerStats() {
+        return String.format(Locale.US,
+                "Publish: %d updates -> %d flushes (%d collapsed, %d bypass), "
+                        + "queue max %d, %d reconnects, last drain %d ms, "
+                        + "link %s (rtt %.0f ms, fail %.2f, %d changes), viewers %d, "
+                        + "%d geo cell changes",
+                updatesRequested, flushesSent, updatesCollapsed, bypassFlushes,
+                maxInFlight, reconnects, lastDrainMillis,
+                linkQuality.getLevel(), linkQuality.getRttMillis(), linkQuality.getFailureRate(),
+                linkQuality.getLevelChanges(), viewerCount, geoTransitions);
+    }
+
+    /**
+     * Satu baris histogram per operasi. Operasi write (flush, initializeBus, resetTrail,
+     * clearBusData, offlineMarker) diukur dari serah ke SDK sampai ack server: antrean SDK +
+     * jaringan, nilai yang sama dengan RTT untuk LinkQualityEstimator. publishDelay diukur dari
+     * update pertama yang ikut sebuah flush sampai flush itu diserahkan ke SDK (tunggu token,
+     * coalescing, tertahan offline). Write StaleBusSweeper tidak diukur di sini.
+     */
+    public String getLatencyReport() {
+        StringBuilder report = new StringBuilder();
+        for (WriteOp op : writeOps) {
+            report.append(op.latency).append('\n');
+        }
+        report.append(publishDelay).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Tulis laporan latensi + counter scheduler (mis. ke file debug per sesi)
+     */
+    public void dumpLatency(Writer out) throws IOException {
+        out.write(getSchedulerStats());
+        out.write('\n');
+        out.write(getLatencyReport());
+        out.flush();
+    }
+
+    @VisibleForTesting
+    LatencyHistogram getLatencyHistogram(String operation) {
+        for (WriteOp op : writeOps) {
+            if (op.latency.getName().equals(operation)) return op.latency;
+        }
+        return publishDelay.getName().equals(operation) ? publishDelay : null;
+    }
+
+    /**
+     * Lepas listener koneksi & viewer (service destroy)
+     */
+    @Override
+    public void release() {
+        // Marker onDisconnect sengaja dibiarkan: jika proses mati, server menandai bus offline
+        cancelScheduledFlush();
+        cancelHeartbeat();
+        if (connectedRef != null) {
+            connectedRef.removeEventListener(connectionListener);
+        }
+        if (viewersRef != null) {
+            viewersRef.removeEventListener(viewersListener);
+            viewersRef = null;
+        }
+    }
+
     // ============================================
     // INITIALIZE BUS
     // ============================================
 
+    /**
+     * Rute bus (id dari API); dipanggil sebelum initializeBus dan setelah restart.
+     * ruteId <= 0: bus tidak masuk index rute.
+     */
+    @Override
+    public void setRute(int perjalanId, int ruteId) {
+        selectBus(perjalanId);
+        this.ruteId = Math.max(ruteId, 0);
+        routeEntryPrefix = this.ruteId > 0
+                ? ROUTE_INDEX_PATH + "/" + this.ruteId + "/" + busKey + "/"
+                : null;
+    }
+
+    public int getRuteId() {
+        return ruteId;
+    }
+
     /**
      * Initialize bus di Firebase dengan struktur lengkap
      * ⭐ UPDATED: Tambah parameter namaBus
      */
+    @Override
     public void initializeBus(int perjalanId,
                               String namaBus,           // ⭐ PARAMETER BARU
                               String plateNumber,
@@ -62,51 +567,94 @@ public class FirebaseManager {
                               int capacity,
                               String driver,
                               String routePolyline) {
-
         String busKey = "bus_" + perjalanId;
-        DatabaseReference busRef = databaseRef.child("buses").child(busKey);
-
-        Map<String, Object> busData = new HashMap<>();
-        busData.put("namaBus", namaBus);              // ⭐ FIELD BARU
-        busData.put("plateNumber", plateNumber);
-        busData.put("class", busClass);
-        busData.put("route", route);
-        busData.put("capacity", capacity);
+        selectBus(perjalanId);
+        clearPending();
+        cancelScheduledFlush();
+        lastKondisi = "lancar";
+
+        busInfo.clear();
+        busInfo.put("namaBus", namaBus);              // ⭐ FIELD BARU
+        busInfo.put("plateNumber", plateNumber);
+        busInfo.put("class", busClass);
+        busInfo.put("route", route);
+        busInfo.put("capacity", capacity);
+        busInfo.put("driver", driver);
+        busInfo.put("routePolyline", routePolyline);
+        if (ruteId > 0) {
+            busInfo.put("ruteId", ruteId);
+        }
+
+        Map<String, Object> busData = new HashMap<>(busInfo);
         busData.put("currentPassengers", 0);
-        busData.put("driver", driver);
         busData.put("status", "active");
-        busData.put("routePolyline", routePolyline);
         busData.put("kondisi", "lancar");
-        busData.put("kondisiUpdate", getCurrentTimestamp());
+        busData.put("kondisiUpdatedAt", ServerValue.TIMESTAMP);
+        busData.put("schemaVersion", SCHEMA_VERSION);
+        busData.put("heartbeatAt", ServerValue.TIMESTAMP);
 
         // Location
         Map<String, Object> location = new HashMap<>();
         location.put("latitude", 0.0);
         location.put("longitude", 0.0);
         location.put("speed", 0.0);
-        location.put("lastUpdate", getCurrentTimestamp());
+        location.put("updatedAt", ServerValue.TIMESTAMP);
         busData.put("location", location);
 
-        // Track array
-        busData.put("track", new ArrayList<>());
-
         // ETA
         Map<String, Object> eta = new HashMap<>();
         eta.put("remainingDistance", 0.0);
         eta.put("remainingTime", 0);
-        eta.put("estimatedArrival", "");
+        eta.put("arrivalAt", 0L);
         busData.put("eta", eta);
 
+        if (legacyTimestamps) {
+            String now = formatLegacy(clock.currentTimeMillis());
+            busData.put("kondisiUpdate", now);
+            location.put("lastUpdate", now);
+            eta.put("estimatedArrival", "");
+        }
+
         // Total distance
         busData.put("totalDistance", 0.0);
 
-        busRef.setValue(busData)
+        trail.clear();
+        startLiveness("active");
+        lastHeartbeatAt = clock.elapsedRealtime();
+
+        // Node bus + entry index rute dalam satu write (path absolut di root)
+        Map<String, Object> payload = new HashMap<>();
+        payload.put(busPath, busData);
+        if (routeEntryPrefix != null) {
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("namaBus", namaBus);
+            summary.put("plateNumber", plateNumber);
+            summary.put("status", "active");
+            summary.put("updatedAt", ServerValue.TIMESTAMP);
+            payload.put(routeEntryPath(), summary);
+        }
+
+        if (!issue("", payload)) return;
+
+        track(databaseRef.updateChildren(payload), initOp)
                 .addOnSuccessListener(aVoid ->
                         Log.d(TAG, "Bus initialized: " + busKey + " | " + namaBus + " (" + plateNumber + ")"))
                 .addOnFailureListener(e ->
                         Log.e(TAG, "Failed to initialize bus: " + e.getMessage()));
+    }
 
-        trackHistory.clear();
+    /**
+     * Lanjutkan bus yang sudah ada setelah service restart (tanpa initializeBus): marker offline
+     * didaftarkan ulang, status kembali "active", dan heartbeat langsung dikirim
+     */
+    @Override
+    public void resumeBus(int perjalanId) {
+        selectBus(perjalanId);
+        startLiveness("active");
+        markRequested(pendingStatus != null);
+        pendingStatus = "active";
+        heartbeatDue = true;
+        bypassFlush();
     }
 
     // ============================================
@@ -114,43 +662,75 @@ public class FirebaseManager {
     // ============================================
 
     /**
-     * Update location + track array (last 10 points)
+     * Tambah titik ke trail (hasil TrackSimplifier); dikirim pada update lokasi berikutnya.
+     * Trail berupa child ber-key: satu add dan paling banyak satu remove per titik, O(1) per write.
      */
+    @Override
+    public void addTrackPoint(double latitude, double longitude, long timestamp) {
+        trail.add(nextTrailKey(timestamp), latitude, longitude, timestamp);
+    }
+
+    /**
+     * Hapus seluruh node trail (mis. setelah restart, key lama tidak lagi diketahui)
+     */
+    @Override
+    public void resetTrail(int perjalanId) {
+        selectBus(perjalanId);
+        trail.clear();
+        writeBusChild(perjalanId, "trail", null, trailResetOp);
+    }
+
+    /**
+     * Update location + trail (tambah / hapus per titik) + totalDistance.
+     * Dikirim bersama field pending lain dalam satu updateChildren multi-path (atomik)
+     * saat token tersedia; jika tidak, nilai ini menimpa lokasi pending sebelumnya.
+     *
+     * @param segmentIndex Segmen polyline hasil map-matching, -1 jika di luar rute
+     * @param routeProgressKm Jarak yang sudah ditempuh sepanjang rute
+     */
+    @Override
     public void updateLocationWithTrack(int perjalanId,
                                         double latitude,
                                         double longitude,
                                         float speed,
-                                        double totalDistance) {
-
-        String busKey = "bus_" + perjalanId;
-        DatabaseReference busRef = databaseRef.child("buses").child(busKey);
-
-        // Update location
-        Map<String, Object> location = new HashMap<>();
-        location.put("latitude", latitude);
-        location.put("longitude", longitude);
-        location.put("speed", (double) speed);
-        location.put("lastUpdate", getCurrentTimestamp());
-
-        busRef.child("location").setValue(location);
-
-        // Add to track history
-        Map<String, Double> trackPoint = new HashMap<>();
-        trackPoint.put("lat", latitude);
-        trackPoint.put("lng", longitude);
+                                        double totalDistance,
+                                        int segmentIndex,
+                                        double routeProgressKm) {
+        selectBus(perjalanId);
+        markRequested(locationPending);
+        locationPending = true;
+        pendingLatitude = latitude;
+        pendingLongitude = longitude;
+        pendingSpeed = speed;
+        pendingLocationTime = clock.currentTimeMillis();
+        pendingSegmentIndex = segmentIndex;
+        pendingRouteProgress = routeProgressKm;
+        pendingTotalDistance = totalDistance;
 
-        trackHistory.add(trackPoint);
+        requestFlush();
+    }
 
-        // Keep only last 10 points
-        if (trackHistory.size() > MAX_TRACK_POINTS) {
-            trackHistory.remove(0);
-        }
+    /**
+     * Kirim semua field pending sekarang, tanpa menunggu token
+     *
+     * @return true jika ada yang dikirim
+     */
+    public boolean flushPending(int perjalanId) {
+        if (!hasPending()) return false;
 
-        // Update track array
-        busRef.child("track").setValue(new ArrayList<>(trackHistory));
+        selectBus(perjalanId);
+        writeBudget.tryAcquire(clock.elapsedRealtime());
+        flush();
+        return true;
+    }
 
-        // Update total distance
-        busRef.child("totalDistance").setValue(totalDistance);
+    /**
+     * Ada field yang siap dikirim (trail / ETA yang ditahan karena link buruk tidak dihitung)
+     */
+    public boolean hasPending() {
+        return locationPending || pendingKondisi != null || passengersPending
+                || pendingStatus != null || heartbeatDue || isEtaDue()
+                || (trail.hasPending() && !linkQuality.isLeanPayload());
     }
 
     // ============================================
@@ -158,22 +738,25 @@ public class FirebaseManager {
     // ============================================
 
     /**
-     * Update ETA information
+     * Update ETA information (pending: ikut write lokasi berikutnya, maksimal ETA_MAX_DELAY_MS)
+     *
+     * @param estimatedArrivalMillis Perkiraan waktu tiba (epoch millis)
      */
+    @Override
     public void updateETA(int perjalanId,
                           double remainingDistanceKm,
                           int remainingTimeMinutes,
-                          String estimatedArrival) {
-
-        String busKey = "bus_" + perjalanId;
-        DatabaseReference etaRef = databaseRef.child("buses").child(busKey).child("eta");
-
-        Map<String, Object> eta = new HashMap<>();
-        eta.put("remainingDistance", remainingDistanceKm);
-        eta.put("remainingTime", remainingTimeMinutes);
-        eta.put("estimatedArrival", estimatedArrival);
-
-        etaRef.setValue(eta);
+                          long estimatedArrivalMillis) {
+        selectBus(perjalanId);
+        markRequested(etaPending);
+        if (!etaPending) {
+            etaPendingSince = clock.elapsedRealtime();
+        }
+        etaPending = true;
+        pendingRemainingDistance = remainingDistanceKm;
+        pendingRemainingTime = remainingTimeMinutes;
+        pendingArrivalAt = estimatedArrivalMillis;
+        scheduleFlush(ETA_MAX_DELAY_MS);
     }
 
     // ============================================
@@ -181,13 +764,15 @@ public class FirebaseManager {
     // ============================================
 
     /**
-     * Update current passenger count
+     * Update current passenger count (pending, maksimal PASSENGERS_MAX_DELAY_MS)
      */
+    @Override
     public void updatePassengers(int perjalanId, int currentPassengers) {
-        String busKey = "bus_" + perjalanId;
-        DatabaseReference busRef = databaseRef.child("buses").child(busKey);
-
-        busRef.child("currentPassengers").setValue(currentPassengers);
+        selectBus(perjalanId);
+        markRequested(passengersPending);
+        passengersPending = true;
+        pendingPassengers = currentPassengers;
+        scheduleFlush(PASSENGERS_MAX_DELAY_MS);
     }
 
     // ============================================
@@ -195,13 +780,15 @@ public class FirebaseManager {
     // ============================================
 
     /**
-     * Update bus status (active, stopped, completed)
+     * Update bus status (active, stopped, completed); langsung dikirim bersama field pending
      */
+    @Override
     public void updateStatus(int perjalanId, String status) {
-        String busKey = "bus_" + perjalanId;
-        DatabaseReference busRef = databaseRef.child("buses").child(busKey);
-
-        busRef.child("status").setValue(status);
+        selectBus(perjalanId);
+        markRequested(pendingStatus != null);
+        pendingStatus = status;
+        lastStatus = status;
+        bypassFlush();
     }
 
     // ============================================
@@ -210,20 +797,23 @@ public class FirebaseManager {
 
     /**
      * Update kondisi bus (lancar, macet, mogok)
+     * Masuk / keluar "mogok" langsung dikirim; lainnya pending maksimal KONDISI_MAX_DELAY_MS
      */
+    @Override
     public void updateKondisi(int perjalanId, String kondisi) {
-        String busKey = "bus_" + perjalanId;
-        DatabaseReference busRef = databaseRef.child("buses").child(busKey);
+        selectBus(perjalanId);
+        markRequested(pendingKondisi != null);
+        boolean urgent = KONDISI_MOGOK.equalsIgnoreCase(kondisi)
+                || KONDISI_MOGOK.equalsIgnoreCase(lastKondisi);
+        pendingKondisi = kondisi;
+        pendingKondisiTime = clock.currentTimeMillis();
+        lastKondisi = kondisi;
 
-        Map<String, Object> kondisiData = new HashMap<>();
-        kondisiData.put("kondisi", kondisi);
-        kondisiData.put("kondisiUpdate", getCurrentTimestamp());
-
-        busRef.updateChildren(kondisiData)
-                .addOnSuccessListener(aVoid ->
-                        Log.d(TAG, "Kondisi updated: " + kondisi))
-                .addOnFailureListener(e ->
-                        Log.e(TAG, "Failed to update kondisi: " + e.getMessage()));
+        if (urgent) {
+            bypassFlush();
+        } else {
+            scheduleFlush(KONDISI_MAX_DELAY_MS);
+        }
     }
 
     // ============================================
@@ -231,26 +821,726 @@ public class FirebaseManager {
     // ============================================
 
     /**
-     * Clear/remove bus data from Firebase
+     * Clear/remove bus data from Firebase (node bus + entry index geohash & rute, satu write atomik)
      */
+    @Override
     public void clearBusData(int perjalanId) {
-        String busKey = "bus_" + perjalanId;
-        DatabaseReference busRef = databaseRef.child("buses").child(busKey);
+        selectBus(perjalanId);
+        clearPending();
+        cancelScheduledFlush();
+        stopLiveness();
+        trail.clear();
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put(busPath, null);
+        if (routeEntryPrefix != null) {
+            payload.put(routeEntryPath(), null);
+        }
+        if (geoCell != null) {
+            staleGeoCells.add(geoCell);
+        }
+        for (String cell : staleGeoCells) {
+            payload.put(geoIndexKey(cell), null);
+        }
+        geoCell = null;
+        staleGeoCells.clear();
+
+        if (!issue("", payload)) return;
 
-        busRef.removeValue()
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Bus data cleared: " + busKey);
-                    trackHistory.clear();
-                })
+        String clearedKey = busKey;
+        track(databaseRef.updateChildren(payload), clearOp)
+                .addOnSuccessListener(aVoid ->
+                        Log.d(TAG, "Bus data cleared: " + clearedKey))
                 .addOnFailureListener(e ->
                         Log.e(TAG, "Failed to clear bus data: " + e.getMessage()));
     }
 
+    // ============================================
+    // PUBLISH SCHEDULER
+    // ============================================
+
+    private void markRequested(boolean overwritesPending) {
+        if (pendingSince < 0) {
+            pendingSince = clock.elapsedRealtime();
+        }
+        updatesRequested++;
+        if (overwritesPending) {
+            updatesCollapsed++;
+        }
+    }
+
+    /**
+     * Flush jika ada token; jika tidak, jadwalkan saat token berikutnya tersedia.
+     * Saat offline / antrean penuh, pending ditahan sampai koneksi kembali atau ada ack.
+     */
+    private void requestFlush() {
+        if (!hasPending() || !canSend()) return;
+
+        long now = clock.elapsedRealtime();
+        if (writeBudget.tryAcquire(now)) {
+            flush();
+        } else {
+            scheduleFlush(writeBudget.millisUntilAvailable(now));
+        }
+    }
+
+    /**
+     * Transisi penting: kirim sekarang; token dipakai jika ada, tapi tidak ditunggu
+     */
+    private void bypassFlush() {
+        // Offline: SDK hanya akan mengantrekannya; tetap jadi write pertama saat online lagi
+        if (!connected) return;
+
+        writeBudget.tryAcquire(clock.elapsedRealtime());
+        bypassFlushes++;
+        flush();
+    }
+
+    /**
+     * Jadwalkan requestFlush; jadwal yang lebih awal tidak diundur
+     */
+    private void scheduleFlush(long delayMillis) {
+        if (flushHandler == null) return;
+
+        long due = clock.elapsedRealtime() + delayMillis;
+        if (flushScheduled && flushDueAt <= due) return;
+
+        flushHandler.removeCallbacks(flushTask);
+        flushHandler.postDelayed(flushTask, delayMillis);
+        flushScheduled = true;
+        flushDueAt = due;
+    }
+
+    private void cancelScheduledFlush() {
+        if (flushScheduled && flushHandler != null) {
+            flushHandler.removeCallbacks(flushTask);
+        }
+        flushScheduled = false;
+    }
+
+    /**
+     * Timer di-post ke Handler (waktu nyata) tapi jatuh temponya menurut clock: jika clock
+     * belum sampai (virtual clock saat replay), post ulang untuk sisa waktunya
+     *
+     * @return true jika task belum jatuh tempo dan sudah di-post ulang
+     */
+    private boolean postIfEarly(Runnable task, long dueAt) {
+        long remaining = dueAt - clock.elapsedRealtime();
+        if (remaining <= 0 || flushHandler == null) return false;
+        flushHandler.postDelayed(task, remaining);
+        return true;
+    }
+
+    /**
+     * Jalankan timer flush / heartbeat yang sudah jatuh tempo menurut clock. Dipanggil replay
+     * setelah memajukan VirtualClock, karena Handler sendiri hanya maju di waktu nyata.
+     */
+    @VisibleForTesting
+    void runDueTimers() {
+        long now = clock.elapsedRealtime();
+        if (flushScheduled && now >= flushDueAt) {
+            flushHandler.removeCallbacks(flushTask);
+            flushScheduled = false;
+            requestFlush();
+        }
+        if (heartbeatScheduled && now >= heartbeatTimerAt) {
+            flushHandler.removeCallbacks(heartbeatTask);
+            heartbeatScheduled = false;
+            onHeartbeat();
+        }
+    }
+
+    /**
+     * Semua field pending + operasi trail + perpindahan index dalam satu updateChildren
+     */
+    private void flush() {
+        // putPending mengosongkan pending (termasuk pendingSince)
+        long requestedAt = pendingSince;
+        Map<String, Object> payload = updatePayload;
+        payload.clear();
+        String[] leftCells = null;
+
+        // Location per field; null menghapus routeProgress saat di luar rute
+        if (locationPending) {
+            payload.put(busPrefix + "location/latitude", pendingLatitude);
+            payload.put(busPrefix + "location/longitude", pendingLongitude);
+            payload.put(busPrefix + "location/speed", (double) pendingSpeed);
+            payload.put(busPrefix + "location/updatedAt", ServerValue.TIMESTAMP);
+            if (legacyTimestamps) {
+                payload.put(busPrefix + "location/lastUpdate", formatLegacy(pendingLocationTime));
+            }
+            payload.put(busPrefix + "location/segmentIndex", pendingSegmentIndex);
+            payload.put(busPrefix + "location/routeProgress",
+                    pendingSegmentIndex >= 0 ? pendingRouteProgress : null);
+            leftCells = putGeoTransition(payload);
+            if (routeEntryPrefix != null) {
+                payload.put(routeEntryPrefix + "lat", pendingLatitude);
+                payload.put(routeEntryPrefix + "lng", pendingLongitude);
+                payload.put(routeEntryPrefix + "progress",
+                        pendingSegmentIndex >= 0 ? pendingRouteProgress : null);
+                payload.put(routeEntryPrefix + "updatedAt", ServerValue.TIMESTAMP);
+            }
+        }
+
+        // Trail: titik baru + titik yang keluar window (ditahan pada link buruk)
+        trail.evictExpired(clock.currentTimeMillis());
+        if (!linkQuality.isLeanPayload()) {
+            if (trail.drain(trailSink) > 0 && legacyTrack) {
+                legacyTrackDirty = true;
+            }
+            if (legacyTrackDirty && isLegacyTrackDue()) {
+                payload.put(busPrefix + "track", trail.toTrackList());
+                legacyTrackDirty = false;
+                lastLegacyTrackAt = clock.elapsedRealtime();
+            }
+        }
+
+        if (locationPending) {
+            payload.put(busPrefix + "totalDistance", pendingTotalDistance);
+        }
+        putPending(payload);
+        putLiveness(payload);
+
+        if (payload.isEmpty()) return;
+        if (requestedAt >= 0) {
+            publishDelay.record(clock.elapsedRealtime() - requestedAt);
+        }
+        flushesSent++;
+        sendUpdate(payload, leftCells);
+    }
+
+    /**
+     * Jika bus pindah cell: entry cell baru, hapus entry cell lama, dan location/geohash
+     *
+     * @return cell yang dihapus di write ini (null jika tidak pindah cell)
+     */
+    private String[] putGeoTransition(Map<String, Object> payload) {
+        String cell = Geohash.encode(pendingLatitude, pendingLongitude, GEO_PRECISION);
+        if (cell.equals(geoCell) && staleGeoCells.isEmpty()) return null;
+
+        if (geoCell != null && !geoCell.equals(cell)) {
+            staleGeoCells.add(geoCell);
+        }
+        String[] leftCells = new String[staleGeoCells.size()];
+        int count = 0;
+        for (String stale : staleGeoCells) {
+            if (stale.equals(cell)) continue;
+            payload.put(geoIndexKey(stale), null);
+            leftCells[count++] = stale;
+        }
+        staleGeoCells.clear();
+
+        payload.put(geoIndexKey(cell), ServerValue.TIMESTAMP);
+        payload.put(busPrefix + "location/geohash", cell);
+        geoCell = cell;
+        geoTransitions++;
+        return Arrays.copyOf(leftCells, count);
+    }
+
+    /**
+     * Write perpindahan gagal (atomik: tidak ada yang diterapkan); cell lama tetap di index
+     * dan dihapus pada perpindahan berikutnya. geoCell dikosongkan agar entry ditulis ulang.
+     */
+    private void onGeoTransitionFailed(String[] leftCells) {
+        for (String cell : leftCells) {
+            if (!staleGeoCells.contains(cell)) {
+                staleGeoCells.add(cell);
+            }
+        }
+        if (geoCell != null && !staleGeoCells.contains(geoCell)) {
+            staleGeoCells.add(geoCell);
+        }
+        geoCell = null;
+    }
+
+    private String geoIndexKey(String cell) {
+        return GEO_INDEX_PATH + "/" + cell + "/" + busKey;
+    }
+
+    private String routeEntryPath() {
+        return routeEntryPrefix.substring(0, routeEntryPrefix.length() - 1);
+    }
+
+    // ============================================
+    // OFFLINE / ANTREAN WRITE
+    // ============================================
+
+    /**
+     * Offline / antrean penuh: tidak ada write baru ke SDK, nilai terbaru ditahan di pending
+     */
+    private boolean canSend() {
+        return connected && inFlight < MAX_IN_FLIGHT;
+    }
+
+    /**
+     * Offline sampai .info/connected pertama kali true; transisi itu bukan reconnect
+     * (SDK selalu melapor false dulu saat start)
+     */
+    @VisibleForTesting
+    void awaitFirstConnection() {
+        connected = false;
+        everConnected = false;
+    }
+
+    @VisibleForTesting
+    void onConnectionChanged(boolean isConnected) {
+        if (isConnected == connected) return;
+        connected = isConnected;
+
+        if (isConnected && !everConnected) {
+            everConnected = true;
+            Log.d(TAG, "Connected");
+            if (hasPending()) {
+                writeBudget.tryAcquire(clock.elapsedRealtime());
+                flush();
+            }
+        } else if (isConnected) {
+            reconnects++;
+            reconnectAt = clock.elapsedRealtime();
+            Log.d(TAG, "Reconnected, queue depth " + inFlight);
+            if (liveBus) {
+                // Marker lama sudah dijalankan server saat koneksi putus: daftar ulang lalu
+                // timpa status "offline" dengan status terakhir
+                registerOfflineMarker();
+                if (pendingStatus == null) {
+                    pendingStatus = lastStatus;
+                }
+                heartbeatDue = true;
+                // Sweeper menilai dari heartbeatAt server, bukan dari saat koneksi putus
+                busInfoPending = !busInfo.isEmpty() && disconnectedAt >= 0
+                        && reconnectAt - heartbeatBeforeDisconnect >= BUS_INFO_REWRITE_AFTER_MS;
+            }
+            disconnectedAt = -1;
+            // Semua yang terkumpul selama offline jadi satu write, tanpa menunggu token
+            if (hasPending()) {
+                writeBudget.tryAcquire(reconnectAt);
+                flush();
+            }
+            checkDrained();
+        } else {
+            Log.d(TAG, "Disconnected, holding writes (queue depth " + inFlight + ")");
+            disconnectedAt = clock.elapsedRealtime();
+            heartbeatBeforeDisconnect = lastHeartbeatAt >= 0 ? lastHeartbeatAt : disconnectedAt;
+            for (WriteOp op : writeOps) {
+                op.latency.recordInFlightAtDisconnect(op.inFlight);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void onWriteComplete(boolean success) {
+        if (inFlight > 0) {
+            inFlight--;
+        }
+        if (!success) {
+            Log.w(TAG, "Write failed");
+        }
+        checkDrained();
+        requestFlush();
+    }
+
+    private void checkDrained() {
+        if (reconnectAt >= 0 && inFlight == 0) {
+            lastDrainMillis = clock.elapsedRealtime() - reconnectAt;
+            reconnectAt = -1;
+            Log.d(TAG, "Write queue drained in " + lastDrainMillis + " ms");
+        }
+    }
+
+    private void trackInFlight() {
+        inFlight++;
+        if (inFlight > maxInFlight) {
+            maxInFlight = inFlight;
+        }
+    }
+
+    /**
+     * Catat write yang dikirim ke SDK; latensi dihitung saat ack (di thread flush)
+     */
+    private Task<Void> track(Task<Void> task, WriteOp op) {
+        long sentAt = clock.elapsedRealtime();
+        op.inFlight++;
+        task.addOnCompleteListener(done -> {
+            boolean success = done.isSuccessful();
+            runOnFlushThread(() -> onAck(op, clock.elapsedRealtime() - sentAt, success));
+        });
+        return task;
+    }
+
+    /**
+     * Ack flush dengan latensi tertentu (test / model link simulasi)
+     */
+    @VisibleForTesting
+    void onFlushAck(long latencyMillis, boolean success) {
+        onAck(flushOp, latencyMillis, success);
+    }
+
+    private void onAck(WriteOp op, long latencyMillis, boolean success) {
+        if (op.inFlight > 0) {
+            op.inFlight--;
+        }
+        if (success) {
+            op.latency.record(latencyMillis);
+        } else {
+            op.latency.recordFailure();
+        }
+        if (op == flushOp) {
+            boolean changed = success
+                    ? linkQuality.onRoundTrip(latencyMillis)
+                    : linkQuality.onFailure();
+            if (changed) {
+                applyLinkLevel();
+            }
+            onWriteComplete(success);
+        }
+    }
+
+    /**
+     * Link FAIR / POOR memperlambat cadence; payload ramping menahan trail & ETA, lokasi tetap
+     */
+    private void applyLinkLevel() {
+        writeBudget.setRefillIntervalMillis(currentWriteInterval());
+        Log.d(TAG, "Link " + linkQuality.getLevel() + ", write interval "
+                + writeBudget.getRefillIntervalMillis() + " ms"
+                + (linkQuality.isLeanPayload() ? ", lean payload" : ""));
+    }
+
+    private long currentWriteInterval() {
+        long interval = baseWriteInterval * linkQuality.getIntervalMultiplier();
+        return isWatched() ? interval : Math.max(interval, IDLE_WRITE_INTERVAL_MS);
+    }
+
+    private boolean isEtaDue() {
+        return etaPending && (!linkQuality.isLeanPayload()
+                || clock.elapsedRealtime() - etaPendingSince >= LEAN_ETA_MAX_AGE_MS);
+    }
+
+    /**
+     * Callback Firebase datang di main thread; pindahkan ke thread pemilik state
+     */
+    private void runOnFlushThread(Runnable task) {
+        if (flushHandler != null) {
+            flushHandler.post(task);
+        } else {
+            task.run();
+        }
+    }
+
+    // ============================================
+    // LIVENESS
+    // ============================================
+
+    private void startLiveness(String status) {
+        liveBus = true;
+        lastStatus = status;
+        registerOfflineMarker();
+        scheduleHeartbeat();
+    }
+
+    private void stopLiveness() {
+        cancelHeartbeat();
+        heartbeatDue = false;
+        busInfoPending = false;
+        busInfo.clear();
+        lastHeartbeatAt = -1;
+        if (offlineMarker != null && isReady()) {
+            databaseRef.onDisconnect().cancel();
+        }
+        offlineMarker = null;
+        liveBus = false;
+    }
+
+    /**
+     * onDisconnect multi-path di root: status "offline" + offlineAt di node bus dan entry rute
+     */
+    private void registerOfflineMarker() {
+        Map<String, Object> marker = new HashMap<>();
+        marker.put(busPrefix + "status", STATUS_OFFLINE);
+        marker.put(busPrefix + "offlineAt", ServerValue.TIMESTAMP);
+        if (routeEntryPrefix != null) {
+            marker.put(routeEntryPrefix + "status", STATUS_OFFLINE);
+            marker.put(routeEntryPrefix + "offlineAt", ServerValue.TIMESTAMP);
+        }
+        offlineMarker = marker;
+
+        if (!isReady()) return;
+        track(databaseRef.onDisconnect().updateChildren(marker), markerOp)
+                .addOnFailureListener(e ->
+                        Log.e(TAG, "Failed to register offline marker: " + e.getMessage()));
+    }
+
+    /**
+     * Marker yang akan ditulis server saat koneksi putus, null jika bus tidak live
+     */
+    @VisibleForTesting
+    Map<String, Object> getOfflineMarker() {
+        return offlineMarker;
+    }
+
+    /**
+     * Timer heartbeat: paksa flush jika heartbeatAt terakhir sudah HEARTBEAT_INTERVAL_MS
+     */
+    @VisibleForTesting
+    void onHeartbeat() {
+        if (!liveBus) return;
+
+        if (isHeartbeatStale()) {
+            heartbeatDue = true;
+            requestFlush();
+        }
+        scheduleHeartbeat();
+    }
+
+    /**
+     * heartbeatAt jika sudah waktunya, dan data statis bus setelah putus lama
+     */
+    private void putLiveness(Map<String, Object> payload) {
+        if (busInfoPending) {
+            for (Map.Entry<String, Object> entry : busInfo.entrySet()) {
+                payload.put(busPrefix + entry.getKey(), entry.getValue());
+            }
+            payload.put(busPrefix + "schemaVersion", SCHEMA_VERSION);
+            if (routeEntryPrefix != null) {
+                payload.put(routeEntryPrefix + "namaBus", busInfo.get("namaBus"));
+                payload.put(routeEntryPrefix + "plateNumber", busInfo.get("plateNumber"));
+            }
+            busInfoPending = false;
+        }
+        if (liveBus && (heartbeatDue || isHeartbeatStale())) {
+            payload.put(busPrefix + "heartbeatAt", ServerValue.TIMESTAMP);
+            lastHeartbeatAt = clock.elapsedRealtime();
+        }
+        heartbeatDue = false;
+    }
+
+    private boolean isLegacyTrackDue() {
+        return lastLegacyTrackAt < 0
+                || clock.elapsedRealtime() - lastLegacyTrackAt >= LEGACY_TRACK_INTERVAL_MS;
+    }
+
+    private boolean isHeartbeatStale() {
+        return lastHeartbeatAt < 0
+                || clock.elapsedRealtime() - lastHeartbeatAt >= HEARTBEAT_INTERVAL_MS;
+    }
+
+    private void scheduleHeartbeat() {
+        if (flushHandler == null) return;
+
+        flushHandler.removeCallbacks(heartbeatTask);
+        flushHandler.postDelayed(heartbeatTask, HEARTBEAT_INTERVAL_MS);
+        heartbeatScheduled = true;
+        heartbeatTimerAt = clock.elapsedRealtime() + HEARTBEAT_INTERVAL_MS;
+    }
+
+    private void cancelHeartbeat() {
+        if (flushHandler != null) {
+            flushHandler.removeCallbacks(heartbeatTask);
+        }
+        heartbeatScheduled = false;
+    }
+
+    // ============================================
+    // DEMAND VIEWER
+    // ============================================
+
+    /**
+     * Tanpa viewer, cadence turun ke IDLE_WRITE_INTERVAL_MS; viewer baru langsung dapat state
+     * terbaru. Counter yang belum / tidak bisa dibaca dianggap ditonton.
+     */
+    @VisibleForTesting
+    void onViewerCountChanged(long count) {
+        boolean wasWatched = isWatched();
+        viewerCount = count;
+        boolean watched = isWatched();
+        if (watched == wasWatched) return;
+
+        writeBudget.setRefillIntervalMillis(currentWriteInterval());
+        Log.d(TAG, (watched ? "Viewer joined" : "No viewers") + ", write interval "
+                + writeBudget.getRefillIntervalMillis() + " ms");
+
+        if (watched) {
+            // Jangan tunggu token / timer heartbeat: viewer baru langsung dapat state terbaru
+            cancelScheduledFlush();
+            if (hasPending() && canSend()) {
+                writeBudget.tryAcquire(clock.elapsedRealtime());
+                flush();
+            }
+        }
+        if (demandListener != null) {
+            demandListener.onDemandChanged(watched);
+        }
+    }
+
+    /**
+     * Pindahkan listener viewer ke bus yang sedang dilacak
+     */
+    private void watchViewers(int perjalanId) {
+        if (viewersRef != null) {
+            viewersRef.removeEventListener(viewersListener);
+        }
+        // Bus baru dianggap ditonton sampai counter-nya terbaca
+        boolean wasIdle = !isWatched();
+        viewerCount = VIEWERS_UNKNOWN;
+        if (wasIdle) {
+            writeBudget.setRefillIntervalMillis(currentWriteInterval());
+        }
+        viewersRef = isReady() ? databaseRef.child(VIEWERS_PATH).child("bus_" + perjalanId) : null;
+        if (viewersRef != null) {
+            viewersRef.addValueEventListener(viewersListener);
+        }
+    }
+
     // ============================================
     // HELPER
     // ============================================
 
-    private String getCurrentTimestamp() {
-        return dateFormat.format(new Date());
+    /**
+     * False jika inisialisasi Firebase gagal (mis. di unit test tanpa FirebaseApp)
+     */
+    private boolean isReady() {
+        return databaseRef != null;
+    }
+
+    /**
+     * Catat write (counter + observer)
+     *
+     * @return true jika write benar-benar bisa dikirim ke Firebase
+     */
+    private boolean issue(String path, Object value) {
+        writeCount++;
+        if (writeObserver != null) {
+            writeObserver.onWrite(path, value);
+        }
+        return isReady();
+    }
+
+    private void writeBusChild(int perjalanId, String child, Object value, WriteOp op) {
+        selectBus(perjalanId);
+        if (issue(busPath + "/" + child, value)) {
+            track(busRef.child(child).setValue(value), op);
+        }
+    }
+
+    /**
+     * @param leftCells Cell index yang dihapus di write ini (null jika tidak pindah cell)
+     */
+    private void sendUpdate(Map<String, Object> payload, String[] leftCells) {
+        if (!issue("", payload)) return;
+
+        trackInFlight();
+        Task<Void> task = track(databaseRef.updateChildren(payload), flushOp);
+        if (leftCells != null) {
+            task.addOnFailureListener(e ->
+                    runOnFlushThread(() -> onGeoTransitionFailed(leftCells)));
+        }
+    }
+
+    /**
+     * Cache path & DatabaseReference bus; hanya dibangun ulang jika perjalanId berubah
+     */
+    private void selectBus(int perjalanId) {
+        if (busPath != null && perjalanId == cachedPerjalanId) return;
+
+        if (busPath != null) {
+            clearPending();
+            stopLiveness();
+        }
+        cachedPerjalanId = perjalanId;
+        busKey = "bus_" + perjalanId;
+        busPath = BUSES_PATH + "/" + busKey;
+        busPrefix = busPath + "/";
+        busRef = isReady() ? databaseRef.child(busPath) : null;
+        geoCell = null;
+        staleGeoCells.clear();
+        ruteId = 0;
+        routeEntryPrefix = null;
+        watchViewers(perjalanId);
+    }
+
+    private void putPending(Map<String, Object> payload) {
+        boolean holdEta = etaPending && !isEtaDue();
+        if (etaPending && !holdEta) {
+            payload.put(busPrefix + "eta/remainingDistance", pendingRemainingDistance);
+            payload.put(busPrefix + "eta/remainingTime", pendingRemainingTime);
+            payload.put(busPrefix + "eta/arrivalAt", pendingArrivalAt);
+            if (legacyTimestamps) {
+                payload.put(busPrefix + "eta/estimatedArrival", formatLegacy(pendingArrivalAt));
+            }
+            if (routeEntryPrefix != null) {
+                payload.put(routeEntryPrefix + "remainingTime", pendingRemainingTime);
+                payload.put(routeEntryPrefix + "arrivalAt", pendingArrivalAt);
+            }
+        }
+        if (pendingKondisi != null) {
+            payload.put(busPrefix + "kondisi", pendingKondisi);
+            payload.put(busPrefix + "kondisiUpdatedAt", ServerValue.TIMESTAMP);
+            if (legacyTimestamps) {
+                payload.put(busPrefix + "kondisiUpdate", formatLegacy(pendingKondisiTime));
+            }
+            Log.d(TAG, "Kondisi updated: " + pendingKondisi);
+        }
+        if (passengersPending) {
+            payload.put(busPrefix + "currentPassengers", pendingPassengers);
+        }
+        if (pendingStatus != null) {
+            // offlineAt dihapus: bus kembali live setelah marker offline dijalankan server
+            payload.put(busPrefix + "status", pendingStatus);
+            payload.put(busPrefix + "offlineAt", null);
+            if (routeEntryPrefix != null) {
+                payload.put(routeEntryPrefix + "status", pendingStatus);
+                payload.put(routeEntryPrefix + "offlineAt", null);
+            }
+        }
+        clearPending();
+        etaPending = holdEta;
+    }
+
+    /**
+     * Operasi trail masuk ke payload multi-path: trail/{key} = {lat, lng, t} atau null
+     */
+    private final TrailRing.Sink trailSink = new TrailRing.Sink() {
+        @Override
+        public void onAdd(String key, double lat, double lng, long timestamp) {
+            Map<String, Object> point = new HashMap<>(4);
+            point.put("lat", lat);
+            point.put("lng", lng);
+            point.put("t", timestamp);
+            updatePayload.put(busPrefix + "trail/" + key, point);
+        }
+
+        @Override
+        public void onRemove(String key) {
+            updatePayload.put(busPrefix + "trail/" + key, null);
+        }
+    };
+
+    /**
+     * Key kronologis (urut leksikografis): epoch millis 13 digit + urutan dalam millis yang sama
+     */
+    private String nextTrailKey(long timestamp) {
+        if (timestamp == lastTrailKeyTime) {
+            trailKeySeq++;
+        } else {
+            lastTrailKeyTime = timestamp;
+            trailKeySeq = 0;
+        }
+        return String.format(Locale.US, "%013d%03d", timestamp, trailKeySeq);
+    }
+
+    private void clearPending() {
+        pendingSince = -1;
+        locationPending = false;
+        etaPending = false;
+        pendingKondisi = null;
+        passengersPending = false;
+        pendingStatus = null;
+    }
+
+    /**
+     * ISO-8601 UTC untuk field schemaVersion 1
+     */
+    private String formatLegacy(long millis) {
+        legacyDate.setTime(millis);
+        return legacyFormat.format(legacyDate);
     }
 }
\ No newline at end of file
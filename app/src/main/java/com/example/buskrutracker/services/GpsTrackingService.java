@@ -1,42 +1,61 @@
 package com.example.buskrutracker.services;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.location.Location;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.telephony.TelephonyManager;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
-
-import com.example.buskrutracker.R;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import com.example.buskrutracker.activities.TrackingActivity;
+import com.example.buskrutracker.utils.Clock;
 import com.example.buskrutracker.utils.ETACalculator;
+import com.example.buskrutracker.utils.FixBatchOrder;
+import com.example.buskrutracker.utils.GeoMath;
+import com.example.buskrutracker.utils.KalmanLocationFilter;
 import com.example.buskrutracker.utils.PolylineUtils;
+import com.example.buskrutracker.utils.RouteMatcher;
 import com.example.buskrutracker.utils.SharedPrefManager;
+import com.example.buskrutracker.utils.TrackBuffer;
+import com.example.buskrutracker.utils.TrackSimplifier;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
 import com.google.android.gms.maps.model.LatLng;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * GpsTrackingService - Enhanced dengan struktur Firebase yang benar
  * ⭐ UPDATED: Tambah namaBus support
+ *
+ * Threading: seluruh pipeline lokasi (fix GPS, jarak, Firebase, notifikasi, LocationStream)
+ * dan semua intent action berjalan di satu HandlerThread "GpsTracking".
+ * Main thread hanya menerima lifecycle callback lalu meneruskannya.
  */
 public class GpsTrackingService extends Service {
 
@@ -44,13 +63,22 @@ public class GpsTrackingService extends Service {
     private static final String CHANNEL_ID = "gps_tracking_channel";
     private static final int NOTIFICATION_ID = 1001;
 
-    // Location update interval
-    private static final long UPDATE_INTERVAL = 5000; // 5 detik
-    private static final long FASTEST_INTERVAL = 3000; // 3 detik
+    // Jarak minimum untuk dihitung ke totalJarak (interval GPS diatur SamplingPolicy)
     private static final float MIN_DISTANCE = 5.0f; // 5 meter
 
+    // Toleransi penyederhanaan track (meter)
+    private static final double TRACK_TOLERANCE = TrackSimplifier.DEFAULT_TOLERANCE_M;
+
     // ETA update interval (setiap 30 detik)
     private static final long ETA_UPDATE_INTERVAL = 30000;
+    // Tanpa viewer: ETA (Directions API) cukup sesekali
+    private static final long IDLE_ETA_UPDATE_INTERVAL = 5 * 60 * 1000L;
+
+    // Journal sesi untuk resume setelah restart START_STICKY
+    private static final String JOURNAL_FILE = "tracking_session.journal";
+
+    // Laporan latensi write Firebase per sesi (append), untuk banding operator & device
+    private static final String WRITE_LATENCY_FILE = "write_latency.txt";
 
     // Intent Actions
     public static final String ACTION_START_TRACKING = "START_TRACKING";
@@ -64,6 +92,9 @@ public class GpsTrackingService extends Service {
     public static final String EXTRA_RUTE_ID = "rute_id";
     public static final String EXTRA_KRU_ID = "kru_id";
 
+    // Opt-in: fix dikirim berkelompok oleh fused provider (hemat wakeup CPU)
+    public static final String EXTRA_BATCHED_DELIVERY = "batched_delivery";
+
     // Data tracking
     private int perjalanId;
     private String namaBus;        // ⭐ FIELD BARU
@@ -71,6 +102,7 @@ public class GpsTrackingService extends Service {
     private String kelas;
     private int kapasitas;
     private String ruteNama;
+    private int ruteId;
     private String polyline;
     private String kruNama;
     private double destLat;
@@ -79,19 +111,57 @@ public class GpsTrackingService extends Service {
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
     private FirebaseManager firebaseManager;
+    private StaleBusSweeper staleBusSweeper;
+    // Semua publish live lewat fan-out; Firebase adalah sink default
+    private FanOutSink realtimeSink;
+    private ConnectivityManager.NetworkCallback networkCallback;
     private ETACalculator etaCalculator;
     private SharedPrefManager prefManager;
+    private SamplingPolicy samplingPolicy;
+    private TrackingNotificationController notificationController;
+    private SamplingProfile activeProfile;
+
+    // Sumber waktu pipeline (virtual saat replay trace)
+    private Clock clock = Clock.SYSTEM;
+
+    // Thread khusus pipeline lokasi
+    private HandlerThread trackingThread;
+    private Handler trackingHandler;
+    private boolean debuggable;
+    private final AtomicInteger hotPathCalls = new AtomicInteger();
+    private final AtomicInteger hotPathOffTrackingThread = new AtomicInteger();
 
     // Tracking data
     private double totalJarak = 0.0;
-    private Location lastLocation;
+    private boolean hasLastPosition;
+    private double lastLat;
+    private double lastLng;
+    private float lastSpeed;
+    private final KalmanLocationFilter locationFilter = new KalmanLocationFilter();
+
+    // Map-matching ke polyline rute (null jika polyline tidak valid)
+    private RouteMatcher routeMatcher;
+    private boolean lastOnRoute;
+    private double lastProgress;
+
+    // Batched delivery: urutan & dedup fix per batch
+    private boolean batchedDelivery;
+    private long lastFixKey = Long.MIN_VALUE;
+    private long[] batchKeys = new long[16];
+    private int[] batchOrder = new int[16];
+    private SamplingProfile desiredProfile;
     private long startTime;
     private long lastETAUpdate = 0;
     private int updateCount = 0;
     private boolean isTracking = false;
 
-    // Full track history untuk MySQL
-    private List<Map<String, Double>> fullTrackHistory;
+    // Full track history untuk MySQL (kolumnar, tanpa object per titik)
+    private TrackBuffer fullTrackHistory;
+    private TrackSimplifier trackSimplifier;
+
+    // Journal sesi (ditulis incremental, dibaca saat restart dengan intent null)
+    private TrackingJournal journal;
+    private long lastRecoveryMillis = -1;
 
     // ============================================
     // SERVICE LIFECYCLE
@@ -102,54 +172,101 @@ public class GpsTrackingService extends Service {
         super.onCreate();
         Log.d(TAG, "Service Created");
 
+        trackingThread = new HandlerThread("GpsTracking", Process.THREAD_PRIORITY_BACKGROUND);
+        trackingThread.start();
+        trackingHandler = new Handler(trackingThread.getLooper());
+        debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         firebaseManager = new FirebaseManager();
+        firebaseManager.setFlushHandler(trackingHandler);
+        firebaseManager.setDemandListener(this::onDemandChanged);
+        realtimeSink = new FanOutSink(firebaseManager);
+        staleBusSweeper = new StaleBusSweeper(Clock.SYSTEM);
         etaCalculator = new ETACalculator();
         prefManager = SharedPrefManager.getInstance(this);
-        fullTrackHistory = new ArrayList<>();
+        fullTrackHistory = new TrackBuffer();
+        journal = new TrackingJournal(new File(getFilesDir(), JOURNAL_FILE));
+        trackSimplifier = new TrackSimplifier(TRACK_TOLERANCE, TrackSimplifier.DEFAULT_MAX_HOLD_MS,
+                (lat, lng, timestamp, speed, accuracy) -> {
+            // Hanya titik yang penting secara geometri masuk ke track & trail Firebase
+            fullTrackHistory.append(lat, lng, timestamp, speed, accuracy);
+            realtimeSink.addTrackPoint(lat, lng, timestamp);
+            journal.appendPoint(lat, lng, timestamp, speed, accuracy);
+        });
+        samplingPolicy = new AdaptiveSamplingPolicy();
+
+        addMqttSinkIfConfigured();
 
         createNotificationChannel();
+        notificationController = createNotificationController();
+        setupLocationCallback();
+        registerNetworkCallback();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent != null) {
-            String action = intent.getAction();
-
-            if (ACTION_START_TRACKING.equals(action)) {
-                handleStartTracking(intent);
-            } else if (ACTION_STOP_TRACKING.equals(action)) {
-                handleStopTracking();
-            } else if (ACTION_UPDATE_PASSENGERS.equals(action)) {
-                handleUpdatePassengers(intent);
-            } else if (ACTION_UPDATE_KONDISI.equals(action)) {
-                handleUpdateKondisi(intent);
-            }
+            // Semua action diproses di tracking thread agar state pipeline single-threaded
+            trackingHandler.post(() -> handleCommand(intent));
+        } else {
+            // Restart oleh sistem (START_STICKY): intent null, pulihkan dari journal
+            trackingHandler.post(this::handleRestart);
         }
 
         return START_STICKY;
     }
 
+    @WorkerThread
+    private void handleCommand(Intent intent) {
+        String action = intent.getAction();
+
+        if (ACTION_START_TRACKING.equals(action)) {
+            handleStartTracking(intent);
+        } else if (ACTION_STOP_TRACKING.equals(action)) {
+            handleStopTracking();
+        } else if (ACTION_UPDATE_PASSENGERS.equals(action)) {
+            handleUpdatePassengers(intent);
+        } else if (ACTION_UPDATE_KONDISI.equals(action)) {
+            handleUpdateKondisi(intent);
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "Service Destroyed");
 
         stopLocationUpdates();
+        unregisterNetworkCallback();
 
         if (etaCalculator != null) {
             etaCalculator.shutdown();
         }
 
-        if (firebaseManager != null && perjalanId > 0) {
-            firebaseManager.clearBusData(perjalanId);
-        }
+        // Cleanup terakhir tetap di tracking thread, lalu thread berhenti setelah antrean habis
+        trackingHandler.post(() -> {
+            staleBusSweeper.release();
+            if (isTracking) {
+                // Dihentikan sistem di tengah perjalanan: biarkan bus live, status tracking,
+                // dan journal agar restart START_STICKY bisa melanjutkan sesi
+                isTracking = false;
+                journal.close();
+                realtimeSink.release();
+                Log.w(TAG, "Destroyed while tracking, session kept for restart");
+                return;
+            }
 
-        if (prefManager != null) {
-            prefManager.setTracking(false);
-        }
+            if (perjalanId > 0) {
+                realtimeSink.clearBusData(perjalanId);
+            }
+            realtimeSink.release();
 
-        isTracking = false;
+            if (prefManager != null) {
+                prefManager.setTracking(false);
+            }
+        });
+        trackingThread.quitSafely();
     }
 
     @Nullable
@@ -169,8 +286,10 @@ public class GpsTrackingService extends Service {
         kelas = intent.getStringExtra("kelas");
         kapasitas = intent.getIntExtra("kapasitas", 40);
         ruteNama = intent.getStringExtra("rute_nama");
+        ruteId = intent.getIntExtra(EXTRA_RUTE_ID, 0);
         polyline = intent.getStringExtra("polyline");
         kruNama = intent.getStringExtra("kru_nama");
+        batchedDelivery = intent.getBooleanExtra(EXTRA_BATCHED_DELIVERY, false);
 
         if (perjalanId == 0 || polyline == null || polyline.isEmpty()) {
             Log.e(TAG, "Invalid data! Cannot start tracking.");
@@ -178,28 +297,29 @@ public class GpsTrackingService extends Service {
             return;
         }
 
-        // Extract destination dari polyline
-        LatLng destination = PolylineUtils.getDestination(polyline);
-        if (destination != null) {
-            destLat = destination.latitude;
-            destLng = destination.longitude;
-        }
+        setupRoute();
 
         // Reset data
         totalJarak = 0.0;
-        lastLocation = null;
-        startTime = System.currentTimeMillis();
+        hasLastPosition = false;
+        lastOnRoute = false;
+        lastFixKey = Long.MIN_VALUE;
+        locationFilter.reset();
+        startTime = clock.currentTimeMillis();
         lastETAUpdate = 0;
         updateCount = 0;
         isTracking = true;
         fullTrackHistory.clear();
+        trackSimplifier.reset();
+        journal.begin(createSession());
 
         // Update SharedPreferences
         prefManager.savePerjalanId(perjalanId);
         prefManager.setTracking(true);
 
-        // ⭐ Initialize bus di Firebase dengan namaBus
-        firebaseManager.initializeBus(
+        // ⭐ Initialize bus di Firebase dengan namaBus (+ entry index rute)
+        realtimeSink.setRute(perjalanId, ruteId);
+        realtimeSink.initializeBus(
                 perjalanId,
                 namaBus,          // ⭐ PARAMETER BARU
                 armadaNomor,
@@ -210,43 +330,206 @@ public class GpsTrackingService extends Service {
                 polyline
         );
 
+        staleBusSweeper.start(trackingHandler, perjalanId);
+
         // Start foreground service
-        startForeground(NOTIFICATION_ID, createNotification("Memulai tracking...", 0, 0));
+        startForeground(NOTIFICATION_ID, notificationController.buildInitial("Memulai tracking..."));
 
-        // Setup & start location updates
-        setupLocationCallback();
-        startLocationUpdates();
+        // Start location updates (callback dijalankan di tracking thread)
+        startLocationUpdates(samplingPolicy.reset());
 
         // ⭐ Log untuk debugging
         Log.d(TAG, "Tracking started for: " + namaBus + " (" + armadaNomor + ")");
     }
 
+    /**
+     * Decode polyline sekali: destination + map-matcher
+     */
+    private void setupRoute() {
+        routeMatcher = null;
+        try {
+            List<LatLng> routePoints = PolylineUtils.decode(polyline);
+            if (!routePoints.isEmpty()) {
+                LatLng destination = routePoints.get(routePoints.size() - 1);
+                destLat = destination.latitude;
+                destLng = destination.longitude;
+            }
+            if (routePoints.size() >= 2) {
+                routeMatcher = RouteMatcher.fromPolyline(routePoints);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error decoding polyline: " + e.getMessage());
+        }
+    }
+
+    private TrackingJournal.Session createSession() {
+        TrackingJournal.Session session = new TrackingJournal.Session();
+        session.perjalanId = perjalanId;
+        session.namaBus = namaBus;
+        session.armadaNomor = armadaNomor;
+        session.kelas = kelas;
+        session.kapasitas = kapasitas;
+        session.ruteNama = ruteNama;
+        session.ruteId = ruteId;
+        session.polyline = polyline;
+        session.kruNama = kruNama;
+        session.batchedDelivery = batchedDelivery;
+        session.startTime = startTime;
+        return session;
+    }
+
+    // ============================================
+    // RESUME AFTER RESTART
+    // ============================================
+
+    /**
+     * Bangun ulang state sesi dari journal setelah service di-restart dengan intent null
+     */
+    private void handleRestart() {
+        if (isTracking) return;
+        long started = SystemClock.elapsedRealtime();
+
+        TrackBuffer restoredTrack = new TrackBuffer();
+        TrackingJournal.Snapshot snapshot = prefManager.isTracking()
+                ? journal.load(restoredTrack) : null;
+        if (snapshot == null || snapshot.session.perjalanId == 0) {
+            Log.w(TAG, "Restarted without an active session, stopping");
+            journal.finish();
+            stopSelf();
+            return;
+        }
+
+        TrackingJournal.Session session = snapshot.session;
+        perjalanId = session.perjalanId;
+        namaBus = session.namaBus;
+        armadaNomor = session.armadaNomor;
+        kelas = session.kelas;
+        kapasitas = session.kapasitas;
+        ruteNama = session.ruteNama;
+        ruteId = session.ruteId;
+        polyline = session.polyline;
+        kruNama = session.kruNama;
+        batchedDelivery = session.batchedDelivery;
+        startTime = session.startTime;
+
+        setupRoute();
+
+        // Counter dari checkpoint terakhir; filter & matcher mulai lagi dari fix berikutnya
+        totalJarak = snapshot.totalJarak;
+        updateCount = snapshot.updateCount;
+        hasLastPosition = snapshot.hasLastPosition;
+        lastLat = snapshot.lastLat;
+        lastLng = snapshot.lastLng;
+        lastSpeed = snapshot.lastSpeed;
+        lastOnRoute = snapshot.lastOnRoute && routeMatcher != null;
+        lastProgress = snapshot.lastProgress;
+        lastFixKey = Long.MIN_VALUE;
+        locationFilter.reset();
+        lastETAUpdate = 0;
+        trackSimplifier.reset();
+
+        // Track lengkap dari journal; key trail lama tidak diketahui, jadi trail Firebase
+        // dihapus lalu diisi ulang dari titik terakhir
+        fullTrackHistory = restoredTrack;
+        realtimeSink.setRute(perjalanId, ruteId);
+        realtimeSink.resetTrail(perjalanId);
+        int from = Math.max(0, restoredTrack.size() - FirebaseManager.DEFAULT_TRAIL_MAX_POINTS);
+        restoredTrack.forEach(from, restoredTrack.size(),
+                (index, lat, lng, timestamp, speed, accuracy) ->
+                        realtimeSink.addTrackPoint(lat, lng, timestamp));
+        // Bus mungkin sudah ditandai offline oleh marker onDisconnect proses sebelumnya
+        realtimeSink.resumeBus(perjalanId);
+        staleBusSweeper.start(trackingHandler, perjalanId);
+
+        journal.resume();
+
+        // Window simplifier yang belum di-emit saat proses mati: lanjutkan dari titik terakhir
+        restoredTrack.visitLast((index, lat, lng, timestamp, speed, accuracy) ->
+                trackSimplifier.restoreAnchor(lat, lng, timestamp));
+        snapshot.pendingFixes.forEach((index, lat, lng, timestamp, speed, accuracy) -> {
+            trackSimplifier.add(lat, lng, timestamp, speed, accuracy);
+            journal.appendFix(lat, lng, timestamp, speed, accuracy);
+        });
+        isTracking = true;
+
+        SamplingProfile profile = samplingPolicy.reset();
+        if (snapshot.kondisi != null) {
+            profile = samplingPolicy.onKondisiChanged(snapshot.kondisi);
+        }
+
+        startForeground(NOTIFICATION_ID,
+                notificationController.buildInitial("Melanjutkan tracking..."));
+        startLocationUpdates(profile);
+
+        lastRecoveryMillis = SystemClock.elapsedRealtime() - started;
+        Log.d(TAG, "Session resumed for " + namaBus + ": " + snapshot.pointCount + " points, "
+                + snapshot.recordCount + " records, " + lastRecoveryMillis + " ms"
+                + (snapshot.truncatedTail ? " (truncated tail ignored)" : ""));
+    }
+
     // ============================================
     // STOP TRACKING
     // ============================================
 
     private void handleStopTracking() {
         stopLocationUpdates();
+        trackSimplifier.flush();
+
+        // Fix terakhir di window map-matching ikut dihitung ke jarak
+        if (lastOnRoute && routeMatcher != null) {
+            routeMatcher.flush();
+            addCommittedProgress();
+            lastProgress = routeMatcher.getCommittedProgressMeters();
+        }
+
+        Log.d(TAG, "Notification: " + notificationController.getStatsSummary());
+        Log.d(TAG, firebaseManager.getSchedulerStats());
+        dumpWriteLatency();
+        Log.d(TAG, "Track simplified: " + trackSimplifier.getInputCount() + " -> "
+                + trackSimplifier.getKeptCount() + " points, max deviation "
+                + trackSimplifier.getMaxDeviationMeters() + " m");
 
         if (perjalanId > 0) {
-            firebaseManager.updateStatus(perjalanId, "completed");
-            firebaseManager.clearBusData(perjalanId);
+            realtimeSink.updateStatus(perjalanId, "completed");
+            realtimeSink.clearBusData(perjalanId);
         }
+        staleBusSweeper.stop();
 
         prefManager.setTracking(false);
         isTracking = false;
+        journal.finish();
+        LocationStream.clear();
 
         stopForeground(true);
         stopSelf();
     }
 
+    /**
+     * Append laporan latensi sesi ini ke file debug, dengan device & operator seluler
+     */
+    private void dumpWriteLatency() {
+        TelephonyManager telephony = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
+        String carrier = telephony != null ? telephony.getNetworkOperatorName() : "";
+
+        try (Writer out = new FileWriter(new File(getFilesDir(), WRITE_LATENCY_FILE), true)) {
+            out.write("# perjalanId=" + perjalanId + " end=" + clock.currentTimeMillis()
+                    + " device=" + Build.MANUFACTURER + " " + Build.MODEL
+                    + " carrier=" + carrier + "\n");
+            firebaseManager.dumpLatency(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write latency report: " + e.getMessage());
+        }
+        Log.d(TAG, "Write latency:\n" + firebaseManager.getLatencyReport());
+    }
+
     // ============================================
     // UPDATE PASSENGERS
     // ============================================
 
     private void handleUpdatePassengers(Intent intent) {
+        markHotPath();
         int currentPassengers = intent.getIntExtra("current_passengers", 0);
-        firebaseManager.updatePassengers(perjalanId, currentPassengers);
+        realtimeSink.updatePassengers(perjalanId, currentPassengers);
     }
 
     // ============================================
@@ -254,11 +537,17 @@ public class GpsTrackingService extends Service {
     // ============================================
 
     private void handleUpdateKondisi(Intent intent) {
+        markHotPath();
         String kondisi = intent.getStringExtra("kondisi");
 
         if (kondisi != null && !kondisi.isEmpty()) {
-            firebaseManager.updateKondisi(perjalanId, kondisi);
+            realtimeSink.updateKondisi(perjalanId, kondisi);
             Log.d(TAG, "Kondisi updated to: " + kondisi);
+
+            if (isTracking) {
+                journal.appendKondisi(kondisi);
+                applySamplingProfile(samplingPolicy.onKondisiChanged(kondisi));
+            }
         }
     }
 
@@ -274,29 +563,28 @@ public class GpsTrackingService extends Service {
                     return;
                 }
 
-                for (Location location : locationResult.getLocations()) {
-                    if (location != null) {
-                        handleLocationUpdate(location);
-                    }
-                }
+                handleLocationBatch(locationResult.getLocations());
             }
         };
     }
 
-    private void startLocationUpdates() {
+    private void startLocationUpdates(SamplingProfile profile) {
+        activeProfile = profile;
+
         LocationRequest locationRequest = new LocationRequest.Builder(
-                Priority.PRIORITY_HIGH_ACCURACY,
-                UPDATE_INTERVAL
+                profile.priority,
+                profile.intervalMillis
         )
-                .setMinUpdateIntervalMillis(FASTEST_INTERVAL)
-                .setMinUpdateDistanceMeters(MIN_DISTANCE)
+                .setMinUpdateIntervalMillis(profile.minUpdateIntervalMillis)
+                .setMinUpdateDistanceMeters(profile.minDistanceMeters)
+                .setMaxUpdateDelayMillis(batchedDelivery ? profile.maxUpdateDelayMillis : 0)
                 .build();
 
         try {
             fusedLocationClient.requestLocationUpdates(
                     locationRequest,
                     locationCallback,
-                    Looper.getMainLooper()
+                    trackingThread.getLooper()
             );
         } catch (SecurityException e) {
             Log.e(TAG, "Permission error: " + e.getMessage());
@@ -304,6 +592,19 @@ public class GpsTrackingService extends Service {
         }
     }
 
+    /**
+     * Re-issue LocationRequest hanya jika profile sampling berubah
+     * (request baru dengan callback yang sama menggantikan request lama)
+     */
+    private void applySamplingProfile(SamplingProfile profile) {
+        if (profile == null || profile == activeProfile) {
+            return;
+        }
+
+        Log.d(TAG, "Sampling profile: " + activeProfile + " -> " + profile);
+        startLocationUpdates(profile);
+    }
+
     private void stopLocationUpdates() {
         if (fusedLocationClient != null && locationCallback != null) {
             fusedLocationClient.removeLocationUpdates(locationCallback);
@@ -314,61 +615,179 @@ public class GpsTrackingService extends Service {
     // HANDLE LOCATION UPDATE
     // ============================================
 
-    private void handleLocationUpdate(Location location) {
-        if (location == null || !isTracking) return;
+    /**
+     * Proses satu LocationResult (1 fix, atau banyak fix di mode batched):
+     * urutkan berdasarkan elapsedRealtimeNanos, buang duplikat / fix lama,
+     * proses semua fix, lalu publish satu kali untuk state terakhir.
+     */
+    @WorkerThread
+    private void handleLocationBatch(List<Location> locations) {
+        markHotPath();
+        if (locations == null || locations.isEmpty() || !isTracking) return;
+
+        int size = locations.size();
+        if (batchKeys.length < size) {
+            batchKeys = new long[size];
+            batchOrder = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            batchKeys[i] = fixKey(locations.get(i));
+        }
 
-        double lat = location.getLatitude();
-        double lng = location.getLongitude();
-        float speed = location.getSpeed() * 3.6f;
-        float accuracy = location.getAccuracy();
+        int count = FixBatchOrder.sortAndDedup(batchKeys, size, lastFixKey, batchOrder);
+        if (count == 0) return;
+        lastFixKey = batchKeys[batchOrder[count - 1]];
 
-        if (accuracy > 50) {
-            return;
+        boolean accepted = false;
+        for (int i = 0; i < count; i++) {
+            accepted |= processFix(locations.get(batchOrder[i]));
         }
 
-        // Calculate distance
-        if (lastLocation != null) {
-            float distance = lastLocation.distanceTo(location);
+        if (accepted) {
+            publishLocationState();
+        }
+    }
+
+    private static long fixKey(Location location) {
+        if (location == null) return Long.MIN_VALUE;
+        long nanos = location.getElapsedRealtimeNanos();
+        return nanos > 0 ? nanos : location.getTime() * 1000000L;
+    }
+
+    /**
+     * Update state tracking dari satu fix (filter, map-matching, jarak, track)
+     *
+     * @return true jika fix diterima filter
+     */
+    @WorkerThread
+    private boolean processFix(Location location) {
+        markHotPath();
+
+        // Kalman filter: fix ditimbang akurasinya, lompatan mustahil ditolak
+        if (!locationFilter.update(location.getTime(),
+                location.getLatitude(), location.getLongitude(), location.getAccuracy())) {
+            return false;
+        }
+
+        double lat = locationFilter.getLatitude();
+        double lng = locationFilter.getLongitude();
+        float speed = locationFilter.getSpeedKmh();
+        float accuracy = locationFilter.getHorizontalAccuracy();
+
+        // Snap ke rute (HMM)
+        boolean onRoute = routeMatcher != null && routeMatcher.match(lat, lng, accuracy);
+
+        // Calculate distance: sepanjang rute dari keputusan committed matcher (keluar rute =
+        // sisa window sudah di-commit), jarak lurus jika salah satu fix di luar rute
+        if (lastOnRoute && routeMatcher != null) {
+            addCommittedProgress();
+        }
+        if (!(onRoute && lastOnRoute) && hasLastPosition) {
+            double distance = GeoMath.fastDistanceMeters(lastLat, lastLng, lat, lng);
             if (distance > MIN_DISTANCE) {
                 totalJarak += distance / 1000.0;
             }
         }
 
-        lastLocation = location;
+        hasLastPosition = true;
+        lastLat = lat;
+        lastLng = lng;
+        lastSpeed = speed;
+        lastOnRoute = onRoute;
+        lastProgress = onRoute ? routeMatcher.getCommittedProgressMeters() : 0;
         updateCount++;
 
-        // Add to full track history
-        Map<String, Double> trackPoint = new HashMap<>();
-        trackPoint.put("lat", lat);
-        trackPoint.put("lng", lng);
-        fullTrackHistory.add(trackPoint);
+        // Add to full track history (via simplifier); fix di-journal agar window tidak hilang
+        trackSimplifier.add(lat, lng, location.getTime(), speed, accuracy);
+        journal.appendFix(lat, lng, location.getTime(), speed, accuracy);
 
-        // Update Firebase
-        firebaseManager.updateLocationWithTrack(perjalanId, lat, lng, speed, totalJarak);
+        // Sampling policy melihat setiap fix; request baru diterapkan saat publish
+        desiredProfile = samplingPolicy.onFix(
+                location.getTime(), speed, locationFilter.getBearing(), true);
+        return true;
+    }
 
-        // Update ETA setiap 30 detik
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastETAUpdate > ETA_UPDATE_INTERVAL) {
-            updateETA(lat, lng, speed);
-            lastETAUpdate = currentTime;
+    /**
+     * Tambah selisih progress committed sejak fix sebelumnya ke totalJarak
+     */
+    private void addCommittedProgress() {
+        double distance = routeMatcher.getCommittedProgressMeters() - lastProgress;
+        if (distance > MIN_DISTANCE) {
+            totalJarak += distance / 1000.0;
         }
+    }
 
-        // Update notification
-        updateNotification(
-                String.format("%.1f km/h | %.2f km", speed, totalJarak),
-                speed,
-                totalJarak
-        );
+    /**
+     * Publish state terakhir: satu write Firebase per batch, ETA, notifikasi, broadcast
+     */
+    @WorkerThread
+    private void publishLocationState() {
+        double lat = lastLat;
+        double lng = lastLng;
+        float speed = lastSpeed;
+        boolean onRoute = lastOnRoute;
+
+        // Checkpoint journal (satu record kecil per batch)
+        journal.appendCheckpoint(totalJarak, updateCount, hasLastPosition,
+                lat, lng, speed, onRoute, lastProgress);
+
+        // Update ETA setiap 30 detik, 5 menit jika tidak ada viewer
+        // (sebelum write lokasi agar hasilnya ikut write yang sama)
+        long currentTime = clock.currentTimeMillis();
+        long etaInterval = realtimeSink.isWatched()
+                ? ETA_UPDATE_INTERVAL : IDLE_ETA_UPDATE_INTERVAL;
+        if (currentTime - lastETAUpdate > etaInterval) {
+            refreshETA(currentTime);
+        }
+
+        // Update Firebase: satu write multi-path (lokasi, track, jarak, ETA/kondisi pending);
+        // posisi live = kandidat terbaik fix terbaru, bukan keputusan committed (lag)
+        if (onRoute) {
+            realtimeSink.updateLocationWithTrack(perjalanId,
+                    routeMatcher.getSnappedLatitude(), routeMatcher.getSnappedLongitude(),
+                    speed, totalJarak, routeMatcher.getSegmentIndex(),
+                    routeMatcher.getProgressMeters() / 1000.0);
+        } else {
+            realtimeSink.updateLocationWithTrack(perjalanId, lat, lng, speed, totalJarak,
+                    -1, 0);
+        }
 
-        // Broadcast location update
-        broadcastLocationUpdate(lat, lng, speed, totalJarak);
+        // Sesuaikan sampling GPS dengan kecepatan / kondisi
+        applySamplingProfile(desiredProfile);
+
+        // Update notification (di-skip jika teks sama / terlalu sering)
+        notificationController.update(speed, totalJarak, clock.elapsedRealtime());
+
+        // Publish ke UI (in-process, conflated)
+        publishLocationUpdate(lat, lng, speed, totalJarak);
     }
 
     // ============================================
     // ETA CALCULATION
     // ============================================
 
-    private void updateETA(double currentLat, double currentLng, float currentSpeed) {
+    private void refreshETA(long currentTime) {
+        updateETA(lastLat, lastLng, lastSpeed,
+                lastOnRoute ? routeMatcher.getRemainingMeters() / 1000.0 : -1);
+        lastETAUpdate = currentTime;
+    }
+
+    /**
+     * Bus mulai ditonton: ETA dihitung sekarang, tidak menunggu interval idle habis
+     */
+    @WorkerThread
+    private void onDemandChanged(boolean watched) {
+        Log.d(TAG, watched ? "Bus watched, normal cadence" : "No viewers, heartbeat cadence");
+        if (watched && isTracking && hasLastPosition) {
+            refreshETA(clock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param remainingRouteKm Sisa jarak sepanjang rute (hasil map-matching), -1 jika tidak ada
+     */
+    private void updateETA(double currentLat, double currentLng, float currentSpeed,
+                           double remainingRouteKm) {
         if (destLat == 0 || destLng == 0) {
             return;
         }
@@ -380,57 +799,231 @@ public class GpsTrackingService extends Service {
                     @Override
                     public void onETACalculated(double remainingDistanceKm,
                                                 int remainingTimeMinutes,
-                                                String estimatedArrival) {
-                        firebaseManager.updateETA(
-                                perjalanId,
-                                remainingDistanceKm,
-                                remainingTimeMinutes,
-                                estimatedArrival
-                        );
+                                                long estimatedArrivalMillis) {
+                        publishETA(remainingDistanceKm, remainingTimeMinutes, estimatedArrivalMillis);
                     }
 
                     @Override
                     public void onError(String error) {
-                        etaCalculator.calculateETAManual(
-                                currentLat, currentLng,
-                                destLat, destLng,
-                                currentSpeed > 0 ? currentSpeed : 60.0f,
-                                new ETACalculator.ETACallback() {
-                                    @Override
-                                    public void onETACalculated(double remainingDistanceKm,
-                                                                int remainingTimeMinutes,
-                                                                String estimatedArrival) {
-                                        firebaseManager.updateETA(
-                                                perjalanId,
-                                                remainingDistanceKm,
-                                                remainingTimeMinutes,
-                                                estimatedArrival
-                                        );
-                                    }
-
-                                    @Override
-                                    public void onError(String error) {
-                                        Log.e(TAG, "Manual ETA calculation failed: " + error);
-                                    }
-                                }
-                        );
+                        ETACalculator.ETACallback manualCallback = new ETACalculator.ETACallback() {
+                            @Override
+                            public void onETACalculated(double remainingDistanceKm,
+                                                        int remainingTimeMinutes,
+                                                        long estimatedArrivalMillis) {
+                                publishETA(remainingDistanceKm,
+                                        remainingTimeMinutes, estimatedArrivalMillis);
+                            }
+
+                            @Override
+                            public void onError(String error) {
+                                Log.e(TAG, "Manual ETA calculation failed: " + error);
+                            }
+                        };
+
+                        float averageSpeed = currentSpeed > 0 ? currentSpeed : 60.0f;
+                        if (remainingRouteKm >= 0) {
+                            // Sisa jarak sepanjang rute lebih akurat dari garis lurus
+                            etaCalculator.calculateETAManual(remainingRouteKm, averageSpeed,
+                                    manualCallback);
+                        } else {
+                            etaCalculator.calculateETAManual(
+                                    currentLat, currentLng,
+                                    destLat, destLng,
+                                    averageSpeed,
+                                    manualCallback
+                            );
+                        }
                     }
                 }
         );
     }
 
+    /**
+     * Callback ETA datang dari executor ETACalculator; kembalikan ke tracking thread
+     */
+    private void publishETA(double remainingDistanceKm, int remainingTimeMinutes,
+                            long estimatedArrivalMillis) {
+        Runnable publish = () -> {
+            if (!isTracking) return;
+            realtimeSink.updateETA(
+                    perjalanId,
+                    remainingDistanceKm,
+                    remainingTimeMinutes,
+                    estimatedArrivalMillis
+            );
+        };
+
+        // Fallback manual memanggil callback secara sinkron di tracking thread
+        if (Looper.myLooper() == trackingThread.getLooper()) {
+            publish.run();
+        } else {
+            trackingHandler.post(publish);
+        }
+    }
+
+    // ============================================
+    // THREADING GUARD
+    // ============================================
+
+    /**
+     * Tandai masuk ke hot path; di debug build gagal keras jika bukan di tracking thread
+     */
+    private void markHotPath() {
+        hotPathCalls.incrementAndGet();
+        if (Looper.myLooper() != trackingThread.getLooper()) {
+            hotPathOffTrackingThread.incrementAndGet();
+            String message = "Hot path off tracking thread: " + Thread.currentThread().getName();
+            if (debuggable) {
+                throw new IllegalStateException(message);
+            }
+            Log.w(TAG, message);
+        }
+    }
+
+    @VisibleForTesting
+    Looper getTrackingLooper() {
+        return trackingThread.getLooper();
+    }
+
+    @VisibleForTesting
+    LocationCallback getLocationCallback() {
+        return locationCallback;
+    }
+
+    @VisibleForTesting
+    int getHotPathCalls() {
+        return hotPathCalls.get();
+    }
+
+    @VisibleForTesting
+    int getHotPathCallsOffTrackingThread() {
+        return hotPathOffTrackingThread.get();
+    }
+
+    /**
+     * Jalankan pipeline dengan clock & ETA calculator pengganti (replay trace).
+     * Dipanggil setelah onCreate dan sebelum START_TRACKING.
+     */
+    @VisibleForTesting
+    void setReplayEnvironment(Clock replayClock, ETACalculator replayEtaCalculator) {
+        clock = replayClock;
+        firebaseManager.setClock(replayClock);
+        if (etaCalculator != null) {
+            etaCalculator.shutdown();
+        }
+        etaCalculator = replayEtaCalculator;
+    }
+
+    @VisibleForTesting
+    FirebaseManager getFirebaseManager() {
+        return firebaseManager;
+    }
+
+    /**
+     * Tambah sink publish (mis. RecordingSink / SocketSink ke server lokal) di samping Firebase
+     */
+    @VisibleForTesting
+    void addRealtimeSink(RealtimeSink sink) {
+        realtimeSink.addSink(sink);
+    }
+
+    /**
+     * Ganti semua sink, mis. benchmark pipeline tanpa Firebase
+     */
+    @VisibleForTesting
+    void setRealtimeSinks(RealtimeSink... sinks) {
+        realtimeSink.setSinks(sinks);
+    }
+
+    @VisibleForTesting
+    boolean isTrackingActive() {
+        return isTracking;
+    }
+
+    @VisibleForTesting
+    double getTotalJarak() {
+        return totalJarak;
+    }
+
+    @VisibleForTesting
+    int getTrackPointCount() {
+        return fullTrackHistory.size();
+    }
+
+    @VisibleForTesting
+    int getUpdateCount() {
+        return updateCount;
+    }
+
+    @VisibleForTesting
+    long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    // ============================================
+    // MQTT TELEMETRY
+    // ============================================
+
+    /**
+     * Transport MQTT opsional di samping Firebase, aktif jika broker diset di SharedPref
+     */
+    private void addMqttSinkIfConfigured() {
+        String host = prefManager.getMqttHost();
+        if (host == null || host.isEmpty()) return;
+
+        String clientId = "buskru-" + prefManager.getUserId();
+        realtimeSink.addSink(new MqttSink(host, prefManager.getMqttPort(), clientId, clock));
+        Log.d(TAG, "MQTT telemetry to " + host + ":" + prefManager.getMqttPort());
+    }
+
+    // ============================================
+    // NETWORK HINT
+    // ============================================
+
+    /**
+     * Metered & bandwidth jaringan default sebagai hint adaptasi publish (opsional)
+     */
+    private void registerNetworkCallback() {
+        ConnectivityManager connectivity =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity == null) return;
+
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                boolean metered = !capabilities.hasCapability(
+                        NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+                int downstreamKbps = capabilities.getLinkDownstreamBandwidthKbps();
+                trackingHandler.post(() ->
+                        firebaseManager.setNetworkHint(metered, downstreamKbps));
+            }
+        };
+        try {
+            connectivity.registerDefaultNetworkCallback(networkCallback);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Network callback unavailable: " + e.getMessage());
+            networkCallback = null;
+        }
+    }
+
+    private void unregisterNetworkCallback() {
+        if (networkCallback == null) return;
+        ConnectivityManager connectivity =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        try {
+            connectivity.unregisterNetworkCallback(networkCallback);
+        } catch (RuntimeException ignored) {
+        }
+        networkCallback = null;
+    }
+
     // ============================================
-    // BROADCAST & NOTIFICATION
+    // UI STREAM & NOTIFICATION
     // ============================================
 
-    private void broadcastLocationUpdate(double lat, double lng, float speed, double jarak) {
-        Intent intent = new Intent("GPS_LOCATION_UPDATE");
-        intent.putExtra("latitude", lat);
-        intent.putExtra("longitude", lng);
-        intent.putExtra("speed", speed);
-        intent.putExtra("distance", jarak);
-        intent.putExtra("update_count", updateCount);
-        sendBroadcast(intent);
+    private void publishLocationUpdate(double lat, double lng, float speed, double jarak) {
+        LocationStream.publish(new TrackingState(lat, lng, speed, jarak, updateCount,
+                clock.currentTimeMillis() - startTime));
     }
 
     private void createNotificationChannel() {
@@ -450,7 +1043,7 @@ public class GpsTrackingService extends Service {
         }
     }
 
-    private Notification createNotification(String contentText, float speed, double jarak) {
+    private TrackingNotificationController createNotificationController() {
         Intent notificationIntent = new Intent(this, TrackingActivity.class);
         notificationIntent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
 
@@ -465,28 +1058,8 @@ public class GpsTrackingService extends Service {
                 this, 0, stopIntent, PendingIntent.FLAG_IMMUTABLE
         );
 
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("🚍 Bus Tracker Active")
-                .setContentText(contentText)
-                .setSmallIcon(R.drawable.ic_launcher_foreground)
-                .setContentIntent(pendingIntent)
-                .setOngoing(true)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .setCategory(NotificationCompat.CATEGORY_SERVICE)
-                .addAction(
-                        android.R.drawable.ic_menu_close_clear_cancel,
-                        "Stop",
-                        stopPendingIntent
-                )
-                .build();
-    }
-
-    private void updateNotification(String content, float speed, double jarak) {
-        Notification notification = createNotification(content, speed, jarak);
-        NotificationManager manager = getSystemService(NotificationManager.class);
-        if (manager != null) {
-            manager.notify(NOTIFICATION_ID, notification);
-        }
+        return new TrackingNotificationController(
+                this, CHANNEL_ID, NOTIFICATION_ID, pendingIntent, stopPendingIntent);
     }
 
     // ============================================
@@ -505,6 +1078,23 @@ public class GpsTrackingService extends Service {
                                            String ruteNama,
                                            String polyline,
                                            String kruNama) {
+        return createStartIntent(context, perjalanId, namaBus, armadaNomor, kelas, kapasitas,
+                ruteNama, polyline, kruNama, 0);
+    }
+
+    /**
+     * @param ruteId Id rute (index routes_live), 0 jika tidak diketahui
+     */
+    public static Intent createStartIntent(Context context,
+                                           int perjalanId,
+                                           String namaBus,
+                                           String armadaNomor,
+                                           String kelas,
+                                           int kapasitas,
+                                           String ruteNama,
+                                           String polyline,
+                                           String kruNama,
+                                           int ruteId) {
         Intent intent = new Intent(context, GpsTrackingService.class);
         intent.setAction(ACTION_START_TRACKING);
         intent.putExtra(EXTRA_PERJALANAN_ID, perjalanId);
@@ -515,6 +1105,7 @@ public class GpsTrackingService extends Service {
         intent.putExtra("rute_nama", ruteNama);
         intent.putExtra("polyline", polyline);
         intent.putExtra("kru_nama", kruNama);
+        intent.putExtra(EXTRA_RUTE_ID, ruteId);
         return intent;
     }
 
@@ -0,0 +1,38 @@
+package com.example.buskrutracker.services;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+/**
+ * LocationStream - Channel in-process dari GpsTrackingService ke UI
+ * Pengganti broadcast global "GPS_LOCATION_UPDATE":
+ * - Conflated: postValue beruntun sebelum main thread sempat jalan hanya mengirim nilai terakhir
+ * - Replay: subscriber baru langsung menerima state terakhir
+ * - Lifecycle-aware: observe(LifecycleOwner, ...) hanya aktif saat owner STARTED
+ * - Tidak keluar dari proses aplikasi
+ */
+public final class LocationStream {
+
+    private static final MutableLiveData<TrackingState> STATE = new MutableLiveData<>();
+
+    private LocationStream() {
+    }
+
+    public static LiveData<TrackingState> getState() {
+        return STATE;
+    }
+
+    /**
+     * Publish dari thread mana pun (tracking thread)
+     */
+    static void publish(TrackingState state) {
+        STATE.postValue(state);
+    }
+
+    /**
+     * Hapus state saat tracking berhenti agar subscriber baru tidak menerima data lama
+     */
+    static void clear() {
+        STATE.postValue(null);
+    }
+}
@@ -0,0 +1,645 @@
+package com.example.buskrutracker.services;
+
+import android.util.Log;
+
+import com.example.buskrutracker.utils.Clock;
+import com.example.buskrutracker.utils.TelemetryFrame;
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MqttSink - RealtimeSink ke broker MQTT 3.1.1, transport telemetry di samping Firebase
+ *
+ * Topik per bus:
+ *   bus/{id}/loc         QoS 0, TelemetryFrame biner (36 byte)
+ *   bus/{id}/status      QoS 1 retained, teks
+ *   bus/{id}/kondisi     QoS 1 retained, teks
+ *   bus/{id}/passengers  QoS 1 retained, teks
+ *   bus/{id}/eta         QoS 1 retained, "remainingKm,remainingMinutes,arrivalAtMillis"
+ *   bus/{id}/info        QoS 1 retained, JSON data bus dari initializeBus
+ * clearBusData mengirim payload kosong retained ke topik di atas (menghapus retained di broker).
+ * Trail tidak dikirim; subscriber menyusun jejak sendiri dari frame lokasi.
+ *
+ * Buffer memori kecil selama putus: frame lokasi di antrean drop-oldest (LOCATION_BUFFER),
+ * pesan QoS 1 last-writer-wins per topik (ditimpa nilai baru, tidak pernah dibuang). Pesan
+ * QoS 1 yang belum di-PUBACK dikirim ulang dengan flag DUP setelah reconnect.
+ *
+ * CONNECT membawa Last Will retained "offline" di bus/{id}/status: jika proses mati tanpa
+ * DISCONNECT broker menimpa status "active". release() mengirim sisa antrean (maksimal
+ * RELEASE_DRAIN_MS) sebelum DISCONNECT, agar status akhir & clear retained tidak hilang.
+ *
+ * Client minimal tanpa library (CONNECT, PUBLISH, PUBACK, PINGREQ, DISCONNECT). Tracking
+ * thread hanya mengantrekan; connect & write di thread sendiri, PUBACK dibaca thread reader.
+ */
+public class MqttSink implements RealtimeSink {
+
+    private static final String TAG = "MqttSink";
+
+    static final int LOCATION_BUFFER = 32;
+    static final int MAX_INFLIGHT = 8;
+    static final int KEEP_ALIVE_SECONDS = 60;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final long IDLE_WAIT_MS = 1000;
+    static final long RELEASE_DRAIN_MS = 2000;
+    static final String WILL_STATUS = "offline";
+
+    // Tipe paket MQTT (nibble atas fixed header)
+    static final int CONNECT = 1;
+    static final int CONNACK = 2;
+    static final int PUBLISH = 3;
+    static final int PUBACK = 4;
+    static final int PINGREQ = 12;
+    static final int PINGRESP = 13;
+    static final int DISCONNECT = 14;
+
+    private static final String[] RETAINED_TOPICS = {"status", "kondisi", "passengers", "eta", "info"};
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final class Message {
+        final byte[] topic;
+        final byte[] payload;
+        final int qos;
+        final boolean retain;
+        int packetId;
+
+        Message(byte[] topic, byte[] payload, int qos, boolean retain) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.retain = retain;
+        }
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final OutputStream out;
+        final DataInputStream in;
+        volatile boolean broken;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            out = new BufferedOutputStream(socket.getOutputStream());
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final String clientId;
+    private final Clock clock;
+    private final Gson gson = new Gson();
+    private final Thread ioThread;
+
+    // Antrean bersama tracking thread & I/O thread (dijaga lock)
+    private final Object lock = new Object();
+    private final ArrayDeque<Message> locationFrames = new ArrayDeque<>(LOCATION_BUFFER);
+    private final LinkedHashMap<String, Message> retainedPending = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Message> inflight = new LinkedHashMap<>();
+
+    private volatile boolean running = true;
+    private volatile boolean draining;
+    private volatile Connection connection;
+    private volatile long sent;
+    private volatile long acked;
+    private volatile long dropped;
+    private volatile long collapsed;
+    private volatile long bytesSent;
+    private volatile long pingSentAt = -1;
+    private long lastSendAt;
+    private int nextPacketId;
+
+    // Topik bus di-cache (tracking thread)
+    private int cachedPerjalanId;
+    private int ruteId;
+    private String topicPrefix;
+    private byte[] locationTopic;
+    private volatile byte[] willTopic;
+    private int seq;
+
+    public MqttSink(String host, int port, String clientId, Clock clock) {
+        this.host = host;
+        this.port = port;
+        this.clientId = clientId;
+        this.clock = clock != null ? clock : Clock.SYSTEM;
+        ioThread = new Thread(this::ioLoop, "RealtimeMqttSink");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    public long getSentCount() {
+        return sent;
+    }
+
+    /**
+     * Jumlah pesan QoS 1 yang sudah di-PUBACK broker
+     */
+    public long getAckedCount() {
+        return acked;
+    }
+
+    /**
+     * Frame lokasi yang dibuang karena buffer penuh
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Pesan QoS 1 yang ditimpa nilai baru sebelum sempat dikirim
+     */
+    public long getCollapsedCount() {
+        return collapsed;
+    }
+
+    /**
+     * Total byte paket yang ditulis ke socket (termasuk header MQTT)
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Ukuran satu paket PUBLISH di wire (fixed header + topic + packet id + payload)
+     */
+    static int publishPacketSize(int topicLength, int payloadLength, int qos) {
+        int remaining = 2 + topicLength + (qos > 0 ? 2 : 0) + payloadLength;
+        return 1 + remainingLengthSize(remaining) + remaining;
+    }
+
+    // ============================================
+    // REALTIME SINK
+    // ============================================
+
+    @Override
+    public void setRute(int perjalanId, int ruteId) {
+        selectBus(perjalanId);
+        this.ruteId = ruteId;
+    }
+
+    @Override
+    public void initializeBus(int perjalanId, String namaBus, String plateNumber, String busClass,
+                              String route, int capacity, String driver, String routePolyline) {
+        selectBus(perjalanId);
+        Map<String, Object> info = new HashMap<>();
+        info.put("namaBus", namaBus);
+        info.put("plateNumber", plateNumber);
+        info.put("class", busClass);
+        info.put("route", route);
+        info.put("capacity", capacity);
+        info.put("driver", driver);
+        info.put("routePolyline", routePolyline);
+        if (ruteId > 0) {
+            info.put("ruteId", ruteId);
+        }
+        publishRetained("info", gson.toJson(info));
+        publishRetained("status", "active");
+        publishRetained("kondisi", "lancar");
+        publishRetained("passengers", "0");
+    }
+
+    /**
+     * Sesi lama tidak diketahui setelah restart: cukup pastikan status retained "active"
+     */
+    @Override
+    public void resumeBus(int perjalanId) {
+        updateStatus(perjalanId, "active");
+    }
+
+    @Override
+    public void addTrackPoint(double latitude, double longitude, long timestamp) {
+        // Trail disusun subscriber dari frame lokasi
+    }
+
+    @Override
+    public void resetTrail(int perjalanId) {
+    }
+
+    @Override
+    public void updateLocationWithTrack(int perjalanId, double latitude, double longitude,
+                                        float speed, double totalDistance, int segmentIndex,
+                                        double routeProgressKm) {
+        selectBus(perjalanId);
+        byte[] frame = new byte[TelemetryFrame.FRAME_SIZE];
+        TelemetryFrame.encode(frame, 0, seq++, clock.currentTimeMillis(), latitude, longitude,
+                speed, totalDistance, segmentIndex, routeProgressKm);
+        Message message = new Message(locationTopic, frame, 0, false);
+
+        synchronized (lock) {
+            if (locationFrames.size() >= LOCATION_BUFFER) {
+                locationFrames.poll();
+                dropped++;
+            }
+            locationFrames.add(message);
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void updateETA(int perjalanId, double remainingDistanceKm, int remainingTimeMinutes,
+                          long estimatedArrivalMillis) {
+        selectBus(perjalanId);
+        publishRetained("eta", String.format(Locale.US, "%.3f,%d,%d",
+                remainingDistanceKm, remainingTimeMinutes, estimatedArrivalMillis));
+    }
+
+    @Override
+    public void updatePassengers(int perjalanId, int currentPassengers) {
+        selectBus(perjalanId);
+        publishRetained("passengers", Integer.toString(currentPassengers));
+    }
+
+    @Override
+    public void updateKondisi(int perjalanId, String kondisi) {
+        selectBus(perjalanId);
+        publishRetained("kondisi", kondisi);
+    }
+
+    @Override
+    public void updateStatus(int perjalanId, String status) {
+        selectBus(perjalanId);
+        publishRetained("status", status);
+    }
+
+    @Override
+    public void clearBusData(int perjalanId) {
+        selectBus(perjalanId);
+        for (String topic : RETAINED_TOPICS) {
+            publishRetained(topic, null);
+        }
+    }
+
+    /**
+     * Broker tidak memberi jumlah subscriber: tidak ikut menentukan demand, viewer count
+     * Firebase yang menentukan
+     */
+    @Override
+    public boolean isWatched() {
+        return false;
+    }
+
+    /**
+     * Kirim sisa antrean maksimal RELEASE_DRAIN_MS (blocking), lalu DISCONNECT dan hentikan
+     * I/O thread. Yang belum terkirim setelah batas waktu dibuang.
+     */
+    @Override
+    public void release() {
+        synchronized (lock) {
+            draining = true;
+            lock.notifyAll();
+        }
+        try {
+            ioThread.join(RELEASE_DRAIN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        ioThread.interrupt();
+    }
+
+    // ============================================
+    // ANTREAN
+    // ============================================
+
+    private void selectBus(int perjalanId) {
+        if (topicPrefix != null && perjalanId == cachedPerjalanId) return;
+
+        cachedPerjalanId = perjalanId;
+        ruteId = 0;
+        topicPrefix = "bus/" + perjalanId + "/";
+        locationTopic = (topicPrefix + "loc").getBytes(StandardCharsets.UTF_8);
+        willTopic = (topicPrefix + "status").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * QoS 1 retained, last-writer-wins per topik (value null = hapus retained)
+     */
+    private void publishRetained(String subtopic, String value) {
+        String topic = topicPrefix + subtopic;
+        byte[] payload = value != null ? value.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        Message message = new Message(topic.getBytes(StandardCharsets.UTF_8), payload, 1, true);
+
+        synchronized (lock) {
+            // Hapus dulu agar nilai baru pindah ke urutan terakhir
+            if (retainedPending.remove(topic) != null) {
+                collapsed++;
+            }
+            retainedPending.put(topic, message);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Pesan berikutnya: QoS 1 dulu (selama slot in-flight ada), lalu frame lokasi
+     */
+    private Message nextMessage() {
+        synchronized (lock) {
+            if (!retainedPending.isEmpty() && inflight.size() < MAX_INFLIGHT) {
+                Iterator<Message> it = retainedPending.values().iterator();
+                Message message = it.next();
+                it.remove();
+                message.packetId = nextPacketId();
+                inflight.put(message.packetId, message);
+                return message;
+            }
+            return locationFrames.poll();
+        }
+    }
+
+    private boolean hasWork() {
+        synchronized (lock) {
+            return !locationFrames.isEmpty() || !inflight.isEmpty()
+                    || !retainedPending.isEmpty();
+        }
+    }
+
+    private int nextPacketId() {
+        // Packet id 1..65535, tidak boleh 0
+        nextPacketId = nextPacketId % 0xFFFF + 1;
+        return nextPacketId;
+    }
+
+    // ============================================
+    // I/O THREAD
+    // ============================================
+
+    private void ioLoop() {
+        long backoff = MIN_BACKOFF_MS;
+
+        while (running) {
+            // release(): berhenti setelah antrean & in-flight kosong
+            if (draining && !hasWork()) break;
+            try {
+                if (connection == null) {
+                    if (!hasWork()) {
+                        waitForWork();
+                        continue;
+                    }
+                    connect();
+                    backoff = MIN_BACKOFF_MS;
+                    resendInflight();
+                }
+                if (connection.broken) {
+                    throw new EOFException("Connection lost");
+                }
+
+                Message message = nextMessage();
+                if (message != null) {
+                    writePublish(message, false);
+                    sent++;
+                    continue;
+                }
+                connection.out.flush();
+                keepAlive();
+                waitForWork();
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                Log.w(TAG, "Broker " + host + ":" + port + " unavailable: " + e.getMessage());
+                closeConnection();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+        disconnect();
+    }
+
+    private void waitForWork() throws InterruptedException {
+        synchronized (lock) {
+            boolean canPublish = !locationFrames.isEmpty()
+                    || (!retainedPending.isEmpty() && inflight.size() < MAX_INFLIGHT);
+            Connection current = connection;
+            boolean needsConnect = current == null && !inflight.isEmpty();
+            if (!canPublish && !needsConnect && (current == null || !current.broken)) {
+                lock.wait(IDLE_WAIT_MS);
+            }
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            handshake(new Connection(socket));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Log.d(TAG, "Connected to " + host + ":" + port);
+    }
+
+    private void handshake(Connection next) throws IOException {
+
+        // CONNECT: protocol "MQTT" level 4, clean session, keep alive, will (jika bus diketahui)
+        byte[] id = clientId.getBytes(StandardCharsets.UTF_8);
+        byte[] will = willTopic;
+        byte[] willMessage = WILL_STATUS.getBytes(StandardCharsets.UTF_8);
+        int flags = 0x02;
+        int remaining = 10 + 2 + id.length;
+        if (will != null) {
+            // Will flag, will QoS 1, will retain
+            flags |= 0x04 | (1 << 3) | 0x20;
+            remaining += 2 + will.length + 2 + willMessage.length;
+        }
+        OutputStream out = next.out;
+        out.write(CONNECT << 4);
+        writeRemainingLength(out, remaining);
+        writeShort(out, 4);
+        out.write(new byte[]{'M', 'Q', 'T', 'T'});
+        out.write(4);
+        out.write(flags);
+        writeShort(out, KEEP_ALIVE_SECONDS);
+        writeShort(out, id.length);
+        out.write(id);
+        if (will != null) {
+            writeShort(out, will.length);
+            out.write(will);
+            writeShort(out, willMessage.length);
+            out.write(willMessage);
+        }
+        out.flush();
+
+        int header = next.in.read();
+        if (header < 0) throw new EOFException("No CONNACK");
+        byte[] body = readBody(next.in);
+        if (header >> 4 != CONNACK || body.length < 2) {
+            throw new IOException("Unexpected packet " + header);
+        }
+        if (body[1] != 0) {
+            throw new IOException("Connection refused, code " + body[1]);
+        }
+
+        // PUBACK / PINGRESP dibaca tanpa timeout oleh thread reader
+        next.socket.setSoTimeout(0);
+        connection = next;
+        lastSendAt = clock.elapsedRealtime();
+        pingSentAt = -1;
+        Thread reader = new Thread(() -> readLoop(next), "RealtimeMqttReader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * QoS 1 yang belum di-ack pada koneksi lama dikirim ulang (DUP) sebelum pesan baru
+     */
+    private void resendInflight() throws IOException {
+        Message[] pending;
+        synchronized (lock) {
+            pending = inflight.values().toArray(new Message[0]);
+        }
+        for (Message message : pending) {
+            writePublish(message, true);
+        }
+    }
+
+    private void writePublish(Message message, boolean dup) throws IOException {
+        OutputStream out = connection.out;
+        int remaining = 2 + message.topic.length + (message.qos > 0 ? 2 : 0)
+                + message.payload.length;
+        out.write((PUBLISH << 4) | (dup ? 0x08 : 0) | (message.qos << 1)
+                | (message.retain ? 1 : 0));
+        writeRemainingLength(out, remaining);
+        writeShort(out, message.topic.length);
+        out.write(message.topic);
+        if (message.qos > 0) {
+            writeShort(out, message.packetId);
+        }
+        out.write(message.payload);
+        bytesSent += 1 + remainingLengthSize(remaining) + remaining;
+        lastSendAt = clock.elapsedRealtime();
+    }
+
+    private void keepAlive() throws IOException {
+        long now = clock.elapsedRealtime();
+        long keepAliveMillis = KEEP_ALIVE_SECONDS * 1000L;
+        if (pingSentAt >= 0 && now - pingSentAt > keepAliveMillis) {
+            throw new IOException("Ping timeout");
+        }
+        if (pingSentAt < 0 && now - lastSendAt >= keepAliveMillis / 2) {
+            OutputStream out = connection.out;
+            out.write(PINGREQ << 4);
+            out.write(0);
+            out.flush();
+            pingSentAt = now;
+            lastSendAt = now;
+        }
+    }
+
+    private void readLoop(Connection conn) {
+        try {
+            while (!conn.broken) {
+                int header = conn.in.read();
+                if (header < 0) throw new EOFException();
+                byte[] body = readBody(conn.in);
+                int type = header >> 4;
+                if (type == PUBACK && body.length >= 2) {
+                    int packetId = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                    synchronized (lock) {
+                        if (inflight.remove(packetId) != null) {
+                            acked++;
+                        }
+                        lock.notifyAll();
+                    }
+                } else if (type == PINGRESP) {
+                    pingSentAt = -1;
+                }
+            }
+        } catch (IOException e) {
+            synchronized (lock) {
+                conn.broken = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void disconnect() {
+        Connection current = connection;
+        if (current != null && !current.broken) {
+            try {
+                current.out.write(DISCONNECT << 4);
+                current.out.write(0);
+                current.out.flush();
+            } catch (IOException ignored) {
+            }
+        }
+        closeConnection();
+    }
+
+    private void closeConnection() {
+        Connection current = connection;
+        connection = null;
+        if (current == null) return;
+        current.broken = true;
+        try {
+            current.socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ============================================
+    // ENCODING
+    // ============================================
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write((value >> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    /**
+     * Remaining length MQTT: varint 7 bit per byte
+     */
+    private static void writeRemainingLength(OutputStream out, int length) throws IOException {
+        do {
+            int digit = length & 0x7F;
+            length >>>= 7;
+            out.write(length > 0 ? digit | 0x80 : digit);
+        } while (length > 0);
+    }
+
+    private static int remainingLengthSize(int length) {
+        int size = 1;
+        while (length > 0x7F) {
+            length >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static byte[] readBody(DataInputStream in) throws IOException {
+        int length = 0;
+        int shift = 0;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) throw new EOFException();
+            length |= (digit & 0x7F) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.buskrutracker.services;
+
+/**
+ * RealtimeSink - Tujuan publish data bus live (Firebase, memori, socket lokal, ...)
+ *
+ * Semua method dipanggil dari tracking thread GpsTrackingService dan tidak boleh blocking;
+ * implementasi yang butuh I/O harus mengantrekan sendiri ke thread lain.
+ */
+public interface RealtimeSink {
+
+    /**
+     * Id rute bus (0 jika tidak diketahui); dipanggil sebelum initializeBus dan setelah restart
+     */
+    void setRute(int perjalanId, int ruteId);
+
+    void initializeBus(int perjalanId,
+                       String namaBus,
+                       String plateNumber,
+                       String busClass,
+                       String route,
+                       int capacity,
+                       String driver,
+                       String routePolyline);
+
+    /**
+     * Bus yang sama lanjut setelah service restart (tanpa initializeBus): tandai live lagi
+     */
+    void resumeBus(int perjalanId);
+
+    /**
+     * Titik trail baru (hasil TrackSimplifier); boleh dikirim bersama update lokasi berikutnya
+     */
+    void addTrackPoint(double latitude, double longitude, long timestamp);
+
+    /**
+     * Buang seluruh trail (mis. setelah restart service)
+     */
+    void resetTrail(int perjalanId);
+
+    /**
+     * @param segmentIndex Segmen polyline hasil map-matching, -1 jika di luar rute
+     * @param routeProgressKm Jarak yang sudah ditempuh sepanjang rute
+     */
+    void updateLocationWithTrack(int perjalanId,
+                                 double latitude,
+                                 double longitude,
+                                 float speed,
+                                 double totalDistance,
+                                 int segmentIndex,
+                                 double routeProgressKm);
+
+    /**
+     * @param estimatedArrivalMillis Perkiraan waktu tiba (epoch millis)
+     */
+    void updateETA(int perjalanId,
+                   double remainingDistanceKm,
+                   int remainingTimeMinutes,
+                   long estimatedArrivalMillis);
+
+    void updatePassengers(int perjalanId, int currentPassengers);
+
+    void updateKondisi(int perjalanId, String kondisi);
+
+    void updateStatus(int perjalanId, String status);
+
+    void clearBusData(int perjalanId);
+
+    /**
+     * Hint demand: false jika sink tahu tidak ada yang menonton bus ini (cadence ETA boleh
+     * turun). Sink tanpa informasi demand mengembalikan true.
+     */
+    boolean isWatched();
+
+    /**
+     * Lepas resource (listener, socket, thread); dipanggil saat service destroy
+     */
+    void release();
+}
@@ -0,0 +1,227 @@
+package com.example.buskrutracker.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * RecordingSink - RealtimeSink in-memory untuk test & benchmark pipeline tanpa Firebase
+ *
+ * Menyimpan jumlah panggilan per jenis dan nilai terakhir tanpa alokasi. Log event
+ * (satu String per panggilan) hanya dibuat jika setRecordEvents(true).
+ */
+public class RecordingSink implements RealtimeSink {
+
+    public enum Type {
+        INITIALIZE, RESUME, TRACK_POINT, RESET_TRAIL, LOCATION, ETA, PASSENGERS, KONDISI, STATUS,
+        CLEAR
+    }
+
+    private final int[] counts = new int[Type.values().length];
+    private boolean recordEvents;
+    private final List<String> events = new ArrayList<>();
+    private boolean released;
+    private boolean watched = true;
+
+    // Nilai terakhir
+    private int perjalanId;
+    private int ruteId;
+    private double latitude;
+    private double longitude;
+    private float speed;
+    private double totalDistance;
+    private int segmentIndex;
+    private int remainingTimeMinutes;
+    private long estimatedArrivalMillis;
+    private int passengers;
+    private String kondisi;
+    private String status;
+
+    /**
+     * Hint demand yang dilaporkan isWatched() (default true)
+     */
+    public RecordingSink setWatched(boolean watched) {
+        this.watched = watched;
+        return this;
+    }
+
+    public RecordingSink setRecordEvents(boolean recordEvents) {
+        this.recordEvents = recordEvents;
+        return this;
+    }
+
+    // ============================================
+    // REALTIME SINK
+    // ============================================
+
+    @Override
+    public void setRute(int perjalanId, int ruteId) {
+        this.perjalanId = perjalanId;
+        this.ruteId = ruteId;
+    }
+
+    @Override
+    public void initializeBus(int perjalanId, String namaBus, String plateNumber, String busClass,
+                              String route, int capacity, String driver, String routePolyline) {
+        this.perjalanId = perjalanId;
+        status = "active";
+        kondisi = "lancar";
+        record(Type.INITIALIZE, perjalanId, namaBus);
+    }
+
+    @Override
+    public void resumeBus(int perjalanId) {
+        this.perjalanId = perjalanId;
+        status = "active";
+        record(Type.RESUME, perjalanId, null);
+    }
+
+    @Override
+    public void addTrackPoint(double latitude, double longitude, long timestamp) {
+        record(Type.TRACK_POINT, perjalanId, recordEvents
+                ? String.format(Locale.US, "%.6f,%.6f@%d", latitude, longitude, timestamp) : null);
+    }
+
+    @Override
+    public void resetTrail(int perjalanId) {
+        record(Type.RESET_TRAIL, perjalanId, null);
+    }
+
+    @Override
+    public void updateLocationWithTrack(int perjalanId, double latitude, double longitude,
+                                        float speed, double totalDistance, int segmentIndex,
+                                        double routeProgressKm) {
+        this.perjalanId = perjalanId;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.speed = speed;
+        this.totalDistance = totalDistance;
+        this.segmentIndex = segmentIndex;
+        record(Type.LOCATION, perjalanId, recordEvents
+                ? String.format(Locale.US, "%.6f,%.6f", latitude, longitude) : null);
+    }
+
+    @Override
+    public void updateETA(int perjalanId, double remainingDistanceKm, int remainingTimeMinutes,
+                          long estimatedArrivalMillis) {
+        this.remainingTimeMinutes = remainingTimeMinutes;
+        this.estimatedArrivalMillis = estimatedArrivalMillis;
+        record(Type.ETA, perjalanId, null);
+    }
+
+    @Override
+    public void updatePassengers(int perjalanId, int currentPassengers) {
+        passengers = currentPassengers;
+        record(Type.PASSENGERS, perjalanId, null);
+    }
+
+    @Override
+    public void updateKondisi(int perjalanId, String kondisi) {
+        this.kondisi = kondisi;
+        record(Type.KONDISI, perjalanId, kondisi);
+    }
+
+    @Override
+    public void updateStatus(int perjalanId, String status) {
+        this.status = status;
+        record(Type.STATUS, perjalanId, status);
+    }
+
+    @Override
+    public void clearBusData(int perjalanId) {
+        record(Type.CLEAR, perjalanId, null);
+    }
+
+    @Override
+    public boolean isWatched() {
+        return watched;
+    }
+
+    @Override
+    public void release() {
+        released = true;
+    }
+
+    // ============================================
+    // GETTER
+    // ============================================
+
+    public int getCount(Type type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * Event berurutan, format "TYPE bus detail"; kosong jika recordEvents false
+     */
+    public List<String> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    public int getPerjalanId() {
+        return perjalanId;
+    }
+
+    public int getRuteId() {
+        return ruteId;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    public int getRemainingTimeMinutes() {
+        return remainingTimeMinutes;
+    }
+
+    public long getEstimatedArrivalMillis() {
+        return estimatedArrivalMillis;
+    }
+
+    public int getPassengers() {
+        return passengers;
+    }
+
+    public String getKondisi() {
+        return kondisi;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        events.clear();
+    }
+
+    private void record(Type type, int perjalanId, String detail) {
+        counts[type.ordinal()]++;
+        if (recordEvents) {
+            events.add(detail != null ? type + " " + perjalanId + " " + detail
+                    : type + " " + perjalanId);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.buskrutracker.services;
+
+/**
+ * SamplingPolicy - Menentukan SamplingProfile GPS saat tracking berjalan
+ * GpsTrackingService hanya membangun ulang LocationRequest jika profile berubah.
+ */
+public interface SamplingPolicy {
+
+    /**
+     * Profile awal saat tracking dimulai
+     */
+    SamplingProfile reset();
+
+    /**
+     * Dipanggil setiap fix yang diterima
+     *
+     * @param timeMillis Waktu fix
+     * @param speedKmh Kecepatan (km/h)
+     * @param bearing Arah (derajat), diabaikan jika hasBearing false
+     * @param hasBearing Apakah bearing valid
+     * @return Profile yang seharusnya aktif
+     */
+    SamplingProfile onFix(long timeMillis, float speedKmh, float bearing, boolean hasBearing);
+
+    /**
+     * Dipanggil saat kondisi bus berubah (lancar, macet, mogok)
+     */
+    SamplingProfile onKondisiChanged(String kondisi);
+
+    SamplingProfile current();
+}
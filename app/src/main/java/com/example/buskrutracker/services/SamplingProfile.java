@@ -0,0 +1,39 @@
+package com.example.buskrutracker.services;
+
+import com.google.android.gms.location.Priority;
+
+/**
+ * SamplingProfile - Parameter LocationRequest untuk satu mode sampling GPS
+ */
+public enum SamplingProfile {
+
+    // Dalam kota / belokan: setara setting lama (5 detik, 5 meter)
+    CITY(Priority.PRIORITY_HIGH_ACCURACY, 5000, 3000, 5.0f, 0),
+
+    // Jalan tol, kecepatan stabil tinggi
+    HIGHWAY(Priority.PRIORITY_HIGH_ACCURACY, 10000, 5000, 25.0f, 60000),
+
+    // Bus diam (macet total / berhenti di terminal); tanpa jarak minimum agar fix tetap
+    // datang per interval walau bus tidak bergerak
+    STATIONARY(Priority.PRIORITY_BALANCED_POWER_ACCURACY, 30000, 15000, 0f, 120000),
+
+    // Kondisi mogok: cukup heartbeat posisi (bus tidak bergerak, jadi tanpa jarak minimum)
+    MOGOK(Priority.PRIORITY_BALANCED_POWER_ACCURACY, 60000, 30000, 0f, 0);
+
+    public final int priority;
+    public final long intervalMillis;
+    public final long minUpdateIntervalMillis;
+    public final float minDistanceMeters;
+
+    // Batas delay batch (mode batched delivery), 0 = kirim setiap fix
+    public final long maxUpdateDelayMillis;
+
+    SamplingProfile(int priority, long intervalMillis, long minUpdateIntervalMillis,
+                    float minDistanceMeters, long maxUpdateDelayMillis) {
+        this.priority = priority;
+        this.intervalMillis = intervalMillis;
+        this.minUpdateIntervalMillis = minUpdateIntervalMillis;
+        this.minDistanceMeters = minDistanceMeters;
+        this.maxUpdateDelayMillis = maxUpdateDelayMillis;
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.buskrutracker.services;
+
+import android.util.Log;
+
+import com.example.buskrutracker.utils.Clock;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SocketSink - RealtimeSink ke server pengganti di TCP lokal (JSON per baris)
+ *
+ * Contoh pesan: {"type":"location","bus":7,"lat":-7.25,"lng":112.75,"speed":40.0,...,"t":...}
+ * Tracking thread hanya menyusun pesan dan memasukkannya ke antrean terbatas; koneksi dan
+ * write berjalan di thread sendiri. Jika antrean penuh, pesan tertua dibuang. Koneksi
+ * dibuka ulang dengan backoff jika server belum siap atau putus. release() mengirim sisa
+ * antrean (maksimal RELEASE_DRAIN_MS) sebelum menutup socket.
+ */
+public class SocketSink implements RealtimeSink {
+
+    private static final String TAG = "SocketSink";
+
+    static final int QUEUE_CAPACITY = 256;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final long MIN_BACKOFF_MS = 500;
+    private static final long MAX_BACKOFF_MS = 30000;
+    static final long RELEASE_DRAIN_MS = 2000;
+    // Penanda release() untuk membangunkan writer; pesan asli selalu diawali '{'
+    private static final String DRAIN_MARKER = "";
+
+    private final String host;
+    private final int port;
+    private final Clock clock;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final StringBuilder message = new StringBuilder(256);
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+    private volatile boolean draining;
+    private volatile long sent;
+    private volatile long dropped;
+    private Socket socket;
+
+    public SocketSink(String host, int port, Clock clock) {
+        this.host = host;
+        this.port = port;
+        this.clock = clock != null ? clock : Clock.SYSTEM;
+        writerThread = new Thread(this::writeLoop, "RealtimeSocketSink");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public long getSentCount() {
+        return sent;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    // ============================================
+    // REALTIME SINK
+    // ============================================
+
+    @Override
+    public void setRute(int perjalanId, int ruteId) {
+        begin("rute", perjalanId);
+        field("ruteId", ruteId);
+        end();
+    }
+
+    @Override
+    public void initializeBus(int perjalanId, String namaBus, String plateNumber, String busClass,
+                              String route, int capacity, String driver, String routePolyline) {
+        begin("initialize", perjalanId);
+        field("namaBus", namaBus);
+        field("plateNumber", plateNumber);
+        field("class", busClass);
+        field("route", route);
+        field("capacity", capacity);
+        field("driver", driver);
+        field("routePolyline", routePolyline);
+        end();
+    }
+
+    @Override
+    public void resumeBus(int perjalanId) {
+        updateStatus(perjalanId, "active");
+    }
+
+    @Override
+    public void addTrackPoint(double latitude, double longitude, long timestamp) {
+        begin("trail", -1);
+        field("lat", latitude);
+        field("lng", longitude);
+        field("pointTime", timestamp);
+        end();
+    }
+
+    @Override
+    public void resetTrail(int perjalanId) {
+        begin("resetTrail", perjalanId);
+        end();
+    }
+
+    @Override
+    public void updateLocationWithTrack(int perjalanId, double latitude, double longitude,
+                                        float speed, double totalDistance, int segmentIndex,
+                                        double routeProgressKm) {
+        begin("location", perjalanId);
+        field("lat", latitude);
+        field("lng", longitude);
+        field("speed", speed);
+        field("totalDistance", totalDistance);
+        field("segmentIndex", segmentIndex);
+        field("routeProgress", routeProgressKm);
+        end();
+    }
+
+    @Override
+    public void updateETA(int perjalanId, double remainingDistanceKm, int remainingTimeMinutes,
+                          long estimatedArrivalMillis) {
+        begin("eta", perjalanId);
+        field("remainingDistance", remainingDistanceKm);
+        field("remainingTime", remainingTimeMinutes);
+        field("arrivalAt", estimatedArrivalMillis);
+        end();
+    }
+
+    @Override
+    public void updatePassengers(int perjalanId, int currentPassengers) {
+        begin("passengers", perjalanId);
+        field("currentPassengers", currentPassengers);
+        end();
+    }
+
+    @Override
+    public void updateKondisi(int perjalanId, String kondisi) {
+        begin("kondisi", perjalanId);
+        field("kondisi", kondisi);
+        end();
+    }
+
+    @Override
+    public void updateStatus(int perjalanId, String status) {
+        begin("status", perjalanId);
+        field("status", status);
+        end();
+    }
+
+    @Override
+    public void clearBusData(int perjalanId) {
+        begin("clear", perjalanId);
+        end();
+    }
+
+    /**
+     * Tidak tahu siapa yang membaca socket: tidak ikut menentukan demand
+     */
+    @Override
+    public boolean isWatched() {
+        return false;
+    }
+
+    /**
+     * Kirim sisa antrean maksimal RELEASE_DRAIN_MS (blocking), lalu tutup socket. Yang belum
+     * terkirim setelah batas waktu dibuang.
+     */
+    @Override
+    public void release() {
+        draining = true;
+        queue.offer(DRAIN_MARKER);
+        try {
+            writerThread.join(RELEASE_DRAIN_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+        writerThread.interrupt();
+        closeSocket();
+    }
+
+    // ============================================
+    // MESSAGE
+    // ============================================
+
+    private void begin(String type, int perjalanId) {
+        message.setLength(0);
+        message.append("{\"type\":\"").append(type).append('"');
+        if (perjalanId >= 0) {
+            message.append(",\"bus\":").append(perjalanId);
+        }
+    }
+
+    private void field(String name, double value) {
+        message.append(",\"").append(name).append("\":").append(value);
+    }
+
+    private void field(String name, long value) {
+        message.append(",\"").append(name).append("\":").append(value);
+    }
+
+    private void field(String name, String value) {
+        message.append(",\"").append(name).append("\":");
+        if (value == null) {
+            message.append("null");
+            return;
+        }
+        message.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                message.append('\\').append(c);
+            } else if (c < 0x20) {
+                message.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                message.append(c);
+            }
+        }
+        message.append('"');
+    }
+
+    private void end() {
+        field("t", clock.currentTimeMillis());
+        message.append('}');
+        String line = message.toString();
+        while (!queue.offer(line)) {
+            if (queue.poll() != null) {
+                dropped++;
+            }
+        }
+    }
+
+    // ============================================
+    // WRITER THREAD
+    // ============================================
+
+    private void writeLoop() {
+        long backoff = MIN_BACKOFF_MS;
+        Writer out = null;
+        String pending = null;
+
+        while (running) {
+            try {
+                if (pending == null) {
+                    // release(): kuras tanpa menunggu, berhenti saat antrean kosong
+                    pending = draining ? queue.poll() : queue.poll(1, TimeUnit.SECONDS);
+                    if (pending == null) {
+                        if (!draining) continue;
+                        if (out != null) {
+                            out.flush();
+                        }
+                        break;
+                    }
+                    if (pending.isEmpty()) {
+                        pending = null;
+                        continue;
+                    }
+                }
+                if (out == null) {
+                    out = connect();
+                    backoff = MIN_BACKOFF_MS;
+                }
+
+                out.write(pending);
+                out.write('\n');
+                pending = null;
+                sent++;
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                Log.w(TAG, "Socket " + host + ":" + port + " unavailable: " + e.getMessage());
+                closeSocket();
+                out = null;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+        closeSocket();
+    }
+
+    private Writer connect() throws IOException {
+        Socket next = new Socket();
+        next.setTcpNoDelay(true);
+        next.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+        synchronized (this) {
+            socket = next;
+        }
+        Log.d(TAG, "Connected to " + host + ":" + port);
+        return new BufferedWriter(new OutputStreamWriter(next.getOutputStream(),
+                StandardCharsets.UTF_8));
+    }
+
+    private synchronized void closeSocket() {
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        socket = null;
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.buskrutracker.services;
+
+import android.os.Handler;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.buskrutracker.utils.Clock;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.ServerValue;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * StaleBusSweeper - Pindahkan bus yang heartbeat-nya basi dari tree live ke arsip
+ *
+ * Bus yang prosesnya mati tanpa clearBusData tetap ada di buses/ (status "offline" dari marker
+ * onDisconnect FirebaseManager). Setiap SWEEP_INTERVAL_MS sweeper mengambil maksimal
+ * SWEEP_LIMIT bus dengan heartbeatAt numerik paling lama, dan SWEEP_LIMIT bus dengan
+ * location/updatedAt paling lama untuk node app versi lama tanpa heartbeatAt (butuh
+ * ".indexOn": ["heartbeatAt", "location/updatedAt"] di rules buses). Node tanpa waktu numerik
+ * tidak masuk range query, jadi tidak memenuhi halaman; node seperti itu dibiarkan.
+ *
+ * Bus yang lebih tua dari STALE_AFTER_MS dihapus lewat transaction yang memeriksa ulang
+ * waktunya di server (bus yang heartbeat setelah query tidak ikut terhapus), lalu salinannya
+ * ditulis ke buses_archive/ bersama penghapusan entry index rute & geohash.
+ *
+ * Cutoff memakai jam server (.info/serverTimeOffset), bukan jam HP. Sweep hanya jalan saat
+ * online dan membaca lewat get() (server, bukan cache persistence). Callback Firebase (main
+ * thread) diteruskan ke handler tracking.
+ */
+public class StaleBusSweeper {
+
+    private static final String TAG = "StaleBusSweeper";
+
+    public static final long STALE_AFTER_MS = 15 * 60 * 1000L;
+    public static final long SWEEP_INTERVAL_MS = 10 * 60 * 1000L;
+    public static final String ARCHIVE_PATH = "buses_archive";
+
+    static final int SWEEP_LIMIT = 50;
+    // Field waktu yang di-query: heartbeatAt, lalu location/updatedAt untuk node versi lama
+    static final String[] SWEEP_ORDER_KEYS = {"heartbeatAt", "location/updatedAt"};
+    // Sweep pertama menunggu koneksi & offset server terbaca
+    private static final long FIRST_SWEEP_DELAY_MS = 30000;
+
+    private final Clock clock;
+    private DatabaseReference databaseRef;
+    private DatabaseReference connectedRef;
+    private DatabaseReference serverOffsetRef;
+
+    // Ditulis dari callback Firebase (main thread), dibaca di thread sweep
+    private volatile boolean connected;
+    private volatile long serverTimeOffset;
+
+    // Ditulis di thread tracking, dibaca callback Firebase di main thread
+    private volatile Handler handler;
+    private int ownPerjalanId;
+    private final Runnable sweepTask = () -> {
+        sweep();
+        if (handler != null) {
+            handler.postDelayed(this.sweepTask, SWEEP_INTERVAL_MS);
+        }
+    };
+
+    private final ValueEventListener connectionListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(@NonNull DataSnapshot snapshot) {
+            connected = Boolean.TRUE.equals(snapshot.getValue(Boolean.class));
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            Log.e(TAG, "Connection listener cancelled: " + error.getMessage());
+        }
+    };
+
+    private final ValueEventListener serverOffsetListener = new ValueEventListener() {
+        @Override
+        public void onDataChange(@NonNull DataSnapshot snapshot) {
+            Object offset = snapshot.getValue();
+            serverTimeOffset = offset instanceof Number ? ((Number) offset).longValue() : 0;
+        }
+
+        @Override
+        public void onCancelled(@NonNull DatabaseError error) {
+            Log.e(TAG, "Server offset listener cancelled: " + error.getMessage());
+        }
+    };
+
+    public StaleBusSweeper(Clock clock) {
+        this.clock = clock != null ? clock : Clock.SYSTEM;
+
+        try {
+            FirebaseDatabase database = FirebaseDatabase.getInstance(FirebaseManager.DATABASE_URL);
+            databaseRef = database.getReference();
+            connectedRef = database.getReference(".info/connected");
+            connectedRef.addValueEventListener(connectionListener);
+            serverOffsetRef = database.getReference(".info/serverTimeOffset");
+            serverOffsetRef.addValueEventListener(serverOffsetListener);
+        } catch (Exception e) {
+            Log.e(TAG, "StaleBusSweeper initialization error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Mulai sweep berkala di handler; bus milik HP ini (ownPerjalanId) tidak pernah diarsip
+     */
+    public void start(Handler handler, int ownPerjalanId) {
+        stop();
+        this.handler = handler;
+        this.ownPerjalanId = ownPerjalanId;
+        handler.postDelayed(sweepTask, FIRST_SWEEP_DELAY_MS);
+    }
+
+    public void stop() {
+        if (handler != null) {
+            handler.removeCallbacks(sweepTask);
+            handler = null;
+        }
+    }
+
+    public void release() {
+        stop();
+        if (connectedRef != null) {
+            connectedRef.removeEventListener(connectionListener);
+        }
+        if (serverOffsetRef != null) {
+            serverOffsetRef.removeEventListener(serverOffsetListener);
+        }
+    }
+
+    /**
+     * Satu kali sweep (no-op saat offline / Firebase tidak siap)
+     */
+    public void sweep() {
+        if (databaseRef == null || !connected) return;
+
+        long cutoff = clock.currentTimeMillis() + serverTimeOffset - STALE_AFTER_MS;
+        String ownKey = "bus_" + ownPerjalanId;
+        for (String orderKey : SWEEP_ORDER_KEYS) {
+            // startAt(0): node tanpa nilai numerik (diurutkan paling awal) tidak ikut
+            databaseRef.child(FirebaseManager.BUSES_PATH)
+                    .orderByChild(orderKey)
+                    .startAt(0)
+                    .endAt(cutoff)
+                    .limitToFirst(SWEEP_LIMIT)
+                    .get()
+                    .addOnSuccessListener(snapshot ->
+                            runOnSweepThread(() -> archive(snapshot, cutoff, ownKey)))
+                    .addOnFailureListener(e -> Log.e(TAG, "Sweep query failed: " + e.getMessage()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void archive(DataSnapshot snapshot, long cutoff, String ownKey) {
+        for (DataSnapshot child : snapshot.getChildren()) {
+            String busKey = child.getKey();
+            Object bus = child.getValue();
+            if (busKey == null || busKey.equals(ownKey) || !(bus instanceof Map)) continue;
+
+            if (isStale((Map<String, Object>) bus, cutoff)) {
+                removeIfStillStale(busKey, cutoff);
+            }
+        }
+    }
+
+    /**
+     * Hapus node bus hanya jika di server masih basi, lalu tulis arsip dari nilai yang dihapus
+     */
+    private void removeIfStillStale(String busKey, long cutoff) {
+        AtomicReference<Map<String, Object>> removed = new AtomicReference<>();
+        databaseRef.child(FirebaseManager.BUSES_PATH).child(busKey)
+                .runTransaction(new Transaction.Handler() {
+                    @NonNull
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Transaction.Result doTransaction(@NonNull MutableData current) {
+                        removed.set(null);
+                        Object value = current.getValue();
+                        // Cache lokal kosong: commit apa adanya, server memanggil ulang
+                        // dengan nilai sebenarnya
+                        if (value == null) return Transaction.success(current);
+                        if (!(value instanceof Map)
+                                || !isStale((Map<String, Object>) value, cutoff)) {
+                            return Transaction.abort();
+                        }
+                        removed.set((Map<String, Object>) value);
+                        current.setValue(null);
+                        return Transaction.success(current);
+                    }
+
+                    @Override
+                    public void onComplete(DatabaseError error, boolean committed,
+                                           DataSnapshot snapshot) {
+                        Map<String, Object> bus = removed.get();
+                        if (error != null) {
+                            Log.e(TAG, "Failed to remove " + busKey + ": " + error.getMessage());
+                        } else if (committed && bus != null) {
+                            runOnSweepThread(() -> writeArchive(busKey, bus, cutoff));
+                        }
+                    }
+                });
+    }
+
+    private void writeArchive(String busKey, Map<String, Object> bus, long cutoff) {
+        Map<String, Object> payload = new HashMap<>();
+        if (!putArchive(payload, busKey, bus, cutoff)) return;
+
+        databaseRef.updateChildren(payload)
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Archived stale bus " + busKey))
+                .addOnFailureListener(e ->
+                        Log.e(TAG, "Failed to archive " + busKey + ": " + e.getMessage()));
+    }
+
+    private void runOnSweepThread(Runnable task) {
+        Handler current = handler;
+        if (current != null) {
+            current.post(task);
+        }
+    }
+
+    // ============================================
+    // PAYLOAD
+    // ============================================
+
+    /**
+     * Tambah operasi arsip satu bus (node-nya sudah dihapus transaction) ke payload
+     * multi-path: salinan ringkas ke buses_archive, hapus entry routes_live dan buses_geo
+     *
+     * @return false jika bus belum basi (lastSeen > cutoff) atau waktunya tidak diketahui
+     */
+    static boolean putArchive(Map<String, Object> payload, String busKey, Map<String, Object> bus,
+                              long cutoff) {
+        if (!isStale(bus, cutoff)) return false;
+        long lastSeen = lastSeen(bus);
+
+        // Arsip tanpa field besar (polyline, trail)
+        Map<String, Object> archived = new HashMap<>(bus);
+        archived.remove("routePolyline");
+        archived.remove("trail");
+        archived.put("lastSeenAt", lastSeen);
+        archived.put("archivedAt", ServerValue.TIMESTAMP);
+        payload.put(ARCHIVE_PATH + "/" + busKey, archived);
+
+        Object ruteId = bus.get("ruteId");
+        if (ruteId instanceof Number && ((Number) ruteId).intValue() > 0) {
+            payload.put(FirebaseManager.ROUTE_INDEX_PATH + "/" + ((Number) ruteId).intValue()
+                    + "/" + busKey, null);
+        }
+        Object location = bus.get("location");
+        Object geohash = location instanceof Map ? ((Map<?, ?>) location).get("geohash") : null;
+        if (geohash instanceof String) {
+            payload.put(FirebaseManager.GEO_INDEX_PATH + "/" + geohash + "/" + busKey, null);
+        }
+        return true;
+    }
+
+    static boolean isStale(Map<String, Object> bus, long cutoff) {
+        long lastSeen = lastSeen(bus);
+        return lastSeen >= 0 && lastSeen <= cutoff;
+    }
+
+    /**
+     * Server time terakhir bus terlihat: heartbeatAt, atau location/updatedAt; -1 jika tidak ada
+     */
+    static long lastSeen(Map<String, Object> bus) {
+        Object heartbeat = bus.get("heartbeatAt");
+        if (heartbeat instanceof Number) return ((Number) heartbeat).longValue();
+
+        Object location = bus.get("location");
+        Object updatedAt = location instanceof Map ? ((Map<?, ?>) location).get("updatedAt") : null;
+        return updatedAt instanceof Number ? ((Number) updatedAt).longValue() : -1;
+    }
+}
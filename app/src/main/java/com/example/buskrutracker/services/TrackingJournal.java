@@ -0,0 +1,444 @@
+package com.example.buskrutracker.services;
+
+import android.util.Log;
+
+import com.example.buskrutracker.utils.TrackBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * TrackingJournal - Journal sesi tracking append-only untuk resume setelah restart
+ *
+ * Saat START_STICKY me-restart service, intent-nya null. Journal ini menyimpan data
+ * sesi (header), titik track yang dipertahankan, setiap fix yang diterima (untuk window
+ * TrackSimplifier yang belum di-emit), checkpoint counter per publish, dan perubahan kondisi,
+ * sehingga service bisa membangun ulang state-nya.
+ *
+ * Format record: [type:1][length:4][payload][crc32:4]. Setiap record ditulis dengan
+ * satu write() tanpa fsync: tahan terhadap proses yang di-kill (data sudah di kernel),
+ * bukan terhadap mati listrik. Record terakhir yang terpotong / CRC salah diabaikan.
+ */
+public class TrackingJournal {
+
+    private static final String TAG = "TrackingJournal";
+
+    static final int VERSION = 1;
+
+    private static final byte TYPE_SESSION = 1;
+    private static final byte TYPE_POINT = 2;
+    private static final byte TYPE_CHECKPOINT = 3;
+    private static final byte TYPE_KONDISI = 4;
+    private static final byte TYPE_FIX = 5;
+
+    private static final int FRAME_OVERHEAD = 1 + 4 + 4;
+
+    /**
+     * Data sesi dari intent START_TRACKING
+     */
+    public static final class Session {
+        public int perjalanId;
+        public String namaBus;
+        public String armadaNomor;
+        public String kelas;
+        public int kapasitas;
+        public String ruteNama;
+        public String polyline;
+        public String kruNama;
+        public boolean batchedDelivery;
+        public long startTime;
+        // Ditambahkan di akhir record; journal lama tanpa field ini terbaca 0
+        public int ruteId;
+    }
+
+    /**
+     * Hasil load: sesi + checkpoint terakhir + kondisi terakhir
+     */
+    public static final class Snapshot {
+        public final Session session = new Session();
+        public String kondisi;
+
+        public boolean hasCheckpoint;
+        public double totalJarak;
+        public int updateCount;
+        public boolean hasLastPosition;
+        public double lastLat;
+        public double lastLng;
+        public float lastSpeed;
+        public boolean lastOnRoute;
+        public double lastProgress;
+
+        // Fix setelah titik track terakhir (window simplifier saat proses mati)
+        public final TrackBuffer pendingFixes = new TrackBuffer(64, false);
+
+        public int pointCount;
+        public int recordCount;
+        public boolean truncatedTail;
+    }
+
+    private final File file;
+    private FileOutputStream out;
+
+    // Buffer record yang di-reuse (tanpa alokasi per record setelah buffer cukup besar)
+    private final RecordBuffer record = new RecordBuffer();
+    private final DataOutputStream payload = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    private long bytesWritten;
+    // Offset akhir record valid terakhir dari load() terakhir; -1 jika belum di-load
+    private long validLength = -1;
+
+    public TrackingJournal(File file) {
+        this.file = file;
+    }
+
+    // ============================================
+    // WRITE
+    // ============================================
+
+    /**
+     * Mulai sesi baru (journal lama dibuang)
+     */
+    public void begin(Session session) {
+        close();
+        bytesWritten = 0;
+        validLength = -1;
+        if (!open(false)) return;
+
+        try {
+            startRecord(TYPE_SESSION);
+            payload.writeInt(VERSION);
+            payload.writeInt(session.perjalanId);
+            writeString(session.namaBus);
+            writeString(session.armadaNomor);
+            writeString(session.kelas);
+            payload.writeInt(session.kapasitas);
+            writeString(session.ruteNama);
+            writeString(session.polyline);
+            writeString(session.kruNama);
+            payload.writeBoolean(session.batchedDelivery);
+            payload.writeLong(session.startTime);
+            payload.writeInt(session.ruteId);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing session: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lanjutkan journal yang ada setelah restart (append). Tail yang terpotong dipangkas
+     * dulu ke record valid terakhir, agar record baru tidak tertulis di belakang sampah
+     * (load berikutnya berhenti di tail tersebut dan tidak akan melihatnya).
+     */
+    public void resume() {
+        close();
+        if (validLength < 0) {
+            load(new TrackBuffer());
+        }
+        long length = Math.max(validLength, 0);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() > length) {
+                Log.w(TAG, "Truncating journal tail: " + raf.length() + " -> " + length);
+                raf.setLength(length);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error truncating journal: " + e.getMessage());
+        }
+        bytesWritten = length;
+        open(true);
+    }
+
+    public void appendPoint(double lat, double lng, long timestamp, float speed, float accuracy) {
+        if (out == null) return;
+        try {
+            startRecord(TYPE_POINT);
+            payload.writeDouble(lat);
+            payload.writeDouble(lng);
+            payload.writeLong(timestamp);
+            payload.writeFloat(speed);
+            payload.writeFloat(accuracy);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing point: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fix yang diterima filter; ditulis setelah TrackSimplifier.add (titik yang di-emit lebih dulu)
+     */
+    public void appendFix(double lat, double lng, long timestamp, float speed, float accuracy) {
+        if (out == null) return;
+        try {
+            startRecord(TYPE_FIX);
+            payload.writeDouble(lat);
+            payload.writeDouble(lng);
+            payload.writeLong(timestamp);
+            payload.writeFloat(speed);
+            payload.writeFloat(accuracy);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing fix: " + e.getMessage());
+        }
+    }
+
+    public void appendCheckpoint(double totalJarak, int updateCount,
+                                 boolean hasLastPosition, double lastLat, double lastLng,
+                                 float lastSpeed, boolean lastOnRoute, double lastProgress) {
+        if (out == null) return;
+        try {
+            startRecord(TYPE_CHECKPOINT);
+            payload.writeDouble(totalJarak);
+            payload.writeInt(updateCount);
+            payload.writeBoolean(hasLastPosition);
+            payload.writeDouble(lastLat);
+            payload.writeDouble(lastLng);
+            payload.writeFloat(lastSpeed);
+            payload.writeBoolean(lastOnRoute);
+            payload.writeDouble(lastProgress);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing checkpoint: " + e.getMessage());
+        }
+    }
+
+    public void appendKondisi(String kondisi) {
+        if (out == null) return;
+        try {
+            startRecord(TYPE_KONDISI);
+            writeString(kondisi);
+            commitRecord();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing kondisi: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sesi selesai normal: hapus journal
+     */
+    public void finish() {
+        close();
+        bytesWritten = 0;
+        validLength = -1;
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete journal " + file);
+        }
+    }
+
+    public void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing journal: " + e.getMessage());
+            }
+            out = null;
+        }
+    }
+
+    public boolean exists() {
+        return file.exists() && file.length() > 0;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // ============================================
+    // READ
+    // ============================================
+
+    /**
+     * Baca journal; titik track di-append ke {@code points}
+     *
+     * @return snapshot, atau null jika journal tidak ada / tanpa header sesi yang valid
+     */
+    public Snapshot load(TrackBuffer points) {
+        validLength = 0;
+        if (!exists()) return null;
+
+        byte[] data;
+        try (FileInputStream in = new FileInputStream(file)) {
+            data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading journal: " + e.getMessage());
+            return null;
+        }
+
+        Snapshot snapshot = new Snapshot();
+        boolean hasSession = false;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        CRC32 check = new CRC32();
+        long lastTrackTime = Long.MIN_VALUE;
+
+        while (buffer.remaining() >= FRAME_OVERHEAD) {
+            int start = buffer.position();
+            byte type = buffer.get();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - 4) {
+                snapshot.truncatedTail = true;
+                break;
+            }
+
+            check.reset();
+            check.update(data, start, 1);
+            check.update(data, start + 5, length);
+            buffer.position(start + 5 + length);
+            if ((int) check.getValue() != buffer.getInt()) {
+                snapshot.truncatedTail = true;
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.wrap(data, start + 5, length);
+            try {
+                if (type == TYPE_SESSION) {
+                    if (body.getInt() != VERSION) return null;
+                    readSession(body, snapshot.session);
+                    hasSession = true;
+                } else if (!hasSession) {
+                    return null;
+                } else if (type == TYPE_POINT) {
+                    double lat = body.getDouble();
+                    double lng = body.getDouble();
+                    long time = body.getLong();
+                    points.append(lat, lng, time, body.getFloat(), body.getFloat());
+                    lastTrackTime = Math.max(lastTrackTime, time);
+                    snapshot.pointCount++;
+                    snapshot.pendingFixes.clear();
+                } else if (type == TYPE_FIX) {
+                    double lat = body.getDouble();
+                    double lng = body.getDouble();
+                    long time = body.getLong();
+                    // Fix yang sudah jadi titik track (anchor pertama) atau ditulis ulang
+                    // setelah resume (waktu tidak maju) tidak masuk window dua kali
+                    if (time > lastTrackTime) {
+                        snapshot.pendingFixes.append(lat, lng, time, body.getFloat(),
+                                body.getFloat());
+                        lastTrackTime = time;
+                    }
+                } else if (type == TYPE_CHECKPOINT) {
+                    snapshot.hasCheckpoint = true;
+                    snapshot.totalJarak = body.getDouble();
+                    snapshot.updateCount = body.getInt();
+                    snapshot.hasLastPosition = body.get() != 0;
+                    snapshot.lastLat = body.getDouble();
+                    snapshot.lastLng = body.getDouble();
+                    snapshot.lastSpeed = body.getFloat();
+                    snapshot.lastOnRoute = body.get() != 0;
+                    snapshot.lastProgress = body.getDouble();
+                } else if (type == TYPE_KONDISI) {
+                    snapshot.kondisi = readString(body);
+                }
+            } catch (BufferUnderflowException e) {
+                snapshot.truncatedTail = true;
+                break;
+            }
+            snapshot.recordCount++;
+            validLength = buffer.position();
+        }
+
+        return hasSession ? snapshot : null;
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private boolean open(boolean append) {
+        try {
+            out = new FileOutputStream(file, append);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening journal: " + e.getMessage());
+            out = null;
+            return false;
+        }
+    }
+
+    private void startRecord(byte type) throws IOException {
+        record.reset();
+        payload.writeByte(type);
+        payload.writeInt(0); // length, diisi saat commit
+    }
+
+    private void commitRecord() throws IOException {
+        int length = record.size() - 5;
+        record.putInt(1, length);
+
+        crc.reset();
+        crc.update(record.buffer(), 0, 1);
+        crc.update(record.buffer(), 5, length);
+        payload.writeInt((int) crc.getValue());
+
+        // Satu write per record
+        out.write(record.buffer(), 0, record.size());
+        bytesWritten += record.size();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            payload.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        payload.writeInt(bytes.length);
+        payload.write(bytes);
+    }
+
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readSession(ByteBuffer body, Session session) {
+        session.perjalanId = body.getInt();
+        session.namaBus = readString(body);
+        session.armadaNomor = readString(body);
+        session.kelas = readString(body);
+        session.kapasitas = body.getInt();
+        session.ruteNama = readString(body);
+        session.polyline = readString(body);
+        session.kruNama = readString(body);
+        session.batchedDelivery = body.get() != 0;
+        session.startTime = body.getLong();
+        session.ruteId = body.remaining() >= 4 ? body.getInt() : 0;
+    }
+
+    /**
+     * ByteArrayOutputStream yang buffer-nya bisa diakses langsung
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        RecordBuffer() {
+            super(128);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void putInt(int offset, int value) {
+            buf[offset] = (byte) (value >>> 24);
+            buf[offset + 1] = (byte) (value >>> 16);
+            buf[offset + 2] = (byte) (value >>> 8);
+            buf[offset + 3] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.buskrutracker.services;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+
+import androidx.core.app.NotificationCompat;
+
+import com.example.buskrutracker.R;
+
+import java.util.Locale;
+
+/**
+ * TrackingNotificationController - Notifikasi foreground yang di-reuse dan di-throttle
+ *
+ * Builder dan PendingIntent dibuat sekali. Notifikasi hanya di-post ulang jika teks
+ * yang tampil berubah (speed 0.1 km/h, jarak 0.01 km) dan paling cepat sekali per
+ * MIN_POST_INTERVAL_MS. Post yang dilewati dihitung untuk melihat penghematan.
+ */
+public class TrackingNotificationController {
+
+    static final long MIN_POST_INTERVAL_MS = 10000;
+
+    private final NotificationManager manager;
+    private final NotificationCompat.Builder builder;
+    private final int notificationId;
+
+    // Nilai yang sedang tampil (fixed-point) dan yang menunggu post
+    private int shownSpeedTenths = Integer.MIN_VALUE;
+    private long shownDistanceHundredths = Long.MIN_VALUE;
+    private long lastPostMillis;
+    private boolean hasPosted;
+
+    private long postCount;
+    private long skippedUnchanged;
+    private long skippedThrottled;
+
+    public TrackingNotificationController(Context context,
+                                          String channelId,
+                                          int notificationId,
+                                          PendingIntent contentIntent,
+                                          PendingIntent stopIntent) {
+        this.manager = context.getSystemService(NotificationManager.class);
+        this.notificationId = notificationId;
+        this.builder = new NotificationCompat.Builder(context, channelId)
+                .setContentTitle("🚍 Bus Tracker Active")
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setCategory(NotificationCompat.CATEGORY_SERVICE)
+                .addAction(
+                        android.R.drawable.ic_menu_close_clear_cancel,
+                        "Stop",
+                        stopIntent
+                );
+    }
+
+    /**
+     * Notifikasi awal untuk startForeground
+     */
+    public Notification buildInitial(String contentText) {
+        shownSpeedTenths = Integer.MIN_VALUE;
+        shownDistanceHundredths = Long.MIN_VALUE;
+        hasPosted = false;
+        return builder.setContentText(contentText).build();
+    }
+
+    /**
+     * Update speed & jarak; post hanya jika teks berubah dan interval terpenuhi
+     *
+     * @return true jika notifikasi benar-benar di-post
+     */
+    public boolean update(float speedKmh, double jarakKm, long nowMillis) {
+        int speedTenths = Math.round(speedKmh * 10f);
+        long distanceHundredths = Math.round(jarakKm * 100.0);
+
+        if (speedTenths == shownSpeedTenths && distanceHundredths == shownDistanceHundredths) {
+            skippedUnchanged++;
+            return false;
+        }
+
+        if (hasPosted && nowMillis - lastPostMillis < MIN_POST_INTERVAL_MS) {
+            skippedThrottled++;
+            return false;
+        }
+
+        // Format hanya saat benar-benar di-post
+        String text = String.format(Locale.US, "%.1f km/h | %.2f km",
+                speedTenths / 10f, distanceHundredths / 100.0);
+        if (manager != null) {
+            manager.notify(notificationId, builder.setContentText(text).build());
+        }
+
+        shownSpeedTenths = speedTenths;
+        shownDistanceHundredths = distanceHundredths;
+        lastPostMillis = nowMillis;
+        hasPosted = true;
+        postCount++;
+        return true;
+    }
+
+    // ============================================
+    // STATS
+    // ============================================
+
+    public long getPostCount() {
+        return postCount;
+    }
+
+    public long getSkippedUnchanged() {
+        return skippedUnchanged;
+    }
+
+    public long getSkippedThrottled() {
+        return skippedThrottled;
+    }
+
+    public String getStatsSummary() {
+        return "posted=" + postCount
+                + ", skippedUnchanged=" + skippedUnchanged
+                + ", skippedThrottled=" + skippedThrottled;
+    }
+}
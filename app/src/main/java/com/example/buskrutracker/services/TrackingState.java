@@ -0,0 +1,25 @@
+package com.example.buskrutracker.services;
+
+/**
+ * TrackingState - Snapshot state tracking yang dipublish ke UI (immutable)
+ */
+public final class TrackingState {
+
+    public final double latitude;
+    public final double longitude;
+    public final float speedKmh;
+    public final double distanceKm;
+    public final int updateCount;
+    // Lama perjalanan sejak startTime service (bukan dari jumlah update, cadence-nya adaptif)
+    public final long elapsedMillis;
+
+    public TrackingState(double latitude, double longitude, float speedKmh,
+                         double distanceKm, int updateCount, long elapsedMillis) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.speedKmh = speedKmh;
+        this.distanceKm = distanceKm;
+        this.updateCount = updateCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.buskrutracker.utils;
+
+import android.os.SystemClock;
+
+/**
+ * Clock - Sumber waktu yang bisa diganti (virtual clock untuk replay / test)
+ */
+public interface Clock {
+
+    /**
+     * Wall clock (epoch millis), pengganti System.currentTimeMillis()
+     */
+    long currentTimeMillis();
+
+    /**
+     * Waktu monotonic sejak boot (millis), pengganti SystemClock.elapsedRealtime()
+     */
+    long elapsedRealtime();
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+}
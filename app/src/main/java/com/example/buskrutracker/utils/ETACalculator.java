@@ -9,8 +9,6 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -29,10 +27,17 @@ public class ETACalculator {
             "https://maps.googleapis.com/maps/api/directions/json";
 
     private final ExecutorService executorService;
+    private final Clock clock;
+
+    // false: Directions API tidak dipanggil, callback langsung onError (fallback manual)
+    private final boolean directionsEnabled;
 
     public interface ETACallback {
+        /**
+         * @param estimatedArrivalMillis Perkiraan waktu tiba (epoch millis)
+         */
         void onETACalculated(double remainingDistanceKm, int remainingTimeMinutes,
-                             String estimatedArrival);
+                             long estimatedArrivalMillis);
         void onError(String error);
     }
 
@@ -40,7 +45,18 @@ public class ETACalculator {
     // CONSTRUCTOR
     // ============================================
     public ETACalculator() {
-        executorService = Executors.newSingleThreadExecutor();
+        this(Clock.SYSTEM, true);
+    }
+
+    /**
+     * @param clock Sumber waktu untuk estimasi waktu tiba
+     * @param directionsEnabled false untuk replay / offline: tanpa request HTTP,
+     *                          hasil selalu dari perhitungan manual (deterministik)
+     */
+    public ETACalculator(Clock clock, boolean directionsEnabled) {
+        this.clock = clock;
+        this.directionsEnabled = directionsEnabled;
+        executorService = directionsEnabled ? Executors.newSingleThreadExecutor() : null;
     }
 
     // ============================================
@@ -59,6 +75,11 @@ public class ETACalculator {
                              double destLat, double destLng,
                              ETACallback callback) {
 
+        if (!directionsEnabled) {
+            callback.onError("Directions API disabled");
+            return;
+        }
+
         executorService.execute(() -> {
             try {
                 // Build URL
@@ -143,15 +164,14 @@ public class ETACalculator {
             int durationMinutes = durationSeconds / 60;
 
             // Calculate estimated arrival time
-            long arrivalTimeMillis = System.currentTimeMillis() + (durationSeconds * 1000L);
-            String estimatedArrival = formatTimestamp(arrivalTimeMillis);
+            long arrivalTimeMillis = clock.currentTimeMillis() + (durationSeconds * 1000L);
 
-            Log.d(TAG, String.format(
-                    "ETA Calculated: %.2f km, %d min, Arrival: %s",
-                    distanceKm, durationMinutes, estimatedArrival
+            Log.d(TAG, String.format(Locale.US,
+                    "ETA Calculated: %.2f km, %d min, Arrival: %d",
+                    distanceKm, durationMinutes, arrivalTimeMillis
             ));
 
-            callback.onETACalculated(distanceKm, durationMinutes, estimatedArrival);
+            callback.onETACalculated(distanceKm, durationMinutes, arrivalTimeMillis);
 
         } catch (Exception e) {
             Log.e(TAG, "Error parsing ETA response: " + e.getMessage());
@@ -174,7 +194,21 @@ public class ETACalculator {
         try {
             // Calculate distance using Haversine formula
             double distance = calculateDistance(currentLat, currentLng, destLat, destLng);
+            calculateETAManual(distance, averageSpeedKmh, callback);
+        } catch (Exception e) {
+            callback.onError("Manual calculation error: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Hitung ETA manual dari sisa jarak yang sudah diketahui
+     * (mis. sisa jarak sepanjang rute dari RouteMatcher)
+     */
+    public void calculateETAManual(double distance,
+                                   float averageSpeedKmh,
+                                   ETACallback callback) {
+
+        try {
             // Calculate time (assuming constant speed)
             if (averageSpeedKmh <= 0) {
                 averageSpeedKmh = 60.0f; // Default 60 km/h
@@ -183,15 +217,14 @@ public class ETACalculator {
             int durationMinutes = (int) ((distance / averageSpeedKmh) * 60);
 
             // Calculate arrival time
-            long arrivalTimeMillis = System.currentTimeMillis() + (durationMinutes * 60000L);
-            String estimatedArrival = formatTimestamp(arrivalTimeMillis);
+            long arrivalTimeMillis = clock.currentTimeMillis() + (durationMinutes * 60000L);
 
             Log.d(TAG, String.format(
                     "Manual ETA: %.2f km, %d min (Speed: %.1f km/h)",
                     distance, durationMinutes, averageSpeedKmh
             ));
 
-            callback.onETACalculated(distance, durationMinutes, estimatedArrival);
+            callback.onETACalculated(distance, durationMinutes, arrivalTimeMillis);
 
         } catch (Exception e) {
             callback.onError("Manual calculation error: " + e.getMessage());
@@ -206,28 +239,12 @@ public class ETACalculator {
      * Returns distance in kilometers
      */
     private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final double R = 6371; // Earth radius in kilometers
-
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return R * c;
+        return GeoMath.haversineMeters(lat1, lon1, lat2, lon2) / 1000.0;
     }
 
     // ============================================
     // HELPER METHODS
     // ============================================
-    private String formatTimestamp(long timestampMillis) {
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-        return sdf.format(new Date(timestampMillis));
-    }
-
     public void shutdown() {
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
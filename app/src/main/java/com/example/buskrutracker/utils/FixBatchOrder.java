@@ -0,0 +1,42 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * FixBatchOrder - Urutkan batch fix GPS dan buang duplikat / fix yang terlambat
+ * Dipakai untuk mode batched delivery (LocationResult berisi banyak fix).
+ */
+public final class FixBatchOrder {
+
+    private FixBatchOrder() {
+    }
+
+    /**
+     * Isi order dengan index fix terurut naik berdasarkan key (elapsedRealtimeNanos),
+     * tanpa key duplikat dan tanpa key <= lastKey (sudah diproses di batch sebelumnya).
+     * Insertion sort: batch kecil dan biasanya sudah hampir terurut, tanpa alokasi.
+     *
+     * @return Jumlah index valid di order
+     */
+    public static int sortAndDedup(long[] keys, int count, long lastKey, int[] order) {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            if (key <= lastKey) {
+                continue;
+            }
+
+            int pos = size;
+            while (pos > 0 && keys[order[pos - 1]] > key) {
+                pos--;
+            }
+            if (pos > 0 && keys[order[pos - 1]] == key) {
+                // Duplikat
+                continue;
+            }
+
+            System.arraycopy(order, pos, order, pos + 1, size - pos);
+            order[pos] = i;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * GeoMath - Kernel jarak & proyeksi lokal yang dipakai bersama
+ *
+ * - haversineMeters: akurat untuk semua jarak (model bola)
+ * - equirectangularMeters: jalur cepat (1 cos, 1 sqrt, tanpa trig lain). Terhadap
+ *   haversine, error relatif < 0.05% untuk jarak <= EQUIRECT_MAX_DISTANCE_M pada
+ *   |lat| <= 70 derajat (lihat GeoMathTest). Cukup untuk langkah antar fix GPS.
+ * - LocalProjection: proyeksi ENU (timur, utara) sekitar origin tetap, dibuat sekali
+ *   per rute. Setelah diproyeksikan, jarak, cross-track, dan segmen terdekat cukup
+ *   dihitung dengan double planar.
+ */
+public final class GeoMath {
+
+    public static final double EARTH_RADIUS_M = 6371008.8;
+    public static final double DEG_TO_RAD = Math.PI / 180.0;
+    public static final double METERS_PER_DEG_LAT = EARTH_RADIUS_M * DEG_TO_RAD;
+
+    // Batas jarak (per sumbu, meter) agar fastDistanceMeters memakai equirectangular
+    public static final double EQUIRECT_MAX_DISTANCE_M = 20000.0;
+    private static final double EQUIRECT_MAX_DEG = EQUIRECT_MAX_DISTANCE_M / METERS_PER_DEG_LAT;
+
+    private GeoMath() {
+    }
+
+    // ============================================
+    // DISTANCE KERNELS
+    // ============================================
+
+    /**
+     * Jarak great-circle (meter), formula haversine
+     */
+    public static double haversineMeters(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = lat1 * DEG_TO_RAD;
+        double phi2 = lat2 * DEG_TO_RAD;
+        double sinDLat = Math.sin((phi2 - phi1) * 0.5);
+        double sinDLng = Math.sin((lng2 - lng1) * DEG_TO_RAD * 0.5);
+
+        double a = sinDLat * sinDLat + Math.cos(phi1) * Math.cos(phi2) * sinDLng * sinDLng;
+        return 2 * EARTH_RADIUS_M * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Jarak equirectangular (meter) dengan cos lintang rata-rata.
+     * Hanya untuk jarak pendek; lihat batas error di atas.
+     */
+    public static double equirectangularMeters(double lat1, double lng1, double lat2, double lng2) {
+        double x = (lng2 - lng1) * Math.cos((lat1 + lat2) * 0.5 * DEG_TO_RAD);
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEG_LAT;
+    }
+
+    /**
+     * Equirectangular jika kedua titik berdekatan, selain itu haversine
+     */
+    public static double fastDistanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        if (Math.abs(lat2 - lat1) < EQUIRECT_MAX_DEG && Math.abs(lng2 - lng1) < EQUIRECT_MAX_DEG) {
+            return equirectangularMeters(lat1, lng1, lat2, lng2);
+        }
+        return haversineMeters(lat1, lng1, lat2, lng2);
+    }
+
+    public static double metersPerDegLng(double lat) {
+        return METERS_PER_DEG_LAT * Math.cos(lat * DEG_TO_RAD);
+    }
+
+    // ============================================
+    // PLANAR HELPERS (koordinat meter lokal)
+    // ============================================
+
+    /**
+     * Parameter t (0..1) titik terdekat pada segmen A-B terhadap P
+     */
+    public static double closestT(double px, double py,
+                                  double ax, double ay, double bx, double by) {
+        double ex = bx - ax;
+        double ey = by - ay;
+        double lengthSq = ex * ex + ey * ey;
+        if (lengthSq <= 0) {
+            return 0;
+        }
+        double t = ((px - ax) * ex + (py - ay) * ey) / lengthSq;
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+
+    /**
+     * Jarak P ke segmen A-B (cross-track, di-clamp ke ujung segmen)
+     */
+    public static double distanceToSegment(double px, double py,
+                                           double ax, double ay, double bx, double by) {
+        double t = closestT(px, py, ax, ay, bx, by);
+        double dx = px - (ax + t * (bx - ax));
+        double dy = py - (ay + t * (by - ay));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // ============================================
+    // LOCAL PROJECTION
+    // ============================================
+
+    /**
+     * Proyeksi ENU lokal (x = timur, y = utara, meter) sekitar origin tetap.
+     * cos(lat origin) dihitung sekali; project/unproject hanya perkalian.
+     */
+    public static final class LocalProjection {
+
+        public final double originLat;
+        public final double originLng;
+        public final double metersPerDegLng;
+
+        public LocalProjection(double originLat, double originLng) {
+            this.originLat = originLat;
+            this.originLng = originLng;
+            this.metersPerDegLng = metersPerDegLng(originLat);
+        }
+
+        public double x(double lng) {
+            return (lng - originLng) * metersPerDegLng;
+        }
+
+        public double y(double lat) {
+            return (lat - originLat) * METERS_PER_DEG_LAT;
+        }
+
+        public double lng(double x) {
+            return originLng + x / metersPerDegLng;
+        }
+
+        public double lat(double y) {
+            return originLat + y / METERS_PER_DEG_LAT;
+        }
+
+        /**
+         * Jarak planar dua titik lat/lng (meter)
+         */
+        public double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+            double dx = (lng2 - lng1) * metersPerDegLng;
+            double dy = (lat2 - lat1) * METERS_PER_DEG_LAT;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+}
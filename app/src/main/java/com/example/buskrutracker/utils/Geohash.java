@@ -0,0 +1,61 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * Geohash - Encode koordinat ke string geohash (base32) untuk index spasial berbasis prefix
+ *
+ * Presisi 5 karakter ~4.9 x 4.9 km, 6 karakter ~1.2 x 0.6 km. Cell yang berbagi prefix
+ * berdekatan, sehingga query rentang key (startAt(prefix) / endAt(prefix + "~")) cukup
+ * untuk mencari bus di sekitar.
+ */
+public final class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be 1.." + MAX_PRECISION);
+        }
+
+        double latMin = -90, latMax = 90;
+        double lngMin = -180, lngMax = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true; // bit genap = longitude
+        int bit = 0;
+        int index = 0;
+
+        for (int i = 0; i < precision; ) {
+            if (evenBit) {
+                double mid = (lngMin + lngMax) / 2;
+                if (longitude >= mid) {
+                    index = (index << 1) | 1;
+                    lngMin = mid;
+                } else {
+                    index <<= 1;
+                    lngMax = mid;
+                }
+            } else {
+                double mid = (latMin + latMax) / 2;
+                if (latitude >= mid) {
+                    index = (index << 1) | 1;
+                    latMin = mid;
+                } else {
+                    index <<= 1;
+                    latMax = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash[i++] = BASE32[index];
+                bit = 0;
+                index = 0;
+            }
+        }
+        return new String(hash);
+    }
+}
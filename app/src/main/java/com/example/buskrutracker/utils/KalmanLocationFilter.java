@@ -0,0 +1,240 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * KalmanLocationFilter - Filter Kalman constant-velocity untuk fix GPS
+ *
+ * State per sumbu (timur, utara) dalam meter relatif terhadap fix pertama:
+ * posisi + kecepatan. Karena noise proses dan noise ukur isotropik, kedua sumbu
+ * memakai kovarians 2x2 yang sama sehingga cukup disimpan sebagai 3 double.
+ * Tidak ada alokasi per fix.
+ *
+ * Fix ditimbang dengan akurasi yang dilaporkan (R = accuracy^2). Lompatan yang
+ * secara fisik tidak mungkin untuk bus (kecepatan implisit > MAX_SPEED_MPS) ditolak.
+ */
+public class KalmanLocationFilter {
+
+    // Noise akselerasi proses (m/s^2)
+    static final double ACCEL_NOISE_MPS2 = 1.5;
+
+    // Kecepatan maksimum yang masuk akal untuk bus (~160 km/h)
+    static final double MAX_SPEED_MPS = 45.0;
+
+    // Fix dengan akurasi lebih buruk dari ini tidak dipakai sama sekali
+    static final float MAX_ACCURACY_M = 200f;
+
+    // Setelah sekian penolakan beruntun / gap panjang, filter di-reset ke fix baru
+    static final int MAX_CONSECUTIVE_REJECTS = 5;
+    static final long MAX_GAP_MS = 120000;
+
+    private static final double INITIAL_VELOCITY_VAR = 25.0 * 25.0;
+    private static final float MIN_ACCURACY_M = 1f;
+
+    private boolean initialized;
+    private int consecutiveRejects;
+
+    // Origin proyeksi lokal
+    private double originLat;
+    private double originLng;
+    private double metersPerDegLat;
+    private double metersPerDegLng;
+
+    // State
+    private long lastTimeMillis;
+    private double x, y, vx, vy;
+
+    // Kovarians bersama per sumbu: [[pp, pv], [pv, vv]]
+    private double pp, pv, vv;
+
+    private long acceptedCount;
+    private long rejectedCount;
+
+    // ============================================
+    // UPDATE
+    // ============================================
+
+    /**
+     * Proses satu fix GPS
+     *
+     * @return true jika fix diterima dan state diperbarui
+     */
+    public boolean update(long timeMillis, double lat, double lng, float accuracy) {
+        if (Double.isNaN(lat) || Double.isNaN(lng) || accuracy > MAX_ACCURACY_M) {
+            rejectedCount++;
+            return false;
+        }
+
+        float acc = Math.max(accuracy, MIN_ACCURACY_M);
+
+        if (!initialized) {
+            initialize(timeMillis, lat, lng, acc);
+            return true;
+        }
+
+        long dtMillis = timeMillis - lastTimeMillis;
+        if (dtMillis <= 0) {
+            // Duplikat atau fix mundur
+            rejectedCount++;
+            return false;
+        }
+
+        if (dtMillis > MAX_GAP_MS) {
+            reinitialize(timeMillis, lat, lng, acc);
+            return true;
+        }
+
+        double dt = dtMillis / 1000.0;
+        double zx = (lng - originLng) * metersPerDegLng;
+        double zy = (lat - originLat) * metersPerDegLat;
+
+        // Gate: jarak dari posisi terakhir dibanding jarak maksimum yang mungkin
+        double dx = zx - x;
+        double dy = zy - y;
+        double reach = MAX_SPEED_MPS * dt + acc + Math.sqrt(pp);
+        if (dx * dx + dy * dy > reach * reach) {
+            rejectedCount++;
+            if (++consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+                // Kemungkinan filter yang salah, bukan fix-nya
+                reinitialize(timeMillis, lat, lng, acc);
+                return true;
+            }
+            return false;
+        }
+
+        predict(dt);
+        correct(zx, zy, (double) acc * acc);
+
+        lastTimeMillis = timeMillis;
+        consecutiveRejects = 0;
+        acceptedCount++;
+        return true;
+    }
+
+    public void reset() {
+        initialized = false;
+        consecutiveRejects = 0;
+        acceptedCount = 0;
+        rejectedCount = 0;
+    }
+
+    // ============================================
+    // OUTPUT
+    // ============================================
+
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    public double getLatitude() {
+        return originLat + y / metersPerDegLat;
+    }
+
+    public double getLongitude() {
+        return originLng + x / metersPerDegLng;
+    }
+
+    public double getSpeedMps() {
+        return Math.sqrt(vx * vx + vy * vy);
+    }
+
+    public float getSpeedKmh() {
+        return (float) (getSpeedMps() * 3.6);
+    }
+
+    /**
+     * Heading dalam derajat (0 = utara, searah jarum jam)
+     */
+    public float getBearing() {
+        double bearing = Math.atan2(vx, vy) / GeoMath.DEG_TO_RAD;
+        return (float) (bearing < 0 ? bearing + 360.0 : bearing);
+    }
+
+    /**
+     * Estimasi standar deviasi posisi (meter)
+     */
+    public float getHorizontalAccuracy() {
+        return (float) Math.sqrt(pp);
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    // ============================================
+    // KALMAN STEPS
+    // ============================================
+
+    private void predict(double dt) {
+        x += vx * dt;
+        y += vy * dt;
+
+        double q = ACCEL_NOISE_MPS2 * ACCEL_NOISE_MPS2;
+        double dt2 = dt * dt;
+        double dt3 = dt2 * dt;
+        double dt4 = dt3 * dt;
+
+        double newPp = pp + 2 * dt * pv + dt2 * vv + q * dt4 / 4;
+        double newPv = pv + dt * vv + q * dt3 / 2;
+        double newVv = vv + q * dt2;
+
+        pp = newPp;
+        pv = newPv;
+        vv = newVv;
+    }
+
+    private void correct(double zx, double zy, double r) {
+        double s = pp + r;
+        double kp = pp / s;
+        double kv = pv / s;
+
+        double ix = zx - x;
+        double iy = zy - y;
+
+        x += kp * ix;
+        y += kp * iy;
+        vx += kv * ix;
+        vy += kv * iy;
+
+        double newPp = (1 - kp) * pp;
+        double newPv = (1 - kp) * pv;
+        double newVv = vv - kv * pv;
+
+        pp = newPp;
+        pv = newPv;
+        vv = newVv;
+    }
+
+    private void initialize(long timeMillis, double lat, double lng, float acc) {
+        originLat = lat;
+        originLng = lng;
+        metersPerDegLat = GeoMath.METERS_PER_DEG_LAT;
+        metersPerDegLng = GeoMath.metersPerDegLng(lat);
+
+        initialized = true;
+        acceptedCount++;
+        resetState(timeMillis, 0, 0, acc);
+    }
+
+    private void reinitialize(long timeMillis, double lat, double lng, float acc) {
+        acceptedCount++;
+        resetState(timeMillis,
+                (lng - originLng) * metersPerDegLng,
+                (lat - originLat) * metersPerDegLat,
+                acc);
+    }
+
+    private void resetState(long timeMillis, double px, double py, float acc) {
+        x = px;
+        y = py;
+        vx = 0;
+        vy = 0;
+        pp = (double) acc * acc;
+        pv = 0;
+        vv = INITIAL_VELOCITY_VAR;
+        lastTimeMillis = timeMillis;
+        consecutiveRejects = 0;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.buskrutracker.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * LatencyHistogram - Histogram latensi (ms) dengan bucket log-linear, ukuran tetap
+ *
+ * Nilai < 64 ms disimpan tepat; di atasnya setiap rentang pangkat dua dibagi 32 bucket,
+ * sehingga error relatif persentil <= ~3%. Tidak thread-safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;   // 32
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;       // 64
+    // Sampai 2^31 ms (~24 hari); lebih besar masuk bucket terakhir
+    private static final int MAX_EXPONENT = 31;
+    private static final int BUCKET_COUNT =
+            LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long max;
+    private long failures;
+    private long inFlightAtDisconnect;
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long millis) {
+        if (millis < 0) millis = 0;
+        counts[bucketOf(millis)]++;
+        count++;
+        sum += millis;
+        if (millis > max) max = millis;
+    }
+
+    public void recordFailure() {
+        failures++;
+    }
+
+    public void recordInFlightAtDisconnect(int writes) {
+        inFlightAtDisconnect += writes;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getInFlightAtDisconnect() {
+        return inFlightAtDisconnect;
+    }
+
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * Persentil (0-100); batas atas bucket, tidak pernah melebihi max
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+        failures = 0;
+        inFlightAtDisconnect = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: n=%d p50=%d p95=%d p99=%d max=%d ms, failed=%d, in-flight at disconnect=%d",
+                name, count, getPercentile(50), getPercentile(95), getPercentile(99), max,
+                failures, inFlightAtDisconnect);
+    }
+
+    // ============================================
+    // BUCKET
+    // ============================================
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);   // >= 6
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+
+        int offset = bucket - LINEAR_LIMIT;
+        int exponent = offset / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int sub = offset % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
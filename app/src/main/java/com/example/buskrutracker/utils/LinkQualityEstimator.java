@@ -0,0 +1,183 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * LinkQualityEstimator - Perkiraan kualitas koneksi dari RTT & kegagalan write terakhir
+ *
+ * RTT dan rasio gagal dihaluskan dengan EWMA; satu sampel RTT dibatasi maksimal
+ * MAX_RTT_STEP x estimasi saat ini agar satu write yang tersangkut tidak mendominasi. Level hanya berubah satu tingkat per langkah
+ * dan butuh beberapa sampel berturut-turut (turun lebih cepat dari naik), sehingga interval
+ * upload tidak naik-turun pada setiap write yang lambat.
+ *
+ * Hint jaringan (opsional, dari ConnectivityManager): bandwidth downstream rendah membatasi
+ * level terbaik ke FAIR; koneksi metered membuat payload ramping sejak FAIR.
+ * Tidak thread-safe.
+ */
+public class LinkQualityEstimator {
+
+    public enum Level {
+        GOOD(1), FAIR(2), POOR(4);
+
+        /**
+         * Pengali interval upload terhadap interval dasar
+         */
+        public final int intervalMultiplier;
+
+        Level(int intervalMultiplier) {
+            this.intervalMultiplier = intervalMultiplier;
+        }
+    }
+
+    // Batas level (ms RTT, rasio gagal)
+    static final double GOOD_MAX_RTT_MS = 800;
+    static final double POOR_MIN_RTT_MS = 2500;
+    static final double GOOD_MAX_FAILURE = 0.15;
+    static final double POOR_MIN_FAILURE = 0.3;
+
+    // Bandwidth di bawah ini (kbps) tidak pernah dianggap GOOD
+    static final int SLOW_LINK_KBPS = 150;
+
+    // Sampel berturut-turut sebelum level berubah
+    static final int DEGRADE_SAMPLES = 3;
+    static final int RECOVER_SAMPLES = 8;
+
+    private static final double RTT_ALPHA = 0.2;
+    private static final double FAILURE_ALPHA = 0.1;
+    private static final double MAX_RTT_STEP = 4;
+
+    private double rttMs = -1;
+    private double failureRate;
+    private Level level = Level.GOOD;
+    private int worseStreak;
+    private int betterStreak;
+    private long levelChanges;
+
+    private boolean metered;
+    private int downstreamKbps;
+
+    // ============================================
+    // SAMPLES
+    // ============================================
+
+    /**
+     * Write berhasil di-ack setelah rttMillis
+     *
+     * @return true jika level berubah
+     */
+    public boolean onRoundTrip(long rttMillis) {
+        if (rttMs < 0) {
+            rttMs = rttMillis;
+        } else {
+            double sample = Math.min(rttMillis, rttMs * MAX_RTT_STEP);
+            rttMs += RTT_ALPHA * (sample - rttMs);
+        }
+        failureRate += FAILURE_ALPHA * (0 - failureRate);
+        return evaluate();
+    }
+
+    /**
+     * Write gagal
+     *
+     * @return true jika level berubah
+     */
+    public boolean onFailure() {
+        failureRate += FAILURE_ALPHA * (1 - failureRate);
+        return evaluate();
+    }
+
+    /**
+     * Hint dari ConnectivityManager (downstreamKbps <= 0: tidak diketahui)
+     *
+     * @return true jika level berubah
+     */
+    public boolean setNetworkHint(boolean metered, int downstreamKbps) {
+        this.metered = metered;
+        this.downstreamKbps = downstreamKbps;
+        if (isSlowLink() && level == Level.GOOD) {
+            changeLevel(Level.FAIR);
+            return true;
+        }
+        return false;
+    }
+
+    // ============================================
+    // OUTPUT
+    // ============================================
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public int getIntervalMultiplier() {
+        return level.intervalMultiplier;
+    }
+
+    /**
+     * Payload tanpa field tambahan (trail, ETA): POOR, atau FAIR pada koneksi metered
+     */
+    public boolean isLeanPayload() {
+        return level == Level.POOR || (metered && level == Level.FAIR);
+    }
+
+    public double getRttMillis() {
+        return rttMs;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public long getLevelChanges() {
+        return levelChanges;
+    }
+
+    // ============================================
+    // LEVEL
+    // ============================================
+
+    private boolean evaluate() {
+        Level target = classify();
+        if (target.ordinal() > level.ordinal()) {
+            betterStreak = 0;
+            if (++worseStreak >= DEGRADE_SAMPLES) {
+                changeLevel(Level.values()[level.ordinal() + 1]);
+                return true;
+            }
+        } else if (target.ordinal() < level.ordinal()) {
+            worseStreak = 0;
+            if (++betterStreak >= RECOVER_SAMPLES) {
+                changeLevel(Level.values()[level.ordinal() - 1]);
+                return true;
+            }
+        } else {
+            worseStreak = 0;
+            betterStreak = 0;
+        }
+        return false;
+    }
+
+    private Level classify() {
+        Level target;
+        if (rttMs > POOR_MIN_RTT_MS || failureRate > POOR_MIN_FAILURE) {
+            target = Level.POOR;
+        } else if (rttMs > GOOD_MAX_RTT_MS || failureRate > GOOD_MAX_FAILURE) {
+            target = Level.FAIR;
+        } else {
+            target = Level.GOOD;
+        }
+        if (target == Level.GOOD && isSlowLink()) {
+            target = Level.FAIR;
+        }
+        return target;
+    }
+
+    private boolean isSlowLink() {
+        return downstreamKbps > 0 && downstreamKbps < SLOW_LINK_KBPS;
+    }
+
+    private void changeLevel(Level next) {
+        level = next;
+        worseStreak = 0;
+        betterStreak = 0;
+        levelChanges++;
+    }
+}
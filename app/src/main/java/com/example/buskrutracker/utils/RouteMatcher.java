@@ -0,0 +1,418 @@
+package com.example.buskrutracker.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RouteMatcher - Map-matching HMM streaming terhadap polyline rute
+ *
+ * Hidden state = segmen polyline. Emission: Gaussian jarak tegak lurus fix ke segmen
+ * (sigma dari akurasi). Transition: selisih jarak sepanjang rute vs jarak lurus antar
+ * fix (Newson & Krumm), plus penalti untuk gerak mundur di rute.
+ *
+ * Viterbi berjalan online dengan fixed lag: kandidat + back-pointer MATCH_LAG fix terakhir
+ * disimpan di ring. Ada dua output:
+ * - live (getSnapped*, getSegmentIndex, getProgressMeters): kandidat terbaik fix terbaru,
+ *   untuk posisi yang dipublish dan ETA
+ * - committed (getCommitted*): keputusan pada fix MATCH_LAG langkah di belakang (telusur
+ *   balik dari kandidat terbaik saat ini), untuk akumulasi jarak. Satu fix noisy di dekat
+ *   jalur paralel tidak ikut dihitung; fix berikutnya yang menentukan.
+ * Saat keluar rute atau flush(), keputusan live di-commit agar jarak window tidak hilang.
+ * Memori tetap konstan dan tidak ada alokasi per fix. Kandidat dicari lewat grid index segmen.
+ */
+public class RouteMatcher {
+
+    static final int MAX_CANDIDATES = 8;
+    // Jumlah fix di belakang fix terbaru tempat keputusan committed diambil
+    public static final int MATCH_LAG = 5;
+    static final double CELL_SIZE_M = 250.0;
+    static final double MIN_SEARCH_RADIUS_M = 50.0;
+    static final double MAX_SEARCH_RADIUS_M = 200.0;
+    static final double MIN_SIGMA_M = 5.0;
+
+    // Skala transisi (meter) dan toleransi mundur (noise di tempat)
+    static final double TRANSITION_BETA_M = 20.0;
+    static final double BACKWARD_TOLERANCE_M = 30.0;
+
+    // Geometri rute dalam meter lokal (proyeksi ENU sekali per rute)
+    private final GeoMath.LocalProjection projection;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] cumulative;
+    private final int segmentCount;
+
+    // Grid index (CSR): segmen per cell
+    private final double minX;
+    private final double minY;
+    private final int cols;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellSegments;
+    private final int[] visitedStamp;
+    private int stamp;
+
+    // Ring kolom Viterbi (lag + 1 fix terakhir): kandidat dan back-pointer ke kolom sebelumnya
+    private final int lag;
+    private final int[][] colSegment;
+    private final double[][] colT;
+    private final double[][] colProgress;
+    private final int[][] colBack;
+    private int head = -1;
+    private int columns;
+
+    // Skor kolom sebelumnya
+    private final double[] prevScore = new double[MAX_CANDIDATES];
+    private int prevCount;
+    private double prevX;
+    private double prevY;
+
+    // Kolom Viterbi saat ini
+    private final int[] candSegment = new int[MAX_CANDIDATES];
+    private final double[] candT = new double[MAX_CANDIDATES];
+    private final double[] candDistance = new double[MAX_CANDIDATES];
+    private final double[] candProgress = new double[MAX_CANDIDATES];
+    private final double[] candScore = new double[MAX_CANDIDATES];
+    private final int[] candBack = new int[MAX_CANDIDATES];
+    private int candCount;
+
+    // Hasil live (fix terbaru)
+    private boolean matched;
+    private int matchedSegment = -1;
+    private double matchedX;
+    private double matchedY;
+    private double matchedProgress;
+
+    // Hasil committed (fix lag langkah di belakang, atau hasil live terakhir setelah flush)
+    private int committedSegment = -1;
+    private double committedProgress;
+
+    // ============================================
+    // CONSTRUCTOR
+    // ============================================
+
+    public static RouteMatcher fromPolyline(List<LatLng> points) {
+        double[] lats = new double[points.size()];
+        double[] lngs = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            lats[i] = points.get(i).latitude;
+            lngs[i] = points.get(i).longitude;
+        }
+        return new RouteMatcher(lats, lngs);
+    }
+
+    public RouteMatcher(double[] lats, double[] lngs) {
+        this(lats, lngs, MATCH_LAG);
+    }
+
+    /**
+     * @param lag jumlah fix di belakang fix terbaru tempat keputusan di-commit (0 = greedy)
+     */
+    public RouteMatcher(double[] lats, double[] lngs, int lag) {
+        if (lats.length < 2 || lats.length != lngs.length) {
+            throw new IllegalArgumentException("Route needs at least 2 points");
+        }
+        if (lag < 0) {
+            throw new IllegalArgumentException("lag must be >= 0");
+        }
+        this.lag = lag;
+        colSegment = new int[lag + 1][MAX_CANDIDATES];
+        colT = new double[lag + 1][MAX_CANDIDATES];
+        colProgress = new double[lag + 1][MAX_CANDIDATES];
+        colBack = new int[lag + 1][MAX_CANDIDATES];
+
+        int n = lats.length;
+        projection = new GeoMath.LocalProjection(lats[0], lngs[0]);
+
+        xs = new double[n];
+        ys = new double[n];
+        cumulative = new double[n];
+        double bx0 = Double.MAX_VALUE, by0 = Double.MAX_VALUE;
+        double bx1 = -Double.MAX_VALUE, by1 = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            xs[i] = projection.x(lngs[i]);
+            ys[i] = projection.y(lats[i]);
+            if (i > 0) {
+                cumulative[i] = cumulative[i - 1] + Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+            }
+            bx0 = Math.min(bx0, xs[i]);
+            by0 = Math.min(by0, ys[i]);
+            bx1 = Math.max(bx1, xs[i]);
+            by1 = Math.max(by1, ys[i]);
+        }
+        segmentCount = n - 1;
+
+        minX = bx0 - MAX_SEARCH_RADIUS_M;
+        minY = by0 - MAX_SEARCH_RADIUS_M;
+        cols = (int) ((bx1 + MAX_SEARCH_RADIUS_M - minX) / CELL_SIZE_M) + 1;
+        rows = (int) ((by1 + MAX_SEARCH_RADIUS_M - minY) / CELL_SIZE_M) + 1;
+
+        // Pass 1: hitung jumlah segmen per cell, pass 2: isi
+        cellStart = new int[cols * rows + 1];
+        for (int s = 0; s < segmentCount; s++) {
+            forEachCell(s, null);
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellSegments = new int[cellStart[cols * rows]];
+        int[] fill = new int[cols * rows];
+        for (int s = 0; s < segmentCount; s++) {
+            forEachCell(s, fill);
+        }
+
+        visitedStamp = new int[segmentCount];
+    }
+
+    // ============================================
+    // MATCH
+    // ============================================
+
+    /**
+     * Proses satu fix. Output live mengacu ke fix ini; output committed ke fix {@code lag}
+     * langkah di belakang, atau fix pertama sejak (re)start jika belum ada sebanyak itu.
+     * Jika fix di luar rute, window di-flush dulu lalu HMM mulai ulang di fix berikutnya.
+     *
+     * @return true jika fix berhasil di-snap ke rute
+     */
+    public boolean match(double lat, double lng, float accuracy) {
+        double px = projection.x(lng);
+        double py = projection.y(lat);
+        double sigma = Math.max(accuracy, MIN_SIGMA_M);
+        double radius = Math.min(Math.max(3 * sigma, MIN_SEARCH_RADIUS_M), MAX_SEARCH_RADIUS_M);
+
+        collectCandidates(px, py, radius);
+
+        if (candCount == 0) {
+            // Keluar rute: commit sisa window, mulai ulang HMM pada fix berikutnya
+            flush();
+            matched = false;
+            prevCount = 0;
+            columns = 0;
+            return false;
+        }
+
+        double straight = Math.hypot(px - prevX, py - prevY);
+        int best = 0;
+        for (int j = 0; j < candCount; j++) {
+            double z = candDistance[j] / sigma;
+            double emission = -0.5 * z * z;
+
+            double transition = 0;
+            candBack[j] = -1;
+            if (prevCount > 0) {
+                double[] prevProgress = colProgress[head];
+                transition = -Double.MAX_VALUE;
+                for (int i = 0; i < prevCount; i++) {
+                    double along = candProgress[j] - prevProgress[i];
+                    double cost = Math.abs(along - straight);
+                    if (along < -BACKWARD_TOLERANCE_M) {
+                        cost += -along;
+                    }
+                    double score = prevScore[i] - cost / TRANSITION_BETA_M;
+                    if (score > transition) {
+                        transition = score;
+                        candBack[j] = i;
+                    }
+                }
+            }
+
+            candScore[j] = emission + transition;
+            if (candScore[j] > candScore[best]) {
+                best = j;
+            }
+        }
+
+        // Simpan kolom ini ke ring (skor dinormalisasi agar tidak drift)
+        head = (head + 1) % (lag + 1);
+        columns = Math.min(columns + 1, lag + 1);
+        double top = candScore[best];
+        for (int j = 0; j < candCount; j++) {
+            colSegment[head][j] = candSegment[j];
+            colT[head][j] = candT[j];
+            colProgress[head][j] = candProgress[j];
+            colBack[head][j] = candBack[j];
+            prevScore[j] = candScore[j] - top;
+        }
+        prevCount = candCount;
+        prevX = px;
+        prevY = py;
+
+        int segment = candSegment[best];
+        double t = candT[best];
+        matched = true;
+        matchedSegment = segment;
+        matchedX = xs[segment] + t * (xs[segment + 1] - xs[segment]);
+        matchedY = ys[segment] + t * (ys[segment + 1] - ys[segment]);
+        matchedProgress = candProgress[best];
+
+        // Telusur balik jalur terbaik ke kolom tertua di ring, commit keputusan di sana
+        int column = head;
+        int k = best;
+        for (int step = 1; step < columns; step++) {
+            k = colBack[column][k];
+            column = (column + lag) % (lag + 1);
+        }
+        committedSegment = colSegment[column][k];
+        committedProgress = colProgress[column][k];
+        return true;
+    }
+
+    /**
+     * Commit hasil live fix terakhir (keluar rute / tracking berhenti): progress committed
+     * menyusul ke fix terbaru. Tidak mengubah window; no-op jika belum ada fix ter-snap.
+     */
+    public void flush() {
+        if (!matched) return;
+        committedSegment = matchedSegment;
+        committedProgress = matchedProgress;
+    }
+
+    public void reset() {
+        prevCount = 0;
+        columns = 0;
+        matched = false;
+        matchedSegment = -1;
+        committedSegment = -1;
+        committedProgress = 0;
+    }
+
+    // ============================================
+    // OUTPUT
+    // ============================================
+
+    public boolean isMatched() {
+        return matched;
+    }
+
+    public int getSegmentIndex() {
+        return matched ? matchedSegment : -1;
+    }
+
+    public double getSnappedLatitude() {
+        return projection.lat(matchedY);
+    }
+
+    public double getSnappedLongitude() {
+        return projection.lng(matchedX);
+    }
+
+    /**
+     * Jarak sepanjang rute dari titik awal ke posisi ter-snap (meter)
+     */
+    public double getProgressMeters() {
+        return matchedProgress;
+    }
+
+    public double getRemainingMeters() {
+        return cumulative[segmentCount] - matchedProgress;
+    }
+
+    /**
+     * Segmen keputusan committed (lag), -1 jika belum pernah ada fix ter-snap
+     */
+    public int getCommittedSegmentIndex() {
+        return committedSegment;
+    }
+
+    /**
+     * Progress keputusan committed (meter); selisihnya antar fix dipakai untuk jarak tempuh
+     */
+    public double getCommittedProgressMeters() {
+        return committedProgress;
+    }
+
+    public double getRouteLengthMeters() {
+        return cumulative[segmentCount];
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Proyeksi lokal rute, untuk perhitungan planar lain terhadap rute yang sama
+     */
+    public GeoMath.LocalProjection getProjection() {
+        return projection;
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private void collectCandidates(double px, double py, double radius) {
+        candCount = 0;
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visitedStamp, 0);
+            stamp = 1;
+        }
+
+        int c0 = clamp((int) ((px - radius - minX) / CELL_SIZE_M), cols);
+        int c1 = clamp((int) ((px + radius - minX) / CELL_SIZE_M), cols);
+        int r0 = clamp((int) ((py - radius - minY) / CELL_SIZE_M), rows);
+        int r1 = clamp((int) ((py + radius - minY) / CELL_SIZE_M), rows);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int s = cellSegments[k];
+                    if (visitedStamp[s] == stamp) continue;
+                    visitedStamp[s] = stamp;
+                    considerSegment(s, px, py, radius);
+                }
+            }
+        }
+    }
+
+    /**
+     * Simpan segmen sebagai kandidat jika dalam radius; buang yang terjauh saat penuh
+     */
+    private void considerSegment(int s, double px, double py, double radius) {
+        double t = GeoMath.closestT(px, py, xs[s], ys[s], xs[s + 1], ys[s + 1]);
+        double dx = px - (xs[s] + t * (xs[s + 1] - xs[s]));
+        double dy = py - (ys[s] + t * (ys[s + 1] - ys[s]));
+        double d = Math.sqrt(dx * dx + dy * dy);
+        if (d > radius) return;
+
+        int slot;
+        if (candCount < MAX_CANDIDATES) {
+            slot = candCount++;
+        } else {
+            slot = 0;
+            for (int i = 1; i < MAX_CANDIDATES; i++) {
+                if (candDistance[i] > candDistance[slot]) slot = i;
+            }
+            if (candDistance[slot] <= d) return;
+        }
+
+        candSegment[slot] = s;
+        candT[slot] = t;
+        candDistance[slot] = d;
+        candProgress[slot] = cumulative[s] + t * (cumulative[s + 1] - cumulative[s]);
+    }
+
+    private void forEachCell(int s, int[] fill) {
+        int c0 = clamp((int) ((Math.min(xs[s], xs[s + 1]) - minX) / CELL_SIZE_M), cols);
+        int c1 = clamp((int) ((Math.max(xs[s], xs[s + 1]) - minX) / CELL_SIZE_M), cols);
+        int r0 = clamp((int) ((Math.min(ys[s], ys[s + 1]) - minY) / CELL_SIZE_M), rows);
+        int r1 = clamp((int) ((Math.max(ys[s], ys[s + 1]) - minY) / CELL_SIZE_M), rows);
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                if (fill == null) {
+                    cellStart[cell + 1]++;
+                } else {
+                    cellSegments[cellStart[cell] + fill[cell]++] = s;
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : (value >= size ? size - 1 : value);
+    }
+}
@@ -18,6 +18,9 @@ public class SharedPrefManager {
     private static final String KEY_PERJALANAN_ID = "perjalanan_id";
     private static final String KEY_IS_TRACKING = "is_tracking";
     private static final String KEY_IS_LOGGED_IN = "is_logged_in";
+    private static final String KEY_MQTT_HOST = "mqtt_host";
+    private static final String KEY_MQTT_PORT = "mqtt_port";
+    private static final int DEFAULT_MQTT_PORT = 1883;
 
     private static SharedPrefManager instance;
     private final SharedPreferences sharedPreferences;
@@ -189,6 +192,27 @@ public class SharedPrefManager {
         return sharedPreferences.getBoolean(KEY_IS_TRACKING, false);
     }
 
+    // ============================================
+    // MQTT TELEMETRY
+    // ============================================
+
+    /**
+     * Broker MQTT tujuan telemetry (host null / kosong: MQTT tidak dipakai)
+     */
+    public void setMqttBroker(String host, int port) {
+        editor.putString(KEY_MQTT_HOST, host);
+        editor.putInt(KEY_MQTT_PORT, port);
+        editor.apply();
+    }
+
+    public String getMqttHost() {
+        return sharedPreferences.getString(KEY_MQTT_HOST, null);
+    }
+
+    public int getMqttPort() {
+        return sharedPreferences.getInt(KEY_MQTT_PORT, DEFAULT_MQTT_PORT);
+    }
+
     // ============================================
     // HELPER METHODS
     // ============================================
@@ -0,0 +1,93 @@
+package com.example.buskrutracker.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * TelemetryFrame - Frame lokasi biner ukuran tetap (FRAME_SIZE byte, big-endian)
+ *
+ * Layout:
+ *   0  u8   version (FRAME_VERSION)
+ *   1  u8   flags (bit 0: on route)
+ *   2  u32  seq (naik per frame, wrap)
+ *   6  i64  time (epoch millis)
+ *   14 i32  latitude x 1e7
+ *   18 i32  longitude x 1e7
+ *   22 u16  speed (0.1 km/jam)
+ *   24 u32  totalDistance (meter)
+ *   28 i32  segmentIndex (-1 di luar rute)
+ *   32 u32  routeProgress (meter)
+ *
+ * Presisi 1e-7 derajat (~1 cm) cukup untuk GPS; field dibatasi ke rentangnya masing-masing.
+ */
+public final class TelemetryFrame {
+
+    public static final int FRAME_VERSION = 1;
+    public static final int FRAME_SIZE = 36;
+
+    private static final int FLAG_ON_ROUTE = 1;
+    private static final double COORD_SCALE = 1e7;
+    private static final int MAX_U16 = 0xFFFF;
+    private static final long MAX_U32 = 0xFFFFFFFFL;
+
+    // Hasil decode
+    public int seq;
+    public long time;
+    public double latitude;
+    public double longitude;
+    public float speedKmh;
+    public double totalDistanceKm;
+    public int segmentIndex;
+    public double routeProgressKm;
+
+    /**
+     * Tulis satu frame ke out mulai dari offset
+     */
+    public static void encode(byte[] out, int offset, int seq, long time,
+                              double latitude, double longitude, float speedKmh,
+                              double totalDistanceKm, int segmentIndex, double routeProgressKm) {
+        ByteBuffer buffer = ByteBuffer.wrap(out, offset, FRAME_SIZE).order(ByteOrder.BIG_ENDIAN);
+        buffer.put((byte) FRAME_VERSION);
+        buffer.put((byte) (segmentIndex >= 0 ? FLAG_ON_ROUTE : 0));
+        buffer.putInt(seq);
+        buffer.putLong(time);
+        buffer.putInt((int) Math.round(latitude * COORD_SCALE));
+        buffer.putInt((int) Math.round(longitude * COORD_SCALE));
+        buffer.putShort((short) clamp(Math.round(speedKmh * 10.0), MAX_U16));
+        buffer.putInt((int) clamp(Math.round(totalDistanceKm * 1000.0), MAX_U32));
+        buffer.putInt(segmentIndex);
+        buffer.putInt((int) clamp(Math.round(routeProgressKm * 1000.0), MAX_U32));
+    }
+
+    /**
+     * Baca frame dari in mulai dari offset
+     *
+     * @throws IllegalArgumentException jika panjang / versi tidak cocok
+     */
+    public static TelemetryFrame decode(byte[] in, int offset, int length) {
+        if (length < FRAME_SIZE) {
+            throw new IllegalArgumentException("Frame too short: " + length);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(in, offset, length).order(ByteOrder.BIG_ENDIAN);
+        int version = buffer.get() & 0xFF;
+        if (version != FRAME_VERSION) {
+            throw new IllegalArgumentException("Unsupported frame version: " + version);
+        }
+        buffer.get(); // flags (turunan segmentIndex)
+
+        TelemetryFrame frame = new TelemetryFrame();
+        frame.seq = buffer.getInt();
+        frame.time = buffer.getLong();
+        frame.latitude = buffer.getInt() / COORD_SCALE;
+        frame.longitude = buffer.getInt() / COORD_SCALE;
+        frame.speedKmh = (buffer.getShort() & MAX_U16) / 10f;
+        frame.totalDistanceKm = (buffer.getInt() & MAX_U32) / 1000.0;
+        frame.segmentIndex = buffer.getInt();
+        frame.routeProgressKm = (buffer.getInt() & MAX_U32) / 1000.0;
+        return frame;
+    }
+
+    private static long clamp(long value, long max) {
+        return Math.max(0, Math.min(value, max));
+    }
+}
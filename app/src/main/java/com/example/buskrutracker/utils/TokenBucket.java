@@ -0,0 +1,90 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * TokenBucket - Pembatas laju sederhana (satu token per interval, burst = kapasitas)
+ *
+ * Tidak thread-safe; dipakai dari satu thread (tracking thread). Waktu diberikan pemanggil
+ * (monotonic millis) agar bisa berjalan di virtual clock.
+ */
+public class TokenBucket {
+
+    private final int capacity;
+    private long refillIntervalMillis;
+
+    private int tokens;
+    private long lastRefillMillis;
+    private boolean started;
+
+    public TokenBucket(int capacity, long refillIntervalMillis) {
+        if (capacity < 1 || refillIntervalMillis < 1) {
+            throw new IllegalArgumentException("capacity and refill interval must be >= 1");
+        }
+        this.capacity = capacity;
+        this.refillIntervalMillis = refillIntervalMillis;
+        this.tokens = capacity;
+    }
+
+    /**
+     * Ambil satu token jika ada
+     */
+    public boolean tryAcquire(long nowMillis) {
+        refill(nowMillis);
+        if (tokens > 0) {
+            tokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Berapa lama lagi sampai token berikutnya tersedia (0 jika sudah ada)
+     */
+    public long millisUntilAvailable(long nowMillis) {
+        refill(nowMillis);
+        if (tokens > 0) return 0;
+        return Math.max(1, lastRefillMillis + refillIntervalMillis - nowMillis);
+    }
+
+    /**
+     * Ubah laju refill; token yang ada tetap, sisa waktu menuju token berikutnya dihitung ulang
+     */
+    public void setRefillIntervalMillis(long refillIntervalMillis) {
+        if (refillIntervalMillis < 1) {
+            throw new IllegalArgumentException("refill interval must be >= 1");
+        }
+        this.refillIntervalMillis = refillIntervalMillis;
+    }
+
+    public long getRefillIntervalMillis() {
+        return refillIntervalMillis;
+    }
+
+    public int getAvailableTokens(long nowMillis) {
+        refill(nowMillis);
+        return tokens;
+    }
+
+    private void refill(long nowMillis) {
+        if (!started) {
+            started = true;
+            lastRefillMillis = nowMillis;
+            return;
+        }
+        if (tokens >= capacity) {
+            lastRefillMillis = nowMillis;
+            return;
+        }
+
+        long elapsed = nowMillis - lastRefillMillis;
+        if (elapsed < refillIntervalMillis) return;
+
+        long added = elapsed / refillIntervalMillis;
+        if (tokens + added >= capacity) {
+            tokens = capacity;
+            lastRefillMillis = nowMillis;
+        } else {
+            tokens += (int) added;
+            lastRefillMillis += added * refillIntervalMillis;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.buskrutracker.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TrackBuffer - Penyimpanan track perjalanan secara kolumnar (primitive array)
+ * Menggantikan List<Map<String, Double>>: lat, lng, timestamp, speed, accuracy
+ * disimpan di array paralel per chunk, tanpa object per titik.
+ *
+ * Chunk yang sudah penuh di-"seal". Jika kompresi aktif, chunk sealed di-encode
+ * sebagai delta + zigzag varint (lat/lng 1e-6 derajat, speed/accuracy 0.1).
+ */
+public class TrackBuffer {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    // lat + lng + timestamp + speed + accuracy
+    static final int BYTES_PER_RAW_POINT = 8 + 8 + 8 + 4 + 4;
+
+    // Fixed-point scale untuk encoding chunk terkompresi
+    private static final double COORD_SCALE = 1e6;  // ~0.11 m
+    private static final float VALUE_SCALE = 10f;   // 0.1 km/h, 0.1 m
+
+    /**
+     * Visitor untuk iterasi zero-copy (tanpa alokasi per titik)
+     */
+    public interface PointVisitor {
+        void onPoint(int index, double lat, double lng, long timestamp,
+                     float speed, float accuracy);
+    }
+
+    private final int chunkSize;
+    private final boolean compressSealed;
+    private final List<Chunk> sealedChunks = new ArrayList<>();
+
+    // Chunk aktif (hot) - selalu raw
+    private double[] lats;
+    private double[] lngs;
+    private long[] times;
+    private float[] speeds;
+    private float[] accuracies;
+    private int hotCount;
+
+    private int size;
+    private long sealedBytes;
+
+    // ============================================
+    // CONSTRUCTOR
+    // ============================================
+
+    public TrackBuffer() {
+        this(DEFAULT_CHUNK_SIZE, true);
+    }
+
+    public TrackBuffer(int chunkSize, boolean compressSealed) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be > 0");
+        }
+        this.chunkSize = chunkSize;
+        this.compressSealed = compressSealed;
+        allocateHotChunk();
+    }
+
+    // ============================================
+    // APPEND & CLEAR
+    // ============================================
+
+    /**
+     * Tambah satu titik track
+     */
+    public void append(double lat, double lng, long timestamp, float speed, float accuracy) {
+        lats[hotCount] = lat;
+        lngs[hotCount] = lng;
+        times[hotCount] = timestamp;
+        speeds[hotCount] = speed;
+        accuracies[hotCount] = accuracy;
+        hotCount++;
+        size++;
+
+        if (hotCount == chunkSize) {
+            sealHotChunk();
+        }
+    }
+
+    public void clear() {
+        sealedChunks.clear();
+        sealedBytes = 0;
+        hotCount = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // ============================================
+    // ITERATION (ZERO-COPY)
+    // ============================================
+
+    /**
+     * Iterasi semua titik secara berurutan tanpa membuat object per titik
+     */
+    public void forEach(PointVisitor visitor) {
+        forEach(0, size, visitor);
+    }
+
+    /**
+     * Iterasi view [from, to) tanpa copy
+     */
+    public void forEach(int from, int to, PointVisitor visitor) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("from=" + from + ", to=" + to + ", size=" + size);
+        }
+
+        int base = 0;
+        for (Chunk chunk : sealedChunks) {
+            int end = base + chunk.count;
+            if (end > from && base < to) {
+                chunk.visit(base, from, to, visitor);
+            }
+            base = end;
+            if (base >= to) {
+                return;
+            }
+        }
+
+        for (int i = 0; i < hotCount; i++) {
+            int index = base + i;
+            if (index >= to) {
+                return;
+            }
+            if (index >= from) {
+                visitor.onPoint(index, lats[i], lngs[i], times[i], speeds[i], accuracies[i]);
+            }
+        }
+    }
+
+    /**
+     * Kunjungi titik terakhir saja (untuk laporan / resume)
+     */
+    public boolean visitLast(PointVisitor visitor) {
+        if (size == 0) {
+            return false;
+        }
+        forEach(size - 1, size, visitor);
+        return true;
+    }
+
+    // ============================================
+    // MEMORY ACCOUNTING
+    // ============================================
+
+    /**
+     * Perkiraan byte yang ditahan oleh buffer (payload array saja)
+     */
+    public long retainedBytes() {
+        return sealedBytes + (long) chunkSize * BYTES_PER_RAW_POINT;
+    }
+
+    /**
+     * Byte payload untuk titik yang sudah di-seal, per titik
+     */
+    public double sealedBytesPerPoint() {
+        int sealedPoints = size - hotCount;
+        return sealedPoints == 0 ? 0 : (double) sealedBytes / sealedPoints;
+    }
+
+    // ============================================
+    // SEALING
+    // ============================================
+
+    private void allocateHotChunk() {
+        lats = new double[chunkSize];
+        lngs = new double[chunkSize];
+        times = new long[chunkSize];
+        speeds = new float[chunkSize];
+        accuracies = new float[chunkSize];
+        hotCount = 0;
+    }
+
+    private void sealHotChunk() {
+        Chunk chunk;
+        if (compressSealed) {
+            chunk = CompressedChunk.encode(lats, lngs, times, speeds, accuracies, hotCount);
+            // Array raw tetap dipakai ulang untuk chunk berikutnya
+            hotCount = 0;
+        } else {
+            chunk = new RawChunk(lats, lngs, times, speeds, accuracies, hotCount);
+            allocateHotChunk();
+        }
+        sealedChunks.add(chunk);
+        sealedBytes += chunk.payloadBytes();
+    }
+
+    private abstract static class Chunk {
+        final int count;
+
+        Chunk(int count) {
+            this.count = count;
+        }
+
+        abstract void visit(int base, int from, int to, PointVisitor visitor);
+
+        abstract long payloadBytes();
+    }
+
+    private static final class RawChunk extends Chunk {
+        private final double[] lats;
+        private final double[] lngs;
+        private final long[] times;
+        private final float[] speeds;
+        private final float[] accuracies;
+
+        RawChunk(double[] lats, double[] lngs, long[] times,
+                 float[] speeds, float[] accuracies, int count) {
+            super(count);
+            this.lats = lats;
+            this.lngs = lngs;
+            this.times = times;
+            this.speeds = speeds;
+            this.accuracies = accuracies;
+        }
+
+        @Override
+        void visit(int base, int from, int to, PointVisitor visitor) {
+            int start = Math.max(0, from - base);
+            int end = Math.min(count, to - base);
+            for (int i = start; i < end; i++) {
+                visitor.onPoint(base + i, lats[i], lngs[i], times[i], speeds[i], accuracies[i]);
+            }
+        }
+
+        @Override
+        long payloadBytes() {
+            return (long) count * BYTES_PER_RAW_POINT;
+        }
+    }
+
+    private static final class CompressedChunk extends Chunk {
+        private final byte[] data;
+
+        private CompressedChunk(byte[] data, int count) {
+            super(count);
+            this.data = data;
+        }
+
+        static CompressedChunk encode(double[] lats, double[] lngs, long[] times,
+                                      float[] speeds, float[] accuracies, int count) {
+            // Worst case: 5 field x 10 byte varint
+            byte[] out = new byte[count * 50];
+            int pos = 0;
+            long prevLat = 0, prevLng = 0, prevTime = 0, prevSpeed = 0, prevAcc = 0;
+
+            for (int i = 0; i < count; i++) {
+                long lat = Math.round(lats[i] * COORD_SCALE);
+                long lng = Math.round(lngs[i] * COORD_SCALE);
+                long time = times[i];
+                long speed = Math.round(speeds[i] * VALUE_SCALE);
+                long acc = Math.round(accuracies[i] * VALUE_SCALE);
+
+                pos = writeVarLong(out, pos, zigzag(lat - prevLat));
+                pos = writeVarLong(out, pos, zigzag(lng - prevLng));
+                pos = writeVarLong(out, pos, zigzag(time - prevTime));
+                pos = writeVarLong(out, pos, zigzag(speed - prevSpeed));
+                pos = writeVarLong(out, pos, zigzag(acc - prevAcc));
+
+                prevLat = lat;
+                prevLng = lng;
+                prevTime = time;
+                prevSpeed = speed;
+                prevAcc = acc;
+            }
+
+            return new CompressedChunk(Arrays.copyOf(out, pos), count);
+        }
+
+        @Override
+        void visit(int base, int from, int to, PointVisitor visitor) {
+            // Satu cursor per visit, bukan per titik
+            int[] cursor = new int[1];
+            long lat = 0, lng = 0, time = 0, speed = 0, acc = 0;
+            int end = Math.min(count, to - base);
+
+            for (int i = 0; i < end; i++) {
+                lat += unzigzag(readVarLong(data, cursor));
+                lng += unzigzag(readVarLong(data, cursor));
+                time += unzigzag(readVarLong(data, cursor));
+                speed += unzigzag(readVarLong(data, cursor));
+                acc += unzigzag(readVarLong(data, cursor));
+
+                if (base + i >= from) {
+                    visitor.onPoint(base + i,
+                            lat / COORD_SCALE, lng / COORD_SCALE, time,
+                            speed / VALUE_SCALE, acc / VALUE_SCALE);
+                }
+            }
+        }
+
+        @Override
+        long payloadBytes() {
+            return data.length;
+        }
+    }
+
+    // ============================================
+    // VARINT HELPERS
+    // ============================================
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long readVarLong(byte[] buf, int[] cursor) {
+        int pos = cursor[0];
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            result |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        cursor[0] = pos;
+        return result;
+    }
+
+    static int writeVarLong(byte[] out, int pos, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * TrackSimplifier - Penyederhanaan track online (opening-window Douglas-Peucker)
+ *
+ * Setiap titik baru membentuk segmen dari anchor (titik terakhir yang disimpan).
+ * Selama semua titik di window masih berada dalam toleransi (meter) dari segmen itu,
+ * titik-titik tersebut tidak perlu disimpan. Jika ada yang melewati toleransi,
+ * titik sebelumnya di-emit dan menjadi anchor baru.
+ *
+ * Window dibatasi MAX_WINDOW titik agar biaya per fix tetap O(window), dan (opsional) umur
+ * maxHoldMillis sejak anchor: di jalan lurus titik tetap di-emit berkala, sehingga trail live
+ * (window 10 menit) tidak kosong hanya karena semua titik masih dalam toleransi.
+ */
+public class TrackSimplifier {
+
+    public static final double DEFAULT_TOLERANCE_M = 10.0;
+    static final int MAX_WINDOW = 64;
+    // Jauh di bawah window umur trail Firebase (10 menit)
+    public static final long DEFAULT_MAX_HOLD_MS = 2 * 60 * 1000L;
+
+    /**
+     * Dipanggil untuk setiap titik yang dipertahankan, berurutan
+     */
+    public interface Listener {
+        void onPointKept(double lat, double lng, long timestamp, float speed, float accuracy);
+    }
+
+    private final double tolerance;
+    private final long maxHoldMillis;
+    private final Listener listener;
+
+    // Anchor
+    private boolean hasAnchor;
+    private double anchorLat;
+    private double anchorLng;
+    private long anchorTime;
+    private double metersPerDegLng;
+
+    // Window titik sejak anchor (tidak termasuk anchor)
+    private final double[] lats = new double[MAX_WINDOW];
+    private final double[] lngs = new double[MAX_WINDOW];
+    private final long[] times = new long[MAX_WINDOW];
+    private final float[] speeds = new float[MAX_WINDOW];
+    private final float[] accuracies = new float[MAX_WINDOW];
+    private int windowSize;
+
+    // Deviasi maksimum titik window terhadap segmen anchor -> titik terakhir
+    private double windowDeviation;
+
+    private long inputCount;
+    private long keptCount;
+    private double maxDeviation;
+
+    public TrackSimplifier(double toleranceMeters, Listener listener) {
+        this(toleranceMeters, 0, listener);
+    }
+
+    /**
+     * @param maxHoldMillis Umur maksimum anchor sebelum titik dipaksa di-emit (<= 0: tanpa batas)
+     */
+    public TrackSimplifier(double toleranceMeters, long maxHoldMillis, Listener listener) {
+        this.tolerance = toleranceMeters;
+        this.maxHoldMillis = maxHoldMillis;
+        this.listener = listener;
+    }
+
+    // ============================================
+    // INPUT
+    // ============================================
+
+    public void add(double lat, double lng, long timestamp, float speed, float accuracy) {
+        inputCount++;
+
+        if (!hasAnchor) {
+            setAnchor(lat, lng, timestamp);
+            emit(lat, lng, timestamp, speed, accuracy);
+            return;
+        }
+
+        if (windowSize > 0) {
+            double deviation = maxDeviationTo(lat, lng);
+            boolean held = maxHoldMillis > 0 && timestamp - anchorTime > maxHoldMillis;
+            if (deviation > tolerance || windowSize == MAX_WINDOW || held) {
+                // Titik terakhir di window menjadi anchor baru
+                emitLastInWindow();
+            } else {
+                windowDeviation = deviation;
+            }
+        }
+
+        lats[windowSize] = lat;
+        lngs[windowSize] = lng;
+        times[windowSize] = timestamp;
+        speeds[windowSize] = speed;
+        accuracies[windowSize] = accuracy;
+        windowSize++;
+    }
+
+    /**
+     * Emit titik terakhir yang masih tertahan (mis. saat tracking berhenti)
+     */
+    public void flush() {
+        if (windowSize > 0) {
+            emitLastInWindow();
+        }
+    }
+
+    /**
+     * Lanjutkan dari titik yang sudah disimpan (mis. titik terakhir journal) tanpa emit ulang
+     */
+    public void restoreAnchor(double lat, double lng, long timestamp) {
+        setAnchor(lat, lng, timestamp);
+        windowSize = 0;
+        windowDeviation = 0;
+    }
+
+    public void reset() {
+        hasAnchor = false;
+        windowSize = 0;
+        windowDeviation = 0;
+        inputCount = 0;
+        keptCount = 0;
+        maxDeviation = 0;
+    }
+
+    // ============================================
+    // STATS
+    // ============================================
+
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    public long getKeptCount() {
+        return keptCount;
+    }
+
+    /**
+     * Deviasi maksimum (meter) titik yang dibuang terhadap track hasil
+     */
+    public double getMaxDeviationMeters() {
+        return maxDeviation;
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private void emitLastInWindow() {
+        int last = windowSize - 1;
+        maxDeviation = Math.max(maxDeviation, windowDeviation);
+
+        double lat = lats[last];
+        double lng = lngs[last];
+        setAnchor(lat, lng, times[last]);
+        emit(lat, lng, times[last], speeds[last], accuracies[last]);
+        windowSize = 0;
+        windowDeviation = 0;
+    }
+
+    private void setAnchor(double lat, double lng, long timestamp) {
+        hasAnchor = true;
+        anchorLat = lat;
+        anchorLng = lng;
+        anchorTime = timestamp;
+        metersPerDegLng = GeoMath.metersPerDegLng(lat);
+    }
+
+    private void emit(double lat, double lng, long timestamp, float speed, float accuracy) {
+        keptCount++;
+        if (listener != null) {
+            listener.onPointKept(lat, lng, timestamp, speed, accuracy);
+        }
+    }
+
+    /**
+     * Jarak maksimum titik window ke segmen anchor -> (lat, lng), planar lokal
+     */
+    private double maxDeviationTo(double lat, double lng) {
+        double ex = (lng - anchorLng) * metersPerDegLng;
+        double ey = (lat - anchorLat) * GeoMath.METERS_PER_DEG_LAT;
+
+        double max = 0;
+        for (int i = 0; i < windowSize; i++) {
+            double px = (lngs[i] - anchorLng) * metersPerDegLng;
+            double py = (lats[i] - anchorLat) * GeoMath.METERS_PER_DEG_LAT;
+            double d = GeoMath.distanceToSegment(px, py, 0, 0, ex, ey);
+            if (d > max) {
+                max = d;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.buskrutracker.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TrailRing - Ring buffer ukuran tetap untuk trail bus (append-only keyed di server)
+ *
+ * Setiap titik punya key unik. Titik baru dan key yang sudah keluar window (jumlah atau
+ * umur) dikumpulkan sebagai operasi pending, lalu dikirim lewat drain() dalam write
+ * berikutnya: satu tambah per titik, satu hapus per titik yang keluar. Titik yang keluar
+ * window sebelum sempat dikirim tidak perlu dihapus di server.
+ */
+public class TrailRing {
+
+    /**
+     * Penerima operasi saat drain
+     */
+    public interface Sink {
+        void onAdd(String key, double lat, double lng, long timestamp);
+
+        void onRemove(String key);
+    }
+
+    private final String[] keys;
+    private final double[] lats;
+    private final double[] lngs;
+    private final long[] times;
+    private final boolean[] sent;
+    private final List<String> pendingRemovals = new ArrayList<>();
+
+    private final long maxAgeMillis;
+    private int head;   // index titik tertua
+    private int size;
+    private int unsent;
+
+    /**
+     * @param maxPoints Jumlah titik maksimum di trail
+     * @param maxAgeMillis Umur maksimum titik (<= 0: tanpa batas waktu)
+     */
+    public TrailRing(int maxPoints, long maxAgeMillis) {
+        if (maxPoints < 1) {
+            throw new IllegalArgumentException("maxPoints must be >= 1");
+        }
+        keys = new String[maxPoints];
+        lats = new double[maxPoints];
+        lngs = new double[maxPoints];
+        times = new long[maxPoints];
+        sent = new boolean[maxPoints];
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public void add(String key, double lat, double lng, long timestamp) {
+        if (size == keys.length) {
+            evictOldest();
+        }
+        int slot = (head + size) % keys.length;
+        keys[slot] = key;
+        lats[slot] = lat;
+        lngs[slot] = lng;
+        times[slot] = timestamp;
+        sent[slot] = false;
+        size++;
+        unsent++;
+    }
+
+    /**
+     * Keluarkan titik yang lebih tua dari maxAge relatif terhadap now
+     */
+    public void evictExpired(long nowMillis) {
+        if (maxAgeMillis <= 0) return;
+        long cutoff = nowMillis - maxAgeMillis;
+        while (size > 0 && times[head] < cutoff) {
+            evictOldest();
+        }
+    }
+
+    /**
+     * Kirim operasi pending (hapus dulu, lalu tambah sesuai urutan waktu)
+     *
+     * @return jumlah operasi
+     */
+    public int drain(Sink sink) {
+        int ops = pendingRemovals.size();
+        for (int i = 0; i < pendingRemovals.size(); i++) {
+            sink.onRemove(pendingRemovals.get(i));
+        }
+        pendingRemovals.clear();
+
+        if (unsent > 0) {
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) % keys.length;
+                if (!sent[slot]) {
+                    sink.onAdd(keys[slot], lats[slot], lngs[slot], times[slot]);
+                    sent[slot] = true;
+                    ops++;
+                }
+            }
+            unsent = 0;
+        }
+        return ops;
+    }
+
+    public boolean hasPending() {
+        return unsent > 0 || !pendingRemovals.isEmpty();
+    }
+
+    /**
+     * Kosongkan ring tanpa operasi hapus (mis. node trail sudah dihapus seluruhnya)
+     */
+    public void clear() {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = null;
+        }
+        head = 0;
+        size = 0;
+        unsent = 0;
+        pendingRemovals.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Isi window (tertua dulu) dalam format array track lama: [{lat, lng}, ...]
+     */
+    public List<Map<String, Double>> toTrackList() {
+        List<Map<String, Double>> track = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int slot = (head + i) % keys.length;
+            Map<String, Double> point = new HashMap<>(4);
+            point.put("lat", lats[slot]);
+            point.put("lng", lngs[slot]);
+            track.add(point);
+        }
+        return track;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    private void evictOldest() {
+        if (sent[head]) {
+            pendingRemovals.add(keys[head]);
+        } else {
+            unsent--;
+        }
+        keys[head] = null;
+        head = (head + 1) % keys.length;
+        size--;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.buskrutracker.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk AdaptiveSamplingPolicy (JVM lokal)
+ */
+public class AdaptiveSamplingPolicyTest {
+
+    private AdaptiveSamplingPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new AdaptiveSamplingPolicy();
+        assertEquals(SamplingProfile.CITY, policy.reset());
+    }
+
+    @Test
+    public void highway_requiresSustainedSpeed() {
+        assertEquals(SamplingProfile.CITY, policy.onFix(0, 90f, 270f, true));
+        assertEquals(SamplingProfile.CITY, policy.onFix(10000, 90f, 270f, true));
+        assertEquals(SamplingProfile.HIGHWAY, policy.onFix(20000, 90f, 270f, true));
+
+        // Turun sedikit di bawah ambang masuk tetap HIGHWAY (hysteresis)
+        assertEquals(SamplingProfile.HIGHWAY, policy.onFix(30000, 60f, 270f, true));
+        // Di bawah ambang keluar langsung rapat lagi
+        assertEquals(SamplingProfile.CITY, policy.onFix(40000, 40f, 270f, true));
+    }
+
+    @Test
+    public void speedNoiseAroundThreshold_doesNotFlap() {
+        int changes = 0;
+        SamplingProfile last = policy.current();
+        for (int i = 0; i < 100; i++) {
+            float speed = i % 2 == 0 ? 68f : 72f;
+            SamplingProfile next = policy.onFix(i * 5000L, speed, 270f, true);
+            if (next != last) {
+                changes++;
+                last = next;
+            }
+        }
+        assertTrue("profile changes: " + changes, changes <= 1);
+    }
+
+    @Test
+    public void turn_forcesCityAndHoldsIt() {
+        for (int i = 0; i <= 5; i++) {
+            policy.onFix(i * 10000L, 90f, 270f, true);
+        }
+        assertEquals(SamplingProfile.HIGHWAY, policy.current());
+
+        assertEquals(SamplingProfile.CITY, policy.onFix(60000, 80f, 220f, true));
+        assertEquals(SamplingProfile.CITY, policy.onFix(70000, 90f, 220f, true));
+    }
+
+    @Test
+    public void stationary_afterDwellAndExitOnMovement() {
+        assertEquals(SamplingProfile.CITY, policy.onFix(0, 0f, 0f, false));
+        assertEquals(SamplingProfile.CITY, policy.onFix(30000, 1f, 0f, false));
+        // Dwell 60 detik, lalu masih harus stabil SPARSER_DWELL_MS
+        policy.onFix(60000, 0f, 0f, false);
+        assertEquals(SamplingProfile.STATIONARY, policy.onFix(90000, 0f, 0f, false));
+
+        assertEquals(SamplingProfile.CITY, policy.onFix(120000, 20f, 0f, false));
+    }
+
+    @Test
+    public void macet_shortensDwellAndDisablesHighway() {
+        policy.onKondisiChanged("macet");
+        policy.onFix(0, 0f, 0f, false);
+        policy.onFix(20000, 0f, 0f, false);
+        assertEquals(SamplingProfile.STATIONARY, policy.onFix(40000, 0f, 0f, false));
+
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(SamplingProfile.HIGHWAY, policy.onFix(50000 + i * 10000L, 90f, 90f, true));
+        }
+    }
+
+    @Test
+    public void mogok_isImmediateAndReleasedOnLancar() {
+        assertEquals(SamplingProfile.MOGOK, policy.onKondisiChanged("mogok"));
+        assertEquals(SamplingProfile.MOGOK, policy.onFix(0, 30f, 0f, false));
+        assertEquals(SamplingProfile.CITY, policy.onKondisiChanged("lancar"));
+    }
+
+    private static void assertNotSame(SamplingProfile unexpected, SamplingProfile actual) {
+        assertTrue("unexpected " + unexpected, unexpected != actual);
+    }
+}
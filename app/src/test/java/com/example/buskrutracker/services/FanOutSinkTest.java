@@ -0,0 +1,84 @@
+package com.example.buskrutracker.services;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk FanOutSink + RecordingSink
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FanOutSinkTest {
+
+    @Test
+    public void everySinkReceivesEveryPublish() {
+        RecordingSink a = new RecordingSink();
+        RecordingSink b = new RecordingSink().setRecordEvents(true);
+        FanOutSink fanOut = new FanOutSink(a);
+        fanOut.addSink(b);
+
+        fanOut.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+        fanOut.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+        fanOut.updateKondisi(7, "macet");
+        fanOut.updateStatus(7, "completed");
+        fanOut.release();
+
+        for (RecordingSink sink : new RecordingSink[]{a, b}) {
+            assertEquals(1, sink.getCount(RecordingSink.Type.LOCATION));
+            assertEquals(-7.25, sink.getLatitude(), 0);
+            assertEquals("macet", sink.getKondisi());
+            assertEquals("completed", sink.getStatus());
+            assertTrue(sink.isReleased());
+        }
+        assertTrue(a.getEvents().isEmpty());
+        assertEquals("LOCATION 7 -7.250000,112.750000", b.getEvents().get(1));
+    }
+
+    @Test
+    public void failingSinkDoesNotStopOthers() {
+        RecordingSink recording = new RecordingSink();
+        RealtimeSink failing = new RecordingSink() {
+            @Override
+            public void updatePassengers(int perjalanId, int currentPassengers) {
+                throw new IllegalStateException("boom");
+            }
+        };
+        FanOutSink fanOut = new FanOutSink(failing, recording);
+
+        fanOut.updatePassengers(7, 12);
+
+        assertEquals(12, recording.getPassengers());
+    }
+
+    @Test
+    public void resumeAndDemandHint_goThroughEverySink() {
+        RecordingSink idle = new RecordingSink().setWatched(false);
+        RecordingSink watched = new RecordingSink();
+        FanOutSink fanOut = new FanOutSink(idle);
+
+        fanOut.resumeBus(7);
+        assertEquals(1, idle.getCount(RecordingSink.Type.RESUME));
+        assertEquals("active", idle.getStatus());
+        assertFalse(fanOut.isWatched());
+
+        fanOut.addSink(watched);
+        assertTrue(fanOut.isWatched());
+    }
+
+    @Test
+    public void setSinks_replacesTargets() {
+        RecordingSink first = new RecordingSink();
+        RecordingSink second = new RecordingSink();
+        FanOutSink fanOut = new FanOutSink(first);
+
+        fanOut.setSinks(second);
+        fanOut.clearBusData(7);
+
+        assertEquals(1, fanOut.size());
+        assertEquals(0, first.getCount(RecordingSink.Type.CLEAR));
+        assertEquals(1, second.getCount(RecordingSink.Type.CLEAR));
+    }
+}
@@ -0,0 +1,756 @@
+package com.example.buskrutracker.services;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.buskrutracker.utils.Geohash;
+import com.example.buskrutracker.utils.LatencyHistogram;
+import com.example.buskrutracker.utils.LinkQualityEstimator;
+import com.example.buskrutracker.utils.SimulatedLink;
+import com.example.buskrutracker.utils.VirtualClock;
+import com.google.firebase.database.ServerValue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit test untuk payload write FirebaseManager (tanpa FirebaseApp, lewat WriteObserver)
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FirebaseManagerTest {
+
+    private static final long NOW = 1709272800000L;
+    private static final String BUS_PREFIX = "buses/bus_7/";
+
+    private FirebaseManager manager;
+    private VirtualClock clock;
+    private final List<String> paths = new ArrayList<>();
+    private final List<Map<String, Object>> payloads = new ArrayList<>();
+    private final List<Map<String, Object>> rootPayloads = new ArrayList<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        manager = new FirebaseManager();
+        clock = new VirtualClock(NOW);
+        manager.setClock(clock);
+        manager.setWriteObserver((path, value) -> {
+            paths.add(path);
+            // Payload di-reuse, simpan salinannya; field bus juga disimpan relatif ke buses/bus_7
+            Map<String, Object> map = value instanceof Map ? (Map<String, Object>) value : null;
+            rootPayloads.add(map != null ? new HashMap<>(map) : null);
+            payloads.add(map != null ? busFields(path, map) : null);
+        });
+    }
+
+    @Test
+    public void locationFix_isOneMultiPathWrite() {
+        manager.addTrackPoint(-7.25, 112.75, NOW);
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+
+        assertEquals(1, manager.getWriteCount());
+        assertEquals("", paths.get(0));
+        Map<String, Object> payload = payloads.get(0);
+        assertEquals(-7.25, payload.get("location/latitude"));
+        assertEquals(ServerValue.TIMESTAMP, payload.get("location/updatedAt"));
+        assertEquals("2024-03-01T06:00:00Z", payload.get("location/lastUpdate"));
+        assertEquals(1.2, payload.get("location/routeProgress"));
+        assertEquals(1.5, payload.get("totalDistance"));
+        assertTrue(payload.containsKey("trail/1709272800000000"));
+        assertFalse(payload.containsKey("eta/remainingTime"));
+    }
+
+    @Test
+    public void trailPointIsSentOnce_andRouteProgressClearedOffRoute() {
+        manager.addTrackPoint(-7.25, 112.75, NOW);
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 1.6, -1, 0);
+
+        Map<String, Object> second = payloads.get(1);
+        assertEquals(0, trailEntries(second));
+        assertTrue(second.containsKey("location/routeProgress"));
+        assertNull(second.get("location/routeProgress"));
+        assertEquals(-1, second.get("location/segmentIndex"));
+    }
+
+    @Test
+    public void pendingEtaAndKondisi_areFoldedIntoNextLocationWrite() {
+        manager.updateETA(7, 42.0, 55, NOW + 55 * 60000L);
+        manager.updateKondisi(7, "macet");
+        assertEquals(0, manager.getWriteCount());
+        assertTrue(manager.hasPending());
+
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+
+        assertEquals(1, manager.getWriteCount());
+        Map<String, Object> payload = payloads.get(0);
+        assertEquals(55, payload.get("eta/remainingTime"));
+        assertEquals(NOW + 55 * 60000L, payload.get("eta/arrivalAt"));
+        assertEquals("2024-03-01T06:55:00Z", payload.get("eta/estimatedArrival"));
+        assertEquals("macet", payload.get("kondisi"));
+        assertFalse(manager.hasPending());
+
+        // Tidak dikirim ulang pada fix berikutnya
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 1.6, 3, 1.3);
+        assertFalse(payloads.get(1).containsKey("kondisi"));
+    }
+
+    @Test
+    public void fullTrailWindow_costsOneAddAndOneRemovePerPoint() {
+        for (int i = 0; i < 50; i++) {
+            clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+            manager.addTrackPoint(-7.25 - i * 0.001, 112.75, NOW + i);
+            manager.updateLocationWithTrack(7, -7.25 - i * 0.001, 112.75, 40f, i, 3, i);
+        }
+
+        // Window penuh: setiap update menambah 1 titik dan menghapus 1 titik terlama
+        for (int i = FirebaseManager.DEFAULT_TRAIL_MAX_POINTS; i < 50; i++) {
+            Map<String, Object> payload = payloads.get(i);
+            assertEquals(2, trailEntries(payload));
+            String removedKey = String.format("trail/%013d000",
+                    NOW + i - FirebaseManager.DEFAULT_TRAIL_MAX_POINTS);
+            assertTrue(payload.containsKey(removedKey));
+            assertNull(payload.get(removedKey));
+        }
+    }
+
+    @Test
+    public void trailWindowByTime_removesExpiredPoints() {
+        manager.setTrailWindow(100, 60000);
+
+        manager.addTrackPoint(-7.25, 112.75, NOW);
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 0, 3, 0);
+
+        clock.advanceBy(61000);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 0.1, 3, 0.1);
+
+        Map<String, Object> payload = payloads.get(1);
+        assertTrue(payload.containsKey("trail/1709272800000000"));
+        assertNull(payload.get("trail/1709272800000000"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void legacyTrack_throttledToOncePerInterval_untilDisabled() {
+        long perInterval = FirebaseManager.LEGACY_TRACK_INTERVAL_MS / FirebaseManager.WRITE_INTERVAL_MS;
+        int writes = (int) (2 * perInterval) + 1;
+        int withTrack = 0;
+        for (int i = 0; i < writes; i++) {
+            clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+            manager.addTrackPoint(-7.25 - i * 0.001, 112.75, NOW + i);
+            manager.updateLocationWithTrack(7, -7.25 - i * 0.001, 112.75, 40f, i, 3, i);
+            if (payloads.get(i).containsKey("track")) {
+                withTrack++;
+            }
+            // trail/{key} tetap per write
+            assertEquals(i < FirebaseManager.DEFAULT_TRAIL_MAX_POINTS ? 1 : 2,
+                    trailEntries(payloads.get(i)));
+        }
+        // Write pertama, lalu sekali per LEGACY_TRACK_INTERVAL_MS
+        assertEquals(3, withTrack);
+        List<Map<String, Double>> track =
+                (List<Map<String, Double>>) payloads.get(writes - 1).get("track");
+        assertEquals(FirebaseManager.DEFAULT_TRAIL_MAX_POINTS, track.size());
+        assertEquals(-7.25 - (writes - 1) * 0.001, track.get(track.size() - 1).get("lat"), 1e-9);
+
+        // Trail tidak berubah: track tidak ditulis ulang walau interval sudah lewat
+        clock.advanceBy(FirebaseManager.LEGACY_TRACK_INTERVAL_MS);
+        manager.updateLocationWithTrack(7, -7.5, 112.75, 40f, writes, 3, writes);
+        assertFalse(payloads.get(payloads.size() - 1).containsKey("track"));
+
+        manager.setLegacyTrack(false);
+        clock.advanceBy(FirebaseManager.LEGACY_TRACK_INTERVAL_MS);
+        manager.addTrackPoint(-7.6, 112.75, NOW + writes);
+        manager.updateLocationWithTrack(7, -7.6, 112.75, 40f, writes, 3, writes);
+        assertEquals(2, trailEntries(payloads.get(payloads.size() - 1)));
+        assertFalse(payloads.get(payloads.size() - 1).containsKey("track"));
+    }
+
+    @Test
+    public void flushPending_sendsOnlyPendingFields() {
+        assertFalse(manager.flushPending(7));
+
+        manager.updateKondisi(7, "macet");
+        assertTrue(manager.flushPending(7));
+
+        assertEquals(1, manager.getWriteCount());
+        Map<String, Object> payload = payloads.get(0);
+        assertEquals(3, payload.size());
+        assertEquals("macet", payload.get("kondisi"));
+        assertTrue(payload.containsKey("kondisiUpdatedAt"));
+        assertTrue(payload.containsKey("kondisiUpdate"));
+    }
+
+    @Test
+    public void withoutLegacyTimestamps_payloadHasNoFormattedStrings() {
+        manager.setLegacyTimestamps(false);
+        manager.updateETA(7, 42.0, 55, NOW + 55 * 60000L);
+        manager.updateKondisi(7, "macet");
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+
+        Map<String, Object> payload = payloads.get(0);
+        assertEquals(ServerValue.TIMESTAMP, payload.get("location/updatedAt"));
+        assertEquals(ServerValue.TIMESTAMP, payload.get("kondisiUpdatedAt"));
+        assertEquals(NOW + 55 * 60000L, payload.get("eta/arrivalAt"));
+        for (Map.Entry<String, Object> entry : payload.entrySet()) {
+            if (entry.getKey().equals("kondisi") || entry.getKey().equals("location/geohash")) {
+                continue;
+            }
+            assertFalse(entry.getKey(), entry.getValue() instanceof String);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void initializeBus_writesSchemaVersion() {
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        assertEquals("", paths.get(0));
+        Map<String, Object> bus = (Map<String, Object>) rootPayloads.get(0).get("buses/bus_7");
+        assertEquals(FirebaseManager.SCHEMA_VERSION, bus.get("schemaVersion"));
+        assertEquals(0L, ((Map<String, Object>) bus.get("eta")).get("arrivalAt"));
+    }
+
+    // ============================================
+    // PUBLISH SCHEDULER
+    // ============================================
+
+    @Test
+    public void burstAboveBudget_collapsesToLatestValue() {
+        for (int i = 0; i < 10; i++) {
+            manager.updateLocationWithTrack(7, -7.25 - i * 0.001, 112.75, 40f, i, 3, i);
+        }
+
+        // Burst 2 langsung terkirim, 8 sisanya saling menimpa
+        assertEquals(FirebaseManager.WRITE_BURST, manager.getWriteCount());
+        assertEquals(10, manager.getUpdatesRequested());
+        assertEquals(7, manager.getUpdatesCollapsed());
+        assertTrue(manager.hasPending());
+
+        clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+        manager.updateLocationWithTrack(7, -7.30, 112.75, 40f, 10, 3, 10);
+
+        assertEquals(3, manager.getWriteCount());
+        assertEquals(-7.30, payloads.get(2).get("location/latitude"));
+        assertEquals(8, manager.getUpdatesCollapsed());
+    }
+
+    @Test
+    public void mogokAndStatus_bypassTheBudget() {
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1, 3, 1);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 2, 3, 2);
+        manager.updateLocationWithTrack(7, -7.27, 112.75, 40f, 3, 3, 3);
+        assertEquals(2, manager.getWriteCount());
+
+        // Mogok dikirim sekarang, bersama lokasi yang tertahan
+        manager.updateKondisi(7, "mogok");
+        assertEquals(3, manager.getWriteCount());
+        assertEquals("mogok", payloads.get(2).get("kondisi"));
+        assertEquals(-7.27, payloads.get(2).get("location/latitude"));
+
+        // Kembali lancar dari mogok juga langsung
+        manager.updateKondisi(7, "lancar");
+        assertEquals(4, manager.getWriteCount());
+
+        manager.updateStatus(7, "completed");
+        assertEquals(5, manager.getWriteCount());
+        assertEquals("completed", payloads.get(4).get("status"));
+        assertEquals(3, manager.getBypassFlushes());
+    }
+
+    @Test
+    public void flushHandler_sendsPendingWhenTokenArrives() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        manager.setFlushHandler(handler);
+
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1, 3, 1);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 2, 3, 2);
+        manager.updateLocationWithTrack(7, -7.27, 112.75, 40f, 3, 3, 3);
+        manager.updatePassengers(7, 12);
+        assertEquals(2, manager.getWriteCount());
+
+        clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(FirebaseManager.WRITE_INTERVAL_MS));
+
+        assertEquals(3, manager.getWriteCount());
+        Map<String, Object> payload = payloads.get(2);
+        assertEquals(-7.27, payload.get("location/latitude"));
+        assertEquals(12, payload.get("currentPassengers"));
+        assertFalse(manager.hasPending());
+    }
+
+    @Test
+    public void timers_followTheClock_notTheHandler() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        manager.setFlushHandler(handler);
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1, 3, 1);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 2, 3, 2);
+        manager.updateLocationWithTrack(7, -7.27, 112.75, 40f, 3, 3, 3);
+        int writes = payloads.size();
+        assertTrue(manager.hasPending());
+
+        // Waktu nyata lewat tapi clock (virtual) belum: timer menunggu
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(FirebaseManager.WRITE_INTERVAL_MS));
+        assertEquals(writes, payloads.size());
+
+        // Replay memajukan clock dan menjalankan timer yang jatuh tempo
+        clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+        manager.runDueTimers();
+        assertEquals(writes + 1, payloads.size());
+        assertEquals(-7.27, payloads.get(writes).get("location/latitude"));
+        assertFalse(manager.hasPending());
+
+        // Bus diam: heartbeat juga mengikuti clock
+        clock.advanceBy(FirebaseManager.HEARTBEAT_INTERVAL_MS);
+        manager.runDueTimers();
+        assertEquals(writes + 2, payloads.size());
+        assertEquals(ServerValue.TIMESTAMP, payloads.get(writes + 1).get("heartbeatAt"));
+    }
+
+    // ============================================
+    // OFFLINE
+    // ============================================
+
+    @Test
+    public void offline_collapsesToOneWriteOnReconnect() {
+        manager.onConnectionChanged(false);
+
+        for (int i = 0; i < 100; i++) {
+            clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+            manager.addTrackPoint(-7.25 - i * 0.001, 112.75, NOW + i);
+            manager.updateLocationWithTrack(7, -7.25 - i * 0.001, 112.75, 40f, i, 3, i);
+        }
+        manager.updateKondisi(7, "mogok");
+        assertEquals(0, manager.getWriteCount());
+        assertEquals(99, manager.getUpdatesCollapsed());
+
+        manager.onConnectionChanged(true);
+
+        // Satu write: lokasi terakhir, kondisi, dan hanya trail window terakhir
+        assertEquals(1, manager.getWriteCount());
+        Map<String, Object> payload = payloads.get(0);
+        assertEquals(-7.25 - 99 * 0.001, (double) payload.get("location/latitude"), 1e-9);
+        assertEquals("mogok", payload.get("kondisi"));
+        assertEquals(FirebaseManager.DEFAULT_TRAIL_MAX_POINTS, trailEntries(payload));
+        assertEquals(1, manager.getReconnectCount());
+        assertEquals(0, manager.getLastDrainMillis());
+    }
+
+    @Test
+    public void firstConnection_isNotAReconnect() {
+        manager.awaitFirstConnection();
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+        int writes = payloads.size();
+
+        // SDK melapor false dulu saat start, lalu true setelah terhubung
+        manager.onConnectionChanged(false);
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1, 3, 1);
+        assertEquals(writes, payloads.size());
+        manager.onConnectionChanged(true);
+
+        assertEquals(0, manager.getReconnectCount());
+        assertEquals(writes + 1, payloads.size());
+        Map<String, Object> payload = payloads.get(writes);
+        assertEquals(-7.25, payload.get("location/latitude"));
+        assertFalse(payload.containsKey("status"));
+
+        manager.onConnectionChanged(false);
+        manager.onConnectionChanged(true);
+        assertEquals(1, manager.getReconnectCount());
+    }
+
+    @Test
+    public void latencyReport_listsEveryWriteOperation() throws Exception {
+        manager.onConnectionChanged(false);
+        manager.onConnectionChanged(true);
+
+        String report = manager.getLatencyReport();
+        for (String op : new String[]{"flush", "initializeBus", "resetTrail", "clearBusData",
+                "offlineMarker"}) {
+            assertTrue(report, report.contains(op + ": n=0"));
+            assertEquals(0, manager.getLatencyHistogram(op).getInFlightAtDisconnect());
+        }
+
+        StringWriter out = new StringWriter();
+        manager.dumpLatency(out);
+        assertTrue(out.toString().startsWith("Publish: "));
+    }
+
+    // ============================================
+    // LINK ADAPTATION
+    // ============================================
+
+    @Test
+    public void publishDelay_measuresTimeFromUpdateToFlush() {
+        manager.setFlushHandler(new Handler(Looper.getMainLooper()));
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1, 3, 1);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 2, 3, 2);
+
+        // Token habis: update ketiga menunggu token berikutnya, yang keempat ikut menimpa
+        manager.updateLocationWithTrack(7, -7.27, 112.75, 40f, 3, 3, 3);
+        clock.advanceBy(2000);
+        manager.updateLocationWithTrack(7, -7.28, 112.75, 40f, 4, 3, 4);
+        clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS - 2000);
+        manager.runDueTimers();
+
+        LatencyHistogram delay = manager.getLatencyHistogram("publishDelay");
+        assertEquals(3, delay.getCount());
+        assertEquals(FirebaseManager.WRITE_INTERVAL_MS, delay.getMax());
+        assertTrue(manager.getLatencyReport().contains("publishDelay"));
+    }
+
+    @Test
+    public void simulatedEdgeStretch_slowsWritesAndThinsPayload() {
+        // GPS 1 Hz; 4G 10 menit -> EDGE 10 menit -> 4G 10 menit
+        SimulatedLink link = new SimulatedLink(20)
+                .phase(600000, 250, 80, 0.01)
+                .phase(600000, 3500, 1200, 0.2)
+                .phase(600000, 250, 80, 0.01);
+        long edgeEnd = 1200000;
+        long lastWriteAt = 0;
+        long maxGap = 0;
+        long intervalAtEdgeEnd = 0;
+        int poorWrites = 0;
+        int poorWritesWithTrail = 0;
+        int poorWritesWithEta = 0;
+
+        for (long t = 0; t < link.getTotalMillis(); t += 1000) {
+            clock.advanceTo(NOW + t);
+            if (t % 5000 == 0) {
+                manager.addTrackPoint(-7.25 - t * 1e-7, 112.75, NOW + t);
+            }
+            if (t % 30000 == 0) {
+                manager.updateETA(7, 42.0, 55, NOW + t + 55 * 60000L);
+            }
+
+            int before = payloads.size();
+            manager.updateLocationWithTrack(7, -7.25 - t * 1e-7, 112.75, 40f, t / 1000.0, 3, 0);
+            if (payloads.size() == before) continue;
+
+            Map<String, Object> payload = payloads.get(before);
+            maxGap = Math.max(maxGap, t - lastWriteAt);
+            lastWriteAt = t;
+            if (manager.getLinkLevel() == LinkQualityEstimator.Level.POOR) {
+                poorWrites++;
+                if (trailEntries(payload) > 0) poorWritesWithTrail++;
+                if (payload.containsKey("eta/remainingTime")) poorWritesWithEta++;
+            }
+
+            long rtt = link.sample(t);
+            manager.onFlushAck(Math.max(rtt, 0), rtt >= 0);
+            if (t + 1000 >= edgeEnd && intervalAtEdgeEnd == 0) {
+                intervalAtEdgeEnd = manager.getWriteIntervalMillis();
+            }
+        }
+
+        assertEquals(4 * FirebaseManager.WRITE_INTERVAL_MS, intervalAtEdgeEnd);
+        assertEquals(FirebaseManager.WRITE_INTERVAL_MS, manager.getWriteIntervalMillis());
+        assertEquals(LinkQualityEstimator.Level.GOOD, manager.getLinkLevel());
+
+        // Lokasi tetap jalan di link buruk; trail ditahan, ETA hanya jika sudah basi
+        assertTrue(poorWrites > 10);
+        assertEquals(0, poorWritesWithTrail);
+        assertTrue("eta " + poorWritesWithEta + "/" + poorWrites,
+                poorWritesWithEta <= poorWrites / 4);
+        assertTrue("max gap " + maxGap, maxGap <= 4 * FirebaseManager.WRITE_INTERVAL_MS + 1000);
+    }
+
+    // ============================================
+    // GEOHASH INDEX
+    // ============================================
+
+    @Test
+    public void geoIndex_writtenOnlyOnCellChange_inTheSameWrite() {
+        manager.setWriteBudget(100, 1);
+        String surabaya = "buses_geo/qw8nt/bus_7";
+
+        manager.updateLocationWithTrack(7, -7.2575, 112.7521, 40f, 0, 3, 0);
+        Map<String, Object> first = rootPayloads.get(0);
+        assertEquals(ServerValue.TIMESTAMP, first.get(surabaya));
+        assertEquals("qw8nt", first.get(BUS_PREFIX + "location/geohash"));
+        assertEquals(-7.2575, first.get(BUS_PREFIX + "location/latitude"));
+
+        // Masih di cell yang sama: index tidak disentuh
+        manager.updateLocationWithTrack(7, -7.2580, 112.7530, 40f, 0.1, 3, 0.1);
+        assertEquals(0, geoEntries(rootPayloads.get(1)));
+        assertFalse(payloads.get(1).containsKey("location/geohash"));
+
+        // Pindah cell: entry baru + hapus entry lama, atomik dengan lokasi
+        String next = "buses_geo/" + Geohash.encode(-7.30, 112.80, 5) + "/bus_7";
+        manager.updateLocationWithTrack(7, -7.30, 112.80, 40f, 6, 3, 6);
+        Map<String, Object> moved = rootPayloads.get(2);
+        assertTrue(moved.containsKey(surabaya));
+        assertNull(moved.get(surabaya));
+        assertEquals(ServerValue.TIMESTAMP, moved.get(next));
+        assertEquals(-7.30, moved.get(BUS_PREFIX + "location/latitude"));
+        assertEquals(2, manager.getGeoTransitions());
+
+        // Selesai: node bus dan entry index dihapus bersama
+        manager.clearBusData(7);
+        Map<String, Object> cleared = rootPayloads.get(3);
+        assertEquals("", paths.get(3));
+        assertTrue(cleared.containsKey("buses/bus_7"));
+        assertTrue(cleared.containsKey(next));
+        assertNull(cleared.get(next));
+        assertNull(manager.getGeoCell());
+    }
+
+    @Test
+    public void offlineAcrossCells_collapsesToOneTransition() {
+        manager.updateLocationWithTrack(7, -7.2575, 112.7521, 40f, 0, 3, 0);
+        manager.onConnectionChanged(false);
+        for (int i = 1; i <= 50; i++) {
+            clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+            manager.updateLocationWithTrack(7, -7.2575 - i * 0.01, 112.7521, 40f, i, 3, i);
+        }
+        manager.onConnectionChanged(true);
+
+        // Cell-cell di antaranya tidak pernah ditulis: hanya cell awal -> cell terakhir
+        Map<String, Object> payload = rootPayloads.get(1);
+        assertEquals(2, geoEntries(payload));
+        assertNull(payload.get("buses_geo/qw8nt/bus_7"));
+        assertEquals(ServerValue.TIMESTAMP, payload.get(
+                "buses_geo/" + Geohash.encode(-7.2575 - 0.5, 112.7521, 5) + "/bus_7"));
+    }
+
+    // ============================================
+    // ROUTE INDEX
+    // ============================================
+
+    @Test
+    public void routeIndex_followsBusLifecycleInTheSameWrites() {
+        String entry = "routes_live/3/bus_7";
+        manager.setRute(7, 3);
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        Map<String, Object> init = rootPayloads.get(0);
+        assertEquals(2, init.size());
+        assertEquals(3, ((Map<?, ?>) init.get("buses/bus_7")).get("ruteId"));
+        Map<?, ?> summary = (Map<?, ?>) init.get(entry);
+        assertEquals("Sugeng Rahayu", summary.get("namaBus"));
+        assertEquals("active", summary.get("status"));
+
+        // Lokasi + ETA: ringkasan ikut flush yang sama
+        manager.updateETA(7, 42.0, 55, NOW + 55 * 60000L);
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+        Map<String, Object> fix = rootPayloads.get(1);
+        assertEquals(-7.25, fix.get(entry + "/lat"));
+        assertEquals(112.75, fix.get(entry + "/lng"));
+        assertEquals(1.2, fix.get(entry + "/progress"));
+        assertEquals(55, fix.get(entry + "/remainingTime"));
+        assertEquals(NOW + 55 * 60000L, fix.get(entry + "/arrivalAt"));
+        assertEquals(ServerValue.TIMESTAMP, fix.get(entry + "/updatedAt"));
+
+        // Di luar rute: progress dihapus
+        clock.advanceBy(FirebaseManager.WRITE_INTERVAL_MS);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 1.6, -1, 0);
+        Map<String, Object> offRoute = rootPayloads.get(2);
+        assertTrue(offRoute.containsKey(entry + "/progress"));
+        assertNull(offRoute.get(entry + "/progress"));
+
+        manager.clearBusData(7);
+        Map<String, Object> cleared = rootPayloads.get(3);
+        assertTrue(cleared.containsKey(entry));
+        assertNull(cleared.get(entry));
+    }
+
+    @Test
+    public void withoutRuteId_noRouteIndexWrites() {
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+        manager.clearBusData(7);
+
+        for (Map<String, Object> payload : rootPayloads) {
+            for (String key : payload.keySet()) {
+                assertFalse(key, key.startsWith(FirebaseManager.ROUTE_INDEX_PATH));
+            }
+        }
+    }
+
+    // ============================================
+    // LIVENESS
+    // ============================================
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void initializeBus_registersOfflineMarker_clearCancelsIt() {
+        manager.setRute(7, 3);
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        assertTrue(manager.isLive());
+        Map<String, Object> bus = (Map<String, Object>) rootPayloads.get(0).get("buses/bus_7");
+        assertEquals(ServerValue.TIMESTAMP, bus.get("heartbeatAt"));
+        Map<String, Object> marker = manager.getOfflineMarker();
+        assertEquals(FirebaseManager.STATUS_OFFLINE, marker.get(BUS_PREFIX + "status"));
+        assertEquals(ServerValue.TIMESTAMP, marker.get(BUS_PREFIX + "offlineAt"));
+        assertEquals(FirebaseManager.STATUS_OFFLINE, marker.get("routes_live/3/bus_7/status"));
+
+        manager.clearBusData(7);
+        assertFalse(manager.isLive());
+        assertNull(manager.getOfflineMarker());
+    }
+
+    @Test
+    public void heartbeat_ridesOnFlushesOncePerInterval_andIsForcedWhenIdle() {
+        manager.setWriteBudget(100, 1);
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+        assertFalse(payloads.get(1).containsKey("heartbeatAt"));
+
+        clock.advanceBy(FirebaseManager.HEARTBEAT_INTERVAL_MS);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 1.6, 3, 1.3);
+        assertEquals(ServerValue.TIMESTAMP, payloads.get(2).get("heartbeatAt"));
+
+        // Bus diam tanpa update: timer heartbeat mengirim heartbeat saja
+        manager.onHeartbeat();
+        assertEquals(3, payloads.size());
+        clock.advanceBy(FirebaseManager.HEARTBEAT_INTERVAL_MS);
+        manager.onHeartbeat();
+        assertEquals(4, payloads.size());
+        assertEquals(1, payloads.get(3).size());
+        assertEquals(ServerValue.TIMESTAMP, payloads.get(3).get("heartbeatAt"));
+    }
+
+    @Test
+    public void reconnect_restoresStatus_andStaticDataOnlyAfterLongOutage() {
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        // Putus sebentar: marker sudah mengubah status jadi offline, tulis ulang status terakhir
+        manager.onConnectionChanged(false);
+        clock.advanceBy(30000);
+        manager.onConnectionChanged(true);
+        Map<String, Object> restored = payloads.get(payloads.size() - 1);
+        assertEquals("active", restored.get("status"));
+        assertTrue(restored.containsKey("offlineAt"));
+        assertNull(restored.get("offlineAt"));
+        assertEquals(ServerValue.TIMESTAMP, restored.get("heartbeatAt"));
+        assertFalse(restored.containsKey("namaBus"));
+
+        // Putus lama: node mungkin sudah diarsip sweeper, data statis ikut ditulis ulang
+        manager.onConnectionChanged(false);
+        clock.advanceBy(StaleBusSweeper.STALE_AFTER_MS);
+        manager.onConnectionChanged(true);
+        restored = payloads.get(payloads.size() - 1);
+        assertEquals("Sugeng Rahayu", restored.get("namaBus"));
+        assertEquals(FirebaseManager.SCHEMA_VERSION, restored.get("schemaVersion"));
+        assertEquals("active", restored.get("status"));
+    }
+
+    @Test
+    public void reconnect_rewritesStaticData_whenHeartbeatIsStaleBeforeOutageIsLong() {
+        manager.initializeBus(7, "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", "Surabaya - Madiun",
+                40, "Budi", "");
+
+        // Heartbeat terakhir hampir satu interval sebelum putus; outage sendiri di bawah
+        // STALE_AFTER_MS tapi heartbeatAt server sudah lewat batas sweeper
+        clock.advanceBy(FirebaseManager.HEARTBEAT_INTERVAL_MS - 1000);
+        manager.onConnectionChanged(false);
+        clock.advanceBy(StaleBusSweeper.STALE_AFTER_MS - FirebaseManager.HEARTBEAT_INTERVAL_MS);
+        manager.onConnectionChanged(true);
+
+        Map<String, Object> restored = payloads.get(payloads.size() - 1);
+        assertEquals("Sugeng Rahayu", restored.get("namaBus"));
+        assertEquals("active", restored.get("status"));
+    }
+
+    // ============================================
+    // VIEWER DEMAND
+    // ============================================
+
+    @Test
+    public void noViewers_dropsToHeartbeatAndRampsUpWhenViewerJoins() {
+        List<Boolean> demand = new ArrayList<>();
+        manager.setDemandListener(demand::add);
+        assertTrue(manager.isWatched());
+
+        manager.updateLocationWithTrack(7, -7.25, 112.75, 40f, 0, 3, 0);
+        manager.onViewerCountChanged(0);
+        assertFalse(manager.isWatched());
+        assertEquals(FirebaseManager.IDLE_WRITE_INTERVAL_MS, manager.getWriteIntervalMillis());
+
+        // GPS 1 Hz selama 5 menit tanpa viewer: hanya heartbeat
+        int before = payloads.size();
+        for (int t = 1; t <= 300; t++) {
+            clock.advanceBy(1000);
+            manager.updateLocationWithTrack(7, -7.25 - t * 1e-5, 112.75, 40f, t, 3, 0);
+        }
+        int idleWrites = payloads.size() - before;
+        assertTrue("idle writes " + idleWrites, idleWrites <= 300 / 60 + FirebaseManager.WRITE_BURST);
+
+        // Viewer muncul: state terbaru langsung dikirim, cadence kembali normal
+        clock.advanceBy(500);
+        manager.updateLocationWithTrack(7, -7.26, 112.75, 40f, 301, 3, 0);
+        before = payloads.size();
+        manager.onViewerCountChanged(1);
+        assertEquals(before + 1, payloads.size());
+        assertEquals(-7.26, payloads.get(before).get("location/latitude"));
+        assertEquals(FirebaseManager.WRITE_INTERVAL_MS, manager.getWriteIntervalMillis());
+        assertEquals(2, demand.size());
+        assertFalse(demand.get(0));
+        assertTrue(demand.get(1));
+
+        // Jumlah viewer berubah tanpa transisi 0 <-> >0: tidak ada write / callback tambahan
+        manager.onViewerCountChanged(3);
+        assertEquals(before + 1, payloads.size());
+        assertEquals(2, demand.size());
+    }
+
+    @Test
+    public void unreadableViewerCount_keepsNormalCadence() {
+        manager.onViewerCountChanged(0);
+        manager.onViewerCountChanged(-1);
+
+        assertTrue(manager.isWatched());
+        assertEquals(FirebaseManager.WRITE_INTERVAL_MS, manager.getWriteIntervalMillis());
+    }
+
+    private static Map<String, Object> busFields(String path, Map<String, Object> map) {
+        if (!path.isEmpty()) return new HashMap<>(map);
+        Map<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (entry.getKey().startsWith(BUS_PREFIX)) {
+                fields.put(entry.getKey().substring(BUS_PREFIX.length()), entry.getValue());
+            }
+        }
+        return fields;
+    }
+
+    private static int geoEntries(Map<String, Object> payload) {
+        int count = 0;
+        for (String key : payload.keySet()) {
+            if (key.startsWith(FirebaseManager.GEO_INDEX_PATH + "/")) count++;
+        }
+        return count;
+    }
+
+    private static int trailEntries(Map<String, Object> payload) {
+        int count = 0;
+        for (String key : payload.keySet()) {
+            if (key.startsWith("trail/")) count++;
+        }
+        return count;
+    }
+}
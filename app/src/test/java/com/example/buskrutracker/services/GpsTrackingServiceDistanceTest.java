@@ -0,0 +1,131 @@
+package com.example.buskrutracker.services;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.buskrutracker.utils.GeoMath;
+import com.google.android.gms.location.LocationResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Jarak tempuh service dengan map-matching fixed lag: keluar rute dan stop tidak boleh
+ * membuang fix yang masih di window matcher
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GpsTrackingServiceDistanceTest {
+
+    // Contoh encoded polyline dari dokumentasi Google: (38.5,-120.2) -> (40.7,-120.95) -> ...
+    private static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+    private static final double METERS_PER_DEG = 6371008.8 * Math.PI / 180.0;
+    private static final double LAT0 = 38.5, LNG0 = -120.2;
+    private static final long T0 = 1700000000000L;
+    private static final int FIXES = 96;
+
+    private Context context;
+    private ServiceController<GpsTrackingService> controller;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        controller = Robolectric.buildService(GpsTrackingService.class).create();
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void offRouteExcursion_countsWholePath() {
+        GpsTrackingService service = controller.get();
+        service.onStartCommand(GpsTrackingService.createStartIntent(context, 7,
+                "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", 40,
+                "Surabaya - Madiun", POLYLINE, "Budi"), 0, 1);
+        shadowOf(service.getTrackingLooper()).idle();
+
+        double expectedMeters = 0;
+        double[] previous = null;
+        for (int i = 0; i < FIXES; i++) {
+            double[] point = pointAt(i);
+            if (previous != null) {
+                expectedMeters += GeoMath.fastDistanceMeters(
+                        previous[0], previous[1], point[0], point[1]);
+            }
+            previous = point;
+            deliver(service, point, i);
+        }
+
+        service.onStartCommand(GpsTrackingService.createStopIntent(context), 0, 2);
+        shadowOf(service.getTrackingLooper()).idle();
+
+        assertEquals(expectedMeters / 1000.0, service.getTotalJarak(), 0.05);
+    }
+
+    /**
+     * 40 fix di rute (100 m per fix), 3 fix keluar tegak lurus, 10 fix sejajar 300 m dari rute,
+     * 3 fix kembali, lalu 40 fix di rute lagi
+     */
+    private static double[] pointAt(int i) {
+        double along;
+        double offset;
+        if (i < 40) {
+            along = i * 100;
+            offset = 0;
+        } else if (i < 43) {
+            along = 3900;
+            offset = (i - 39) * 100;
+        } else if (i < 53) {
+            along = 3900 + (i - 42) * 100;
+            offset = 300;
+        } else if (i < 56) {
+            along = 4900;
+            offset = 300 - (i - 52) * 100;
+        } else {
+            along = 4900 + (i - 55) * 100;
+            offset = 0;
+        }
+
+        // Arah segmen pertama polyline dalam meter lokal
+        double metersPerDegLng = METERS_PER_DEG * Math.cos(Math.toRadians(LAT0));
+        double ux = -0.75 * metersPerDegLng;
+        double uy = 2.2 * METERS_PER_DEG;
+        double length = Math.hypot(ux, uy);
+        ux /= length;
+        uy /= length;
+
+        double x = ux * along - uy * offset;
+        double y = uy * along + ux * offset;
+        return new double[]{LAT0 + y / METERS_PER_DEG, LNG0 + x / metersPerDegLng};
+    }
+
+    private static void deliver(GpsTrackingService service, double[] point, int i) {
+        Location location = new Location("fused");
+        location.setLatitude(point[0]);
+        location.setLongitude(point[1]);
+        location.setAccuracy(8f);
+        location.setSpeed(20f);
+        location.setTime(T0 + i * 5000L);
+        location.setElapsedRealtimeNanos((i + 1) * 5000000000L);
+
+        Looper looper = service.getTrackingLooper();
+        new Handler(looper).post(() -> service.getLocationCallback()
+                .onLocationResult(LocationResult.create(Collections.singletonList(location))));
+        shadowOf(looper).idle();
+    }
+}
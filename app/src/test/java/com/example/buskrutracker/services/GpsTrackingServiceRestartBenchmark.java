@@ -0,0 +1,61 @@
+package com.example.buskrutracker.services;
+
+import android.app.Service;
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Benchmark waktu recovery restart START_STICKY dari journal. Tidak ikut unit test biasa,
+ * jalankan dengan ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GpsTrackingServiceRestartBenchmark {
+
+    private ServiceController<GpsTrackingService> firstController;
+    private ServiceController<GpsTrackingService> secondController;
+
+    @After
+    public void tearDown() {
+        if (firstController != null) {
+            firstController.destroy();
+        }
+        if (secondController != null) {
+            secondController.destroy();
+        }
+    }
+
+    @Test
+    public void nullIntentRestart_recoveryTime() {
+        Context context = RuntimeEnvironment.getApplication();
+        firstController = Robolectric.buildService(GpsTrackingService.class).create();
+        GpsTrackingService first = firstController.get();
+        first.onStartCommand(GpsTrackingService.createStartIntent(context, 7,
+                "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", 40,
+                "Surabaya - Madiun", GpsTrackingServiceRestartTest.POLYLINE, "Budi"), 0, 1);
+        shadowOf(first.getTrackingLooper()).idle();
+        for (int i = 0; i < 300; i++) {
+            GpsTrackingServiceRestartTest.deliver(first, GpsTrackingServiceRestartTest.fixAt(i));
+        }
+
+        secondController = Robolectric.buildService(GpsTrackingService.class).create();
+        GpsTrackingService second = secondController.get();
+        long start = System.nanoTime();
+        second.onStartCommand(null, Service.START_FLAG_RETRY, 1);
+        shadowOf(second.getTrackingLooper()).idle();
+        double recoveryMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("Restart recovery: %.1f ms (service %d ms), %d points%n",
+                recoveryMs, second.getLastRecoveryMillis(), second.getTrackPointCount());
+        assertTrue("recovery " + recoveryMs + " ms", recoveryMs < 500);
+    }
+}
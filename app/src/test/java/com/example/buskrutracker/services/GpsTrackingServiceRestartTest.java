@@ -0,0 +1,128 @@
+package com.example.buskrutracker.services;
+
+import android.app.Service;
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.location.LocationResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Service di-kill di tengah perjalanan lalu di-restart dengan intent null (START_STICKY):
+ * data yang hilang (waktu recovery: GpsTrackingServiceRestartBenchmark)
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GpsTrackingServiceRestartTest {
+
+    // Contoh encoded polyline dari dokumentasi Google: (38.5,-120.2) -> (40.7,-120.95) -> ...
+    static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+    private static final long T0 = 1700000000000L;
+
+    private Context context;
+    private ServiceController<GpsTrackingService> firstController;
+    private ServiceController<GpsTrackingService> secondController;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        firstController = Robolectric.buildService(GpsTrackingService.class).create();
+    }
+
+    @After
+    public void tearDown() {
+        firstController.destroy();
+        if (secondController != null) {
+            secondController.destroy();
+        }
+    }
+
+    @Test
+    public void nullIntentRestart_resumesSessionWithoutLosingState() {
+        GpsTrackingService first = firstController.get();
+        first.onStartCommand(GpsTrackingService.createStartIntent(context, 7,
+                "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", 40,
+                "Surabaya - Madiun", POLYLINE, "Budi"), 0, 1);
+        shadowOf(first.getTrackingLooper()).idle();
+
+        // Setengah perjalanan, dengan belokan kecil agar simplifier menyimpan beberapa titik
+        for (int i = 0; i < 300; i++) {
+            deliver(first, fixAt(i));
+        }
+        double jarakBeforeKill = first.getTotalJarak();
+        int pointsBeforeKill = first.getTrackPointCount();
+        int updatesBeforeKill = first.getUpdateCount();
+        assertTrue(jarakBeforeKill > 10);
+
+        // Proses mati tanpa onDestroy; sistem membuat service baru dan memanggil onStartCommand(null)
+        secondController = Robolectric.buildService(GpsTrackingService.class).create();
+        GpsTrackingService second = secondController.get();
+
+        int result = second.onStartCommand(null, Service.START_FLAG_RETRY, 1);
+        shadowOf(second.getTrackingLooper()).idle();
+
+        assertEquals(Service.START_STICKY, result);
+        assertTrue(second.isTrackingActive());
+
+        double lostKm = jarakBeforeKill - second.getTotalJarak();
+        int lostPoints = pointsBeforeKill - second.getTrackPointCount();
+        assertTrue(second.getLastRecoveryMillis() >= 0);
+        assertEquals(0, lostKm, 1e-9);
+        assertEquals(0, lostPoints);
+        assertEquals(updatesBeforeKill, second.getUpdateCount());
+
+        // Perjalanan berlanjut dan jarak terus bertambah dari nilai sebelum kill
+        for (int i = 300; i < 360; i++) {
+            deliver(second, fixAt(i));
+        }
+        assertEquals(updatesBeforeKill + 60, second.getUpdateCount());
+        assertTrue(second.getTotalJarak() > jarakBeforeKill + 5);
+    }
+
+    @Test
+    public void nullIntentRestart_withoutSession_stopsService() {
+        GpsTrackingService service = firstController.get();
+        service.onStartCommand(null, Service.START_FLAG_RETRY, 1);
+        shadowOf(service.getTrackingLooper()).idle();
+
+        assertFalse(service.isTrackingActive());
+    }
+
+    static void deliver(GpsTrackingService service, Location location) {
+        Looper looper = service.getTrackingLooper();
+        new Handler(looper).post(() -> service.getLocationCallback()
+                .onLocationResult(LocationResult.create(Collections.singletonList(location))));
+        shadowOf(looper).idle();
+    }
+
+    /**
+     * Fix ke-i sepanjang segmen pertama polyline (~100 m per fix, 5 detik per fix)
+     */
+    static Location fixAt(int i) {
+        double t = i * 100.0 / 250000.0;
+        double wiggle = ((i / 40) % 2 == 0 ? 1 : -1) * 0.0002;
+        Location location = new Location("fused");
+        location.setLatitude(38.5 + t * 2.2);
+        location.setLongitude(-120.2 - t * 0.75 + wiggle);
+        location.setAccuracy(8f);
+        location.setSpeed(20f);
+        location.setTime(T0 + i * 5000L);
+        location.setElapsedRealtimeNanos((i + 1) * 5000000000L);
+        return location;
+    }
+}
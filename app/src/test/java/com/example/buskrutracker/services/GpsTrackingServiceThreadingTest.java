@@ -0,0 +1,89 @@
+package com.example.buskrutracker.services;
+
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.location.LocationResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Memastikan pipeline lokasi tidak pernah berjalan di main thread
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GpsTrackingServiceThreadingTest {
+
+    // Contoh encoded polyline dari dokumentasi Google
+    private static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+    private Context context;
+    private ServiceController<GpsTrackingService> controller;
+    private GpsTrackingService service;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        controller = Robolectric.buildService(GpsTrackingService.class).create();
+        service = controller.get();
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void trackingLooper_isNotMainLooper() {
+        assertNotSame(Looper.getMainLooper(), service.getTrackingLooper());
+    }
+
+    @Test
+    public void intentsAndFixes_runOnTrackingThreadOnly() {
+        Looper trackingLooper = service.getTrackingLooper();
+
+        service.onStartCommand(GpsTrackingService.createStartIntent(context, 7,
+                "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", 40,
+                "Surabaya - Madiun", POLYLINE, "Budi"), 0, 1);
+        service.onStartCommand(GpsTrackingService.createKondisiUpdateIntent(context, 7, "macet"), 0, 2);
+        service.onStartCommand(GpsTrackingService.createPassengerUpdateIntent(context, 7, 12), 0, 3);
+
+        // Main thread hanya meneruskan; belum ada hot path yang berjalan
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(0, service.getHotPathCalls());
+
+        shadowOf(trackingLooper).idle();
+
+        // Simulasikan fused provider yang mengirim fix ke looper yang didaftarkan
+        List<Location> fixes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Location location = new Location("fused");
+            location.setLatitude(-7.2575 - i * 0.0001);
+            location.setLongitude(112.7521 - i * 0.0011);
+            location.setAccuracy(8f);
+            location.setSpeed(20f);
+            location.setTime(1700000000000L + i * 5000L);
+            fixes.add(location);
+        }
+        new Handler(trackingLooper).post(() ->
+                service.getLocationCallback().onLocationResult(LocationResult.create(fixes)));
+        shadowOf(trackingLooper).idle();
+
+        assertTrue(service.getHotPathCalls() >= 7);
+        assertEquals(0, service.getHotPathCallsOffTrackingThread());
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.buskrutracker.services;
+
+import android.os.Looper;
+
+import androidx.lifecycle.Observer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit test untuk LocationStream (conflation & replay)
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LocationStreamTest {
+
+    private final List<TrackingState> received = new ArrayList<>();
+    private final Observer<TrackingState> observer = received::add;
+
+    @After
+    public void tearDown() {
+        LocationStream.getState().removeObserver(observer);
+        LocationStream.clear();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void burstOfPublishes_isConflatedToLatest() {
+        LocationStream.getState().observeForever(observer);
+        shadowOf(Looper.getMainLooper()).idle();
+        received.clear();
+
+        for (int i = 1; i <= 5; i++) {
+            LocationStream.publish(new TrackingState(-6.2, 106.8, 10f * i, 0.1 * i, i, 1000L * i));
+        }
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(1, received.size());
+        assertEquals(5, received.get(0).updateCount);
+        assertEquals(5000L, received.get(0).elapsedMillis);
+    }
+
+    @Test
+    public void newSubscriber_receivesLatestState() {
+        LocationStream.publish(new TrackingState(-6.2, 106.8, 42f, 3.5, 7, 35000));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        LocationStream.getState().observeForever(observer);
+
+        assertEquals(1, received.size());
+        assertEquals(42f, received.get(0).speedKmh, 0.001f);
+        assertEquals(3.5, received.get(0).distanceKm, 1e-9);
+    }
+
+    @Test
+    public void removedSubscriber_stopsReceiving() {
+        LocationStream.getState().observeForever(observer);
+        LocationStream.getState().removeObserver(observer);
+        received.clear();
+
+        LocationStream.publish(new TrackingState(-6.2, 106.8, 20f, 1.0, 3, 15000));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertTrue(received.isEmpty());
+    }
+}
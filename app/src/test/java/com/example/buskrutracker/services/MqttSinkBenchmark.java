@@ -0,0 +1,47 @@
+package com.example.buskrutracker.services;
+
+import com.example.buskrutracker.utils.TelemetryFrame;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark encode TelemetryFrame vs JSON Firebase per fix (tanpa I/O). Tidak ikut unit test
+ * biasa, jalankan dengan ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MqttSinkBenchmark {
+
+    @Test
+    public void encodeThroughput_binaryFrameVsFirebaseJson() {
+        Map<String, Object> captured = MqttSinkTest.firebaseLocationPayload();
+        Gson gson = new Gson();
+        long now = MqttSinkTest.NOW;
+
+        int fixes = 200000;
+        byte[] frame = new byte[TelemetryFrame.FRAME_SIZE];
+        long start = System.nanoTime();
+        for (int i = 0; i < fixes; i++) {
+            TelemetryFrame.encode(frame, 0, i, now + i, -7.25 + i * 1e-7, 112.75, 40f, i, 3, i);
+        }
+        double binaryPerSecond = fixes / ((System.nanoTime() - start) / 1e9);
+
+        int jsonFixes = 20000;
+        start = System.nanoTime();
+        for (int i = 0; i < jsonFixes; i++) {
+            captured.put("buses/bus_7/location/latitude", -7.25 + i * 1e-7);
+            gson.toJson(captured);
+        }
+        double jsonPerSecond = jsonFixes / ((System.nanoTime() - start) / 1e9);
+
+        System.out.printf("Encode: MQTT %.0f vs Firebase JSON %.0f fixes/s%n",
+                binaryPerSecond, jsonPerSecond);
+        assertTrue(binaryPerSecond > jsonPerSecond);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.buskrutracker.services;
+
+import com.example.buskrutracker.utils.TelemetryFrame;
+import com.example.buskrutracker.utils.VirtualClock;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * MqttSink ke broker test di localhost + perbandingan ukuran payload dengan Firebase
+ * (kecepatan encode: MqttSinkBenchmark)
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MqttSinkTest {
+
+    static final long NOW = 1709272800000L;
+    private static final long RECEIVE_TIMEOUT_MS = 5000;
+
+    @Test(timeout = 15000)
+    public void locationIsBinaryQos0_statusAndKondisiAreRetainedQos1() throws Exception {
+        try (TestMqttBroker broker = new TestMqttBroker()) {
+            MqttSink sink = new MqttSink("127.0.0.1", broker.getPort(), "bus-7", new VirtualClock(NOW));
+            try {
+                sink.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+                sink.updateStatus(7, "completed");
+                sink.updateKondisi(7, "macet");
+
+                Map<String, TestMqttBroker.Publish> byTopic = receive(broker, 3);
+                TestMqttBroker.Publish location = byTopic.get("bus/7/loc");
+                assertEquals(0, location.qos);
+                assertFalse(location.retain);
+                assertEquals(TelemetryFrame.FRAME_SIZE, location.payload.length);
+                TelemetryFrame frame = TelemetryFrame.decode(location.payload, 0,
+                        location.payload.length);
+                assertEquals(-7.25, frame.latitude, 1e-7);
+                assertEquals(112.75, frame.longitude, 1e-7);
+                assertEquals(NOW, frame.time);
+
+                TestMqttBroker.Publish status = byTopic.get("bus/7/status");
+                assertEquals(1, status.qos);
+                assertTrue(status.retain);
+                assertEquals("completed", status.text());
+                assertEquals("macet", byTopic.get("bus/7/kondisi").text());
+
+                awaitAcked(sink, 2);
+            } finally {
+                sink.release();
+            }
+        }
+    }
+
+    @Test(timeout = 15000)
+    public void reconnect_resendsUnackedQos1WithDupFlag() throws Exception {
+        try (TestMqttBroker broker = new TestMqttBroker()) {
+            broker.setAckQos1(false);
+            MqttSink sink = new MqttSink("127.0.0.1", broker.getPort(), "bus-7", new VirtualClock(NOW));
+            try {
+                sink.updateStatus(7, "active");
+                TestMqttBroker.Publish first = broker.next(RECEIVE_TIMEOUT_MS);
+                assertFalse(first.dup);
+
+                broker.setAckQos1(true);
+                broker.dropClients();
+
+                TestMqttBroker.Publish resent = broker.next(RECEIVE_TIMEOUT_MS);
+                assertNotNull(resent);
+                assertTrue(resent.dup);
+                assertEquals("active", resent.text());
+                assertEquals(2, broker.getConnectCount());
+                awaitAcked(sink, 1);
+            } finally {
+                sink.release();
+            }
+        }
+    }
+
+    @Test(timeout = 15000)
+    public void offline_buffersRecentFramesAndLatestRetainedValue() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        // Broker belum ada: semua pesan tertahan di buffer
+        MqttSink sink = new MqttSink("127.0.0.1", port, "bus-7", new VirtualClock(NOW));
+        try {
+            for (int i = 0; i < 100; i++) {
+                sink.updateLocationWithTrack(7, -7.25 - i * 1e-4, 112.75, 40f, i, 3, i);
+            }
+            for (int i = 1; i <= 5; i++) {
+                sink.updatePassengers(7, i);
+            }
+            assertEquals(100 - MqttSink.LOCATION_BUFFER, sink.getDroppedCount());
+            assertEquals(4, sink.getCollapsedCount());
+
+            try (TestMqttBroker broker = new TestMqttBroker(port)) {
+                Map<String, TestMqttBroker.Publish> last = new HashMap<>();
+                int frames = 0;
+                int firstSeq = -1;
+                for (int i = 0; i < MqttSink.LOCATION_BUFFER + 1; i++) {
+                    TestMqttBroker.Publish publish = broker.next(RECEIVE_TIMEOUT_MS);
+                    assertNotNull(publish);
+                    if (publish.topic.endsWith("/loc")) {
+                        TelemetryFrame frame = TelemetryFrame.decode(publish.payload, 0,
+                                publish.payload.length);
+                        if (firstSeq < 0) firstSeq = frame.seq;
+                        frames++;
+                    }
+                    last.put(publish.topic, publish);
+                }
+
+                // Hanya frame terbaru yang tersisa, penumpang hanya nilai terakhir
+                assertEquals(MqttSink.LOCATION_BUFFER, frames);
+                assertEquals(100 - MqttSink.LOCATION_BUFFER, firstSeq);
+                assertEquals("5", last.get("bus/7/passengers").text());
+                awaitAcked(sink, 1);
+            }
+        } finally {
+            sink.release();
+        }
+    }
+
+    @Test(timeout = 15000)
+    public void release_sendsFinalRetainedBeforeDisconnect_andConnectCarriesWill() throws Exception {
+        try (TestMqttBroker broker = new TestMqttBroker()) {
+            MqttSink sink = new MqttSink("127.0.0.1", broker.getPort(), "bus-7", new VirtualClock(NOW));
+            sink.updateStatus(7, "active");
+            assertEquals("active", broker.next(RECEIVE_TIMEOUT_MS).text());
+
+            // Urutan handleStopTracking -> onDestroy: release() langsung setelah clear
+            sink.updateStatus(7, "completed");
+            sink.clearBusData(7);
+            sink.release();
+
+            // Sudah di-PUBACK = sudah diterima broker; "completed" mungkin ikut terkirim
+            // sebelum ditimpa clear
+            assertTrue(sink.getAckedCount() >= 6);
+            Map<String, TestMqttBroker.Publish> last = new HashMap<>();
+            for (TestMqttBroker.Publish publish; (publish = broker.next(100)) != null; ) {
+                last.put(publish.topic, publish);
+            }
+            for (String topic : new String[]{"status", "kondisi", "passengers", "eta", "info"}) {
+                TestMqttBroker.Publish publish = last.get("bus/7/" + topic);
+                assertTrue(publish.retain);
+                assertEquals(0, publish.payload.length);
+            }
+
+            TestMqttBroker.Publish will = broker.getLastWill();
+            assertEquals("bus/7/status", will.topic);
+            assertEquals(MqttSink.WILL_STATUS, will.text());
+            assertEquals(1, will.qos);
+            assertTrue(will.retain);
+        }
+    }
+
+    @Test
+    public void locationFix_binaryFrameVsFirebaseJsonSize() {
+        int jsonBytes = new Gson().toJson(firebaseLocationPayload())
+                .getBytes(StandardCharsets.UTF_8).length;
+        int mqttBytes = MqttSink.publishPacketSize("bus/7/loc".length(),
+                TelemetryFrame.FRAME_SIZE, 0);
+
+        assertEquals(49, mqttBytes);
+        assertTrue("json " + jsonBytes, mqttBytes * 4 < jsonBytes);
+    }
+
+    /**
+     * Payload multi-path FirebaseManager untuk satu fix (tanpa trail / ETA)
+     */
+    static Map<String, Object> firebaseLocationPayload() {
+        FirebaseManager firebase = new FirebaseManager();
+        firebase.setClock(new VirtualClock(NOW));
+        Map<String, Object> captured = new HashMap<>();
+        firebase.setWriteObserver((path, value) -> {
+            if (value instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> payload = (Map<String, Object>) value;
+                captured.putAll(payload);
+            }
+        });
+        firebase.updateLocationWithTrack(7, -7.2504517, 112.7508345, 43.7f, 12.345, 42, 11.9);
+        return captured;
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private static Map<String, TestMqttBroker.Publish> receive(TestMqttBroker broker, int count)
+            throws InterruptedException {
+        Map<String, TestMqttBroker.Publish> byTopic = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            TestMqttBroker.Publish publish = broker.next(RECEIVE_TIMEOUT_MS);
+            assertNotNull("publish " + i, publish);
+            byTopic.put(publish.topic, publish);
+        }
+        return byTopic;
+    }
+
+    private static void awaitAcked(MqttSink sink, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RECEIVE_TIMEOUT_MS;
+        while (sink.getAckedCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("acked " + sink.getAckedCount() + " of " + count);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.buskrutracker.services;
+
+import com.example.buskrutracker.utils.VirtualClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * SocketSink ke server pengganti di localhost
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SocketSinkTest {
+
+    private static final long NOW = 1709272800000L;
+
+    @Test(timeout = 10000)
+    public void messagesArriveAsJsonLinesInOrder() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            SocketSink sink = new SocketSink("127.0.0.1", server.getLocalPort(), new VirtualClock(NOW));
+            try {
+                sink.updateLocationWithTrack(7, -7.25, 112.75, 40f, 1.5, 3, 1.2);
+                sink.updateKondisi(7, "ma\"cet");
+                sink.updateStatus(7, "completed");
+
+                try (Socket client = server.accept();
+                     BufferedReader in = new BufferedReader(new InputStreamReader(
+                             client.getInputStream(), StandardCharsets.UTF_8))) {
+                    assertEquals("{\"type\":\"location\",\"bus\":7,\"lat\":-7.25,\"lng\":112.75,"
+                                    + "\"speed\":40.0,\"totalDistance\":1.5,\"segmentIndex\":3,"
+                                    + "\"routeProgress\":1.2,\"t\":" + NOW + "}",
+                            in.readLine());
+                    assertEquals("{\"type\":\"kondisi\",\"bus\":7,\"kondisi\":\"ma\\\"cet\",\"t\":"
+                            + NOW + "}", in.readLine());
+                    assertTrue(in.readLine().contains("\"status\":\"completed\""));
+                }
+                assertEquals(0, sink.getDroppedCount());
+            } finally {
+                sink.release();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void release_sendsQueuedFinalMessagesBeforeClosing() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            SocketSink sink = new SocketSink("127.0.0.1", server.getLocalPort(), new VirtualClock(NOW));
+
+            // Urutan handleStopTracking -> onDestroy: release() langsung setelah clear
+            sink.updateStatus(7, "completed");
+            sink.clearBusData(7);
+            sink.release();
+            assertEquals(2, sink.getSentCount());
+
+            try (Socket client = server.accept();
+                 BufferedReader in = new BufferedReader(new InputStreamReader(
+                         client.getInputStream(), StandardCharsets.UTF_8))) {
+                assertTrue(in.readLine().contains("\"status\":\"completed\""));
+                assertTrue(in.readLine().startsWith("{\"type\":\"clear\""));
+                assertNull(in.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void fullQueueDropsOldest() {
+        // Port tertutup: writer thread terus gagal connect, antrean tidak terkuras
+        SocketSink sink = new SocketSink("127.0.0.1", 1, new VirtualClock(NOW));
+        try {
+            for (int i = 0; i < SocketSink.QUEUE_CAPACITY + 50; i++) {
+                sink.updatePassengers(7, i);
+            }
+            assertTrue(sink.getDroppedCount() >= 49);
+        } finally {
+            sink.release();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.buskrutracker.services;
+
+import com.google.firebase.database.ServerValue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk payload arsip StaleBusSweeper
+ */
+public class StaleBusSweeperTest {
+
+    private static final long NOW = 1709272800000L;
+    private static final long CUTOFF = NOW - StaleBusSweeper.STALE_AFTER_MS;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void staleBus_isArchivedAndRemovedFromEveryIndex() {
+        Map<String, Object> bus = bus(CUTOFF - 1);
+        Map<String, Object> payload = new HashMap<>();
+
+        assertTrue(StaleBusSweeper.isStale(bus, CUTOFF));
+        assertTrue(StaleBusSweeper.putArchive(payload, "bus_7", bus, CUTOFF));
+
+        // Node bus sendiri dihapus transaction (bersyarat), bukan di payload ini
+        assertFalse(payload.containsKey("buses/bus_7"));
+        assertTrue(payload.containsKey("routes_live/3/bus_7"));
+        assertTrue(payload.containsKey("buses_geo/qw8nt/bus_7"));
+        assertEquals(3, payload.size());
+
+        // Arsip tanpa polyline & trail
+        Map<String, Object> archived = (Map<String, Object>) payload.get("buses_archive/bus_7");
+        assertEquals("Sugeng Rahayu", archived.get("namaBus"));
+        assertEquals(CUTOFF - 1, archived.get("lastSeenAt"));
+        assertEquals(ServerValue.TIMESTAMP, archived.get("archivedAt"));
+        assertFalse(archived.containsKey("routePolyline"));
+        assertFalse(archived.containsKey("trail"));
+    }
+
+    @Test
+    public void freshOrUnknownBus_isKept() {
+        Map<String, Object> payload = new HashMap<>();
+
+        assertFalse(StaleBusSweeper.putArchive(payload, "bus_7", bus(CUTOFF + 1), CUTOFF));
+        Map<String, Object> unknown = bus(0);
+        unknown.remove("heartbeatAt");
+        ((Map<?, ?>) unknown.get("location")).remove("updatedAt");
+        assertFalse(StaleBusSweeper.putArchive(payload, "bus_8", unknown, CUTOFF));
+        assertFalse(StaleBusSweeper.isStale(unknown, CUTOFF));
+        assertTrue(payload.isEmpty());
+    }
+
+    @Test
+    public void busWithoutHeartbeat_fallsBackToLocationTime() {
+        Map<String, Object> legacy = bus(0);
+        legacy.remove("heartbeatAt");
+
+        assertEquals(CUTOFF - 60000, StaleBusSweeper.lastSeen(legacy));
+        assertTrue(StaleBusSweeper.putArchive(new HashMap<>(), "bus_7", legacy, CUTOFF));
+    }
+
+    /**
+     * Node bus seperti hasil DataSnapshot.getValue() (angka bulat sebagai Long)
+     */
+    private static Map<String, Object> bus(long heartbeatAt) {
+        Map<String, Object> location = new HashMap<>();
+        location.put("latitude", -7.2575);
+        location.put("longitude", 112.7521);
+        location.put("geohash", "qw8nt");
+        location.put("updatedAt", CUTOFF - 60000);
+
+        Map<String, Object> bus = new HashMap<>();
+        bus.put("namaBus", "Sugeng Rahayu");
+        bus.put("status", FirebaseManager.STATUS_OFFLINE);
+        bus.put("ruteId", 3L);
+        bus.put("heartbeatAt", heartbeatAt);
+        bus.put("routePolyline", "_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+        bus.put("trail", new HashMap<>());
+        bus.put("location", location);
+        return bus;
+    }
+}
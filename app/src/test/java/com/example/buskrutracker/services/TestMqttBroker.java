@@ -0,0 +1,210 @@
+package com.example.buskrutracker.services;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Broker MQTT 3.1.1 minimal untuk test (localhost): CONNACK, PUBACK QoS 1, PINGRESP.
+ * Semua PUBLISH yang diterima dicatat berurutan, will dari CONNECT terakhir disimpan
+ * (tidak dipublish).
+ */
+class TestMqttBroker implements Closeable {
+
+    static final class Publish {
+        final String topic;
+        final byte[] payload;
+        final int qos;
+        final boolean retain;
+        final boolean dup;
+
+        Publish(String topic, byte[] payload, int qos, boolean retain, boolean dup) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.retain = retain;
+            this.dup = dup;
+        }
+
+        String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final ServerSocket server;
+    private final BlockingQueue<Publish> received = new LinkedBlockingQueue<>();
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connects = new AtomicInteger();
+    private volatile boolean ackQos1 = true;
+    private volatile Publish lastWill;
+
+    TestMqttBroker() throws IOException {
+        this(0);
+    }
+
+    TestMqttBroker(int port) throws IOException {
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress("127.0.0.1", port));
+        Thread acceptThread = new Thread(this::acceptLoop, "TestMqttBroker");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    int getConnectCount() {
+        return connects.get();
+    }
+
+    /**
+     * Last Will dari CONNECT terakhir, null jika tidak ada
+     */
+    Publish getLastWill() {
+        return lastWill;
+    }
+
+    /**
+     * False: PUBLISH QoS 1 diterima tanpa PUBACK (simulasi ack hilang)
+     */
+    void setAckQos1(boolean ackQos1) {
+        this.ackQos1 = ackQos1;
+    }
+
+    Publish next(long timeoutMillis) throws InterruptedException {
+        return received.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Putuskan semua client (seperti broker restart / jaringan putus)
+     */
+    void dropClients() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        dropClients();
+        server.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket client = server.accept();
+                clients.add(client);
+                Thread handler = new Thread(() -> serve(client), "TestMqttClient");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            OutputStream out = client.getOutputStream();
+
+            while (true) {
+                int header = in.read();
+                if (header < 0) throw new EOFException();
+                byte[] body = readBody(in);
+                int type = header >> 4;
+
+                if (type == MqttSink.CONNECT) {
+                    String protocol = new String(body, 2, 4, StandardCharsets.US_ASCII);
+                    if (!"MQTT".equals(protocol) || body[6] != 4) {
+                        throw new IOException("Bad CONNECT");
+                    }
+                    lastWill = parseWill(body);
+                    connects.incrementAndGet();
+                    out.write(new byte[]{(byte) (MqttSink.CONNACK << 4), 2, 0, 0});
+                } else if (type == MqttSink.PUBLISH) {
+                    int qos = (header >> 1) & 0x03;
+                    int topicLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                    String topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+                    int offset = 2 + topicLength;
+                    int packetId = 0;
+                    if (qos > 0) {
+                        packetId = ((body[offset] & 0xFF) << 8) | (body[offset + 1] & 0xFF);
+                        offset += 2;
+                    }
+                    byte[] payload = new byte[body.length - offset];
+                    System.arraycopy(body, offset, payload, 0, payload.length);
+                    received.add(new Publish(topic, payload, qos, (header & 0x01) != 0,
+                            (header & 0x08) != 0));
+                    if (qos == 1 && ackQos1) {
+                        out.write(new byte[]{(byte) (MqttSink.PUBACK << 4), 2,
+                                (byte) (packetId >> 8), (byte) packetId});
+                    }
+                } else if (type == MqttSink.PINGREQ) {
+                    out.write(new byte[]{(byte) (MqttSink.PINGRESP << 4), 0});
+                } else if (type == MqttSink.DISCONNECT) {
+                    break;
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            clients.remove(client);
+            try {
+                client.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static Publish parseWill(byte[] body) {
+        int flags = body[7] & 0xFF;
+        if ((flags & 0x04) == 0) return null;
+
+        int offset = 10;
+        offset += 2 + readShort(body, offset);
+        int topicLength = readShort(body, offset);
+        String topic = new String(body, offset + 2, topicLength, StandardCharsets.UTF_8);
+        offset += 2 + topicLength;
+        int messageLength = readShort(body, offset);
+        byte[] message = new byte[messageLength];
+        System.arraycopy(body, offset + 2, message, 0, messageLength);
+        return new Publish(topic, message, (flags >> 3) & 0x03, (flags & 0x20) != 0, false);
+    }
+
+    private static int readShort(byte[] body, int offset) {
+        return ((body[offset] & 0xFF) << 8) | (body[offset + 1] & 0xFF);
+    }
+
+    private static byte[] readBody(DataInputStream in) throws IOException {
+        int length = 0;
+        int shift = 0;
+        int digit;
+        do {
+            digit = in.read();
+            if (digit < 0) throw new EOFException();
+            length |= (digit & 0x7F) << shift;
+            shift += 7;
+        } while ((digit & 0x80) != 0);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.buskrutracker.services;
+
+import android.location.Location;
+import android.os.Handler;
+
+import com.example.buskrutracker.utils.GpsTrace;
+import com.example.buskrutracker.utils.VirtualClock;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TraceReplayer - Replay trace GPS terekam lewat pipeline lokasi GpsTrackingService yang asli
+ *
+ * Fix dikirim ke LocationCallback service di tracking thread, secepat mungkin.
+ * Sebelum setiap batch, VirtualClock dimajukan ke waktu fix sehingga cadence ETA 30 detik,
+ * throttle notifikasi, dan timestamp Firebase berjalan di waktu trace, bukan waktu nyata.
+ * Timer flush / heartbeat FirebaseManager yang jatuh tempo di antara batch dijalankan
+ * pada waktu batch berikutnya.
+ *
+ * Service harus sudah dibuat, diberi setReplayEnvironment(clock, ...), dan menerima
+ * START_TRACKING. Object Location dan LocationResult disiapkan sebelum pengukuran agar
+ * alokasi yang terukur hanya milik pipeline.
+ */
+public class TraceReplayer {
+
+    private static final long TIMEOUT_SECONDS = 600;
+
+    /**
+     * Pengukur alokasi untuk thread yang memanggil (mis. ThreadMXBean di JVM)
+     */
+    public interface AllocationMeter {
+        /**
+         * @return total byte yang dialokasikan thread ini, atau -1 jika tidak didukung
+         */
+        long allocatedBytes();
+    }
+
+    /**
+     * Hasil replay
+     */
+    public static final class Report {
+        public int fixes;
+        public int batches;
+        public long wallNanos;
+        public long traceMillis;
+        public long writesIssued;
+        public long updatesCollapsed;
+        public int acceptedUpdates;
+        public double totalDistanceKm;
+        public long allocatedBytes = -1;
+
+        public double getFixesPerSecond() {
+            return wallNanos > 0 ? fixes * 1e9 / wallNanos : 0;
+        }
+
+        /**
+         * Berapa kali lebih cepat dari waktu nyata
+         */
+        public double getSpeedup() {
+            return wallNanos > 0 ? traceMillis * 1e6 / wallNanos : 0;
+        }
+
+        public double getWritesPerFix() {
+            return fixes > 0 ? (double) writesIssued / fixes : 0;
+        }
+
+        public double getAllocatedBytesPerFix() {
+            return allocatedBytes >= 0 && fixes > 0 ? (double) allocatedBytes / fixes : -1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "Replay: %d fixes in %d batches, %.0f fixes/s (%.0fx real time), "
+                            + "%d writes (%.2f/fix, %d collapsed), %d accepted, %.2f km, %s",
+                    fixes, batches, getFixesPerSecond(), getSpeedup(),
+                    writesIssued, getWritesPerFix(), updatesCollapsed, acceptedUpdates,
+                    totalDistanceKm,
+                    allocatedBytes >= 0
+                            ? String.format(Locale.US, "%.0f B allocated/fix", getAllocatedBytesPerFix())
+                            : "allocations n/a");
+        }
+    }
+
+    private final GpsTrackingService service;
+    private final VirtualClock clock;
+    private int batchSize = 1;
+    private AllocationMeter allocationMeter;
+
+    public TraceReplayer(GpsTrackingService service, VirtualClock clock) {
+        this.service = service;
+        this.clock = clock;
+    }
+
+    /**
+     * Jumlah fix per LocationResult (>1 mensimulasikan batched delivery)
+     */
+    public TraceReplayer setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    public TraceReplayer setAllocationMeter(AllocationMeter allocationMeter) {
+        this.allocationMeter = allocationMeter;
+        return this;
+    }
+
+    // ============================================
+    // REPLAY
+    // ============================================
+
+    /**
+     * Replay seluruh trace; blocking sampai semua fix diproses di tracking thread
+     */
+    public Report replay(GpsTrace trace) throws InterruptedException {
+        long bootMillis = trace.size() > 0 ? trace.getTime(0) : 0;
+        List<LocationResult> results = new ArrayList<>();
+        long[] batchTimes = new long[(trace.size() + batchSize - 1) / batchSize];
+        for (int start = 0; start < trace.size(); start += batchSize) {
+            int end = Math.min(start + batchSize, trace.size());
+            List<Location> batch = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                batch.add(toLocation(trace, i, bootMillis));
+            }
+            batchTimes[results.size()] = trace.getTime(end - 1);
+            results.add(LocationResult.create(batch));
+        }
+
+        Report report = new Report();
+        report.fixes = trace.size();
+        report.batches = results.size();
+        report.traceMillis = trace.getDurationMillis();
+
+        FirebaseManager firebaseManager = service.getFirebaseManager();
+        LocationCallback callback = service.getLocationCallback();
+        CountDownLatch done = new CountDownLatch(1);
+
+        new Handler(service.getTrackingLooper()).post(() -> {
+            try {
+                long writesBefore = firebaseManager.getWriteCount();
+                long collapsedBefore = firebaseManager.getUpdatesCollapsed();
+                int updatesBefore = service.getUpdateCount();
+                long allocatedBefore = allocationMeter != null ? allocationMeter.allocatedBytes() : -1;
+                long startNanos = System.nanoTime();
+
+                for (int b = 0; b < results.size(); b++) {
+                    clock.advanceTo(batchTimes[b]);
+                    firebaseManager.runDueTimers();
+                    callback.onLocationResult(results.get(b));
+                }
+
+                report.wallNanos = System.nanoTime() - startNanos;
+                if (allocatedBefore >= 0) {
+                    long allocatedAfter = allocationMeter.allocatedBytes();
+                    report.allocatedBytes = allocatedAfter >= 0 ? allocatedAfter - allocatedBefore : -1;
+                }
+                report.writesIssued = firebaseManager.getWriteCount() - writesBefore;
+                report.updatesCollapsed = firebaseManager.getUpdatesCollapsed() - collapsedBefore;
+                report.acceptedUpdates = service.getUpdateCount() - updatesBefore;
+                report.totalDistanceKm = service.getTotalJarak();
+            } finally {
+                done.countDown();
+            }
+        });
+
+        if (!done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Replay did not finish in " + TIMEOUT_SECONDS + " s");
+        }
+        return report;
+    }
+
+    private static Location toLocation(GpsTrace trace, int i, long bootMillis) {
+        Location location = new Location("replay");
+        location.setTime(trace.getTime(i));
+        location.setElapsedRealtimeNanos((trace.getTime(i) - bootMillis + 1) * 1000000L);
+        location.setLatitude(trace.getLatitude(i));
+        location.setLongitude(trace.getLongitude(i));
+        location.setAccuracy(trace.getAccuracy(i));
+        if (!Float.isNaN(trace.getSpeed(i))) {
+            location.setSpeed(trace.getSpeed(i));
+        }
+        if (!Float.isNaN(trace.getBearing(i))) {
+            location.setBearing(trace.getBearing(i));
+        }
+        return location;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.buskrutracker.services;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.example.buskrutracker.utils.ETACalculator;
+import com.example.buskrutracker.utils.GpsTrace;
+import com.example.buskrutracker.utils.TraceReader;
+import com.example.buskrutracker.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Replay trace terekam lewat pipeline service asli dengan virtual clock
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TraceReplayerTest {
+
+    // Contoh encoded polyline dari dokumentasi Google: (38.5,-120.2) -> (40.7,-120.95) -> ...
+    private static final String POLYLINE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+    private static final long T0 = 1709272800000L;
+    private static final long FIX_INTERVAL_MS = 5000;
+
+    private final List<ServiceController<GpsTrackingService>> controllers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (ServiceController<GpsTrackingService> controller : controllers) {
+            controller.get().onStartCommand(
+                    GpsTrackingService.createStopIntent(RuntimeEnvironment.getApplication()), 0, 99);
+            shadowOf(controller.get().getTrackingLooper()).idle();
+            controller.destroy();
+        }
+    }
+
+    @Test
+    public void csvTrace_replaysOnVirtualTimeAndReports() throws Exception {
+        GpsTrace trace = TraceReader.readCsv(new StringReader(toCsv(syntheticTrace(1440))));
+        int[] etaWrites = new int[1];
+
+        VirtualClock clock = new VirtualClock(T0);
+        GpsTrackingService service = startService(clock);
+        service.getFirebaseManager().setWriteObserver((path, value) -> {
+            if (value instanceof Map
+                    && ((Map<?, ?>) value).containsKey("buses/bus_7/eta/remainingTime")) {
+                etaWrites[0]++;
+            }
+        });
+
+        TraceReplayer.Report report = new TraceReplayer(service, clock)
+                .setAllocationMeter(TraceReplayerTest::threadAllocatedBytes)
+                .replay(trace);
+
+        assertEquals(1440, report.fixes);
+        assertTrue(report.acceptedUpdates > 1400);
+        // Fix tiap 5 detik = cadence write: satu write multi-path per publish, ETA ikut
+        assertEquals(report.acceptedUpdates, report.writesIssued);
+        assertEquals(0, report.updatesCollapsed);
+        assertTrue("replay not faster than real time", report.getSpeedup() > 10);
+
+        // Cadence ETA 30 detik mengikuti waktu trace (2 jam), bukan waktu nyata
+        long traceSeconds = trace.getDurationMillis() / 1000;
+        assertTrue("eta writes " + etaWrites[0],
+                etaWrites[0] >= traceSeconds / 35 && etaWrites[0] <= traceSeconds / 30 + 1);
+    }
+
+    @Test
+    public void sameTrace_sameResult() throws Exception {
+        GpsTrace trace = syntheticTrace(600);
+
+        TraceReplayer.Report a = replay(trace, 1);
+        TraceReplayer.Report b = replay(trace, 1);
+
+        assertEquals(a.writesIssued, b.writesIssued);
+        assertEquals(a.acceptedUpdates, b.acceptedUpdates);
+        assertEquals(a.totalDistanceKm, b.totalDistanceKm, 0);
+    }
+
+    @Test
+    public void batchedReplay_publishesOncePerBatch() throws Exception {
+        GpsTrace trace = syntheticTrace(600);
+
+        TraceReplayer.Report perFix = replay(trace, 1);
+        TraceReplayer.Report perBatch = replay(trace, 6);
+
+        assertEquals(100, perBatch.batches);
+        assertTrue(perBatch.writesIssued * 3 < perFix.writesIssued);
+    }
+
+    @Test
+    public void tighterWriteBudget_collapsesFixes() throws Exception {
+        GpsTrace trace = syntheticTrace(600);
+        VirtualClock clock = new VirtualClock(T0);
+        GpsTrackingService service = startService(clock);
+        service.getFirebaseManager().setWriteBudget(1, 3 * FIX_INTERVAL_MS);
+
+        TraceReplayer.Report report = new TraceReplayer(service, clock).replay(trace);
+
+        // Satu write per 15 detik; lokasi di antaranya saling menimpa
+        assertTrue("writes " + report.writesIssued, report.writesIssued <= report.acceptedUpdates / 3 + 1);
+        assertTrue(report.updatesCollapsed >= report.acceptedUpdates / 2);
+    }
+
+    @Test
+    public void recordingSinkOnly_benchmarksPipelineWithoutFirebase() throws Exception {
+        GpsTrace trace = syntheticTrace(600);
+        VirtualClock clock = new VirtualClock(T0);
+        GpsTrackingService service = startService(clock);
+        RecordingSink recording = new RecordingSink();
+        service.setRealtimeSinks(recording);
+
+        TraceReplayer.Report report = new TraceReplayer(service, clock).replay(trace);
+
+        assertEquals(0, report.writesIssued);
+        assertEquals(report.acceptedUpdates, recording.getCount(RecordingSink.Type.LOCATION));
+        assertTrue(recording.getCount(RecordingSink.Type.ETA) > 0);
+        assertEquals(service.getTotalJarak(), recording.getTotalDistance(), 1e-9);
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private TraceReplayer.Report replay(GpsTrace trace, int batchSize) throws InterruptedException {
+        VirtualClock clock = new VirtualClock(T0);
+        return new TraceReplayer(startService(clock), clock)
+                .setBatchSize(batchSize)
+                .replay(trace);
+    }
+
+    private GpsTrackingService startService(VirtualClock clock) {
+        Context context = RuntimeEnvironment.getApplication();
+        ServiceController<GpsTrackingService> controller =
+                Robolectric.buildService(GpsTrackingService.class).create();
+        controllers.add(controller);
+
+        GpsTrackingService service = controller.get();
+        service.setReplayEnvironment(clock, new ETACalculator(clock, false));
+        service.onStartCommand(GpsTrackingService.createStartIntent(context, 7,
+                "Sugeng Rahayu", "W 7001 UZ", "Ekonomi", 40,
+                "Surabaya - Madiun", POLYLINE, "Budi"), 0, 1);
+        shadowOf(service.getTrackingLooper()).idle();
+        shadowOf(Looper.getMainLooper()).idle();
+        return service;
+    }
+
+    /**
+     * Trace sintetis sepanjang segmen pertama polyline: ~15 m/s, fix tiap 5 detik, noise GPS
+     */
+    private static GpsTrace syntheticTrace(int fixes) {
+        Random random = new Random(5);
+        GpsTrace trace = new GpsTrace(fixes);
+        for (int i = 0; i < fixes; i++) {
+            double t = i * 75.0 / 250000.0;
+            trace.add(T0 + i * FIX_INTERVAL_MS,
+                    38.5 + t * 2.2 + random.nextGaussian() * 0.00005,
+                    -120.2 - t * 0.75 + random.nextGaussian() * 0.00005,
+                    6f + random.nextInt(10), 15f, Float.NaN);
+        }
+        return trace;
+    }
+
+    private static String toCsv(GpsTrace trace) {
+        StringBuilder csv = new StringBuilder("time,lat,lng,accuracy,speed\n");
+        for (int i = 0; i < trace.size(); i++) {
+            csv.append(String.format(Locale.US, "%d,%.7f,%.7f,%.1f,%.1f\n",
+                    trace.getTime(i), trace.getLatitude(i), trace.getLongitude(i),
+                    trace.getAccuracy(i), trace.getSpeed(i)));
+        }
+        return csv.toString();
+    }
+
+    private static long threadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.buskrutracker.services;
+
+import com.example.buskrutracker.utils.TrackBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TrackingJournal (format, checkpoint terakhir, tail terpotong)
+ */
+public class TrackingJournalTest {
+
+    private File file;
+    private TrackingJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("tracking", ".journal");
+        journal = new TrackingJournal(file);
+    }
+
+    @After
+    public void tearDown() {
+        journal.close();
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip_restoresSessionPointsAndLatestCheckpoint() {
+        journal.begin(session());
+        for (int i = 0; i < 100; i++) {
+            journal.appendPoint(-7.25 - i * 0.001, 112.75, 1000L * i, 40f, 8f);
+            journal.appendCheckpoint(i * 0.11, i + 1, true, -7.25 - i * 0.001, 112.75,
+                    40f, i % 2 == 0, i * 110.0);
+        }
+        journal.appendKondisi("macet");
+        journal.close();
+
+        TrackBuffer points = new TrackBuffer();
+        TrackingJournal.Snapshot snapshot = new TrackingJournal(file).load(points);
+
+        assertNotNull(snapshot);
+        assertEquals(42, snapshot.session.perjalanId);
+        assertEquals("Sugeng Rahayu", snapshot.session.namaBus);
+        assertNull(snapshot.session.kelas);
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", snapshot.session.polyline);
+        assertTrue(snapshot.session.batchedDelivery);
+        assertEquals(3, snapshot.session.ruteId);
+        assertEquals(100, points.size());
+        assertEquals(100, snapshot.pointCount);
+        assertEquals(99 * 0.11, snapshot.totalJarak, 1e-12);
+        assertEquals(100, snapshot.updateCount);
+        assertFalse(snapshot.lastOnRoute);
+        assertEquals("macet", snapshot.kondisi);
+        assertFalse(snapshot.truncatedTail);
+        assertEquals(file.length(), journal.getBytesWritten());
+    }
+
+    @Test
+    public void truncatedTail_isIgnored() throws IOException {
+        journal.begin(session());
+        journal.appendCheckpoint(1.5, 10, true, -7.25, 112.75, 30f, true, 1500);
+        journal.appendCheckpoint(2.5, 20, true, -7.26, 112.75, 30f, true, 2500);
+        journal.close();
+
+        // Proses mati di tengah write record terakhir
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 7);
+        }
+
+        TrackingJournal.Snapshot snapshot = new TrackingJournal(file).load(new TrackBuffer());
+        assertNotNull(snapshot);
+        assertTrue(snapshot.truncatedTail);
+        assertEquals(1.5, snapshot.totalJarak, 0);
+        assertEquals(10, snapshot.updateCount);
+    }
+
+    @Test
+    public void resume_appendsAfterExistingRecords() {
+        journal.begin(session());
+        journal.appendPoint(-7.25, 112.75, 0, 0f, 5f);
+        journal.close();
+
+        journal.resume();
+        journal.appendPoint(-7.26, 112.75, 1000, 10f, 5f);
+        journal.close();
+
+        TrackBuffer points = new TrackBuffer();
+        assertNotNull(new TrackingJournal(file).load(points));
+        assertEquals(2, points.size());
+    }
+
+    @Test
+    public void resumeAfterTruncatedTail_dropsTailAndKeepsNewRecords() throws IOException {
+        journal.begin(session());
+        journal.appendPoint(-7.25, 112.75, 0, 0f, 5f);
+        journal.appendCheckpoint(1.5, 10, true, -7.25, 112.75, 30f, true, 1500);
+        long validLength = journal.getBytesWritten();
+        journal.appendCheckpoint(0, 0, false, 0, 0, 0f, false, 0);
+        journal.close();
+
+        // Record terakhir terpotong di tengah
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(validLength + 11);
+        }
+
+        TrackingJournal resumed = new TrackingJournal(file);
+        assertTrue(resumed.load(new TrackBuffer()).truncatedTail);
+        resumed.resume();
+        assertEquals(validLength, resumed.getBytesWritten());
+        resumed.appendPoint(-7.26, 112.75, 1000, 10f, 5f);
+        resumed.appendCheckpoint(2.5, 20, true, -7.26, 112.75, 30f, true, 2500);
+        resumed.close();
+        assertEquals(file.length(), resumed.getBytesWritten());
+
+        TrackBuffer points = new TrackBuffer();
+        TrackingJournal.Snapshot snapshot = new TrackingJournal(file).load(points);
+        assertFalse(snapshot.truncatedTail);
+        assertEquals(2, points.size());
+        assertEquals(2.5, snapshot.totalJarak, 0);
+        assertEquals(20, snapshot.updateCount);
+    }
+
+    @Test
+    public void fixesAfterLastPoint_areRestoredAsSimplifierWindow() {
+        journal.begin(session());
+        journal.appendPoint(-7.250, 112.75, 1000, 40f, 5f);
+        journal.appendFix(-7.250, 112.75, 1000, 40f, 5f);   // anchor pertama
+        journal.appendFix(-7.251, 112.75, 2000, 40f, 5f);
+        journal.appendPoint(-7.251, 112.75, 2000, 40f, 5f); // di-emit simplifier
+        journal.appendFix(-7.252, 112.75, 3000, 40f, 5f);
+        journal.appendFix(-7.253, 112.75, 4000, 40f, 5f);
+        journal.appendFix(-7.253, 112.75, 4000, 40f, 5f);   // ditulis ulang setelah resume
+        journal.close();
+
+        TrackBuffer points = new TrackBuffer();
+        TrackingJournal.Snapshot snapshot = new TrackingJournal(file).load(points);
+
+        assertEquals(2, points.size());
+        assertEquals(2, snapshot.pendingFixes.size());
+        final long[] times = new long[2];
+        snapshot.pendingFixes.forEach((index, lat, lng, timestamp, speed, accuracy) ->
+                times[index] = timestamp);
+        assertArrayEquals(new long[]{3000, 4000}, times);
+    }
+
+    @Test
+    public void finish_deletesJournal() {
+        journal.begin(session());
+        journal.finish();
+        assertFalse(journal.exists());
+        assertNull(journal.load(new TrackBuffer()));
+    }
+
+    private static TrackingJournal.Session session() {
+        TrackingJournal.Session session = new TrackingJournal.Session();
+        session.perjalanId = 42;
+        session.namaBus = "Sugeng Rahayu";
+        session.armadaNomor = "W 7001 UZ";
+        session.kapasitas = 40;
+        session.ruteNama = "Surabaya - Madiun";
+        session.polyline = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+        session.kruNama = "Budi";
+        session.batchedDelivery = true;
+        session.startTime = 1700000000000L;
+        session.ruteId = 3;
+        return session;
+    }
+}
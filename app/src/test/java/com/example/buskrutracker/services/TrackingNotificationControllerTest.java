@@ -0,0 +1,70 @@
+package com.example.buskrutracker.services;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit test untuk TrackingNotificationController
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TrackingNotificationControllerTest {
+
+    private static final int NOTIFICATION_ID = 1001;
+
+    private TrackingNotificationController controller;
+    private NotificationManager manager;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        manager = context.getSystemService(NotificationManager.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+                context, 0, new Intent(), PendingIntent.FLAG_IMMUTABLE);
+        controller = new TrackingNotificationController(
+                context, "test_channel", NOTIFICATION_ID, pendingIntent, pendingIntent);
+        controller.buildInitial("Memulai tracking...");
+    }
+
+    @Test
+    public void unchangedText_isNotReposted() {
+        assertTrue(controller.update(60.04f, 1.001, 0));
+        // Pembulatan tampilan sama -> tidak di-post walau interval sudah lewat
+        assertFalse(controller.update(60.01f, 1.004, 20000));
+
+        assertEquals(1, controller.getPostCount());
+        assertEquals(1, controller.getSkippedUnchanged());
+    }
+
+    @Test
+    public void changes_areCappedToOncePerInterval() {
+        long now = 0;
+        for (int i = 0; i < 60; i++) {
+            controller.update(50f + i, i * 0.1, now);
+            now += 3000;
+        }
+
+        // 180 detik / 10 detik -> maksimal ~18 post
+        assertTrue(controller.getPostCount() <= 18);
+        assertEquals(60, controller.getPostCount() + controller.getSkippedThrottled());
+        assertEquals(1, shadowOf(manager).size());
+    }
+
+    @Test
+    public void postedText_matchesLatestValues() {
+        controller.update(72.5f, 12.345, 0);
+        String text = shadowOf(manager).getNotification(NOTIFICATION_ID)
+                .extras.getCharSequence("android.text").toString();
+        assertEquals("72.5 km/h | 12.35 km", text);
+    }
+}
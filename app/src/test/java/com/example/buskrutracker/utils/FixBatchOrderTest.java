@@ -0,0 +1,49 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk FixBatchOrder
+ */
+public class FixBatchOrderTest {
+
+    @Test
+    public void outOfOrderBatch_isSorted() {
+        long[] keys = {30, 10, 20, 50, 40};
+        int[] order = new int[keys.length];
+
+        int count = FixBatchOrder.sortAndDedup(keys, keys.length, Long.MIN_VALUE, order);
+
+        assertEquals(5, count);
+        for (int i = 1; i < count; i++) {
+            assertTrue(keys[order[i - 1]] < keys[order[i]]);
+        }
+    }
+
+    @Test
+    public void duplicates_areDropped() {
+        long[] keys = {10, 20, 10, 20, 30};
+        int[] order = new int[keys.length];
+
+        int count = FixBatchOrder.sortAndDedup(keys, keys.length, Long.MIN_VALUE, order);
+
+        assertEquals(3, count);
+        assertEquals(0, order[0]);
+        assertEquals(1, order[1]);
+        assertEquals(4, order[2]);
+    }
+
+    @Test
+    public void fixesAlreadyProcessed_areDropped() {
+        long[] keys = {15, 25, 5, 35};
+        int[] order = new int[keys.length];
+
+        int count = FixBatchOrder.sortAndDedup(keys, keys.length, 20, order);
+
+        assertEquals(2, count);
+        assertEquals(25, keys[order[0]]);
+        assertEquals(35, keys[order[1]]);
+    }
+}
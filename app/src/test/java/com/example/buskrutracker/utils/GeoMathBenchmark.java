@@ -0,0 +1,70 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark kernel jarak GeoMath. Tidak ikut unit test biasa, jalankan dengan
+ * ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class GeoMathBenchmark {
+
+    @Test
+    public void kernels_haversineVsEquirectangularVsPlanar() {
+        int n = 1 << 16;
+        double[] lats = new double[n];
+        double[] lngs = new double[n];
+        Random random = new Random(11);
+        for (int i = 0; i < n; i++) {
+            lats[i] = -7.25 + random.nextDouble() * 0.01;
+            lngs[i] = 112.75 + random.nextDouble() * 0.01;
+        }
+        GeoMath.LocalProjection projection = new GeoMath.LocalProjection(-7.25, 112.75);
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = projection.x(lngs[i]);
+            ys[i] = projection.y(lats[i]);
+        }
+
+        int rounds = 40;
+        double sink = 0;
+        long[] nanos = new long[3];
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            for (int i = 1; i < n; i++) {
+                sink += GeoMath.haversineMeters(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+            }
+            long t1 = System.nanoTime();
+            for (int i = 1; i < n; i++) {
+                sink += GeoMath.equirectangularMeters(lats[i - 1], lngs[i - 1], lats[i], lngs[i]);
+            }
+            long t2 = System.nanoTime();
+            for (int i = 1; i < n; i++) {
+                double dx = xs[i] - xs[i - 1];
+                double dy = ys[i] - ys[i - 1];
+                sink += Math.sqrt(dx * dx + dy * dy);
+            }
+            long t3 = System.nanoTime();
+            // Ronde pertama = warm-up
+            if (r > 0) {
+                nanos[0] += t1 - t0;
+                nanos[1] += t2 - t1;
+                nanos[2] += t3 - t2;
+            }
+        }
+
+        assertTrue(sink > 0);
+        System.out.printf("GeoMath per %d pasang: haversine %d us, equirectangular %d us, "
+                        + "planar %d us%n", n - 1, nanos[0] / 1000 / (rounds - 1),
+                nanos[1] / 1000 / (rounds - 1), nanos[2] / 1000 / (rounds - 1));
+        // Kernel cepat tidak boleh lebih lambat dari haversine
+        assertTrue("equirectangular " + nanos[1] + " ns vs haversine " + nanos[0] + " ns",
+                nanos[1] < nanos[0]);
+        assertTrue("planar " + nanos[2] + " ns vs haversine " + nanos[0] + " ns",
+                nanos[2] < nanos[0]);
+    }
+}
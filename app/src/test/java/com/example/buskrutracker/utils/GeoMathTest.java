@@ -0,0 +1,86 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk GeoMath (kecepatan kernel: GeoMathBenchmark)
+ */
+public class GeoMathTest {
+
+    @Test
+    public void haversine_matchesKnownDistance() {
+        // Surabaya -> Malang ~ 80 km (garis lurus)
+        double d = GeoMath.haversineMeters(-7.2575, 112.7521, -7.9666, 112.6326);
+        assertEquals(79900, d, 500);
+    }
+
+    @Test
+    public void equirectangular_errorBound() {
+        Random random = new Random(3);
+        double worst = 0;
+        for (int i = 0; i < 200000; i++) {
+            double lat = (random.nextDouble() * 2 - 1) * 70;
+            double lng = (random.nextDouble() * 2 - 1) * 180;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double dist = 1 + random.nextDouble() * GeoMath.EQUIRECT_MAX_DISTANCE_M;
+
+            double lat2 = lat + dist * Math.cos(bearing) / GeoMath.METERS_PER_DEG_LAT;
+            double lng2 = lng + dist * Math.sin(bearing) / GeoMath.metersPerDegLng(lat);
+
+            double exact = GeoMath.haversineMeters(lat, lng, lat2, lng2);
+            double fast = GeoMath.equirectangularMeters(lat, lng, lat2, lng2);
+            worst = Math.max(worst, Math.abs(fast - exact) / exact);
+        }
+        assertTrue("relative error " + worst, worst < 0.0005);
+    }
+
+    @Test
+    public void fastDistance_fallsBackToHaversineForLongDistances() {
+        double exact = GeoMath.haversineMeters(-6.2, 106.8, -7.25, 112.75);
+        assertEquals(exact, GeoMath.fastDistanceMeters(-6.2, 106.8, -7.25, 112.75), 1e-6);
+    }
+
+    @Test
+    public void localProjection_roundTrips() {
+        GeoMath.LocalProjection projection = new GeoMath.LocalProjection(-7.25, 112.75);
+        double x = projection.x(112.76);
+        double y = projection.y(-7.24);
+        assertEquals(112.76, projection.lng(x), 1e-12);
+        assertEquals(-7.24, projection.lat(y), 1e-12);
+        assertEquals(GeoMath.haversineMeters(-7.25, 112.75, -7.24, 112.76),
+                Math.hypot(x, y), 1.0);
+    }
+
+    @Test
+    public void distanceToSegment_clampsToEndpoints() {
+        assertEquals(5, GeoMath.distanceToSegment(5, 5, 0, 0, 10, 0), 1e-9);
+        assertEquals(5, GeoMath.distanceToSegment(-3, 4, 0, 0, 10, 0), 1e-9);
+        assertEquals(0, GeoMath.closestT(-3, 4, 0, 0, 10, 0), 0);
+        assertEquals(1, GeoMath.closestT(13, 4, 0, 0, 10, 0), 0);
+        assertEquals(5, GeoMath.distanceToSegment(3, 4, 0, 0, 0, 0), 1e-9);
+    }
+
+    @Test
+    public void planarKernel_matchesHaversineWithinRouteArea() {
+        // Titik acak sampai ~10 km dari origin proyeksi, jarak antar fix sampai 1 km
+        GeoMath.LocalProjection projection = new GeoMath.LocalProjection(-7.25, 112.75);
+        Random random = new Random(11);
+        double worst = 0;
+        for (int i = 0; i < 100000; i++) {
+            double lat1 = -7.25 + (random.nextDouble() * 2 - 1) * 0.09;
+            double lng1 = 112.75 + (random.nextDouble() * 2 - 1) * 0.09;
+            double lat2 = lat1 + (random.nextDouble() * 2 - 1) * 0.006;
+            double lng2 = lng1 + (random.nextDouble() * 2 - 1) * 0.006;
+
+            double exact = GeoMath.haversineMeters(lat1, lng1, lat2, lng2);
+            double planar = Math.hypot(projection.x(lng2) - projection.x(lng1),
+                    projection.y(lat2) - projection.y(lat1));
+            worst = Math.max(worst, Math.abs(planar - exact) / exact);
+        }
+        assertTrue("relative error " + worst, worst < 0.0005);
+    }
+}
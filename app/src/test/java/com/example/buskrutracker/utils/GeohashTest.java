@@ -0,0 +1,32 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk Geohash
+ */
+public class GeohashTest {
+
+    @Test
+    public void knownCoordinates_matchReferenceHashes() {
+        // Referensi: geohash.org
+        assertEquals("ezs42", Geohash.encode(42.6, -5.6, 5));
+        assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+        // Surabaya
+        assertEquals("qw8nt", Geohash.encode(-7.2575, 112.7521, 5));
+    }
+
+    @Test
+    public void longerHash_extendsShorterOne() {
+        String cell = Geohash.encode(-7.2575, 112.7521, 5);
+        assertTrue(Geohash.encode(-7.2575, 112.7521, 7).startsWith(cell));
+    }
+
+    @Test
+    public void nearbyPoints_shareCell() {
+        assertEquals(Geohash.encode(-7.2575, 112.7521, 5), Geohash.encode(-7.2580, 112.7530, 5));
+        assertNotEquals(Geohash.encode(-7.2575, 112.7521, 5), Geohash.encode(-7.6298, 111.5239, 5));
+    }
+}
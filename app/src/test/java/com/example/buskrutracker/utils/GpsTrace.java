@@ -0,0 +1,92 @@
+package com.example.buskrutracker.utils;
+
+import java.util.Arrays;
+
+/**
+ * GpsTrace - Trace GPS terekam (kolumnar) untuk replay
+ *
+ * Speed dan bearing bersifat opsional per fix (NaN jika tidak ada).
+ */
+public class GpsTrace {
+
+    private long[] times;
+    private double[] lats;
+    private double[] lngs;
+    private float[] accuracies;
+    private float[] speeds;
+    private float[] bearings;
+    private int size;
+
+    public GpsTrace() {
+        this(256);
+    }
+
+    public GpsTrace(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        times = new long[capacity];
+        lats = new double[capacity];
+        lngs = new double[capacity];
+        accuracies = new float[capacity];
+        speeds = new float[capacity];
+        bearings = new float[capacity];
+    }
+
+    /**
+     * @param speedMps m/s, NaN jika tidak ada
+     * @param bearing derajat, NaN jika tidak ada
+     */
+    public void add(long timeMillis, double lat, double lng, float accuracy,
+                    float speedMps, float bearing) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            times = Arrays.copyOf(times, capacity);
+            lats = Arrays.copyOf(lats, capacity);
+            lngs = Arrays.copyOf(lngs, capacity);
+            accuracies = Arrays.copyOf(accuracies, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+            bearings = Arrays.copyOf(bearings, capacity);
+        }
+        times[size] = timeMillis;
+        lats[size] = lat;
+        lngs[size] = lng;
+        accuracies[size] = accuracy;
+        speeds[size] = speedMps;
+        bearings[size] = bearing;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    public double getLatitude(int i) {
+        return lats[i];
+    }
+
+    public double getLongitude(int i) {
+        return lngs[i];
+    }
+
+    public float getAccuracy(int i) {
+        return accuracies[i];
+    }
+
+    public float getSpeed(int i) {
+        return speeds[i];
+    }
+
+    public float getBearing(int i) {
+        return bearings[i];
+    }
+
+    /**
+     * Durasi trace (millis) dari fix pertama ke terakhir
+     */
+    public long getDurationMillis() {
+        return size < 2 ? 0 : times[size - 1] - times[0];
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk KalmanLocationFilter dengan trace GPS sintetis (seed tetap)
+ */
+public class KalmanLocationFilterTest {
+
+    private static final double START_LAT = -7.2575;
+    private static final double START_LNG = 112.7521;
+    private static final double METERS_PER_DEG_LAT = 111195.0;
+    private static final double METERS_PER_DEG_LNG = METERS_PER_DEG_LAT * Math.cos(Math.toRadians(START_LAT));
+
+    /**
+     * Trace lurus ke barat 20 m/s, fix per 5 detik, noise Gaussian sigma = accuracy/2
+     * Kolom: time, lat, lng, accuracy, trueEastMeters
+     */
+    private static double[][] recordedTrace(long seed, int points, float accuracy) {
+        Random random = new Random(seed);
+        double[][] trace = new double[points][5];
+        for (int i = 0; i < points; i++) {
+            double east = -20.0 * 5 * i;
+            double noiseE = random.nextGaussian() * accuracy / 2;
+            double noiseN = random.nextGaussian() * accuracy / 2;
+            trace[i][0] = 1700000000000L + i * 5000L;
+            trace[i][1] = START_LAT + noiseN / METERS_PER_DEG_LAT;
+            trace[i][2] = START_LNG + (east + noiseE) / METERS_PER_DEG_LNG;
+            trace[i][3] = accuracy;
+            trace[i][4] = east;
+        }
+        return trace;
+    }
+
+    private static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double dy = (lat2 - lat1) * METERS_PER_DEG_LAT;
+        double dx = (lng2 - lng1) * METERS_PER_DEG_LNG;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static double pathLength(KalmanLocationFilter filter, double[][] trace, boolean filtered) {
+        double total = 0;
+        double prevLat = Double.NaN;
+        double prevLng = Double.NaN;
+        for (double[] fix : trace) {
+            boolean accepted = filter.update((long) fix[0], fix[1], fix[2], (float) fix[3]);
+            if (!accepted) continue;
+            double lat = filtered ? filter.getLatitude() : fix[1];
+            double lng = filtered ? filter.getLongitude() : fix[2];
+            if (!Double.isNaN(prevLat)) {
+                total += distance(prevLat, prevLng, lat, lng);
+            }
+            prevLat = lat;
+            prevLng = lng;
+        }
+        return total;
+    }
+
+    @Test
+    public void noisyStraightTrace_filteredDistanceCloserToTruth() {
+        double[][] trace = recordedTrace(42, 200, 30f);
+        double truth = 20.0 * 5 * 199;
+
+        double raw = pathLength(new KalmanLocationFilter(), trace, false);
+        double filtered = pathLength(new KalmanLocationFilter(), trace, true);
+
+        assertTrue("raw=" + raw + " filtered=" + filtered,
+                Math.abs(filtered - truth) < Math.abs(raw - truth));
+        assertTrue(Math.abs(filtered - truth) / truth < 0.05);
+    }
+
+    @Test
+    public void speedAndHeading_convergeToTrueMotion() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        for (double[] fix : recordedTrace(7, 60, 10f)) {
+            filter.update((long) fix[0], fix[1], fix[2], (float) fix[3]);
+        }
+        assertEquals(72.0, filter.getSpeedKmh(), 6.0);
+        assertEquals(270.0, filter.getBearing(), 5.0);
+    }
+
+    @Test
+    public void impossibleJump_isRejected() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        double[][] trace = recordedTrace(3, 40, 10f);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(filter.update((long) trace[i][0], trace[i][1], trace[i][2], (float) trace[i][3]));
+        }
+        double latBefore = filter.getLatitude();
+
+        // Lompat 3 km ke utara dalam 5 detik
+        long t = (long) trace[19][0] + 5000;
+        assertFalse(filter.update(t, trace[19][1] + 3000 / METERS_PER_DEG_LAT, trace[19][2], 10f));
+        assertEquals(latBefore, filter.getLatitude(), 0.0);
+
+        // Fix normal berikutnya tetap diterima
+        assertTrue(filter.update((long) trace[21][0], trace[21][1], trace[21][2], 10f));
+        assertEquals(1, filter.getRejectedCount());
+    }
+
+    @Test
+    public void poorAccuracyFix_hasLessPullThanGoodFix() {
+        double[][] trace = recordedTrace(11, 20, 5f);
+        KalmanLocationFilter good = new KalmanLocationFilter();
+        KalmanLocationFilter poor = new KalmanLocationFilter();
+        for (double[] fix : trace) {
+            good.update((long) fix[0], fix[1], fix[2], (float) fix[3]);
+            poor.update((long) fix[0], fix[1], fix[2], (float) fix[3]);
+        }
+
+        long t = (long) trace[19][0] + 5000;
+        double offsetLat = trace[19][1] + 60 / METERS_PER_DEG_LAT;
+        good.update(t, offsetLat, trace[19][2], 5f);
+        poor.update(t, offsetLat, trace[19][2], 80f);
+
+        assertTrue(Math.abs(poor.getLatitude() - START_LAT) < Math.abs(good.getLatitude() - START_LAT));
+    }
+
+    @Test
+    public void sameTrace_sameOutput() {
+        double[][] trace = recordedTrace(99, 100, 25f);
+        KalmanLocationFilter a = new KalmanLocationFilter();
+        KalmanLocationFilter b = new KalmanLocationFilter();
+        for (double[] fix : trace) {
+            a.update((long) fix[0], fix[1], fix[2], (float) fix[3]);
+            b.update((long) fix[0], fix[1], fix[2], (float) fix[3]);
+            assertEquals(a.getLatitude(), b.getLatitude(), 0.0);
+            assertEquals(a.getLongitude(), b.getLongitude(), 0.0);
+            assertEquals(a.getSpeedKmh(), b.getSpeedKmh(), 0.0);
+        }
+    }
+
+    @Test
+    public void duplicateTimestamp_isIgnored() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        assertTrue(filter.update(1000, START_LAT, START_LNG, 5f));
+        assertFalse(filter.update(1000, START_LAT, START_LNG, 5f));
+        assertFalse(filter.update(500, START_LAT, START_LNG, 5f));
+    }
+}
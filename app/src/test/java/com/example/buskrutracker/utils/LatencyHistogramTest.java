@@ -0,0 +1,62 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk LatencyHistogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentilesOfUniformValues() {
+        LatencyHistogram histogram = new LatencyHistogram("flush");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500, histogram.getPercentile(50), 500 * 0.035);
+        assertEquals(950, histogram.getPercentile(95), 950 * 0.035);
+        assertEquals(990, histogram.getPercentile(99), 990 * 0.035);
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void smallValuesAreExact_andPercentileNeverExceedsMax() {
+        LatencyHistogram histogram = new LatencyHistogram("flush");
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(70);
+
+        assertEquals(3, histogram.getPercentile(10));
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(70, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void bucketsCoverEveryValueInOrder() {
+        int previous = -1;
+        for (long v = 0; v < 1 << 20; v += 7) {
+            int bucket = LatencyHistogram.bucketOf(v);
+            assertTrue(bucket >= previous);
+            assertTrue("value " + v, LatencyHistogram.upperBoundOf(bucket) >= v);
+            previous = bucket;
+        }
+        LatencyHistogram.bucketOf(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void failuresAndDisconnectsAreCountedSeparately() {
+        LatencyHistogram histogram = new LatencyHistogram("flush");
+        histogram.recordFailure();
+        histogram.recordInFlightAtDisconnect(3);
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(1, histogram.getFailures());
+        assertEquals(3, histogram.getInFlightAtDisconnect());
+        assertTrue(histogram.toString().contains("in-flight at disconnect=3"));
+    }
+}
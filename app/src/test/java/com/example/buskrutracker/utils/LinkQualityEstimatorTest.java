@@ -0,0 +1,77 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk LinkQualityEstimator dengan model link simulasi
+ */
+public class LinkQualityEstimatorTest {
+
+    private static final long SAMPLE_INTERVAL_MS = 5000;
+
+    @Test
+    public void degradesOnEdge_andRecoversSmoothly() {
+        // 4G 10 menit -> EDGE 10 menit -> 4G 10 menit
+        SimulatedLink link = new SimulatedLink(20)
+                .phase(600000, 250, 80, 0.01)
+                .phase(600000, 3500, 1200, 0.2)
+                .phase(600000, 250, 80, 0.01);
+        LinkQualityEstimator estimator = new LinkQualityEstimator();
+
+        LinkQualityEstimator.Level endOfGood = null;
+        LinkQualityEstimator.Level endOfEdge = null;
+        for (long t = 0; t < link.getTotalMillis(); t += SAMPLE_INTERVAL_MS) {
+            long rtt = link.sample(t);
+            if (rtt < 0) {
+                estimator.onFailure();
+            } else {
+                estimator.onRoundTrip(rtt);
+            }
+            if (t == 600000 - SAMPLE_INTERVAL_MS) endOfGood = estimator.getLevel();
+            if (t == 1200000 - SAMPLE_INTERVAL_MS) endOfEdge = estimator.getLevel();
+        }
+
+        assertEquals(LinkQualityEstimator.Level.GOOD, endOfGood);
+        assertEquals(LinkQualityEstimator.Level.POOR, endOfEdge);
+        assertEquals(LinkQualityEstimator.Level.GOOD, estimator.getLevel());
+        // Satu langkah per perubahan: GOOD->FAIR->POOR->FAIR->GOOD, tanpa osilasi
+        assertEquals(4, estimator.getLevelChanges());
+    }
+
+    @Test
+    public void singleSlowWriteDoesNotDegrade() {
+        LinkQualityEstimator estimator = new LinkQualityEstimator();
+        for (int i = 0; i < 20; i++) {
+            estimator.onRoundTrip(200);
+        }
+        estimator.onRoundTrip(8000);
+        estimator.onRoundTrip(200);
+        estimator.onRoundTrip(200);
+
+        assertEquals(LinkQualityEstimator.Level.GOOD, estimator.getLevel());
+        assertEquals(1, estimator.getIntervalMultiplier());
+        assertFalse(estimator.isLeanPayload());
+    }
+
+    @Test
+    public void slowLinkHint_capsAtFair_andMeteredFairIsLean() {
+        LinkQualityEstimator estimator = new LinkQualityEstimator();
+
+        assertTrue(estimator.setNetworkHint(true, 80));
+        assertEquals(LinkQualityEstimator.Level.FAIR, estimator.getLevel());
+        assertTrue(estimator.isLeanPayload());
+
+        for (int i = 0; i < 50; i++) {
+            estimator.onRoundTrip(150);
+        }
+        assertEquals(LinkQualityEstimator.Level.FAIR, estimator.getLevel());
+
+        estimator.setNetworkHint(false, 20000);
+        for (int i = 0; i < LinkQualityEstimator.RECOVER_SAMPLES; i++) {
+            estimator.onRoundTrip(150);
+        }
+        assertEquals(LinkQualityEstimator.Level.GOOD, estimator.getLevel());
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.buskrutracker.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark RouteMatcher (waktu per fix). Tidak ikut unit test biasa, jalankan dengan
+ * ./gradlew testDebugUnitTest -Pbenchmark --tests '*Benchmark'
+ */
+public class RouteMatcherBenchmark {
+
+    @Test
+    public void matchCostPerFix() {
+        List<LatLng> route = RouteMatcherTest.surabayaMadiunRoute();
+        RouteMatcher matcher = RouteMatcher.fromPolyline(route);
+        Random random = new Random(9);
+
+        int fixes = 20000;
+        double[][] trace = new double[fixes][];
+        for (int i = 0; i < fixes; i++) {
+            double position = (route.size() - 1.0) * i / fixes;
+            trace[i] = RouteMatcherTest.noisyPointOnRoute(route, position, random, 15);
+        }
+
+        // Warm-up JIT
+        for (int round = 0; round < 3; round++) {
+            matcher.reset();
+            for (double[] fix : trace) {
+                matcher.match(fix[0], fix[1], 15f);
+            }
+        }
+
+        matcher.reset();
+        long start = System.nanoTime();
+        for (double[] fix : trace) {
+            matcher.match(fix[0], fix[1], 15f);
+        }
+        double microsPerFix = (System.nanoTime() - start) / 1000.0 / fixes;
+
+        System.out.printf("RouteMatcher: %.2f us/fix (%d segments)%n",
+                microsPerFix, matcher.getSegmentCount());
+        assertTrue("us/fix " + microsPerFix, microsPerFix < 1000);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.buskrutracker.utils;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk RouteMatcher (benchmark: RouteMatcherBenchmark)
+ */
+public class RouteMatcherTest {
+
+    private static final double METERS_PER_DEG = 6371008.8 * Math.PI / 180.0;
+
+    // Terminal Purabaya (Surabaya) dan Terminal Purboyo (Madiun)
+    private static final double SBY_LAT = -7.3510, SBY_LNG = 112.7253;
+    private static final double MDN_LAT = -7.6298, MDN_LNG = 111.5239;
+
+    /**
+     * Polyline sintetis Surabaya - Madiun (~140 km, vertex tiap ~100 m, berkelok),
+     * di-encode lalu di-decode lewat PolylineUtils seperti data rute asli
+     */
+    static List<LatLng> surabayaMadiunRoute() {
+        int n = 1400;
+        StringBuilder encoded = new StringBuilder();
+        int prevLat = 0, prevLng = 0;
+        for (int i = 0; i < n; i++) {
+            double f = (double) i / (n - 1);
+            double lat = SBY_LAT + (MDN_LAT - SBY_LAT) * f + 0.02 * Math.sin(f * 40);
+            double lng = SBY_LNG + (MDN_LNG - SBY_LNG) * f + 0.01 * Math.sin(f * 97);
+            int ilat = (int) Math.round(lat * 1e5);
+            int ilng = (int) Math.round(lng * 1e5);
+            encodeValue(ilat - prevLat, encoded);
+            encodeValue(ilng - prevLng, encoded);
+            prevLat = ilat;
+            prevLng = ilng;
+        }
+        return PolylineUtils.decode(encoded.toString());
+    }
+
+    private static void encodeValue(int value, StringBuilder out) {
+        int v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            out.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>= 5;
+        }
+        out.append((char) (v + 63));
+    }
+
+    private static double metersBetween(double lat1, double lng1, double lat2, double lng2) {
+        double dy = (lat2 - lat1) * METERS_PER_DEG;
+        double dx = (lng2 - lng1) * METERS_PER_DEG * Math.cos(Math.toRadians(lat1));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Titik di rute pada vertex i + fraksi, digeser noise Gaussian (meter)
+     */
+    static double[] noisyPointOnRoute(List<LatLng> route, double position, Random random, double sigma) {
+        int i = Math.min((int) position, route.size() - 2);
+        double f = position - i;
+        LatLng a = route.get(i);
+        LatLng b = route.get(i + 1);
+        double lat = a.latitude + (b.latitude - a.latitude) * f;
+        double lng = a.longitude + (b.longitude - a.longitude) * f;
+        lat += random.nextGaussian() * sigma / METERS_PER_DEG;
+        lng += random.nextGaussian() * sigma / (METERS_PER_DEG * Math.cos(Math.toRadians(lat)));
+        return new double[]{lat, lng, a.latitude + (b.latitude - a.latitude) * f,
+                a.longitude + (b.longitude - a.longitude) * f};
+    }
+
+    @Test
+    public void noisyFixes_snapCloseToRouteAndProgressForward() {
+        List<LatLng> route = surabayaMadiunRoute();
+        RouteMatcher matcher = RouteMatcher.fromPolyline(route);
+        Random random = new Random(5);
+
+        // Output live mengacu ke fix terbaru, committed tertinggal MATCH_LAG fix
+        double lastProgress = -1;
+        double lastCommitted = -1;
+        double maxSnapError = 0;
+        for (double position = 0; position < route.size() - 1; position += 1.3) {
+            double[] fix = noisyPointOnRoute(route, position, random, 10);
+            assertTrue(matcher.match(fix[0], fix[1], 10f));
+
+            maxSnapError = Math.max(maxSnapError, metersBetween(fix[2], fix[3],
+                    matcher.getSnappedLatitude(), matcher.getSnappedLongitude()));
+            assertTrue(matcher.getProgressMeters() >= lastProgress - RouteMatcher.BACKWARD_TOLERANCE_M);
+            assertTrue(matcher.getCommittedProgressMeters() <= matcher.getProgressMeters()
+                    + RouteMatcher.BACKWARD_TOLERANCE_M);
+            assertTrue(matcher.getCommittedProgressMeters() >= lastCommitted
+                    - RouteMatcher.BACKWARD_TOLERANCE_M);
+            lastProgress = matcher.getProgressMeters();
+            lastCommitted = matcher.getCommittedProgressMeters();
+        }
+
+        assertTrue("max snap error " + maxSnapError, maxSnapError < 40);
+        assertTrue(matcher.getRemainingMeters() < 500);
+    }
+
+    @Test
+    public void outAndBackRoute_followsDirectionOfTravel() {
+        // Ke timur 2 km, putar balik di jalur paralel 30 m ke utara, kembali ke barat
+        double lat0 = -7.30, lng0 = 112.70;
+        double dLng = 2000 / (METERS_PER_DEG * Math.cos(Math.toRadians(lat0)));
+        double dLat = 30 / METERS_PER_DEG;
+        RouteMatcher matcher = new RouteMatcher(
+                new double[]{lat0, lat0, lat0 + dLat, lat0 + dLat},
+                new double[]{lng0, lng0 + dLng, lng0 + dLng, lng0});
+
+        Random random = new Random(1);
+        // Perjalanan balik: fix tepat di antara kedua jalur, emission hampir sama
+        for (int i = 0; i <= 20; i++) {
+            double f = 1.0 - i / 20.0;
+            double lat = lat0 + dLat / 2 + random.nextGaussian() * 2 / METERS_PER_DEG;
+            if (i == 0) {
+                lat = lat0 + dLat;
+            }
+            assertTrue(matcher.match(lat, lng0 + dLng * f, 15f));
+            // Fix yang di-commit: i - MATCH_LAG (fix 0 ada di sudut putar balik)
+            if (i - RouteMatcher.MATCH_LAG > 0) {
+                assertEquals(2, matcher.getCommittedSegmentIndex());
+            }
+        }
+    }
+
+    @Test
+    public void noisyFixNearParallelLane_doesNotSwitchSegment() {
+        // Mendekati putar balik di jalur keluar; satu fix jatuh tepat di jalur balik 30 m ke utara
+        double lat0 = -7.30, lng0 = 112.70;
+        double mLng = 1 / (METERS_PER_DEG * Math.cos(Math.toRadians(lat0)));
+        double dLat = 30 / METERS_PER_DEG;
+        double[] lats = {lat0, lat0, lat0 + dLat, lat0 + dLat};
+        double[] lngs = {lng0, lng0 + 2000 * mLng, lng0 + 2000 * mLng, lng0};
+        RouteMatcher matcher = new RouteMatcher(lats, lngs);
+        RouteMatcher greedy = new RouteMatcher(lats, lngs, 0);
+
+        boolean greedySwitched = false;
+        for (int i = 0; i < 25; i++) {
+            double lat = i == 15 ? lat0 + dLat : lat0;
+            double lng = lng0 + (1875 + i * 5) * mLng;
+            assertTrue(matcher.match(lat, lng, 10f));
+            assertEquals(0, matcher.getCommittedSegmentIndex());
+
+            greedy.match(lat, lng, 10f);
+            greedySwitched |= greedy.getCommittedSegmentIndex() != 0;
+        }
+        assertTrue(greedySwitched);
+    }
+
+    @Test
+    public void farFromRoute_isNotMatched() {
+        RouteMatcher matcher = RouteMatcher.fromPolyline(surabayaMadiunRoute());
+        assertFalse(matcher.match(-6.2000, 106.8166, 10f)); // Jakarta
+        assertFalse(matcher.isMatched());
+        assertEquals(-1, matcher.getSegmentIndex());
+    }
+
+    @Test
+    public void leavingRoute_commitsTheLagWindow() {
+        List<LatLng> route = surabayaMadiunRoute();
+        RouteMatcher matcher = RouteMatcher.fromPolyline(route);
+        Random random = new Random(3);
+
+        for (int i = 0; i < 20; i++) {
+            double[] fix = noisyPointOnRoute(route, 100 + i * 0.5, random, 5);
+            assertTrue(matcher.match(fix[0], fix[1], 5f));
+        }
+        double live = matcher.getProgressMeters();
+        assertTrue(live - matcher.getCommittedProgressMeters() > 150);
+
+        // Fix jauh dari rute: window di-commit sebelum HMM mulai ulang
+        assertFalse(matcher.match(-6.2000, 106.8166, 5f));
+        assertEquals(live, matcher.getCommittedProgressMeters(), 1e-9);
+    }
+
+    @Test
+    public void flush_commitsLatestFixWithoutResettingWindow() {
+        List<LatLng> route = surabayaMadiunRoute();
+        RouteMatcher matcher = RouteMatcher.fromPolyline(route);
+        Random random = new Random(4);
+
+        for (int i = 0; i < 20; i++) {
+            double[] fix = noisyPointOnRoute(route, 300 + i * 0.5, random, 5);
+            matcher.match(fix[0], fix[1], 5f);
+        }
+        matcher.flush();
+        assertEquals(matcher.getProgressMeters(), matcher.getCommittedProgressMeters(), 1e-9);
+        assertEquals(matcher.getSegmentIndex(), matcher.getCommittedSegmentIndex());
+        assertTrue(matcher.isMatched());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.buskrutracker.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SimulatedLink - Model link seluler deterministik untuk test adaptasi publish
+ *
+ * Terdiri dari fase berurutan (durasi, RTT dasar, jitter, peluang gagal). Seed tetap
+ * sehingga setiap run menghasilkan urutan sampel yang sama.
+ */
+public class SimulatedLink {
+
+    private static final class Phase {
+        final long untilMillis;
+        final long rttMillis;
+        final long jitterMillis;
+        final double failureProbability;
+
+        Phase(long untilMillis, long rttMillis, long jitterMillis, double failureProbability) {
+            this.untilMillis = untilMillis;
+            this.rttMillis = rttMillis;
+            this.jitterMillis = jitterMillis;
+            this.failureProbability = failureProbability;
+        }
+    }
+
+    private final List<Phase> phases = new ArrayList<>();
+    private final Random random;
+    private long totalMillis;
+
+    public SimulatedLink(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Tambah fase setelah fase sebelumnya
+     */
+    public SimulatedLink phase(long durationMillis, long rttMillis, long jitterMillis,
+                               double failureProbability) {
+        totalMillis += durationMillis;
+        phases.add(new Phase(totalMillis, rttMillis, jitterMillis, failureProbability));
+        return this;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * RTT write pada waktu (relatif awal model), atau -1 jika write gagal
+     */
+    public long sample(long atMillis) {
+        Phase phase = phases.get(phases.size() - 1);
+        for (Phase candidate : phases) {
+            if (atMillis < candidate.untilMillis) {
+                phase = candidate;
+                break;
+            }
+        }
+        if (random.nextDouble() < phase.failureProbability) {
+            return -1;
+        }
+        long jitter = phase.jitterMillis > 0
+                ? (long) (random.nextGaussian() * phase.jitterMillis) : 0;
+        return Math.max(1, phase.rttMillis + jitter);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TelemetryFrame (encode / decode frame lokasi biner)
+ */
+public class TelemetryFrameTest {
+
+    private static final long NOW = 1709272800000L;
+
+    @Test
+    public void roundTrip_keepsFixedPointPrecision() {
+        byte[] buffer = new byte[TelemetryFrame.FRAME_SIZE + 4];
+        TelemetryFrame.encode(buffer, 4, 0xFFFFFFF0, NOW, -7.2504517, 112.7508345, 43.76f,
+                123.4567, 42, 118.9);
+
+        TelemetryFrame frame = TelemetryFrame.decode(buffer, 4, TelemetryFrame.FRAME_SIZE);
+        assertEquals(0xFFFFFFF0, frame.seq);
+        assertEquals(NOW, frame.time);
+        assertEquals(-7.2504517, frame.latitude, 1e-7);
+        assertEquals(112.7508345, frame.longitude, 1e-7);
+        assertEquals(43.8f, frame.speedKmh, 1e-4);
+        assertEquals(123.457, frame.totalDistanceKm, 1e-9);
+        assertEquals(42, frame.segmentIndex);
+        assertEquals(118.9, frame.routeProgressKm, 1e-9);
+    }
+
+    @Test
+    public void offRouteAndOutOfRangeValues_areClamped() {
+        byte[] buffer = new byte[TelemetryFrame.FRAME_SIZE];
+        TelemetryFrame.encode(buffer, 0, 1, NOW, 0, 0, 9000f, -1, -1, 0);
+
+        TelemetryFrame frame = TelemetryFrame.decode(buffer, 0, buffer.length);
+        assertEquals(6553.5f, frame.speedKmh, 1e-3);
+        assertEquals(0, frame.totalDistanceKm, 0);
+        assertEquals(-1, frame.segmentIndex);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersion_isRejected() {
+        byte[] buffer = new byte[TelemetryFrame.FRAME_SIZE];
+        TelemetryFrame.encode(buffer, 0, 1, NOW, 0, 0, 0, 0, -1, 0);
+        buffer[0] = 9;
+        TelemetryFrame.decode(buffer, 0, buffer.length);
+    }
+}
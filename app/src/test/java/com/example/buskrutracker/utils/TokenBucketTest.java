@@ -0,0 +1,49 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TokenBucket
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void burstThenOneTokenPerInterval() {
+        TokenBucket bucket = new TokenBucket(2, 5000);
+
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(100));
+        assertEquals(4900, bucket.millisUntilAvailable(100));
+
+        assertTrue(bucket.tryAcquire(5000));
+        assertFalse(bucket.tryAcquire(9999));
+        assertTrue(bucket.tryAcquire(10000));
+    }
+
+    @Test
+    public void idleTimeRefillsUpToCapacityOnly() {
+        TokenBucket bucket = new TokenBucket(3, 1000);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+
+        assertEquals(3, bucket.getAvailableTokens(60000));
+        assertTrue(bucket.tryAcquire(60000));
+        assertEquals(2, bucket.getAvailableTokens(60000));
+    }
+
+    @Test
+    public void partialIntervalIsKeptAcrossRefills() {
+        TokenBucket bucket = new TokenBucket(2, 1000);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+
+        // 1500 ms: satu token, sisa 500 ms tetap dihitung
+        assertTrue(bucket.tryAcquire(1500));
+        assertEquals(500, bucket.millisUntilAvailable(1500));
+        assertTrue(bucket.tryAcquire(2000));
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.buskrutracker.utils;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * TraceReader - Baca trace GPS terekam dari GPX, CSV, atau format biner sendiri
+ *
+ * CSV: baris header wajib, kolom dicari berdasarkan nama
+ *      (time, lat/latitude, lng/lon/longitude, accuracy, speed, bearing).
+ *      time boleh epoch millis atau ISO-8601 UTC. Speed dalam m/s.
+ * GPX: trkpt lat/lon + time; speed/course (GPX 1.0) dan hdop jika ada.
+ * Biner: "BKTR" + versi + jumlah fix + record tetap 36 byte per fix.
+ */
+public final class TraceReader {
+
+    static final int BINARY_MAGIC = 0x424B5452; // "BKTR"
+    static final int BINARY_VERSION = 1;
+
+    // Akurasi default jika trace tidak menyimpan akurasi (meter)
+    static final float DEFAULT_ACCURACY_M = 10f;
+
+    // Perkiraan kasar akurasi horizontal dari HDOP
+    private static final float METERS_PER_HDOP = 5f;
+
+    private TraceReader() {
+    }
+
+    /**
+     * Pilih parser berdasarkan ekstensi file (.gpx, .csv, lainnya biner)
+     */
+    public static GpsTrace read(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.US);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            if (name.endsWith(".gpx")) {
+                return readGpx(in);
+            } else if (name.endsWith(".csv")) {
+                return readCsv(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+            return readBinary(in);
+        }
+    }
+
+    // ============================================
+    // CSV
+    // ============================================
+
+    public static GpsTrace readCsv(Reader source) throws IOException {
+        BufferedReader reader = new BufferedReader(source);
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("Empty CSV trace");
+        }
+
+        String[] columns = header.trim().toLowerCase(Locale.US).split("\\s*,\\s*");
+        int timeCol = indexOf(columns, "time", "timestamp");
+        int latCol = indexOf(columns, "lat", "latitude");
+        int lngCol = indexOf(columns, "lng", "lon", "longitude");
+        int accCol = indexOf(columns, "accuracy", "acc");
+        int speedCol = indexOf(columns, "speed");
+        int bearingCol = indexOf(columns, "bearing", "course");
+        if (timeCol < 0 || latCol < 0 || lngCol < 0) {
+            throw new IOException("CSV trace needs time, lat and lng columns: " + header);
+        }
+
+        SimpleDateFormat[] formats = isoFormats();
+        GpsTrace trace = new GpsTrace();
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] values = line.split("\\s*,\\s*", -1);
+            try {
+                trace.add(parseTime(values[timeCol], formats),
+                        Double.parseDouble(values[latCol]),
+                        Double.parseDouble(values[lngCol]),
+                        optFloat(values, accCol, DEFAULT_ACCURACY_M),
+                        optFloat(values, speedCol, Float.NaN),
+                        optFloat(values, bearingCol, Float.NaN));
+            } catch (NumberFormatException | ParseException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Invalid CSV trace line " + lineNumber + ": " + line, e);
+            }
+        }
+        return trace;
+    }
+
+    // ============================================
+    // GPX
+    // ============================================
+
+    public static GpsTrace readGpx(InputStream in) throws IOException {
+        GpxHandler handler = new GpxHandler();
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(in, handler);
+        } catch (Exception e) {
+            throw new IOException("Invalid GPX trace: " + e.getMessage(), e);
+        }
+        return handler.trace;
+    }
+
+    private static final class GpxHandler extends DefaultHandler {
+
+        final GpsTrace trace = new GpsTrace();
+        private final SimpleDateFormat[] formats = isoFormats();
+        private final StringBuilder text = new StringBuilder();
+
+        private boolean inPoint;
+        private double lat;
+        private double lng;
+        private long time;
+        private float accuracy;
+        private float speed;
+        private float bearing;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName.isEmpty() ? qName : localName;
+            text.setLength(0);
+            if ("trkpt".equals(name)) {
+                inPoint = true;
+                lat = Double.parseDouble(attributes.getValue("lat"));
+                lng = Double.parseDouble(attributes.getValue("lon"));
+                time = Long.MIN_VALUE;
+                accuracy = DEFAULT_ACCURACY_M;
+                speed = Float.NaN;
+                bearing = Float.NaN;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = localName.isEmpty() ? qName : localName;
+            if (!inPoint) return;
+
+            String value = text.toString().trim();
+            try {
+                if ("time".equals(name)) {
+                    time = parseTime(value, formats);
+                } else if ("speed".equals(name)) {
+                    speed = Float.parseFloat(value);
+                } else if ("course".equals(name)) {
+                    bearing = Float.parseFloat(value);
+                } else if ("hdop".equals(name)) {
+                    accuracy = Float.parseFloat(value) * METERS_PER_HDOP;
+                }
+            } catch (NumberFormatException | ParseException e) {
+                throw new IllegalArgumentException("Invalid <" + name + ">: " + value, e);
+            }
+
+            if ("trkpt".equals(name)) {
+                inPoint = false;
+                if (time == Long.MIN_VALUE) {
+                    throw new IllegalArgumentException("trkpt without <time>");
+                }
+                trace.add(time, lat, lng, accuracy, speed, bearing);
+            }
+        }
+    }
+
+    // ============================================
+    // BINARY
+    // ============================================
+
+    public static GpsTrace readBinary(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source));
+        if (in.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not a binary trace");
+        }
+        int version = in.readInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Unsupported binary trace version " + version);
+        }
+
+        int count = in.readInt();
+        GpsTrace trace = new GpsTrace(count);
+        for (int i = 0; i < count; i++) {
+            trace.add(in.readLong(), in.readDouble(), in.readDouble(),
+                    in.readFloat(), in.readFloat(), in.readFloat());
+        }
+        return trace;
+    }
+
+    public static void writeBinary(GpsTrace trace, OutputStream target) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target));
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(BINARY_VERSION);
+        out.writeInt(trace.size());
+        for (int i = 0; i < trace.size(); i++) {
+            out.writeLong(trace.getTime(i));
+            out.writeDouble(trace.getLatitude(i));
+            out.writeDouble(trace.getLongitude(i));
+            out.writeFloat(trace.getAccuracy(i));
+            out.writeFloat(trace.getSpeed(i));
+            out.writeFloat(trace.getBearing(i));
+        }
+        out.flush();
+    }
+
+    // ============================================
+    // HELPER
+    // ============================================
+
+    private static int indexOf(String[] columns, String... names) {
+        for (int i = 0; i < columns.length; i++) {
+            for (String name : names) {
+                if (columns[i].equals(name)) return i;
+            }
+        }
+        return -1;
+    }
+
+    private static float optFloat(String[] values, int column, float fallback) {
+        if (column < 0 || column >= values.length || values[column].isEmpty()) {
+            return fallback;
+        }
+        return Float.parseFloat(values[column]);
+    }
+
+    private static SimpleDateFormat[] isoFormats() {
+        SimpleDateFormat[] formats = {
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US),
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US)
+        };
+        for (SimpleDateFormat format : formats) {
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        return formats;
+    }
+
+    private static long parseTime(String value, SimpleDateFormat[] formats) throws ParseException {
+        if (!value.isEmpty() && Character.isDigit(value.charAt(value.length() - 1))) {
+            return Long.parseLong(value);
+        }
+        ParseException last = null;
+        for (SimpleDateFormat format : formats) {
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                last = e;
+            }
+        }
+        throw last;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TraceReader (CSV, GPX, biner)
+ */
+public class TraceReaderTest {
+
+    @Test
+    public void csv_withIsoAndEpochTimes() throws IOException {
+        String csv = "time,lat,lng,accuracy,speed\n"
+                + "2024-03-01T06:00:00Z,-7.2575,112.7521,8.0,12.5\n"
+                + "# komentar diabaikan\n"
+                + "1709272805000,-7.2580,112.7510,,\n";
+
+        GpsTrace trace = TraceReader.readCsv(new StringReader(csv));
+
+        assertEquals(2, trace.size());
+        assertEquals(1709272800000L, trace.getTime(0));
+        assertEquals(5000, trace.getDurationMillis());
+        assertEquals(-7.2575, trace.getLatitude(0), 0);
+        assertEquals(12.5f, trace.getSpeed(0), 0);
+        assertEquals(TraceReader.DEFAULT_ACCURACY_M, trace.getAccuracy(1), 0);
+        assertTrue(Float.isNaN(trace.getSpeed(1)));
+        assertTrue(Float.isNaN(trace.getBearing(0)));
+    }
+
+    @Test(expected = IOException.class)
+    public void csv_withoutLatitudeColumn_isRejected() throws IOException {
+        TraceReader.readCsv(new StringReader("time,lng\n1,2\n"));
+    }
+
+    @Test
+    public void gpx_readsTrackPoints() throws IOException {
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.0\" xmlns=\"http://www.topografix.com/GPX/1/0\"><trk><trkseg>"
+                + "<trkpt lat=\"-7.2575\" lon=\"112.7521\"><time>2024-03-01T06:00:00Z</time>"
+                + "<speed>10.0</speed><course>270</course><hdop>1.2</hdop></trkpt>"
+                + "<trkpt lat=\"-7.2580\" lon=\"112.7510\"><ele>5</ele>"
+                + "<time>2024-03-01T06:00:05.500Z</time></trkpt>"
+                + "</trkseg></trk></gpx>";
+
+        GpsTrace trace = TraceReader.readGpx(
+                new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, trace.size());
+        assertEquals(112.7521, trace.getLongitude(0), 0);
+        assertEquals(10f, trace.getSpeed(0), 0);
+        assertEquals(270f, trace.getBearing(0), 0);
+        assertEquals(6f, trace.getAccuracy(0), 1e-6);
+        assertEquals(5500, trace.getDurationMillis());
+        assertEquals(TraceReader.DEFAULT_ACCURACY_M, trace.getAccuracy(1), 0);
+    }
+
+    @Test
+    public void binary_roundTrip() throws IOException {
+        GpsTrace trace = new GpsTrace(4);
+        for (int i = 0; i < 1000; i++) {
+            trace.add(1709272800000L + i * 1000L, -7.25 - i * 1e-5, 112.75 + i * 1e-5,
+                    5f + i % 7, i % 3 == 0 ? Float.NaN : i * 0.1f, i % 360);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TraceReader.writeBinary(trace, out);
+        GpsTrace read = TraceReader.readBinary(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(12 + 36 * 1000, out.size());
+        assertEquals(trace.size(), read.size());
+        for (int i = 0; i < trace.size(); i++) {
+            assertEquals(trace.getTime(i), read.getTime(i));
+            assertEquals(trace.getLatitude(i), read.getLatitude(i), 0);
+            assertEquals(trace.getLongitude(i), read.getLongitude(i), 0);
+            assertEquals(trace.getSpeed(i), read.getSpeed(i), 0);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TrackBuffer (JVM lokal)
+ */
+public class TrackBufferTest {
+
+    private static final int POINTS = 3600; // ~5 jam, 1 fix per 5 detik
+
+    private static TrackBuffer fillIntercityTrack(TrackBuffer buffer) {
+        // Surabaya -> Madiun kira-kira arah barat, 90 km/h, fix per 5 detik
+        double lat = -7.2575;
+        double lng = 112.7521;
+        long time = 1700000000000L;
+        for (int i = 0; i < POINTS; i++) {
+            buffer.append(lat, lng, time, 90.0f + (i % 7), 8.0f + (i % 5));
+            lat -= 0.00010;
+            lng -= 0.00110;
+            time += 5000;
+        }
+        return buffer;
+    }
+
+    @Test
+    public void appendAndIterate_preservesOrderAndValues() {
+        TrackBuffer buffer = new TrackBuffer(16, false);
+        for (int i = 0; i < 40; i++) {
+            buffer.append(i, -i, 1000L * i, i * 0.5f, 3f);
+        }
+
+        assertEquals(40, buffer.size());
+        final int[] expected = {0};
+        buffer.forEach((index, lat, lng, timestamp, speed, accuracy) -> {
+            assertEquals(expected[0], index);
+            assertEquals(index, lat, 0.0);
+            assertEquals(-index, lng, 0.0);
+            assertEquals(1000L * index, timestamp);
+            assertEquals(index * 0.5f, speed, 0.0);
+            expected[0]++;
+        });
+        assertEquals(40, expected[0]);
+    }
+
+    @Test
+    public void compressedChunks_roundTripWithinQuantization() {
+        TrackBuffer raw = fillIntercityTrack(new TrackBuffer(256, false));
+        TrackBuffer packed = fillIntercityTrack(new TrackBuffer(256, true));
+
+        final double[][] rawValues = new double[POINTS][4];
+        raw.forEach((index, lat, lng, timestamp, speed, accuracy) -> {
+            rawValues[index][0] = lat;
+            rawValues[index][1] = lng;
+            rawValues[index][2] = timestamp;
+            rawValues[index][3] = speed;
+        });
+
+        packed.forEach((index, lat, lng, timestamp, speed, accuracy) -> {
+            assertEquals(rawValues[index][0], lat, 1e-6);
+            assertEquals(rawValues[index][1], lng, 1e-6);
+            assertEquals(rawValues[index][2], timestamp, 0.0);
+            assertEquals(rawValues[index][3], speed, 0.05);
+        });
+    }
+
+    @Test
+    public void rangeView_visitsOnlyRequestedPoints() {
+        TrackBuffer buffer = fillIntercityTrack(new TrackBuffer(64, true));
+        final int[] count = {0};
+        buffer.forEach(100, 300, (index, lat, lng, timestamp, speed, accuracy) -> {
+            assertTrue(index >= 100 && index < 300);
+            count[0]++;
+        });
+        assertEquals(200, count[0]);
+
+        final int[] last = {-1};
+        assertTrue(buffer.visitLast((index, lat, lng, timestamp, speed, accuracy) -> last[0] = index));
+        assertEquals(POINTS - 1, last[0]);
+    }
+
+    @Test
+    public void bytesPerPoint_compressedBelowRaw() {
+        TrackBuffer raw = fillIntercityTrack(new TrackBuffer(256, false));
+        TrackBuffer packed = fillIntercityTrack(new TrackBuffer(256, true));
+
+        double rawPerPoint = (double) raw.retainedBytes() / POINTS;
+        double packedPerPoint = (double) packed.retainedBytes() / POINTS;
+
+        // Raw: kolom primitif tanpa object per titik (chunk hot belum penuh ikut dihitung)
+        assertTrue("raw " + rawPerPoint, rawPerPoint < TrackBuffer.BYTES_PER_RAW_POINT * 1.1);
+        assertTrue(packed.sealedBytesPerPoint() < 12);
+        assertTrue(packedPerPoint < rawPerPoint);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TrackSimplifier: rasio reduksi dan error yang terukur
+ */
+public class TrackSimplifierTest {
+
+    private static final double METERS_PER_DEG = 6371008.8 * Math.PI / 180.0;
+    private static final double START_LAT = -7.2575;
+    private static final double START_LNG = 112.7521;
+    private static final double TOLERANCE = 10.0;
+
+    /**
+     * Rute antar kota sintetis dalam meter lokal (timur, utara):
+     * tol lurus 40 km, tikungan radius 2 km, lurus 20 km, lalu dalam kota (belok tiap 300 m).
+     * Fix tiap 5 detik, noise kecil (setelah Kalman) ~2 m.
+     */
+    private static List<double[]> intercityTrace() {
+        Random random = new Random(2024);
+        List<double[]> meters = new ArrayList<>();
+        double x = 0, y = 0;
+
+        // Tol ke barat, 25 m/s
+        for (int i = 0; i < 320; i++) {
+            x -= 125;
+            meters.add(new double[]{x, y});
+        }
+        // Tikungan 90 derajat ke selatan, radius 2000 m
+        double cx = x, cy = y - 2000;
+        for (int i = 1; i <= 25; i++) {
+            double angle = Math.PI / 2 + (Math.PI / 2) * i / 25.0;
+            meters.add(new double[]{cx + 2000 * Math.cos(angle), cy + 2000 * Math.sin(angle)});
+        }
+        x = cx - 2000;
+        y = cy;
+        // Lurus ke selatan
+        for (int i = 0; i < 160; i++) {
+            y -= 125;
+            meters.add(new double[]{x, y});
+        }
+        // Dalam kota, 10 m/s, belok tiap 300 m
+        for (int block = 0; block < 10; block++) {
+            for (int i = 0; i < 6; i++) {
+                if (block % 2 == 0) x -= 50; else y -= 50;
+                meters.add(new double[]{x, y});
+            }
+        }
+
+        double metersPerDegLng = METERS_PER_DEG * Math.cos(Math.toRadians(START_LAT));
+        List<double[]> trace = new ArrayList<>();
+        for (double[] p : meters) {
+            double e = p[0] + random.nextGaussian() * 2;
+            double n = p[1] + random.nextGaussian() * 2;
+            trace.add(new double[]{START_LAT + n / METERS_PER_DEG, START_LNG + e / metersPerDegLng});
+        }
+        return trace;
+    }
+
+    private static double[] toMeters(double lat, double lng) {
+        double metersPerDegLng = METERS_PER_DEG * Math.cos(Math.toRadians(START_LAT));
+        return new double[]{(lng - START_LNG) * metersPerDegLng, (lat - START_LAT) * METERS_PER_DEG};
+    }
+
+    private static double distanceToPolyline(double[] p, List<double[]> line) {
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i + 1 < line.size(); i++) {
+            double[] a = line.get(i);
+            double[] b = line.get(i + 1);
+            double ex = b[0] - a[0], ey = b[1] - a[1];
+            double lengthSq = ex * ex + ey * ey;
+            double t = lengthSq > 0 ? ((p[0] - a[0]) * ex + (p[1] - a[1]) * ey) / lengthSq : 0;
+            t = Math.max(0, Math.min(1, t));
+            double dx = p[0] - (a[0] + t * ex), dy = p[1] - (a[1] + t * ey);
+            best = Math.min(best, Math.sqrt(dx * dx + dy * dy));
+        }
+        return best;
+    }
+
+    @Test
+    public void intercityTrace_reducedAtLeastFiveTimesWithBoundedError() {
+        List<double[]> trace = intercityTrace();
+        final List<double[]> kept = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE,
+                (lat, lng, timestamp, speed, accuracy) -> kept.add(toMeters(lat, lng)));
+
+        long t = 0;
+        for (double[] p : trace) {
+            simplifier.add(p[0], p[1], t += 5000, 90f, 5f);
+        }
+        simplifier.flush();
+
+        double ratio = (double) trace.size() / kept.size();
+
+        assertEquals(trace.size(), simplifier.getInputCount());
+        assertEquals(kept.size(), simplifier.getKeptCount());
+        assertTrue("ratio " + ratio, ratio >= 5.0);
+        assertTrue(simplifier.getMaxDeviationMeters() <= TOLERANCE);
+
+        // Error terukur: setiap titik asli berada dalam toleransi dari track hasil
+        double measured = 0;
+        for (double[] p : trace) {
+            measured = Math.max(measured, distanceToPolyline(toMeters(p[0], p[1]), kept));
+        }
+        assertTrue("measured " + measured, measured <= TOLERANCE + 0.5);
+    }
+
+    @Test
+    public void firstAndLastPoints_areAlwaysKept() {
+        final List<double[]> kept = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE,
+                (lat, lng, timestamp, speed, accuracy) -> kept.add(new double[]{lat, lng, timestamp}));
+
+        for (int i = 0; i < 10; i++) {
+            simplifier.add(START_LAT, START_LNG - i * 0.001, i, 0f, 0f);
+        }
+        simplifier.flush();
+
+        assertEquals(2, kept.size());
+        assertEquals(0, kept.get(0)[2], 0.0);
+        assertEquals(9, kept.get(1)[2], 0.0);
+    }
+
+    @Test
+    public void longStraight_isBoundedByWindow() {
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE, null);
+        int points = TrackSimplifier.MAX_WINDOW * 4;
+        for (int i = 0; i < points; i++) {
+            simplifier.add(START_LAT, START_LNG - i * 0.001, i, 0f, 0f);
+        }
+        // Satu titik per window penuh + titik pertama
+        assertTrue(simplifier.getKeptCount() <= 1 + points / TrackSimplifier.MAX_WINDOW + 1);
+    }
+
+    @Test
+    public void maxHold_emitsOnLongStraightWellInsideTrailWindow() {
+        final List<Long> kept = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE,
+                TrackSimplifier.DEFAULT_MAX_HOLD_MS,
+                (lat, lng, timestamp, speed, accuracy) -> kept.add(timestamp));
+
+        // Tol lurus 30 menit, fix tiap 10 detik (profil HIGHWAY)
+        long step = 10000;
+        for (int i = 0; i < 180; i++) {
+            simplifier.add(START_LAT, START_LNG - i * 0.002, i * step, 90f, 5f);
+        }
+
+        for (int i = 1; i < kept.size(); i++) {
+            long gap = kept.get(i) - kept.get(i - 1);
+            assertTrue("gap " + gap, gap <= TrackSimplifier.DEFAULT_MAX_HOLD_MS + step);
+        }
+        assertTrue(kept.size() >= 180 * step / (TrackSimplifier.DEFAULT_MAX_HOLD_MS + step));
+    }
+
+    @Test
+    public void restoreAnchor_continuesWithoutReEmitting() {
+        final List<Long> kept = new ArrayList<>();
+        TrackSimplifier simplifier = new TrackSimplifier(TOLERANCE,
+                (lat, lng, timestamp, speed, accuracy) -> kept.add(timestamp));
+
+        simplifier.restoreAnchor(START_LAT, START_LNG, 0);
+        simplifier.add(START_LAT, START_LNG - 0.001, 1000, 0f, 0f);
+        simplifier.add(START_LAT - 0.001, START_LNG - 0.001, 2000, 0f, 0f);
+
+        // Belok: titik sebelumnya di-emit, anchor hasil restore tidak di-emit ulang
+        assertEquals(1, kept.size());
+        assertEquals(1000L, (long) kept.get(0));
+    }
+}
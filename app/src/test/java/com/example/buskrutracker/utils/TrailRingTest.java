@@ -0,0 +1,85 @@
+package com.example.buskrutracker.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test untuk TrailRing
+ */
+public class TrailRingTest {
+
+    private final List<String> adds = new ArrayList<>();
+    private final List<String> removes = new ArrayList<>();
+
+    private final TrailRing.Sink sink = new TrailRing.Sink() {
+        @Override
+        public void onAdd(String key, double lat, double lng, long timestamp) {
+            adds.add(key);
+        }
+
+        @Override
+        public void onRemove(String key) {
+            removes.add(key);
+        }
+    };
+
+    @Test
+    public void countWindow_evictsOldestSentPoint() {
+        TrailRing ring = new TrailRing(3, 0);
+        for (int i = 0; i < 3; i++) {
+            ring.add("k" + i, 0, 0, i);
+        }
+        assertEquals(3, ring.drain(sink));
+
+        ring.add("k3", 0, 0, 3);
+        adds.clear();
+        assertEquals(2, ring.drain(sink));
+        assertEquals(Arrays.asList("k3"), adds);
+        assertEquals(Arrays.asList("k0"), removes);
+        assertEquals(3, ring.size());
+        assertFalse(ring.hasPending());
+    }
+
+    @Test
+    public void unsentPointLeavingWindow_needsNoRemove() {
+        TrailRing ring = new TrailRing(2, 0);
+        for (int i = 0; i < 5; i++) {
+            ring.add("k" + i, 0, 0, i);
+        }
+
+        ring.drain(sink);
+        assertEquals(Arrays.asList("k3", "k4"), adds);
+        assertTrue(removes.isEmpty());
+    }
+
+    @Test
+    public void timeWindow_evictsExpiredPoints() {
+        TrailRing ring = new TrailRing(10, 1000);
+        ring.add("old", 0, 0, 0);
+        ring.add("new", 0, 0, 900);
+        ring.drain(sink);
+
+        ring.evictExpired(1500);
+        assertEquals(1, ring.size());
+        ring.drain(sink);
+        assertEquals(Arrays.asList("old"), removes);
+    }
+
+    @Test
+    public void clear_dropsPendingOperations() {
+        TrailRing ring = new TrailRing(2, 0);
+        ring.add("a", 0, 0, 0);
+        ring.drain(sink);
+        ring.add("b", 0, 0, 1);
+        ring.add("c", 0, 0, 2);
+        ring.clear();
+
+        assertFalse(ring.hasPending());
+        assertEquals(0, ring.drain(sink));
+    }
+}
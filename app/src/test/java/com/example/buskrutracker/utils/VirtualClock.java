@@ -0,0 +1,43 @@
+package com.example.buskrutracker.utils;
+
+/**
+ * VirtualClock - Clock yang hanya maju saat digerakkan (replay trace, test)
+ *
+ * elapsedRealtime dihitung dari wall time dikurangi offset boot tetap, sehingga
+ * kedua sumber waktu selalu maju bersama.
+ */
+public class VirtualClock implements Clock {
+
+    private final long bootTimeMillis;
+    private long nowMillis;
+
+    public VirtualClock(long startTimeMillis) {
+        this.nowMillis = startTimeMillis;
+        this.bootTimeMillis = startTimeMillis;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return nowMillis;
+    }
+
+    @Override
+    public synchronized long elapsedRealtime() {
+        return nowMillis - bootTimeMillis;
+    }
+
+    /**
+     * Majukan ke waktu tertentu; waktu tidak pernah mundur
+     */
+    public synchronized void advanceTo(long timeMillis) {
+        if (timeMillis > nowMillis) {
+            nowMillis = timeMillis;
+        }
+    }
+
+    public synchronized void advanceBy(long millis) {
+        if (millis > 0) {
+            nowMillis += millis;
+        }
+    }
+}